@@ -0,0 +1,52 @@
+package com.ftpl.rapidTestAI.benchmark;
+
+import com.ftpl.rapidTestAI.service.EndpointTask;
+import io.swagger.v3.oas.models.PathItem;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Artifact file names for every operation of a 10k-operation spec, the path
+ * sanitization each generated artifact goes through.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 5)
+public class ArtifactNameBenchmark {
+
+    private final List<String[]> operations = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        for (final Map.Entry<String, PathItem> path : BenchmarkSupport.generator(10_000, "shared").generate().getPaths().entrySet()) {
+            for (final PathItem.HttpMethod method : path.getValue().readOperationsMap().keySet()) {
+                operations.add(new String[]{method.name(), path.getKey()});
+            }
+        }
+    }
+
+    @Benchmark
+    public void artifactBaseNames(final Blackhole blackhole) {
+        for (final String[] operation : operations) {
+            blackhole.consume(EndpointTask.artifactBaseName(operation[0], operation[1]));
+        }
+    }
+}
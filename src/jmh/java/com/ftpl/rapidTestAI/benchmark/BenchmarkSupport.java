@@ -0,0 +1,87 @@
+package com.ftpl.rapidTestAI.benchmark;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.ftpl.rapidTestAI.service.GenerationMetrics;
+import com.ftpl.rapidTestAI.service.OpenAPIChunkExporter;
+import com.ftpl.rapidTestAI.service.OpenAPIJsonExporterService;
+import com.ftpl.rapidTestAI.service.OpenAPISpecCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.slf4j.LoggerFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Wiring shared by the benchmarks: services built without Spring, synthetic specs of
+ * the shapes the benchmarks are parameterized by, and quiet logging, since the per-chunk
+ * info lines would otherwise dominate short iterations.
+ */
+final class BenchmarkSupport {
+
+    private BenchmarkSupport() {
+    }
+
+    static void quietLogging() {
+        ((Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+    }
+
+    /**
+     * {@code shared}: three layers of models reused by many operations; {@code deep}: long
+     * reference chains; {@code recursive}: shared models with self and mutual references.
+     */
+    static SyntheticSpecGenerator generator(final int operations, final String shape) {
+        return switch (shape) {
+            case "shared" -> new SyntheticSpecGenerator(operations, 200, 3, false);
+            case "deep" -> new SyntheticSpecGenerator(operations, 50, 12, false);
+            case "recursive" -> new SyntheticSpecGenerator(operations, 200, 3, true);
+            default -> throw new IllegalArgumentException("Unknown spec shape " + shape);
+        };
+    }
+
+    static OpenAPIChunkExporter chunkExporter(final GenerationMetrics metrics, final Path chunkDirectory) {
+        final OpenAPIChunkExporter chunkExporter = new OpenAPIChunkExporter();
+        chunkExporter.setChunkDirectory(chunkDirectory.toString());
+        ReflectionTestUtils.setField(chunkExporter, "metrics", metrics);
+        return chunkExporter;
+    }
+
+    static OpenAPIJsonExporterService summaryExporter(final GenerationMetrics metrics, final OpenAPIChunkExporter chunkExporter) {
+        return summaryExporter(metrics, chunkExporter, 0);
+    }
+
+    static OpenAPIJsonExporterService summaryExporter(final GenerationMetrics metrics,
+                                                      final OpenAPIChunkExporter chunkExporter,
+                                                      final int parallelism) {
+        final OpenAPIJsonExporterService exporter = new OpenAPIJsonExporterService();
+        ReflectionTestUtils.setField(exporter, "parallelism", parallelism);
+        ReflectionTestUtils.setField(exporter, "chunkExporter", chunkExporter);
+        ReflectionTestUtils.setField(exporter, "metrics", metrics);
+        ReflectionTestUtils.setField(exporter, "specCache", uncachedSpecs(metrics));
+        return exporter;
+    }
+
+    /**
+     * A disabled spec cache, so every summarization still pays for the parse it measures.
+     */
+    static OpenAPISpecCache uncachedSpecs(final GenerationMetrics metrics) {
+        final OpenAPISpecCache specCache = new OpenAPISpecCache(false, 0, 0);
+        ReflectionTestUtils.setField(specCache, "metrics", metrics);
+        return specCache;
+    }
+
+    static GenerationMetrics metrics() {
+        return new GenerationMetrics(new SimpleMeterRegistry());
+    }
+
+    static void delete(final Path directory) throws IOException {
+        try (final Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+}
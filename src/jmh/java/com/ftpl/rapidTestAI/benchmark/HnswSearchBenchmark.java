@@ -0,0 +1,107 @@
+package com.ftpl.rapidTestAI.benchmark;
+
+import com.ftpl.rapidTestAI.utils.HnswIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Top-10 search latency of the HNSW index against the exact scan it replaces, over
+ * synthetic embeddings as many as a large project's step definitions and schemas. The
+ * setup prints the recall@10 of each {@code efSearch} against the exact results; the
+ * searches run on four threads sharing the index.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 5)
+@Threads(4)
+public class HnswSearchBenchmark {
+
+    private static final int QUERIES = 256;
+    private static final int LATENT_DIMENSIONS = 24;
+
+    @Param({"20000", "100000"})
+    private int size;
+
+    @Param({"256"})
+    private int dimension;
+
+    @Param({"32", "64", "128"})
+    private int efSearch;
+
+    private float[][] directions;
+    private HnswIndex index;
+    private float[][] queries;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final Random random = new Random(42);
+        directions = new float[LATENT_DIMENSIONS][dimension];
+        for (final float[] direction : directions) {
+            for (int i = 0; i < dimension; i++) {
+                direction[i] = (float) random.nextGaussian();
+            }
+        }
+        index = new HnswIndex(dimension, HnswIndex.Parameters.DEFAULT, 42);
+        for (int i = 0; i < size; i++) {
+            index.add(embedding(random));
+        }
+        queries = new float[QUERIES][];
+        int found = 0;
+        for (int q = 0; q < QUERIES; q++) {
+            queries[q] = embedding(random);
+            final List<Integer> exact = index.exactSearch(queries[q], 10, node -> true).stream().map(HnswIndex.Neighbor::node).toList();
+            found += (int) index.search(queries[q], 10, efSearch, node -> true).stream()
+                    .filter(neighbor -> exact.contains(neighbor.node()))
+                    .count();
+        }
+        System.err.printf("size=%d dimension=%d efSearch=%d recall@10=%.3f%n", size, dimension, efSearch, found / (QUERIES * 10.0));
+    }
+
+    @Benchmark
+    public List<HnswIndex.Neighbor> hnsw() {
+        return index.search(query(), 10, efSearch, node -> true);
+    }
+
+    @Benchmark
+    public List<HnswIndex.Neighbor> exact() {
+        return index.exactSearch(query(), 10, node -> true);
+    }
+
+    private float[] query() {
+        return queries[ThreadLocalRandom.current().nextInt(QUERIES)];
+    }
+
+    // embeddings vary along far fewer directions than they have dimensions
+    private float[] embedding(final Random random) {
+        final float[] vector = new float[dimension];
+        for (final float[] direction : directions) {
+            final float weight = (float) random.nextGaussian();
+            for (int i = 0; i < dimension; i++) {
+                vector[i] += weight * direction[i];
+            }
+        }
+        for (int i = 0; i < dimension; i++) {
+            vector[i] += (float) (0.1 * random.nextGaussian());
+        }
+        return vector;
+    }
+}
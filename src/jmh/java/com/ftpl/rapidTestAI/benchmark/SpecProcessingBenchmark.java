@@ -0,0 +1,131 @@
+package com.ftpl.rapidTestAI.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ftpl.rapidTestAI.service.GenerationMetrics;
+import com.ftpl.rapidTestAI.service.OpenAPIChunkExporter;
+import com.ftpl.rapidTestAI.service.OpenAPIJsonExporterService;
+import com.ftpl.rapidTestAI.service.SchemaResolver;
+import io.swagger.v3.oas.models.OpenAPI;
+import io.swagger.v3.oas.models.Operation;
+import io.swagger.v3.oas.models.PathItem;
+import io.swagger.v3.oas.models.media.MediaType;
+import io.swagger.v3.oas.models.media.Schema;
+import io.swagger.v3.oas.models.responses.ApiResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Summarization, schema resolution and chunking of synthetic specs. Throughput is in
+ * specs per minute; run with {@code -prof gc} for allocation per spec. Specs up to 50k
+ * operations: {@code -p operations=50000}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MINUTES)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+public class SpecProcessingBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int operations;
+
+    @Param({"shared", "deep", "recursive"})
+    public String shape;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private Path workDir;
+    private File specFile;
+    private String outputPrefix;
+    private File summaryFile;
+    private OpenAPI openAPI;
+    private List<Schema<?>> operationSchemas;
+    private OpenAPIJsonExporterService summaryExporter;
+    private OpenAPIChunkExporter chunkExporter;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, InterruptedException {
+        BenchmarkSupport.quietLogging();
+        workDir = Files.createTempDirectory("spec-benchmark");
+        final SyntheticSpecGenerator generator = BenchmarkSupport.generator(operations, shape);
+        specFile = generator.writeTo(workDir.resolve("spec.json").toFile());
+        openAPI = generator.generate();
+        operationSchemas = operationSchemas(openAPI);
+
+        final GenerationMetrics metrics = BenchmarkSupport.metrics();
+        chunkExporter = BenchmarkSupport.chunkExporter(metrics, workDir.resolve("chunks"));
+        summaryExporter = BenchmarkSupport.summaryExporter(metrics, chunkExporter);
+
+        // the chunking benchmark cuts a summary that already exists
+        outputPrefix = workDir + File.separator;
+        summaryExporter.parseOpenAPIJsonToSummary(specFile.getPath(), outputPrefix);
+        summaryFile = new File(outputPrefix + "openapi_summary.json");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkSupport.delete(workDir);
+    }
+
+    /** Parse, summarize and chunk, as the summarize job does. */
+    @Benchmark
+    public void summarize() throws IOException, InterruptedException {
+        summaryExporter.parseOpenAPIJsonToSummary(specFile.getPath(), outputPrefix);
+    }
+
+    /** Schema expansion for every request and response of the spec, with a fresh resolver per spec. */
+    @Benchmark
+    public void resolveSchemas(final Blackhole blackhole) {
+        final SchemaResolver resolver = new SchemaResolver(mapper, openAPI, 32);
+        for (final Schema<?> schema : operationSchemas) {
+            blackhole.consume(resolver.toJson(schema));
+        }
+    }
+
+    @Benchmark
+    public void chunkSummary() {
+        chunkExporter.OpenAPISummarizedFileToChunks(summaryFile.getPath());
+    }
+
+    private static List<Schema<?>> operationSchemas(final OpenAPI openAPI) {
+        final List<Schema<?>> schemas = new ArrayList<>();
+        for (final PathItem item : openAPI.getPaths().values()) {
+            for (final Operation operation : item.readOperations()) {
+                if (operation.getRequestBody() != null && operation.getRequestBody().getContent() != null) {
+                    for (final MediaType media : operation.getRequestBody().getContent().values()) {
+                        schemas.add(media.getSchema());
+                    }
+                }
+                for (final ApiResponse response : operation.getResponses().values()) {
+                    if (response.getContent() != null) {
+                        for (final MediaType media : response.getContent().values()) {
+                            schemas.add(media.getSchema());
+                        }
+                    }
+                }
+            }
+        }
+        return schemas;
+    }
+}
@@ -0,0 +1,74 @@
+package com.ftpl.rapidTestAI.benchmark;
+
+import com.ftpl.rapidTestAI.service.GenerationMetrics;
+import com.ftpl.rapidTestAI.service.OpenAPIJsonExporterService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Summarization of one spec with 1 to N summary threads, for the scaling curve of the
+ * per-path fan-out. Parsing and chunking stay single-threaded and are included, as in
+ * the summarize job. Thread counts beyond the machine's cores only show the overhead:
+ * {@code -p parallelism=1,2,4,8,16}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+public class SummaryScalingBenchmark {
+
+    @Param({"1", "2", "4", "8"})
+    public int parallelism;
+
+    @Param({"10000"})
+    public int operations;
+
+    @Param({"shared"})
+    public String shape;
+
+    private Path workDir;
+    private File specFile;
+    private String outputPrefix;
+    private OpenAPIJsonExporterService summaryExporter;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        BenchmarkSupport.quietLogging();
+        workDir = Files.createTempDirectory("summary-scaling");
+        specFile = BenchmarkSupport.generator(operations, shape).writeTo(workDir.resolve("spec.json").toFile());
+        outputPrefix = workDir + File.separator;
+
+        final GenerationMetrics metrics = BenchmarkSupport.metrics();
+        summaryExporter = BenchmarkSupport.summaryExporter(metrics,
+                BenchmarkSupport.chunkExporter(metrics, workDir.resolve("chunks")), parallelism);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkSupport.delete(workDir);
+    }
+
+    @Benchmark
+    public void summarize() throws IOException, InterruptedException {
+        summaryExporter.parseOpenAPIJsonToSummary(specFile.getPath(), outputPrefix);
+    }
+}
@@ -0,0 +1,102 @@
+package com.ftpl.rapidTestAI.config;
+
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Interceptor;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Stops calling the LLM API after a run of consecutive failures, so that an outage
+ * fails the remaining endpoints fast instead of tying every worker up in retries. After
+ * the open period one trial call is let through; it closes the circuit again on success
+ * and reopens it on failure. Rate limits and server errors count as failures, as do I/O
+ * errors of calls that were not cancelled.
+ */
+@Slf4j
+public class CircuitBreakerInterceptor implements Interceptor {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int failureThreshold;
+    private final long openMillis;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openUntil;
+
+    public CircuitBreakerInterceptor(final int failureThreshold, final Duration openDuration) {
+        if (failureThreshold <= 0) {
+            throw new IllegalArgumentException("failureThreshold must be positive");
+        }
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openDuration.toMillis();
+    }
+
+    @Override
+    public Response intercept(final Chain chain) throws IOException {
+        acquirePermission();
+        final Response response;
+        try {
+            response = chain.proceed(chain.request());
+        } catch (final IOException e) {
+            if (chain.call().isCanceled()) {
+                release();
+            } else {
+                onFailure();
+            }
+            throw e;
+        }
+        if (response.code() == 429 || response.code() >= 500) {
+            onFailure();
+        } else {
+            onSuccess();
+        }
+        return response;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    private synchronized void acquirePermission() throws CircuitOpenException {
+        if (state == State.CLOSED) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        if (state == State.OPEN && now >= openUntil) {
+            state = State.HALF_OPEN;
+            log.info("LLM API circuit half-open, sending a trial call");
+            return;
+        }
+        throw new CircuitOpenException(Math.max(0, openUntil - now));
+    }
+
+    // a cancelled trial call says nothing about the API; let the next call try again
+    private synchronized void release() {
+        if (state == State.HALF_OPEN) {
+            state = State.OPEN;
+            openUntil = 0;
+        }
+    }
+
+    private synchronized void onSuccess() {
+        if (state != State.CLOSED) {
+            log.info("LLM API circuit closed");
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+    }
+
+    private synchronized void onFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            if (state != State.OPEN) {
+                log.warn("LLM API circuit opened after {} consecutive failures, pausing calls for {} ms", consecutiveFailures, openMillis);
+            }
+            state = State.OPEN;
+            openUntil = System.currentTimeMillis() + openMillis;
+        }
+    }
+}
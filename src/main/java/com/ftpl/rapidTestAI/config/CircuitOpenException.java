@@ -0,0 +1,13 @@
+package com.ftpl.rapidTestAI.config;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of calling the LLM API while the circuit breaker is open.
+ */
+public class CircuitOpenException extends IOException {
+
+    public CircuitOpenException(final long retryInMillis) {
+        super("LLM API circuit is open after repeated failures, next attempt allowed in " + retryInMillis + " ms");
+    }
+}
@@ -0,0 +1,147 @@
+package com.ftpl.rapidTestAI.config;
+
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cuts tail latency by sending a second copy of a request that has not been answered
+ * within the hedge delay, and taking whichever answer arrives first; the other call is
+ * cancelled. A hedge costs a second completion whenever it fires, so the delay should
+ * sit around the p95 latency rather than the median. Both copies go through
+ * {@code client}, which must not hedge itself.
+ */
+@Slf4j
+public class HedgingInterceptor implements Interceptor {
+
+    private static final long POLL_MILLIS = 50;
+
+    private final OkHttpClient client;
+    private final long hedgeDelayMillis;
+
+    private final AtomicLong hedgedCalls = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+
+    public HedgingInterceptor(final OkHttpClient client, final Duration hedgeDelay) {
+        this.client = client;
+        this.hedgeDelayMillis = hedgeDelay.toMillis();
+    }
+
+    @Override
+    public Response intercept(final Chain chain) throws IOException {
+        final Request request = chain.request();
+        final CompletableFuture<Map.Entry<Call, Response>> winner = new CompletableFuture<>();
+        final List<Call> calls = new CopyOnWriteArrayList<>();
+        final AtomicInteger outstanding = new AtomicInteger();
+
+        enqueue(request, calls, outstanding, winner);
+        Map.Entry<Call, Response> answer = null;
+        try {
+            answer = await(chain, winner, hedgeDelayMillis);
+            if (answer == null) {
+                hedgedCalls.incrementAndGet();
+                log.debug("No answer from {} after {} ms, sending a hedged request", request.url(), hedgeDelayMillis);
+                enqueue(request, calls, outstanding, winner);
+                answer = await(chain, winner, Long.MAX_VALUE);
+            }
+            if (calls.indexOf(answer.getKey()) > 0) {
+                hedgeWins.incrementAndGet();
+            }
+            return answer.getValue();
+        } finally {
+            if (answer == null) {
+                // an answer that turns up after we gave up still holds a connection
+                winner.thenAccept(late -> late.getValue().close());
+            }
+            for (final Call call : calls) {
+                if (answer == null || call != answer.getKey()) {
+                    call.cancel();
+                }
+            }
+        }
+    }
+
+    public long getHedgedCalls() {
+        return hedgedCalls.get();
+    }
+
+    public long getHedgeWins() {
+        return hedgeWins.get();
+    }
+
+    private void enqueue(final Request request,
+                         final List<Call> calls,
+                         final AtomicInteger outstanding,
+                         final CompletableFuture<Map.Entry<Call, Response>> winner) {
+        final Call call = client.newCall(request);
+        calls.add(call);
+        outstanding.incrementAndGet();
+        call.enqueue(new Callback() {
+            @Override
+            public void onResponse(final Call call, final Response response) {
+                if (!winner.complete(Map.entry(call, response))) {
+                    response.close();
+                }
+            }
+
+            @Override
+            public void onFailure(final Call call, final IOException e) {
+                // only the last outstanding copy decides the outcome
+                if (outstanding.decrementAndGet() == 0) {
+                    winner.completeExceptionally(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Waits up to {@code millis} for the first answer and returns null if there is none
+     * yet. Gives up when the outer call is cancelled, for instance by its deadline.
+     */
+    private static Map.Entry<Call, Response> await(final Chain chain,
+                                                   final CompletableFuture<Map.Entry<Call, Response>> winner,
+                                                   final long millis) throws IOException {
+        final long deadline = millis == Long.MAX_VALUE ? Long.MAX_VALUE : System.nanoTime() + millis * 1_000_000;
+        try {
+            while (true) {
+                if (chain.call().isCanceled()) {
+                    throw new InterruptedIOException("Call cancelled while waiting for a hedged answer");
+                }
+                final long remaining = deadline == Long.MAX_VALUE ? POLL_MILLIS : (deadline - System.nanoTime()) / 1_000_000;
+                if (remaining <= 0) {
+                    return null;
+                }
+                try {
+                    return winner.get(Math.min(POLL_MILLIS, remaining), TimeUnit.MILLISECONDS);
+                } catch (final TimeoutException e) {
+                    // keep waiting
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a hedged answer");
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+}
@@ -1,19 +1,126 @@
 package com.ftpl.rapidTestAI.config;
 
+import com.theokanning.openai.client.OpenAiApi;
 import com.theokanning.openai.service.OpenAiService;
 import lombok.Getter;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.stereotype.Component;
 
 import java.time.Duration;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Builds the {@link OpenAiService} used for all LLM calls. The HTTP client underneath is
+ * sized for concurrent generation: the connection pool and dispatcher limits allow as
+ * many parallel calls as the workers make (OkHttp's default of five per host would cap
+ * streamed completions), and every call passes through, from the outside in:
+ * <ol>
+ *     <li>a {@link CircuitBreakerInterceptor} that fails fast during an outage,</li>
+ *     <li>a {@link RetryInterceptor} for rate limits and server errors,</li>
+ *     <li>a {@link HedgingInterceptor} for slow calls, when a hedge delay is set.</li>
+ * </ol>
+ * The call timeout is a deadline for the whole call including retries and, for streamed
+ * completions, reading the stream.
+ */
 @Component
 public class OpenAIServiceClient {
 
+    @Value("${rapid-test-ai.openai.stub.enabled:false}")
+    private boolean stubEnabled;
+
+    @Value("${rapid-test-ai.openai.stub.latency-millis:200}")
+    private long stubLatencyMillis;
+
+    @Value("${rapid-test-ai.openai.api-key:}")
+    private String apiKey = "";
+
+    @Value("${rapid-test-ai.openai.base-url:https://api.openai.com/}")
+    private String baseUrl = "https://api.openai.com/";
+
+    @Value("${rapid-test-ai.openai.http.max-requests:64}")
+    private int maxRequests = 64;
+
+    @Value("${rapid-test-ai.openai.http.max-requests-per-host:64}")
+    private int maxRequestsPerHost = 64;
+
+    @Value("${rapid-test-ai.openai.http.max-idle-connections:32}")
+    private int maxIdleConnections = 32;
+
+    @Value("${rapid-test-ai.openai.http.keep-alive:5m}")
+    private Duration keepAlive = Duration.ofMinutes(5);
+
+    @Value("${rapid-test-ai.openai.http.connect-timeout:10s}")
+    private Duration connectTimeout = Duration.ofSeconds(10);
+
+    @Value("${rapid-test-ai.openai.http.read-timeout:2m}")
+    private Duration readTimeout = Duration.ofMinutes(2);
+
+    @Value("${rapid-test-ai.openai.http.call-timeout:5m}")
+    private Duration callTimeout = Duration.ofMinutes(5);
+
+    @Value("${rapid-test-ai.openai.retry.max-attempts:4}")
+    private int retryMaxAttempts = 4;
+
+    @Value("${rapid-test-ai.openai.retry.initial-backoff:500ms}")
+    private Duration retryInitialBackoff = Duration.ofMillis(500);
+
+    @Value("${rapid-test-ai.openai.retry.max-backoff:30s}")
+    private Duration retryMaxBackoff = Duration.ofSeconds(30);
+
+    @Value("${rapid-test-ai.openai.circuit-breaker.failure-threshold:5}")
+    private int circuitFailureThreshold = 5;
+
+    @Value("${rapid-test-ai.openai.circuit-breaker.open-duration:30s}")
+    private Duration circuitOpenDuration = Duration.ofSeconds(30);
+
+    @Value("${rapid-test-ai.openai.hedge-delay:0ms}")
+    private Duration hedgeDelay = Duration.ZERO;
+
+    @Getter
+    private CircuitBreakerInterceptor circuitBreaker;
+
+    @Getter
+    private HedgingInterceptor hedging;
+
     @Bean
     public OpenAiService OpenAIService() {
-        final String openAiKey = "";
-        return new OpenAiService(openAiKey, Duration.ofMinutes(5));
+        if (stubEnabled) {
+            return new StubOpenAiService(stubLatencyMillis);
+        }
+        final OkHttpClient client = httpClient();
+        final OpenAiApi api = OpenAiService.defaultRetrofit(client, OpenAiService.defaultObjectMapper())
+                .newBuilder()
+                .baseUrl(baseUrl)
+                .build()
+                .create(OpenAiApi.class);
+        return new OpenAiService(api, client.dispatcher().executorService());
     }
 
+    OkHttpClient httpClient() {
+        final Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(maxRequests);
+        dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+
+        // shares pool and dispatcher with the client below; hedged copies are sent through it
+        final OkHttpClient base = OpenAiService.defaultClient(apiKey, readTimeout).newBuilder()
+                .connectionPool(new ConnectionPool(maxIdleConnections, keepAlive.toMillis(), TimeUnit.MILLISECONDS))
+                .dispatcher(dispatcher)
+                .connectTimeout(connectTimeout)
+                .build();
+
+        circuitBreaker = new CircuitBreakerInterceptor(circuitFailureThreshold, circuitOpenDuration);
+        final OkHttpClient.Builder builder = base.newBuilder()
+                .callTimeout(callTimeout)
+                .addInterceptor(circuitBreaker)
+                .addInterceptor(new RetryInterceptor(retryMaxAttempts, retryInitialBackoff, retryMaxBackoff));
+        if (!hedgeDelay.isZero()) {
+            hedging = new HedgingInterceptor(base, hedgeDelay);
+            builder.addInterceptor(hedging);
+        }
+        return builder.build();
+    }
 }
@@ -0,0 +1,116 @@
+package com.ftpl.rapidTestAI.config;
+
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Retries LLM calls that failed with a rate limit, a server error or an I/O error.
+ * Attempts are spaced by exponential backoff with jitter, so workers that failed
+ * together do not retry together; a {@code Retry-After} header from the server takes
+ * precedence. The wait ends early when the call is cancelled or its deadline passes.
+ */
+@Slf4j
+public class RetryInterceptor implements Interceptor {
+
+    static final Set<Integer> RETRYABLE_STATUS = Set.of(408, 429, 500, 502, 503, 504);
+    private static final long SLEEP_SLICE_MILLIS = 50;
+
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+
+    public RetryInterceptor(final int maxAttempts, final Duration initialBackoff, final Duration maxBackoff) {
+        if (maxAttempts <= 0) {
+            throw new IllegalArgumentException("maxAttempts must be positive");
+        }
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMillis = initialBackoff.toMillis();
+        this.maxBackoffMillis = maxBackoff.toMillis();
+    }
+
+    @Override
+    public Response intercept(final Chain chain) throws IOException {
+        final Request request = chain.request();
+        for (int attempt = 1; ; attempt++) {
+            final Response response;
+            final String reason;
+            try {
+                response = chain.proceed(request);
+            } catch (final IOException e) {
+                if (chain.call().isCanceled() || attempt >= maxAttempts) {
+                    throw e;
+                }
+                final long delay = backoffMillis(attempt);
+                log.warn("LLM call failed with {}, retry {} of {} in {} ms", e.toString(), attempt, maxAttempts - 1, delay);
+                sleep(chain, delay);
+                continue;
+            }
+            if (!RETRYABLE_STATUS.contains(response.code()) || attempt >= maxAttempts) {
+                return response;
+            }
+            reason = "HTTP " + response.code();
+            final long retryAfter = retryAfterMillis(response.header("Retry-After"));
+            final long delay = retryAfter >= 0 ? Math.min(retryAfter, maxBackoffMillis) : backoffMillis(attempt);
+            response.close();
+            log.warn("LLM call failed with {}, retry {} of {} in {} ms", reason, attempt, maxAttempts - 1, delay);
+            sleep(chain, delay);
+        }
+    }
+
+    /**
+     * Half the exponential step plus a random share of the other half; the step doubles
+     * per attempt up to the maximum backoff.
+     */
+    long backoffMillis(final int attempt) {
+        final long step = Math.min(maxBackoffMillis, initialBackoffMillis << Math.min(attempt - 1, 30));
+        return step / 2 + ThreadLocalRandom.current().nextLong(step / 2 + 1);
+    }
+
+    /**
+     * Delay requested by a {@code Retry-After} header, given in seconds or as an HTTP
+     * date, or -1 when there is none or it cannot be read.
+     */
+    static long retryAfterMillis(final String retryAfter) {
+        if (retryAfter == null || retryAfter.isBlank()) {
+            return -1;
+        }
+        try {
+            return Math.max(0, Long.parseLong(retryAfter.trim()) * 1000);
+        } catch (final NumberFormatException e) {
+            // not seconds, try a date
+        }
+        try {
+            final ZonedDateTime at = ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Math.max(0, Duration.between(ZonedDateTime.now(at.getZone()), at).toMillis());
+        } catch (final DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    private static void sleep(final Chain chain, final long millis) throws IOException {
+        final long deadline = System.nanoTime() + millis * 1_000_000;
+        try {
+            long remaining;
+            while ((remaining = deadline - System.nanoTime()) > 0) {
+                if (chain.call().isCanceled()) {
+                    throw new InterruptedIOException("Call cancelled while waiting to retry");
+                }
+                Thread.sleep(Math.min(SLEEP_SLICE_MILLIS, remaining / 1_000_000 + 1));
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry");
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.ftpl.rapidTestAI.config;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.ftpl.rapidTestAI.service.PromptFactory;
+import com.ftpl.rapidTestAI.utils.TokenEstimator;
+import com.theokanning.openai.Usage;
+import com.theokanning.openai.client.OpenAiApi;
+import com.theokanning.openai.completion.chat.ChatCompletionChoice;
+import com.theokanning.openai.completion.chat.ChatCompletionChunk;
+import com.theokanning.openai.completion.chat.ChatCompletionRequest;
+import com.theokanning.openai.completion.chat.ChatCompletionResult;
+import com.theokanning.openai.completion.chat.ChatMessage;
+import com.theokanning.openai.embedding.Embedding;
+import com.theokanning.openai.embedding.EmbeddingRequest;
+import com.theokanning.openai.embedding.EmbeddingResult;
+import com.theokanning.openai.service.OpenAiService;
+import io.reactivex.BackpressureStrategy;
+import io.reactivex.Flowable;
+import io.reactivex.schedulers.Schedulers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Offline stand-in for {@link OpenAiService}. It answers chat completions with a fixed
+ * body after a simulated latency, so throughput of the generation pipeline can be
+ * measured and tested without network access or API cost. Streamed completions deliver
+ * the first word after half the latency and the rest spread over the other half.
+ * Embeddings are hashed bags of words, so texts sharing words come out similar.
+ */
+public class StubOpenAiService extends OpenAiService {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final int EMBEDDING_DIMENSION = 256;
+
+    private final long latencyMillis;
+    private final AtomicLong callCount = new AtomicLong();
+
+    public StubOpenAiService(final long latencyMillis) {
+        super((OpenAiApi) null);
+        this.latencyMillis = latencyMillis;
+    }
+
+    @Override
+    public ChatCompletionResult createChatCompletion(final ChatCompletionRequest request) {
+        callCount.incrementAndGet();
+        simulateLatency(latencyMillis);
+
+        final String content = contentFor(request);
+
+        final ChatCompletionChoice choice = new ChatCompletionChoice();
+        choice.setIndex(0);
+        choice.setMessage(new ChatMessage("assistant", content));
+        choice.setFinishReason("stop");
+
+        final Usage usage = new Usage();
+        usage.setPromptTokens(TokenEstimator.estimate(request));
+        usage.setCompletionTokens(TokenEstimator.estimate(content));
+        usage.setTotalTokens(usage.getPromptTokens() + usage.getCompletionTokens());
+
+        final ChatCompletionResult result = new ChatCompletionResult();
+        result.setModel(request.getModel());
+        result.setChoices(List.of(choice));
+        result.setUsage(usage);
+        return result;
+    }
+
+    @Override
+    public Flowable<ChatCompletionChunk> streamChatCompletion(final ChatCompletionRequest request) {
+        callCount.incrementAndGet();
+        final String[] words = contentFor(request).split("(?<= )");
+        return Flowable.<ChatCompletionChunk>create(emitter -> {
+            try {
+                simulateLatency(latencyMillis / 2);
+                for (final String word : words) {
+                    if (emitter.isCancelled()) {
+                        return;
+                    }
+                    final ChatCompletionChoice choice = new ChatCompletionChoice();
+                    choice.setIndex(0);
+                    choice.setMessage(new ChatMessage("assistant", word));
+                    final ChatCompletionChunk chunk = new ChatCompletionChunk();
+                    chunk.setModel(request.getModel());
+                    chunk.setChoices(List.of(choice));
+                    emitter.onNext(chunk);
+                    simulateLatency(latencyMillis / 2 / words.length);
+                }
+                emitter.onComplete();
+            } catch (final IllegalStateException e) {
+                // a cancelled stream interrupts the sleep; nobody is listening any more
+                if (!emitter.isCancelled()) {
+                    emitter.onError(e);
+                }
+            }
+        }, BackpressureStrategy.BUFFER).subscribeOn(Schedulers.io());
+    }
+
+    @Override
+    public EmbeddingResult createEmbeddings(final EmbeddingRequest request) {
+        callCount.incrementAndGet();
+        simulateLatency(latencyMillis / 4);
+        final List<Embedding> data = new ArrayList<>();
+        int tokens = 0;
+        for (final String text : request.getInput()) {
+            final Embedding embedding = new Embedding();
+            embedding.setObject("embedding");
+            embedding.setIndex(data.size());
+            embedding.setEmbedding(embeddingOf(text));
+            data.add(embedding);
+            tokens += TokenEstimator.estimate(text);
+        }
+        final Usage usage = new Usage();
+        usage.setPromptTokens(tokens);
+        usage.setTotalTokens(tokens);
+
+        final EmbeddingResult result = new EmbeddingResult();
+        result.setModel(request.getModel());
+        result.setObject("list");
+        result.setData(data);
+        result.setUsage(usage);
+        return result;
+    }
+
+    public long getCallCount() {
+        return callCount.get();
+    }
+
+    // multi-endpoint and step body prompts get a JSON object with the same body for every key
+    private static String contentFor(final ChatCompletionRequest request) {
+        final String prompt = request.getMessages().get(request.getMessages().size() - 1).getContent();
+        final boolean stepBodies = prompt.contains(PromptFactory.STEP_KEYS_LABEL);
+        final String body = stepBodies
+                ? "// stub response for " + request.getModel()
+                : "Feature: stub response for " + request.getModel();
+        final String keysLabel = stepBodies ? PromptFactory.STEP_KEYS_LABEL : PromptFactory.ENDPOINT_KEYS_LABEL;
+        final int label = prompt.lastIndexOf(keysLabel);
+        if (label < 0) {
+            return body;
+        }
+        try {
+            final JsonNode keys = MAPPER.readTree(prompt.substring(label + keysLabel.length()).trim());
+            final ObjectNode answer = MAPPER.createObjectNode();
+            keys.forEach(key -> answer.put(key.asText(), body));
+            return MAPPER.writeValueAsString(answer);
+        } catch (final JsonProcessingException e) {
+            return body;
+        }
+    }
+
+    private static List<Double> embeddingOf(final String text) {
+        final double[] vector = new double[EMBEDDING_DIMENSION];
+        // camelCase and snake_case identifiers count as their words
+        final String words = text.replaceAll("([a-z0-9])([A-Z])", "$1 $2").toLowerCase(Locale.ROOT);
+        for (final String word : words.split("[^a-z0-9]+")) {
+            if (!word.isEmpty()) {
+                final int hash = word.hashCode();
+                vector[Math.floorMod(hash, EMBEDDING_DIMENSION)] += (hash >>> 31) == 0 ? 1 : -1;
+            }
+        }
+        final List<Double> values = new ArrayList<>(EMBEDDING_DIMENSION);
+        for (final double value : vector) {
+            values.add(value);
+        }
+        return values;
+    }
+
+    private static void simulateLatency(final long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while simulating completion latency", e);
+        }
+    }
+}
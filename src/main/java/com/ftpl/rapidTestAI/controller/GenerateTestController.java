@@ -1,14 +1,30 @@
 package com.ftpl.rapidTestAI.controller;
 
 
+import com.ftpl.rapidTestAI.service.BatchExportReport;
+import com.ftpl.rapidTestAI.service.BatchGenerationService;
+import com.ftpl.rapidTestAI.service.CompletionCache;
+import com.ftpl.rapidTestAI.service.CoverageGapAnalyzer;
+import com.ftpl.rapidTestAI.service.EndpointCoverage;
+import com.ftpl.rapidTestAI.service.EndpointImpact;
+import com.ftpl.rapidTestAI.service.EndpointImpactIndex;
 import com.ftpl.rapidTestAI.service.GenerateTestOpenAPIService;
+import com.ftpl.rapidTestAI.service.GenerationReport;
+import com.ftpl.rapidTestAI.service.Job;
+import com.ftpl.rapidTestAI.service.JobService;
+import com.ftpl.rapidTestAI.service.PromptContextRetriever;
+import com.ftpl.rapidTestAI.service.RepositoryWorkspacePool;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.List;
+import java.util.Map;
+
 @RestController
 @RequestMapping("/rapid-test-ai/api/generate-test")
 public class GenerateTestController {
@@ -16,11 +32,146 @@ public class GenerateTestController {
     @Autowired
     private GenerateTestOpenAPIService generateTestOpenAPIService;
 
+    @Autowired
+    private CompletionCache completionCache;
+
+    @Autowired
+    private JobService jobService;
+
+    @Autowired
+    private BatchGenerationService batchGenerationService;
+
+    @Autowired
+    private EndpointImpactIndex endpointImpactIndex;
+
+    @Autowired
+    private RepositoryWorkspacePool workspacePool;
+
+    @Autowired
+    private CoverageGapAnalyzer coverageGapAnalyzer;
+
+    @Autowired
+    private PromptContextRetriever promptContextRetriever;
+
+    /**
+     * Queues test generation from chunk files. The response is 202 with the job; its
+     * result is the {@code GenerationReport} once the job has finished.
+     */
     @PostMapping("/openapi-chunk-files")
-    public ResponseEntity<Object> generateTestsFromOpenAPI(@RequestParam final String chunkDirectoryPath,
-                                                   @RequestParam final String featureOutputFilePath,
-                                                   @RequestParam final String stepDefOutputFilePath) throws Exception {
-        generateTestOpenAPIService.generateFeaturesFromChunks(chunkDirectoryPath, featureOutputFilePath, stepDefOutputFilePath);
-        return ResponseEntity.ok().build();
+    public ResponseEntity<Job> generateTestsFromOpenAPI(@RequestParam final String chunkDirectoryPath,
+                                                        @RequestParam final String featureOutputFilePath,
+                                                        @RequestParam final String stepDefOutputFilePath,
+                                                        @RequestParam(defaultValue = "false") final boolean force) {
+        final Job job = jobService.submit("generate-tests", progress -> generateTestOpenAPIService.generateFeaturesFromChunks(
+                chunkDirectoryPath, featureOutputFilePath, stepDefOutputFilePath, force, progress));
+        return JobController.accepted(job);
+    }
+
+    /**
+     * Like {@code /openapi-chunk-files}, and also regenerates the operations whose
+     * implementation the changes from the source to the target branch of the service's
+     * repository affect. Operations changed neither in the spec nor in the code are not
+     * regenerated. The report lists the affected operations as mapped in the code.
+     */
+    @PostMapping("/openapi-chunk-files/impacted")
+    public ResponseEntity<Job> generateImpactedTests(@RequestParam final String chunkDirectoryPath,
+                                                     @RequestParam final String featureOutputFilePath,
+                                                     @RequestParam final String stepDefOutputFilePath,
+                                                     @RequestParam final String remoteRepoUrl,
+                                                     @RequestParam final String sourceBranch,
+                                                     @RequestParam final String targetBranch) {
+        final Job job = jobService.submit("generate-impacted-tests", progress -> {
+            final EndpointImpact impact;
+            try (final RepositoryWorkspacePool.Lease lease = workspacePool.acquire(remoteRepoUrl)) {
+                impact = endpointImpactIndex.impactOf(lease.getDirectory().toString(), "origin/" + sourceBranch, "origin/" + targetBranch);
+            }
+            return generateTestOpenAPIService.generateImpactedFeatures(
+                    chunkDirectoryPath, featureOutputFilePath, stepDefOutputFilePath, impact, progress);
+        });
+        return JobController.accepted(job);
+    }
+
+    /**
+     * Generates the operations changed in the spec, or all of them with {@code force}, in
+     * order of how much of their implementation on the branch the existing tests leave
+     * uncovered, and at most {@code limit} of them. The rest are reported as deferred and
+     * are picked up again by the next run, so a fixed budget per run works through the
+     * largest gaps first.
+     */
+    @PostMapping("/openapi-chunk-files/coverage-guided")
+    public ResponseEntity<Job> generateByCoverageGap(@RequestParam final String chunkDirectoryPath,
+                                                     @RequestParam final String featureOutputFilePath,
+                                                     @RequestParam final String stepDefOutputFilePath,
+                                                     @RequestParam final String remoteRepoUrl,
+                                                     @RequestParam final String branch,
+                                                     @RequestParam(required = false) final List<String> execFiles,
+                                                     @RequestParam(required = false) final List<String> classesPath,
+                                                     @RequestParam(required = false) final String xmlReport,
+                                                     @RequestParam(defaultValue = "0") final int limit,
+                                                     @RequestParam(defaultValue = "false") final boolean force) {
+        if (xmlReport == null && (execFiles == null || classesPath == null)) {
+            return ResponseEntity.badRequest().build();
+        }
+        final Job job = jobService.submit("generate-coverage-guided-tests", progress -> {
+            final List<EndpointCoverage> coverage;
+            try (final RepositoryWorkspacePool.Lease lease = workspacePool.acquire(remoteRepoUrl)) {
+                coverage = coverageGapAnalyzer.analyze(lease.getDirectory().toString(), "origin/" + branch, execFiles, classesPath, xmlReport);
+            }
+            return generateTestOpenAPIService.generateByCoverageGap(
+                    chunkDirectoryPath, featureOutputFilePath, stepDefOutputFilePath, coverage, force, limit, progress);
+        });
+        return JobController.accepted(job);
+    }
+
+    /**
+     * Writes the feature-generation requests for every chunk operation as an OpenAI
+     * Batch API input file.
+     */
+    @PostMapping("/batch/features/export")
+    public ResponseEntity<BatchExportReport> exportFeatureBatch(@RequestParam final String chunkDirectoryPath,
+                                                                @RequestParam final String batchFilePath) throws Exception {
+        return ResponseEntity.ok(batchGenerationService.exportFeatureBatch(chunkDirectoryPath, batchFilePath));
+    }
+
+    /**
+     * Writes feature files from a completed feature batch and exports the step-definition
+     * batch for the next round.
+     */
+    @PostMapping("/batch/features/ingest")
+    public ResponseEntity<GenerationReport> ingestFeatureBatch(@RequestParam final String chunkDirectoryPath,
+                                                               @RequestParam final String resultsFilePath,
+                                                               @RequestParam final String featureOutputFilePath,
+                                                               @RequestParam final String stepBatchFilePath) throws Exception {
+        return ResponseEntity.ok(batchGenerationService.ingestFeatureResults(
+                chunkDirectoryPath, resultsFilePath, featureOutputFilePath, stepBatchFilePath));
+    }
+
+    @PostMapping("/batch/steps/ingest")
+    public ResponseEntity<GenerationReport> ingestStepBatch(@RequestParam final String chunkDirectoryPath,
+                                                            @RequestParam final String resultsFilePath,
+                                                            @RequestParam final String featureOutputFilePath,
+                                                            @RequestParam final String stepDefOutputFilePath) throws Exception {
+        return ResponseEntity.ok(batchGenerationService.ingestStepResults(
+                chunkDirectoryPath, resultsFilePath, featureOutputFilePath, stepDefOutputFilePath));
+    }
+
+    /**
+     * Indexes the step definitions and spec schemas under {@code referencePath} for the
+     * generation prompts; the job result is the number indexed.
+     */
+    @PostMapping("/retrieval/index")
+    public ResponseEntity<Job> indexPromptContext(@RequestParam final String referencePath) {
+        final Job job = jobService.submit("index-prompt-context", progress -> promptContextRetriever.index(referencePath));
+        return JobController.accepted(job);
+    }
+
+    @GetMapping("/retrieval/stats")
+    public ResponseEntity<Map<String, Long>> retrievalStats() {
+        return ResponseEntity.ok(promptContextRetriever.getStats());
+    }
+
+    @GetMapping("/completion-cache/stats")
+    public ResponseEntity<Map<String, Long>> completionCacheStats() {
+        return ResponseEntity.ok(completionCache.getStats());
     }
 }
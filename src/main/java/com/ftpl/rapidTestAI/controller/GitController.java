@@ -1,12 +1,22 @@
 package com.ftpl.rapidTestAI.controller;
 
+import com.ftpl.rapidTestAI.service.BranchComparisonStreamer;
+import com.ftpl.rapidTestAI.service.CoverageGapAnalyzer;
+import com.ftpl.rapidTestAI.service.EndpointCoverage;
+import com.ftpl.rapidTestAI.service.EndpointImpact;
+import com.ftpl.rapidTestAI.service.EndpointImpactIndex;
 import com.ftpl.rapidTestAI.service.GitClientService;
+import com.ftpl.rapidTestAI.service.RepositoryWorkspacePool;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
+import java.util.Base64;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -15,9 +25,23 @@ import java.util.Map;
 @RequestMapping("/rapid-test-ai/api/git")
 public class GitController {
 
+    private static final String NDJSON = "application/x-ndjson";
+
     @Autowired
     private GitClientService gitClientService;
 
+    @Autowired
+    private BranchComparisonStreamer branchComparisonStreamer;
+
+    @Autowired
+    private RepositoryWorkspacePool workspacePool;
+
+    @Autowired
+    private EndpointImpactIndex endpointImpactIndex;
+
+    @Autowired
+    private CoverageGapAnalyzer coverageGapAnalyzer;
+
     // API to clone the repository to the given local path
     @PostMapping("/clone-repository")
     public ResponseEntity<String> cloneRepository(@RequestParam final String localPath,
@@ -30,27 +54,47 @@ public class GitController {
         }
     }
 
+    /**
+     * Changed files between two branches of the remote, with their content on the target
+     * branch. Without {@code localPath} the comparison runs in a managed workspace from
+     * {@link RepositoryWorkspacePool}; with it, in that directory as before. Content that
+     * is not UTF-8 text is base64-encoded and its path listed in {@code fileEncodings}.
+     */
     @GetMapping("/compare-branches")
     public ResponseEntity<Map<String, Object>> compareBranches(
-                @RequestParam final String localPath,
+                @RequestParam(required = false) final String localPath,
                 @RequestParam final String remoteRepoUrl,
                 @RequestParam final String sourceBranch,
                 @RequestParam final String targetBranch) {
         Map<String, Object> response = new HashMap<>();
-        try {
-            gitClientService.cloneRepository(localPath, remoteRepoUrl);
-            List<String> changedFiles = gitClientService.getChangedFilesInRemoteComparison(localPath, sourceBranch, targetBranch);
+        try (final RepositoryWorkspacePool.Lease lease = localPath == null ? workspacePool.acquire(remoteRepoUrl) : null) {
+            final String repositoryPath = lease != null ? lease.getDirectory().toString() : localPath;
+            List<String> changedFiles = changedFiles(lease, repositoryPath, remoteRepoUrl, sourceBranch, targetBranch);
 
+            // one fetch for the blobs a partial clone lacks, then one cat-file pass for all
+            // files; files the target branch deletes have no content
+            final List<String> files = changedFiles.stream().filter(file -> !file.isEmpty()).toList();
+            final String targetCommit = gitClientService.resolveCommit(repositoryPath, "origin/" + targetBranch);
+            gitClientService.fetchMissingFiles(repositoryPath, targetCommit, files);
             Map<String, String> fileContents = new HashMap<>();
-            for (String file : changedFiles) {
-                if (!file.isEmpty()) {
-                    String fileContent = gitClientService.getFileContentAtRevision(localPath, file, "origin/" + targetBranch);
-                    fileContents.put(file, fileContent);
+            // files that are not UTF-8 text are sent base64-encoded and listed here
+            final Map<String, String> fileEncodings = new HashMap<>();
+            gitClientService.readFilesAtRevision(repositoryPath, files, targetCommit, (file, size, content) -> {
+                if (content != null) {
+                    final byte[] bytes = content.readAllBytes();
+                    final String text = BranchComparisonStreamer.textOf(bytes);
+                    if (text != null) {
+                        fileContents.put(file, text);
+                    } else {
+                        fileContents.put(file, Base64.getEncoder().encodeToString(bytes));
+                        fileEncodings.put(file, "base64");
+                    }
                 }
-            }
+            });
 
             response.put("changedFiles", changedFiles);
             response.put("fileContents", fileContents);
+            response.put("fileEncodings", fileEncodings);
 
             return ResponseEntity.ok(response);
 
@@ -59,5 +103,133 @@ public class GitController {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
         }
     }
-}
 
+    /**
+     * Same comparison as {@link #compareBranches}, streamed as NDJSON with one record per
+     * changed file, so the response never has to fit in memory. See
+     * {@link BranchComparisonStreamer} for the record format.
+     *
+     * @param maxFileBytes Files larger than this are listed without content
+     * @param maxTotalBytes Once this much content has been sent, later files are listed without content
+     * @param skipPaths Ant-style patterns of paths listed without content, e.g. vendored code
+     * @param skipBinary List binary files without content
+     * @param gzip Compress the stream
+     */
+    @GetMapping(path = "/compare-branches/stream", produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamCompareBranches(
+                @RequestParam(required = false) final String localPath,
+                @RequestParam final String remoteRepoUrl,
+                @RequestParam final String sourceBranch,
+                @RequestParam final String targetBranch,
+                @RequestParam(required = false) final Long maxFileBytes,
+                @RequestParam(required = false) final Long maxTotalBytes,
+                @RequestParam(required = false) final List<String> skipPaths,
+                @RequestParam(defaultValue = "true") final boolean skipBinary,
+                @RequestParam(defaultValue = "false") final boolean gzip) {
+        RepositoryWorkspacePool.Lease lease = null;
+        final String repositoryPath;
+        final List<String> changedFiles;
+        try {
+            lease = localPath == null ? workspacePool.acquire(remoteRepoUrl) : null;
+            repositoryPath = lease != null ? lease.getDirectory().toString() : localPath;
+            changedFiles = changedFiles(lease, repositoryPath, remoteRepoUrl, sourceBranch, targetBranch);
+        } catch (IOException | InterruptedException e) {
+            if (lease != null) {
+                lease.close();
+            }
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+
+        // the workspace stays leased until the stream has been written, on the streaming thread
+        final RepositoryWorkspacePool.Lease streamLease = lease;
+        final BranchComparisonStreamer.Options options =
+                new BranchComparisonStreamer.Options(maxFileBytes, maxTotalBytes, skipPaths, skipBinary, gzip);
+        final StreamingResponseBody body = out -> {
+            try {
+                branchComparisonStreamer.write(repositoryPath, "origin/" + targetBranch, changedFiles, options, out);
+            } finally {
+                if (streamLease != null) {
+                    streamLease.close();
+                }
+            }
+        };
+        final ResponseEntity.BodyBuilder response = ResponseEntity.ok().contentType(MediaType.parseMediaType(NDJSON));
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.body(body);
+    }
+
+    /**
+     * The endpoints that the changes from the source to the target branch can affect,
+     * worked out from the Java sources. See {@link EndpointImpactIndex}.
+     */
+    @GetMapping("/endpoint-impact")
+    public ResponseEntity<EndpointImpact> endpointImpact(
+                @RequestParam(required = false) final String localPath,
+                @RequestParam final String remoteRepoUrl,
+                @RequestParam final String sourceBranch,
+                @RequestParam final String targetBranch) {
+        try (final RepositoryWorkspacePool.Lease lease = localPath == null ? workspacePool.acquire(remoteRepoUrl) : null) {
+            final String repositoryPath = lease != null ? lease.getDirectory().toString() : localPath;
+            if (lease == null) {
+                gitClientService.cloneRepository(repositoryPath, remoteRepoUrl);
+                gitClientService.fetchOrigin(repositoryPath);
+            }
+            return ResponseEntity.ok(endpointImpactIndex.impactOf(repositoryPath, "origin/" + sourceBranch, "origin/" + targetBranch));
+        } catch (IOException | InterruptedException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    /**
+     * Coverage gaps of the request handlers on a branch, the largest first, from a JaCoCo
+     * XML report or from exec files and the class directories or jars they were recorded
+     * against.
+     */
+    @GetMapping("/coverage-gaps")
+    public ResponseEntity<List<EndpointCoverage>> coverageGaps(
+                @RequestParam(required = false) final String localPath,
+                @RequestParam final String remoteRepoUrl,
+                @RequestParam final String branch,
+                @RequestParam(required = false) final List<String> execFiles,
+                @RequestParam(required = false) final List<String> classesPath,
+                @RequestParam(required = false) final String xmlReport) {
+        if (xmlReport == null && (execFiles == null || classesPath == null)) {
+            return ResponseEntity.badRequest().build();
+        }
+        try (final RepositoryWorkspacePool.Lease lease = localPath == null ? workspacePool.acquire(remoteRepoUrl) : null) {
+            final String repositoryPath = lease != null ? lease.getDirectory().toString() : localPath;
+            if (lease == null) {
+                gitClientService.cloneRepository(repositoryPath, remoteRepoUrl);
+                gitClientService.fetchOrigin(repositoryPath);
+            }
+            return ResponseEntity.ok(coverageGapAnalyzer.analyze(repositoryPath, "origin/" + branch, execFiles, classesPath, xmlReport));
+        } catch (IOException | InterruptedException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    @GetMapping("/endpoint-impact/stats")
+    public ResponseEntity<Map<String, Long>> endpointImpactStats() {
+        return ResponseEntity.ok(endpointImpactIndex.getStats());
+    }
+
+    @GetMapping("/workspaces/stats")
+    public ResponseEntity<Map<String, Long>> workspaceStats() {
+        return ResponseEntity.ok(workspacePool.getStats());
+    }
+
+    // a leased workspace is already fetched; a caller-supplied path is cloned and fetched here
+    private List<String> changedFiles(final RepositoryWorkspacePool.Lease lease,
+                                      final String repositoryPath,
+                                      final String remoteRepoUrl,
+                                      final String sourceBranch,
+                                      final String targetBranch) throws IOException, InterruptedException {
+        if (lease != null) {
+            return gitClientService.getChangesFromOrigin(repositoryPath, sourceBranch, targetBranch);
+        }
+        gitClientService.cloneRepository(repositoryPath, remoteRepoUrl);
+        return gitClientService.getChangedFilesInRemoteComparison(repositoryPath, sourceBranch, targetBranch);
+    }
+}
@@ -0,0 +1,87 @@
+package com.ftpl.rapidTestAI.controller;
+
+import com.ftpl.rapidTestAI.service.Job;
+import com.ftpl.rapidTestAI.service.JobListener;
+import com.ftpl.rapidTestAI.service.JobService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Controller for polling, following and cancelling background jobs
+ */
+@RestController
+@RequestMapping(JobController.BASE_PATH)
+public class JobController {
+
+    static final String BASE_PATH = "/rapid-test-ai/api/jobs";
+
+    @Autowired
+    private JobService jobService;
+
+    @Value("${rapid-test-ai.jobs.sse-timeout:30m}")
+    private Duration sseTimeout;
+
+    /**
+     * 202 response for a freshly submitted job, pointing at its status resource
+     */
+    static ResponseEntity<Job> accepted(final Job job) {
+        return ResponseEntity.accepted().location(URI.create(BASE_PATH + "/" + job.getId())).body(job);
+    }
+
+    @GetMapping
+    public ResponseEntity<List<Job>> listJobs() {
+        return ResponseEntity.ok(jobService.list());
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<Job> getJob(@PathVariable final String id) {
+        return ResponseEntity.of(jobService.get(id));
+    }
+
+    /**
+     * Stream job updates as Server-Sent Events: a {@code progress} event for every state
+     * or progress change and a final {@code done} event, after which the stream closes
+     *
+     * @param id Job id
+     * @return the event stream, or 404 for an unknown job
+     */
+    @GetMapping(path = "/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamJob(@PathVariable final String id) {
+        final SseEmitter emitter = new SseEmitter(sseTimeout.toMillis());
+        final JobListener listener = job -> {
+            try {
+                if (job.getStatus().isFinished()) {
+                    emitter.send(SseEmitter.event().name("done").data(job, MediaType.APPLICATION_JSON));
+                    emitter.complete();
+                } else {
+                    emitter.send(SseEmitter.event().name("progress").data(job, MediaType.APPLICATION_JSON));
+                }
+            } catch (final IOException e) {
+                // client went away; the service drops listeners that throw
+                emitter.completeWithError(e);
+                throw new IllegalStateException(e);
+            }
+        };
+        if (!jobService.addListener(id, listener)) {
+            return ResponseEntity.notFound().build();
+        }
+        emitter.onCompletion(() -> jobService.removeListener(id, listener));
+        emitter.onTimeout(() -> jobService.removeListener(id, listener));
+        jobService.get(id).filter(job -> !job.getStatus().isFinished()).ifPresent(listener::onUpdate);
+        return ResponseEntity.ok(emitter);
+    }
+
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Job> cancelJob(@PathVariable final String id) {
+        return ResponseEntity.of(jobService.cancel(id));
+    }
+}
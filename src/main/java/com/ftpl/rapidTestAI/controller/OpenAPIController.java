@@ -1,12 +1,17 @@
 package com.ftpl.rapidTestAI.controller;
 
+import com.ftpl.rapidTestAI.service.ContextSliceReport;
+import com.ftpl.rapidTestAI.service.Job;
+import com.ftpl.rapidTestAI.service.JobService;
+import com.ftpl.rapidTestAI.service.OpenAPIContextSlicer;
 import com.ftpl.rapidTestAI.service.OpenAPIJsonExporterService;
+import com.ftpl.rapidTestAI.service.OpenAPISpecCache;
+import io.swagger.v3.oas.models.OpenAPI;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
-import java.io.IOException;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -19,25 +24,66 @@ public class OpenAPIController {
     @Autowired
     private OpenAPIJsonExporterService openAPIJsonExporter;
 
+    @Autowired
+    private OpenAPIContextSlicer contextSlicer;
+
+    @Autowired
+    private JobService jobService;
+
+    @Autowired
+    private OpenAPISpecCache specCache;
+
 
     /**
-     * Export OpenAPI specification to a JSON file
+     * Export OpenAPI specification to a JSON file. The export runs as a background job.
      * 
      * @param specFilePath Path to the OpenAPI specification file
      * @param outputFilePath Path where the output JSON summary should be written
-     * @return ResponseEntity with a success message or error details
+     * @return 202 with the queued job, or 429 when the job queue is full
      */
     @PostMapping("/summarize")
-    public ResponseEntity<Map<String, String>> exportOpenAPIToJson(
+    public ResponseEntity<Job> exportOpenAPIToJson(
             @RequestParam final String specFilePath,
             @RequestParam final String outputFilePath) {
-        
-        final Map<String, String> response = new HashMap<>();
 
-        openAPIJsonExporter.parseOpenAPIJsonToSummary(specFilePath, outputFilePath);
-        response.put("status", "success");
-        return ResponseEntity.ok(response);
+        final Job job = jobService.submit("summarize", progress -> {
+            openAPIJsonExporter.parseOpenAPIJsonToSummary(specFilePath, outputFilePath, progress);
+            return Map.of("status", "success");
+        });
+        return JobController.accepted(job);
     }
 
+    /**
+     * Report the prompt tokens saved per operation by slicing the spec
+     *
+     * @param specFilePath Path to the OpenAPI specification file
+     * @return ResponseEntity with the full-spec and sliced token counts per operation
+     */
+    @GetMapping("/context-slices")
+    public ResponseEntity<List<ContextSliceReport>> contextSliceReport(@RequestParam final String specFilePath) {
+        final OpenAPI openAPI = specCache.get(specFilePath);
+        if (openAPI == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(contextSlicer.report(openAPI));
+    }
+
+    @GetMapping("/spec-cache/stats")
+    public ResponseEntity<Map<String, Long>> specCacheStats() {
+        return ResponseEntity.ok(specCache.getStats());
+    }
 
+    /**
+     * Drops cached parsed specs, e.g. after a file referenced by a spec changed.
+     *
+     * @param specFilePath Spec to drop; all specs are dropped when omitted
+     * @return ResponseEntity with the number of dropped entries
+     */
+    @DeleteMapping("/spec-cache")
+    public ResponseEntity<Map<String, Integer>> invalidateSpecCache(@RequestParam(required = false) final String specFilePath) {
+        final int invalidated = specFilePath == null
+                ? specCache.invalidateAll()
+                : specCache.invalidate(specFilePath) ? 1 : 0;
+        return ResponseEntity.ok(Map.of("invalidated", invalidated));
+    }
 }
@@ -0,0 +1,15 @@
+package com.ftpl.rapidTestAI.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * A batch input file written for upload to the OpenAI Batch API.
+ */
+@Getter
+@AllArgsConstructor
+public class BatchExportReport {
+
+    private final String batchFile;
+    private final int requests;
+}
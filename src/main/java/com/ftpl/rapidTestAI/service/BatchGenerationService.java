@@ -0,0 +1,254 @@
+package com.ftpl.rapidTestAI.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.ftpl.rapidTestAI.utils.ArtifactFiles;
+import com.ftpl.rapidTestAI.utils.OperationManifest;
+import com.theokanning.openai.completion.chat.ChatCompletionRequest;
+import com.theokanning.openai.completion.chat.ChatMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Offline generation through the OpenAI Batch API, for full regenerations that do not
+ * need interactive latency.
+ * <p>
+ * The flow has two rounds, because step definitions are generated from the feature text:
+ * <ol>
+ *     <li>{@link #exportFeatureBatch} writes one feature request per chunk operation.</li>
+ *     <li>{@link #ingestFeatureResults} writes the {@code .feature} files from the
+ *     completed batch and exports the step-definition batch.</li>
+ *     <li>{@link #ingestStepResults} writes the step definitions and records both
+ *     artifacts in the generation manifest, so incremental runs treat them as current.</li>
+ * </ol>
+ * Custom ids are {@code feature-<artifact>} and {@code steps-<artifact>}, derived from the
+ * operation alone, so re-exporting the same chunks produces the same ids. Requests are
+ * built by {@link PromptFactory} and ingested answers are put into the
+ * {@link CompletionCache}, so a later interactive run reuses them.
+ */
+@Slf4j
+@Component
+public class BatchGenerationService {
+
+    static final String FEATURE_PREFIX = "feature-";
+    static final String STEPS_PREFIX = "steps-";
+    private static final String CHAT_COMPLETIONS_URL = "/v1/chat/completions";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Autowired
+    private CompletionCache completionCache;
+
+    @Autowired
+    private GenerationMetrics metrics;
+
+    public BatchExportReport exportFeatureBatch(final String chunkDirectoryPath, final String batchFilePath) throws IOException {
+        final Map<String, EndpointTask> tasks = readTasks(chunkDirectoryPath);
+        try (final BufferedWriter writer = new BufferedWriter(new FileWriter(batchFilePath, StandardCharsets.UTF_8))) {
+            for (final EndpointTask task : tasks.values()) {
+                writeRequest(writer, FEATURE_PREFIX + task.getArtifactBaseName(),
+                        PromptFactory.featureRequest(task.getContextJson(), task.getMethod(), task.getPath()));
+            }
+        }
+        log.info("✅ Wrote {} feature requests to batch file {}", tasks.size(), batchFilePath);
+        return new BatchExportReport(batchFilePath, tasks.size());
+    }
+
+    /**
+     * Writes a {@code .feature} file for every successful result and the matching
+     * step-definition requests to {@code stepBatchFilePath}. Failed or unknown results are
+     * reported per custom id.
+     */
+    public GenerationReport ingestFeatureResults(final String chunkDirectoryPath,
+                                                 final String resultsFilePath,
+                                                 final String featureOutputFilePath,
+                                                 final String stepBatchFilePath) throws IOException {
+        final long start = System.nanoTime();
+        final Map<String, EndpointTask> tasks = readTasks(chunkDirectoryPath);
+        final Map<String, BatchResult> results = readResults(resultsFilePath, FEATURE_PREFIX);
+        final GenerationReport report = new GenerationReport(results.size());
+
+        try (final BufferedWriter stepBatch = new BufferedWriter(new FileWriter(stepBatchFilePath, StandardCharsets.UTF_8))) {
+            for (final Map.Entry<String, BatchResult> result : results.entrySet()) {
+                final EndpointTask task = tasks.get(result.getKey());
+                if (!accept(report, FEATURE_PREFIX + result.getKey(), task, result.getValue())) {
+                    continue;
+                }
+                final String featureText = result.getValue().content;
+                completionCache.put(CompletionCache.keyOf(
+                        PromptFactory.featureRequest(task.getContextJson(), task.getMethod(), task.getPath())), featureText);
+                ArtifactFiles.writeAtomically(Path.of(featureOutputFilePath + task.getArtifactBaseName() + ".feature"), featureText);
+                metrics.artifactWritten(GenerationMetrics.STAGE_FEATURE);
+                writeRequest(stepBatch, STEPS_PREFIX + task.getArtifactBaseName(),
+                        PromptFactory.stepRequest(featureText, task.getMethod(), task.getPath()));
+                report.recordSuccess(task.getKey());
+            }
+        }
+
+        report.setElapsedMillis((System.nanoTime() - start) / 1_000_000);
+        log.info("✅ Ingested {} feature results ({} failed), step batch written to {}",
+                report.getSucceeded().size(), report.getFailed().size(), stepBatchFilePath);
+        return report;
+    }
+
+    /**
+     * Writes the step definitions of every successful result. The feature file written
+     * by {@link #ingestFeatureResults} must still be in {@code featureOutputFilePath}.
+     */
+    public GenerationReport ingestStepResults(final String chunkDirectoryPath,
+                                              final String resultsFilePath,
+                                              final String featureOutputFilePath,
+                                              final String stepDefOutputFilePath) throws IOException {
+        final long start = System.nanoTime();
+        final Map<String, EndpointTask> tasks = readTasks(chunkDirectoryPath);
+        final Map<String, BatchResult> results = readResults(resultsFilePath, STEPS_PREFIX);
+        final GenerationReport report = new GenerationReport(results.size());
+
+        final File generationManifestFile = new File(featureOutputFilePath, OperationManifest.GENERATION_MANIFEST);
+        final OperationManifest generationManifest = OperationManifest.read(generationManifestFile);
+
+        for (final Map.Entry<String, BatchResult> result : results.entrySet()) {
+            final EndpointTask task = tasks.get(result.getKey());
+            if (!accept(report, STEPS_PREFIX + result.getKey(), task, result.getValue())) {
+                continue;
+            }
+            final File featureFile = new File(featureOutputFilePath + task.getArtifactBaseName() + ".feature");
+            if (!featureFile.isFile()) {
+                report.recordFailure(task.getKey(), new IllegalStateException("Feature file " + featureFile + " is missing"));
+                continue;
+            }
+            final String featureText = Files.readString(featureFile.toPath());
+            final String stepText = result.getValue().content;
+            completionCache.put(CompletionCache.keyOf(
+                    PromptFactory.stepRequest(featureText, task.getMethod(), task.getPath())), stepText);
+
+            final String stepFile = stepDefOutputFilePath + task.getArtifactBaseName() + "Steps.java";
+            ArtifactFiles.writeAtomically(Path.of(stepFile), stepText);
+            metrics.artifactWritten(GenerationMetrics.STAGE_STEPS);
+
+            final OperationManifest.Entry entry = new OperationManifest.Entry(task.getFingerprint(), null);
+            entry.setGeneratedAt(System.currentTimeMillis());
+            entry.setArtifacts(List.of(featureFile.getPath(), stepFile));
+            generationManifest.getOperations().put(task.getKey(), entry);
+            report.recordSuccess(task.getKey());
+        }
+        generationManifest.write(generationManifestFile);
+
+        report.setElapsedMillis((System.nanoTime() - start) / 1_000_000);
+        log.info("✅ Ingested {} step results ({} failed)", report.getSucceeded().size(), report.getFailed().size());
+        return report;
+    }
+
+    private static boolean accept(final GenerationReport report, final String customId, final EndpointTask task, final BatchResult result) {
+        if (task == null) {
+            report.recordFailure(customId, new IllegalStateException("No operation in the chunk files matches " + customId));
+            return false;
+        }
+        if (result.error != null) {
+            report.recordFailure(task.getKey(), new IllegalStateException(result.error));
+            return false;
+        }
+        return true;
+    }
+
+    private void writeRequest(final BufferedWriter writer, final String customId, final ChatCompletionRequest request) throws IOException {
+        final ObjectNode line = mapper.createObjectNode();
+        line.put("custom_id", customId);
+        line.put("method", "POST");
+        line.put("url", CHAT_COMPLETIONS_URL);
+        final ObjectNode body = line.putObject("body");
+        body.put("model", request.getModel());
+        final ArrayNode messages = body.putArray("messages");
+        for (final ChatMessage message : request.getMessages()) {
+            messages.addObject().put("role", message.getRole()).put("content", message.getContent());
+        }
+        writer.write(mapper.writeValueAsString(line));
+        writer.newLine();
+    }
+
+    /**
+     * Reads a batch output file into results keyed by artifact base name. Lines for the
+     * other round (a different custom id prefix) are ignored.
+     */
+    private Map<String, BatchResult> readResults(final String resultsFilePath, final String prefix) throws IOException {
+        final Map<String, BatchResult> results = new LinkedHashMap<>();
+        try (final BufferedReader reader = Files.newBufferedReader(new File(resultsFilePath).toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                final JsonNode result = mapper.readTree(line);
+                final String customId = result.path("custom_id").asText();
+                if (!customId.startsWith(prefix)) {
+                    continue;
+                }
+                results.put(customId.substring(prefix.length()), BatchResult.of(result));
+            }
+        }
+        return results;
+    }
+
+    private Map<String, EndpointTask> readTasks(final String chunkDirectoryPath) throws IOException {
+        final File[] chunkFiles = new File(chunkDirectoryPath).listFiles((dir, name) -> name.startsWith("openapi_chunk_") && name.endsWith(".json"));
+        if (chunkFiles == null || chunkFiles.length == 0) {
+            throw new RuntimeException("No chunk files found in " + chunkDirectoryPath);
+        }
+        Arrays.sort(chunkFiles, Comparator.comparing(File::getName));
+
+        final Map<String, EndpointTask> tasks = new LinkedHashMap<>();
+        for (final File chunkFile : chunkFiles) {
+            for (final JsonNode endpoint : mapper.readTree(chunkFile)) {
+                final EndpointTask task = EndpointTask.fromChunkOperation(mapper, endpoint);
+                if (tasks.putIfAbsent(task.getArtifactBaseName(), task) != null) {
+                    log.warn("Skipping {}: its artifact name {} is already taken", task.getKey(), task.getArtifactBaseName());
+                }
+            }
+        }
+        return tasks;
+    }
+
+    private static final class BatchResult {
+        private final String content;
+        private final String error;
+
+        private BatchResult(final String content, final String error) {
+            this.content = content;
+            this.error = error;
+        }
+
+        private static BatchResult of(final JsonNode result) {
+            final JsonNode error = result.get("error");
+            if (error != null && !error.isNull()) {
+                return new BatchResult(null, error.path("message").asText(error.toString()));
+            }
+            final JsonNode response = result.path("response");
+            final int statusCode = response.path("status_code").asInt();
+            if (statusCode != 200) {
+                return new BatchResult(null, "HTTP " + statusCode + ": " + response.at("/body/error/message").asText());
+            }
+            final JsonNode content = response.at("/body/choices/0/message/content");
+            if (!content.isTextual()) {
+                return new BatchResult(null, "Response has no message content");
+            }
+            return new BatchResult(content.asText(), null);
+        }
+    }
+}
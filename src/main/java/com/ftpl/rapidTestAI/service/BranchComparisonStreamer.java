@@ -0,0 +1,284 @@
+package com.ftpl.rapidTestAI.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.MinimalPrettyPrinter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.unit.DataSize;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes the files of a branch comparison as NDJSON, one record per file. Files are read
+ * from git in small batches and each batch is written and flushed once git has returned
+ * it, outside the repository's {@code git cat-file} lock, so a slow client never holds up
+ * other readers of the repository. At most the read buffer, or one file when that file
+ * alone is larger, is held in memory, so memory does not grow with the size of the diff.
+ * <p>
+ * Records are {@code {"type":"file","path":...,"size":...,"content":...}}. Content that
+ * is not UTF-8 text (see {@link #textOf}) is sent base64-encoded, with
+ * {@code "encoding":"base64"} next to it, so it arrives byte for byte. A file whose
+ * content is left out carries {@code "skipped"} instead of {@code "content"}:
+ * {@code deleted}, {@code excluded} (matches a skipped path pattern), {@code binary}
+ * (a NUL byte in its first 8000 bytes, as git decides), {@code too-large} (over the
+ * per-file cap) or {@code total-limit} (the total cap has been reached). The stream ends
+ * with {@code {"type":"end",...}} totals, or {@code {"type":"error",...}} when reading
+ * from git failed halfway.
+ */
+@Slf4j
+@Component
+public class BranchComparisonStreamer {
+
+    private static final int BINARY_PROBE_BYTES = 8000;
+    private static final int BATCH_FILES = 64;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+
+    @Autowired
+    private GitClientService gitClientService;
+
+    @Value("${rapid-test-ai.git.compare.max-file-size:1MB}")
+    private DataSize defaultMaxFileSize = DataSize.ofMegabytes(1);
+
+    @Value("${rapid-test-ai.git.compare.max-total-size:256MB}")
+    private DataSize defaultMaxTotalSize = DataSize.ofMegabytes(256);
+
+    @Value("${rapid-test-ai.git.compare.skip-paths:**/vendor/**,**/node_modules/**,**/third_party/**}")
+    private List<String> defaultSkipPaths = List.of("**/vendor/**", "**/node_modules/**", "**/third_party/**");
+
+    // content read from git ahead of the client, per batch
+    @Value("${rapid-test-ai.git.compare.read-buffer-size:4MB}")
+    private DataSize readBufferSize = DataSize.ofMegabytes(4);
+
+    /**
+     * Caps and filters of one stream. {@code null} caps and patterns fall back to the
+     * configured defaults; an empty pattern list skips no paths.
+     */
+    public record Options(Long maxFileBytes, Long maxTotalBytes, List<String> skipPaths, boolean skipBinary, boolean gzip) {
+    }
+
+    public void write(final String localRepositoryPath,
+                      final String revision,
+                      final List<String> files,
+                      final Options options,
+                      final OutputStream out) throws IOException {
+        final long maxFileBytes = options.maxFileBytes() != null ? options.maxFileBytes() : defaultMaxFileSize.toBytes();
+        final long maxTotalBytes = options.maxTotalBytes() != null ? options.maxTotalBytes() : defaultMaxTotalSize.toBytes();
+        final List<String> skipPaths = options.skipPaths() != null ? options.skipPaths() : defaultSkipPaths;
+
+        final OutputStream target = options.gzip() ? new GZIPOutputStream(out, true) : out;
+        final JsonGenerator generator = mapper.getFactory().createGenerator(target);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        // records are separated by the newline endRecord writes, not by Jackson's root separator
+        generator.setPrettyPrinter(new MinimalPrettyPrinter(""));
+        final Totals totals = new Totals();
+        try {
+            final List<String> requested = new ArrayList<>(files.size());
+            for (final String file : files) {
+                if (file.isEmpty()) {
+                    continue;
+                }
+                if (skipPaths.stream().anyMatch(pattern -> pathMatcher.match(pattern, file))) {
+                    writeSkipped(generator, file, -1, "excluded", totals);
+                } else {
+                    requested.add(file);
+                }
+            }
+
+            // resolved once, so every batch reads the same commit
+            final String commit = gitClientService.resolveCommit(localRepositoryPath, revision);
+            gitClientService.fetchMissingFiles(localRepositoryPath, commit, requested);
+            int next = 0;
+            while (next < requested.size()) {
+                final List<FileRecord> batch = readBatch(localRepositoryPath, commit,
+                        requested.subList(next, Math.min(requested.size(), next + BATCH_FILES)),
+                        maxFileBytes, maxTotalBytes - totals.contentBytes, options.skipBinary());
+                for (final FileRecord record : batch) {
+                    if (record.skipped() != null) {
+                        writeSkipped(generator, record.path(), record.size(), record.skipped(), totals);
+                    } else {
+                        writeContent(generator, record.path(), record.size(), record.content(), totals);
+                    }
+                }
+                next += batch.size();
+            }
+            writeEnd(generator, totals);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            writeError(generator, "Interrupted", totals);
+        } catch (final IOException e) {
+            log.error("Branch comparison stream for {} failed after {} files", localRepositoryPath, totals.files, e);
+            writeError(generator, e.getMessage(), totals);
+        } finally {
+            generator.close();
+            if (target != out) {
+                target.close();
+            }
+        }
+    }
+
+    /**
+     * Reads the leading files of {@code files} whose content fits the read buffer, and
+     * always at least one. Runs under the cat-file lock, so it only copies into memory.
+     */
+    private List<FileRecord> readBatch(final String localRepositoryPath,
+                                       final String commit,
+                                       final List<String> files,
+                                       final long maxFileBytes,
+                                       final long remainingTotalBytes,
+                                       final boolean skipBinary) throws IOException, InterruptedException {
+        final List<FileRecord> batch = new ArrayList<>(files.size());
+        final long[] buffered = new long[1];
+        final boolean[] full = new boolean[1];
+        gitClientService.readFilesAtRevision(localRepositoryPath, files, commit, (file, size, content) -> {
+            if (full[0]) {
+                // left for the next batch; the reader skips the unread content
+                return;
+            }
+            if (content == null) {
+                batch.add(new FileRecord(file, -1, "deleted", null));
+            } else if (size > maxFileBytes) {
+                batch.add(new FileRecord(file, size, "too-large", null));
+            } else if (buffered[0] + size > remainingTotalBytes) {
+                batch.add(new FileRecord(file, size, "total-limit", null));
+            } else if (!batch.isEmpty() && buffered[0] + size > readBufferSize.toBytes()) {
+                full[0] = true;
+            } else {
+                final BufferedInputStream in = new BufferedInputStream(content, BINARY_PROBE_BYTES);
+                if (skipBinary && isBinary(in)) {
+                    batch.add(new FileRecord(file, size, "binary", null));
+                } else {
+                    final byte[] bytes = in.readAllBytes();
+                    buffered[0] += bytes.length;
+                    batch.add(new FileRecord(file, size, null, bytes));
+                }
+            }
+        });
+        return batch;
+    }
+
+    private static void writeContent(final JsonGenerator generator,
+                                     final String file,
+                                     final long size,
+                                     final byte[] bytes,
+                                     final Totals totals) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("type", "file");
+        generator.writeStringField("path", file);
+        generator.writeNumberField("size", size);
+        final String text = textOf(bytes);
+        if (text != null) {
+            generator.writeStringField("content", text);
+        } else {
+            generator.writeStringField("encoding", "base64");
+            generator.writeBinaryField("content", bytes);
+        }
+        generator.writeEndObject();
+        endRecord(generator);
+        totals.files++;
+        totals.contentBytes += bytes.length;
+    }
+
+    /**
+     * {@code bytes} decoded as UTF-8, or {@code null} when they are binary (a NUL byte in
+     * the first 8000, as git decides) or not valid UTF-8, which a JSON string cannot carry
+     * without loss.
+     */
+    public static String textOf(final byte[] bytes) {
+        for (int i = 0; i < Math.min(bytes.length, BINARY_PROBE_BYTES); i++) {
+            if (bytes[i] == 0) {
+                return null;
+            }
+        }
+        try {
+            return StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT)
+                    .decode(ByteBuffer.wrap(bytes))
+                    .toString();
+        } catch (final CharacterCodingException e) {
+            return null;
+        }
+    }
+
+    private static boolean isBinary(final BufferedInputStream in) throws IOException {
+        in.mark(BINARY_PROBE_BYTES);
+        final byte[] probe = in.readNBytes(BINARY_PROBE_BYTES);
+        in.reset();
+        for (final byte b : probe) {
+            if (b == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void writeSkipped(final JsonGenerator generator,
+                                     final String file,
+                                     final long size,
+                                     final String reason,
+                                     final Totals totals) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("type", "file");
+        generator.writeStringField("path", file);
+        if (size >= 0) {
+            generator.writeNumberField("size", size);
+        }
+        generator.writeStringField("skipped", reason);
+        generator.writeEndObject();
+        endRecord(generator);
+        totals.files++;
+        totals.skipped++;
+    }
+
+    private static void writeEnd(final JsonGenerator generator, final Totals totals) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("type", "end");
+        generator.writeNumberField("files", totals.files);
+        generator.writeNumberField("skipped", totals.skipped);
+        generator.writeNumberField("contentBytes", totals.contentBytes);
+        generator.writeEndObject();
+        endRecord(generator);
+    }
+
+    private static void writeError(final JsonGenerator generator, final String message, final Totals totals) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("type", "error");
+        generator.writeStringField("message", message);
+        generator.writeNumberField("files", totals.files);
+        generator.writeEndObject();
+        endRecord(generator);
+    }
+
+    // one record per line, pushed to the client (through the gzip sync flush) right away
+    private static void endRecord(final JsonGenerator generator) throws IOException {
+        generator.writeRaw('\n');
+        generator.flush();
+    }
+
+    /**
+     * A file read from git and not yet written; {@code content} is set unless it is skipped.
+     */
+    private record FileRecord(String path, long size, String skipped, byte[] content) {
+    }
+
+    private static final class Totals {
+        private int files;
+        private int skipped;
+        private long contentBytes;
+    }
+}
@@ -0,0 +1,385 @@
+package com.ftpl.rapidTestAI.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.theokanning.openai.completion.chat.ChatCompletionRequest;
+import com.theokanning.openai.completion.chat.ChatMessage;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Content-addressed cache of chat completions.
+ * <p>
+ * Entries are keyed by a SHA-256 of the model and every message of the request, so an
+ * unchanged prompt always maps to the same entry. Lookups go to an in-memory LRU first
+ * and then to append-only segment files on disk ({@code segment-NNNNN.log}, one JSON
+ * record per line). The disk tier is bounded by a byte quota, enforced by dropping the
+ * oldest segment, and entries older than the TTL are treated as misses.
+ */
+@Slf4j
+@Component
+public class CompletionCache {
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final boolean enabled;
+    private final Path directory;
+    private final int maxMemoryEntries;
+    private final long maxDiskBytes;
+    private final long segmentMaxBytes;
+    private final Duration ttl;
+
+    private final Map<String, MemoryEntry> memory;
+    private final Map<String, DiskEntry> index = new HashMap<>();
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+    private boolean opened;
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public CompletionCache(@Value("${rapid-test-ai.cache.enabled:true}") final boolean enabled,
+                           @Value("${rapid-test-ai.cache.directory:.rapid-test-ai/llm-cache}") final String directory,
+                           @Value("${rapid-test-ai.cache.max-memory-entries:2000}") final int maxMemoryEntries,
+                           @Value("${rapid-test-ai.cache.max-disk-bytes:536870912}") final long maxDiskBytes,
+                           @Value("${rapid-test-ai.cache.segment-max-bytes:16777216}") final long segmentMaxBytes,
+                           @Value("${rapid-test-ai.cache.ttl:30d}") final Duration ttl) {
+        this.enabled = enabled;
+        this.directory = Paths.get(directory);
+        this.maxMemoryEntries = maxMemoryEntries;
+        this.maxDiskBytes = maxDiskBytes;
+        this.segmentMaxBytes = segmentMaxBytes;
+        this.ttl = ttl;
+        this.memory = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, MemoryEntry> eldest) {
+                return size() > CompletionCache.this.maxMemoryEntries;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public static String keyOf(final ChatCompletionRequest request) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            update(digest, request.getModel());
+            for (final ChatMessage message : request.getMessages()) {
+                update(digest, message.getRole());
+                update(digest, message.getContent());
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public String get(final String key) {
+        if (!enabled) {
+            return null;
+        }
+        final DiskEntry entry;
+        final FileChannel channel;
+        synchronized (this) {
+            final MemoryEntry cached = memory.get(key);
+            if (cached != null && !isExpired(cached.createdAt)) {
+                memoryHits.incrementAndGet();
+                return cached.content;
+            }
+            memory.remove(key);
+
+            open();
+            entry = index.get(key);
+            if (entry == null || isExpired(entry.createdAt)) {
+                if (entry != null) {
+                    index.remove(key);
+                }
+                misses.incrementAndGet();
+                return null;
+            }
+            channel = segments.get(entry.segmentId).channel;
+        }
+
+        // positional reads need no lock; an eviction closing the segment meanwhile reads as a miss
+        try {
+            final String content = readRecord(channel, entry).get("v").asText();
+            synchronized (this) {
+                if (index.get(key) == entry) {
+                    memory.put(key, new MemoryEntry(content, entry.createdAt));
+                }
+            }
+            diskHits.incrementAndGet();
+            return content;
+        } catch (final IOException e) {
+            log.warn("Failed to read cached completion {}, treating as miss", key, e);
+            synchronized (this) {
+                index.remove(key, entry);
+            }
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    public void put(final String key, final String content) {
+        if (!enabled || content == null) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        final ObjectNode record = mapper.createObjectNode();
+        record.put("k", key);
+        record.put("t", now);
+        record.put("v", content);
+        final byte[] bytes;
+        try {
+            bytes = (mapper.writeValueAsString(record) + "\n").getBytes(StandardCharsets.UTF_8);
+        } catch (final IOException e) {
+            log.warn("Failed to serialize completion {} for the disk cache", key, e);
+            return;
+        }
+
+        // reserve the record's place in the active segment, then write it without the lock
+        final DiskEntry entry;
+        final FileChannel channel;
+        synchronized (this) {
+            memory.put(key, new MemoryEntry(content, now));
+            open();
+            try {
+                final int segmentId = activeSegment(bytes.length);
+                final Segment segment = segments.get(segmentId);
+                entry = new DiskEntry(segmentId, segment.size, bytes.length, now);
+                segment.size += bytes.length;
+                channel = segment.channel;
+            } catch (final IOException e) {
+                log.warn("Failed to persist completion {} to the disk cache", key, e);
+                return;
+            }
+        }
+        try {
+            final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, entry.offset + buffer.position());
+            }
+        } catch (final IOException e) {
+            log.warn("Failed to persist completion {} to the disk cache", key, e);
+            return;
+        }
+        synchronized (this) {
+            if (segments.containsKey(entry.segmentId)) {
+                index.put(key, entry);
+                writes.incrementAndGet();
+            }
+            try {
+                evictOverQuota();
+            } catch (final IOException e) {
+                log.warn("Failed to evict completion cache segments", e);
+            }
+        }
+    }
+
+    public Map<String, Long> getStats() {
+        final Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("memoryHits", memoryHits.get());
+        stats.put("diskHits", diskHits.get());
+        stats.put("misses", misses.get());
+        stats.put("writes", writes.get());
+        stats.put("evictions", evictions.get());
+        synchronized (this) {
+            stats.put("memoryEntries", (long) memory.size());
+            stats.put("diskEntries", (long) index.size());
+            stats.put("diskBytes", diskBytes());
+        }
+        return stats;
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        for (final Segment segment : segments.values()) {
+            try {
+                segment.channel.close();
+            } catch (final IOException e) {
+                log.warn("Failed to close cache segment", e);
+            }
+        }
+        segments.clear();
+        index.clear();
+        memory.clear();
+        opened = false;
+    }
+
+    private void open() {
+        if (opened) {
+            return;
+        }
+        try {
+            Files.createDirectories(directory);
+            try (final Stream<Path> files = Files.list(directory)) {
+                files.filter(CompletionCache::isSegment).sorted().forEach(this::loadSegment);
+            }
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Unable to open completion cache at " + directory, e);
+        }
+        opened = true;
+        log.info("Opened completion cache at {} with {} entries in {} segments", directory, index.size(), segments.size());
+    }
+
+    private void loadSegment(final Path file) {
+        final String name = file.getFileName().toString();
+        final int segmentId = Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        try {
+            final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            segments.put(segmentId, new Segment(channel, channel.size()));
+            long offset = 0;
+            try (final BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    final int length = line.getBytes(StandardCharsets.UTF_8).length + 1;
+                    try {
+                        final JsonNode record = mapper.readTree(line);
+                        final long createdAt = record.get("t").asLong();
+                        if (!isExpired(createdAt)) {
+                            index.put(record.get("k").asText(), new DiskEntry(segmentId, offset, length, createdAt));
+                        }
+                    } catch (final IOException | RuntimeException e) {
+                        log.warn("Skipping corrupt record in cache segment {} at offset {}", name, offset);
+                    }
+                    offset += length;
+                }
+            }
+        } catch (final IOException e) {
+            log.warn("Skipping unreadable cache segment {}", name, e);
+        }
+    }
+
+    private JsonNode readRecord(final FileChannel channel, final DiskEntry entry) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(entry.length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, entry.offset + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of cache segment " + entry.segmentId);
+            }
+        }
+        return mapper.readTree(buffer.array());
+    }
+
+    private int activeSegment(final int recordLength) throws IOException {
+        if (!segments.isEmpty()) {
+            final Map.Entry<Integer, Segment> last = segments.lastEntry();
+            if (last.getValue().size + recordLength <= segmentMaxBytes) {
+                return last.getKey();
+            }
+        }
+        final int segmentId = segments.isEmpty() ? 1 : segments.lastKey() + 1;
+        final Path file = directory.resolve(String.format("%s%05d%s", SEGMENT_PREFIX, segmentId, SEGMENT_SUFFIX));
+        final FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segments.put(segmentId, new Segment(channel, channel.size()));
+        return segmentId;
+    }
+
+    private void evictOverQuota() throws IOException {
+        while (segments.size() > 1 && diskBytes() > maxDiskBytes) {
+            final Map.Entry<Integer, Segment> oldest = segments.pollFirstEntry();
+            oldest.getValue().channel.close();
+            Files.deleteIfExists(directory.resolve(String.format("%s%05d%s", SEGMENT_PREFIX, oldest.getKey(), SEGMENT_SUFFIX)));
+            final Iterator<DiskEntry> entries = index.values().iterator();
+            while (entries.hasNext()) {
+                if (entries.next().segmentId == oldest.getKey()) {
+                    entries.remove();
+                    evictions.incrementAndGet();
+                }
+            }
+            log.info("Evicted completion cache segment {}", oldest.getKey());
+        }
+    }
+
+    private long diskBytes() {
+        long total = 0;
+        for (final Segment segment : segments.values()) {
+            total += segment.size;
+        }
+        return total;
+    }
+
+    private boolean isExpired(final long createdAt) {
+        return System.currentTimeMillis() - createdAt > ttl.toMillis();
+    }
+
+    private static boolean isSegment(final Path file) {
+        final String name = file.getFileName().toString();
+        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+    }
+
+    private static void update(final MessageDigest digest, final String value) {
+        if (value != null) {
+            digest.update(value.getBytes(StandardCharsets.UTF_8));
+        }
+        digest.update((byte) 0);
+    }
+
+    private static final class DiskEntry {
+        private final int segmentId;
+        private final long offset;
+        private final int length;
+        private final long createdAt;
+
+        private DiskEntry(final int segmentId, final long offset, final int length, final long createdAt) {
+            this.segmentId = segmentId;
+            this.offset = offset;
+            this.length = length;
+            this.createdAt = createdAt;
+        }
+    }
+
+    private static final class MemoryEntry {
+        private final String content;
+        private final long createdAt;
+
+        private MemoryEntry(final String content, final long createdAt) {
+            this.content = content;
+            this.createdAt = createdAt;
+        }
+    }
+
+    /**
+     * An open segment and its size including records reserved but not yet written.
+     */
+    private static final class Segment {
+        private final FileChannel channel;
+        private long size;
+
+        private Segment(final FileChannel channel, final long size) {
+            this.channel = channel;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.ftpl.rapidTestAI.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * How long one artifact took to generate: until its first character arrived and until
+ * it was complete. Without streaming both are the same.
+ */
+@Getter
+@AllArgsConstructor
+public class CompletionTiming {
+
+    private final long timeToFirstByteMillis;
+    private final long totalMillis;
+    private final long characters;
+}
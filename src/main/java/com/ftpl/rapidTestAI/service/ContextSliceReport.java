@@ -0,0 +1,21 @@
+package com.ftpl.rapidTestAI.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Token accounting for one operation: what the prompt context would cost with the
+ * whole spec embedded versus the sliced sub-spec.
+ */
+@Getter
+@AllArgsConstructor
+public class ContextSliceReport {
+
+    private final String operation;
+    private final int fullSpecTokens;
+    private final int sliceTokens;
+
+    public int getSavedTokens() {
+        return fullSpecTokens - sliceTokens;
+    }
+}
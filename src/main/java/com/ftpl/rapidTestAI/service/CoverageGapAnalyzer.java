@@ -0,0 +1,289 @@
+package com.ftpl.rapidTestAI.service;
+
+import com.ftpl.rapidTestAI.utils.OperationPaths;
+import lombok.extern.slf4j.Slf4j;
+import org.jacoco.core.analysis.Analyzer;
+import org.jacoco.core.analysis.CoverageBuilder;
+import org.jacoco.core.analysis.IClassCoverage;
+import org.jacoco.core.analysis.IMethodCoverage;
+import org.jacoco.core.data.ExecutionDataReader;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.data.SessionInfoStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maps JaCoCo coverage to request handlers, so generation can go to the endpoints whose
+ * code the existing tests leave uncovered.
+ * <p>
+ * Coverage is read from {@code jacoco.exec} files together with the class files they
+ * were recorded against, or from a JaCoCo XML report. The handlers and the classes they
+ * use come from {@link EndpointImpactIndex}. An endpoint is charged with the lines and
+ * branches of its handler method and the helpers of its class it calls (lambdas
+ * included), and with everything in the classes it uses. A service shared by several
+ * endpoints therefore counts for each of them.
+ */
+@Slf4j
+@Component
+public class CoverageGapAnalyzer {
+
+    @Autowired
+    private EndpointImpactIndex endpointImpactIndex;
+
+    /**
+     * Counters of one method as JaCoCo reports it; {@code descriptor} is the JVM method
+     * descriptor, e.g. {@code (J)Lcom/acme/Pet;}.
+     */
+    public record MethodCoverage(String name, String descriptor, int missedLines, int coveredLines,
+                                 int missedBranches, int coveredBranches) {
+    }
+
+    /**
+     * Coverage gaps of the handlers at a revision, the largest first. Uses the XML report
+     * when one is given, otherwise the exec files and class locations (directories or jars).
+     */
+    public List<EndpointCoverage> analyze(final String localRepositoryPath,
+                                          final String revision,
+                                          final List<String> execFiles,
+                                          final List<String> classLocations,
+                                          final String xmlReport) throws IOException, InterruptedException {
+        final Map<String, List<MethodCoverage>> coverage;
+        if (xmlReport != null) {
+            coverage = readXmlReport(new File(xmlReport));
+        } else if (execFiles != null && !execFiles.isEmpty() && classLocations != null && !classLocations.isEmpty()) {
+            coverage = readExecutionData(execFiles.stream().map(File::new).toList(), classLocations.stream().map(File::new).toList());
+        } else {
+            throw new IllegalArgumentException("Either an XML report or exec files with class locations are required");
+        }
+        return gaps(endpointImpactIndex.endpointsAt(localRepositoryPath, revision), coverage);
+    }
+
+    /**
+     * Method coverage per class, keyed by binary class name ({@code com/acme/PetController}).
+     * Several exec files are merged. Classes are analyzed against the execution data, so
+     * a class without any is reported as entirely missed.
+     */
+    public Map<String, List<MethodCoverage>> readExecutionData(final List<File> execFiles, final List<File> classLocations) throws IOException {
+        final ExecutionDataStore executionData = new ExecutionDataStore();
+        final SessionInfoStore sessionInfos = new SessionInfoStore();
+        for (final File execFile : execFiles) {
+            try (final InputStream in = new BufferedInputStream(new FileInputStream(execFile))) {
+                final ExecutionDataReader reader = new ExecutionDataReader(in);
+                reader.setExecutionDataVisitor(executionData);
+                reader.setSessionInfoVisitor(sessionInfos);
+                reader.read();
+            }
+        }
+        final CoverageBuilder builder = new CoverageBuilder();
+        final Analyzer analyzer = new Analyzer(executionData, builder);
+        for (final File location : classLocations) {
+            analyzer.analyzeAll(location);
+        }
+        if (!builder.getNoMatchClasses().isEmpty()) {
+            log.warn("{} classes changed since their execution data was recorded and count as not covered",
+                    builder.getNoMatchClasses().size());
+        }
+
+        final Map<String, List<MethodCoverage>> coverage = new HashMap<>();
+        for (final IClassCoverage classCoverage : builder.getClasses()) {
+            final List<MethodCoverage> methods = new ArrayList<>();
+            for (final IMethodCoverage method : classCoverage.getMethods()) {
+                methods.add(new MethodCoverage(method.getName(), method.getDesc(),
+                        method.getLineCounter().getMissedCount(), method.getLineCounter().getCoveredCount(),
+                        method.getBranchCounter().getMissedCount(), method.getBranchCounter().getCoveredCount()));
+            }
+            coverage.put(classCoverage.getName(), methods);
+        }
+        return coverage;
+    }
+
+    /**
+     * Method coverage per class from a JaCoCo XML report, in the same form as
+     * {@link #readExecutionData}. The report's DTD is not loaded.
+     */
+    public Map<String, List<MethodCoverage>> readXmlReport(final File report) throws IOException {
+        final XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        final Map<String, List<MethodCoverage>> coverage = new HashMap<>();
+        try (final InputStream in = new BufferedInputStream(new FileInputStream(report))) {
+            final XMLStreamReader reader = factory.createXMLStreamReader(in);
+            List<MethodCoverage> methods = null;
+            String methodName = null;
+            String descriptor = null;
+            final int[] counters = new int[4];
+            while (reader.hasNext()) {
+                final int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    switch (reader.getLocalName()) {
+                        case "class" -> methods = coverage.computeIfAbsent(reader.getAttributeValue(null, "name"), name -> new ArrayList<>());
+                        case "method" -> {
+                            methodName = reader.getAttributeValue(null, "name");
+                            descriptor = reader.getAttributeValue(null, "desc");
+                            Arrays.fill(counters, 0);
+                        }
+                        case "counter" -> {
+                            // class and package totals follow the methods; only method counters are kept
+                            if (methodName != null) {
+                                final int offset = switch (reader.getAttributeValue(null, "type")) {
+                                    case "LINE" -> 0;
+                                    case "BRANCH" -> 2;
+                                    default -> -1;
+                                };
+                                if (offset >= 0) {
+                                    counters[offset] = Integer.parseInt(reader.getAttributeValue(null, "missed"));
+                                    counters[offset + 1] = Integer.parseInt(reader.getAttributeValue(null, "covered"));
+                                }
+                            }
+                        }
+                        default -> {
+                        }
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    if (reader.getLocalName().equals("method") && methods != null) {
+                        methods.add(new MethodCoverage(methodName, descriptor, counters[0], counters[1], counters[2], counters[3]));
+                        methodName = null;
+                    } else if (reader.getLocalName().equals("class")) {
+                        methods = null;
+                    }
+                }
+            }
+            reader.close();
+        } catch (final XMLStreamException e) {
+            throw new IOException("Cannot read JaCoCo report " + report + ": " + e.getMessage(), e);
+        }
+        return coverage;
+    }
+
+    /**
+     * Coverage per endpoint, the largest gap first; endpoints whose class has no coverage
+     * data come last.
+     */
+    public List<EndpointCoverage> gaps(final List<EndpointImpactIndex.Endpoint> endpoints,
+                                       final Map<String, List<MethodCoverage>> coverage) {
+        final List<EndpointCoverage> gaps = new ArrayList<>();
+        for (final EndpointImpactIndex.Endpoint endpoint : endpoints) {
+            final List<MethodCoverage> handlerClass = coverage.get(endpoint.className());
+            final int[] counters = new int[4];
+            if (handlerClass != null) {
+                final List<String> methods = new ArrayList<>(List.of(endpoint.method()));
+                methods.addAll(endpoint.helpers());
+                for (final MethodCoverage method : handlerClass) {
+                    if (isOneOf(method, methods)) {
+                        add(counters, method);
+                    }
+                }
+            }
+            for (final Map.Entry<String, List<MethodCoverage>> entry : coverage.entrySet()) {
+                if (isUsed(entry.getKey(), endpoint.usedClasses())) {
+                    entry.getValue().forEach(method -> add(counters, method));
+                }
+            }
+            gaps.add(new EndpointCoverage(endpoint.operations(), endpoint.className(), endpoint.method(), handlerClass != null,
+                    counters[0], counters[1], counters[2], counters[3]));
+        }
+        gaps.sort(Comparator.comparingInt(EndpointCoverage::getGap).reversed()
+                .thenComparing(Comparator.comparingInt(EndpointCoverage::getMissedLines).reversed())
+                .thenComparing(gap -> String.join(",", gap.getOperations())));
+        return gaps;
+    }
+
+    /**
+     * The largest gap of the endpoints mapped to a spec operation, or -1 when none is
+     * mapped to it or none was measured.
+     */
+    public static int gapOf(final List<EndpointCoverage> coverage, final String operationKey) {
+        int gap = -1;
+        for (final EndpointCoverage endpoint : coverage) {
+            if (endpoint.getGap() > gap && endpoint.getOperations().stream().anyMatch(operation -> OperationPaths.matches(operation, operationKey))) {
+                gap = endpoint.getGap();
+            }
+        }
+        return gap;
+    }
+
+    // the class itself and its nested and anonymous classes
+    private static boolean isUsed(final String className, final List<String> usedClasses) {
+        for (final String used : usedClasses) {
+            if (className.equals(used) || className.startsWith(used + "$")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether a method of the class file is one of the source signatures, matched by name
+     * and parameter count; the lambdas in a method's body belong to it.
+     */
+    private static boolean isOneOf(final MethodCoverage method, final List<String> signatures) {
+        for (final String signature : signatures) {
+            final String name = signature.substring(0, signature.indexOf('('));
+            if (method.name().startsWith("lambda$" + name + "$")
+                    || method.name().equals(name) && parameterCount(method.descriptor()) == parameterCount(signature)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Parameters of a JVM descriptor such as {@code (J[Ljava/lang/String;)V}, or of a
+     * source signature such as {@code find(long, Map<String, Integer>)}.
+     */
+    static int parameterCount(final String signature) {
+        final String parameters = signature.substring(signature.indexOf('(') + 1, signature.lastIndexOf(')'));
+        if (parameters.isBlank()) {
+            return 0;
+        }
+        int count = 0;
+        if (signature.startsWith("(")) {
+            for (int i = 0; i < parameters.length(); i++) {
+                final char c = parameters.charAt(i);
+                if (c == '[') {
+                    continue;
+                }
+                if (c == 'L') {
+                    i = parameters.indexOf(';', i);
+                }
+                count++;
+            }
+            return count;
+        }
+        int depth = 0;
+        count = 1;
+        for (final char c : parameters.toCharArray()) {
+            if (c == '<') {
+                depth++;
+            } else if (c == '>') {
+                depth--;
+            } else if (c == ',' && depth == 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static void add(final int[] counters, final MethodCoverage method) {
+        counters[0] += method.missedLines();
+        counters[1] += method.coveredLines();
+        counters[2] += method.missedBranches();
+        counters[3] += method.coveredBranches();
+    }
+}
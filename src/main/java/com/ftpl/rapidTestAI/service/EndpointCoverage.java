@@ -0,0 +1,37 @@
+package com.ftpl.rapidTestAI.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Test coverage of one request handler: the lines and branches of the handler, the
+ * methods of its class it calls and the classes it uses. {@code measured} is false when
+ * the coverage data does not include the handler's class at all.
+ */
+@Getter
+@AllArgsConstructor
+public class EndpointCoverage {
+
+    private final List<String> operations;
+    private final String className;
+    private final String method;
+    private final boolean measured;
+    private final int missedLines;
+    private final int coveredLines;
+    private final int missedBranches;
+    private final int coveredBranches;
+
+    /**
+     * Missed lines plus missed branches: what tests for this endpoint could still cover.
+     */
+    public int getGap() {
+        return measured ? missedLines + missedBranches : -1;
+    }
+
+    public double getLineCoverage() {
+        final int lines = missedLines + coveredLines;
+        return lines == 0 ? 1.0 : (double) coveredLines / lines;
+    }
+}
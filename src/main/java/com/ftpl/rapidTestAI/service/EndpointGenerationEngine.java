@@ -0,0 +1,108 @@
+package com.ftpl.rapidTestAI.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fans endpoint generation out over a bounded worker pool. Each endpoint is handled
+ * independently: an exception from one endpoint is recorded in the
+ * {@link GenerationReport} and the remaining endpoints carry on.
+ * <p>
+ * Rate limiting is not done here; handlers are expected to go through
+ * {@link LlmGateway}, which admits calls through the {@link LlmRequestScheduler}.
+ */
+@Slf4j
+@Component
+public class EndpointGenerationEngine {
+
+    private final int maxConcurrency;
+
+    public EndpointGenerationEngine(@Value("${rapid-test-ai.generation.max-concurrency:8}") final int maxConcurrency) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("maxConcurrency must be positive");
+        }
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    public GenerationReport run(final List<EndpointTask> tasks, final EndpointTaskHandler handler) throws InterruptedException {
+        return run(tasks, handler, ProgressListener.NONE);
+    }
+
+    /**
+     * Same as {@link #run(List, EndpointTaskHandler)}, reporting each finished endpoint,
+     * successful or not, to {@code progress}.
+     */
+    public GenerationReport run(final List<EndpointTask> tasks,
+                                final EndpointTaskHandler handler,
+                                final ProgressListener progress) throws InterruptedException {
+        final GenerationReport report = new GenerationReport(tasks.size());
+        progress.onProgress(0, tasks.size());
+        if (tasks.isEmpty()) {
+            return report;
+        }
+
+        final long start = System.nanoTime();
+        final int poolSize = Math.min(maxConcurrency, tasks.size());
+        final ExecutorService executor = Executors.newFixedThreadPool(poolSize, workerThreadFactory());
+        try {
+            final ExecutorCompletionService<Void> completionService = new ExecutorCompletionService<>(executor);
+            for (final EndpointTask task : tasks) {
+                completionService.submit(() -> {
+                    handle(task, handler, report);
+                    return null;
+                });
+            }
+            for (int i = 0; i < tasks.size(); i++) {
+                try {
+                    completionService.take().get();
+                } catch (final ExecutionException e) {
+                    // handle() records its own failures; anything reaching here is unexpected
+                    log.error("Unexpected failure in generation worker", e.getCause());
+                }
+                progress.onProgress(i + 1, tasks.size());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        report.setElapsedMillis((System.nanoTime() - start) / 1_000_000);
+        log.info("Generated {} endpoints ({} failed) in {} ms with {} workers",
+                report.getSucceeded().size(), report.getFailed().size(), report.getElapsedMillis(), poolSize);
+        return report;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    private static void handle(final EndpointTask task, final EndpointTaskHandler handler, final GenerationReport report) throws InterruptedException {
+        try {
+            handler.handle(task);
+            report.recordSuccess(task.getKey());
+        } catch (final InterruptedException e) {
+            report.recordFailure(task.getKey(), e);
+            throw e;
+        } catch (final Exception e) {
+            log.error("Generation failed for {}", task.getKey(), e);
+            report.recordFailure(task.getKey(), e);
+        }
+    }
+
+    private static ThreadFactory workerThreadFactory() {
+        final AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            final Thread thread = new Thread(runnable, "endpoint-gen-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
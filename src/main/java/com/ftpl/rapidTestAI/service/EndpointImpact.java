@@ -0,0 +1,36 @@
+package com.ftpl.rapidTestAI.service;
+
+import com.ftpl.rapidTestAI.utils.OperationPaths;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * The endpoints a change between two commits can affect, as found by
+ * {@link EndpointImpactIndex}. {@code operations} are {@code "METHOD /path"} as mapped in
+ * the code, {@code *} standing for any method or a path the index could not work out.
+ * Changed files that are not indexed Java sources, e.g. configuration or SQL, are listed
+ * in {@code unmappedFiles}; sources that do not parse are in {@code unparsedFiles}, and
+ * the endpoints they declared before the change count as affected.
+ */
+@Getter
+@AllArgsConstructor
+public class EndpointImpact {
+
+    private final String baseCommit;
+    private final String headCommit;
+    private final List<String> changedFiles;
+    private final List<String> changedTypes;
+    private final List<String> operations;
+    private final List<String> unmappedFiles;
+    private final List<String> unparsedFiles;
+
+    /**
+     * Whether a spec operation such as {@code "GET /pets/{petId}"} is affected; see
+     * {@link OperationPaths} for how mappings and spec paths are matched.
+     */
+    public boolean matches(final String operationKey) {
+        return operations.stream().anyMatch(operation -> OperationPaths.matches(operation, operationKey));
+    }
+}
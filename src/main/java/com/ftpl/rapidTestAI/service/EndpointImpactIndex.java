@@ -0,0 +1,547 @@
+package com.ftpl.rapidTestAI.service;
+
+import com.ftpl.rapidTestAI.utils.JavaSourceIndexer;
+import com.ftpl.rapidTestAI.utils.JavaSourceIndexer.MethodInfo;
+import com.ftpl.rapidTestAI.utils.JavaSourceIndexer.SourceFile;
+import com.ftpl.rapidTestAI.utils.JavaSourceIndexer.TypeInfo;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Maps a code change to the REST endpoints it can affect, so that only their tests are
+ * regenerated.
+ * <p>
+ * Each repository gets an index of its Java sources at one commit (see
+ * {@link JavaSourceIndexer}). The index is built on first use and then moved from commit
+ * to commit by reparsing only the files whose blob id changed. Moving it records which
+ * types and methods changed; a handler is affected when its own code or the code of its
+ * class changed, when it uses a type that changed or depends on one that did, or when a
+ * type it inherits from did. Using an interface counts as using its implementations.
+ * Names are resolved through imports, the package and nested types; a name that stays
+ * ambiguous depends on every indexed type of that name, so the result errs towards
+ * regenerating too much rather than too little.
+ */
+@Slf4j
+@Component
+public class EndpointImpactIndex {
+
+    private final Map<String, RepositoryIndex> repositories = new ConcurrentHashMap<>();
+
+    private final AtomicLong updates = new AtomicLong();
+    private final AtomicLong filesParsed = new AtomicLong();
+    private final AtomicLong filesReused = new AtomicLong();
+    private final AtomicLong parseFailures = new AtomicLong();
+
+    @Autowired
+    private GitClientService gitClientService;
+
+    /**
+     * Endpoints affected by the changes from {@code baseRevision} to {@code headRevision}.
+     * The index ends up at the head commit, so comparing successive heads against one
+     * base only reparses what differs.
+     */
+    public EndpointImpact impactOf(final String localRepositoryPath,
+                                   final String baseRevision,
+                                   final String headRevision) throws IOException, InterruptedException {
+        final RepositoryIndex index = repositories.computeIfAbsent(new File(localRepositoryPath).getCanonicalPath(),
+                path -> new RepositoryIndex());
+        synchronized (index) {
+            final String base = gitClientService.resolveCommit(localRepositoryPath, baseRevision);
+            final String head = gitClientService.resolveCommit(localRepositoryPath, headRevision);
+            if (!base.equals(index.commit)) {
+                update(localRepositoryPath, index, base, null);
+            }
+            final Changes changes = new Changes();
+            update(localRepositoryPath, index, head, changes);
+            return impact(index, changes, base, head);
+        }
+    }
+
+    /**
+     * The request handlers of a revision, each with the classes its code runs in: its own
+     * class and the classes of the types it uses, implementations included.
+     */
+    public List<Endpoint> endpointsAt(final String localRepositoryPath, final String revision) throws IOException, InterruptedException {
+        final RepositoryIndex index = repositories.computeIfAbsent(new File(localRepositoryPath).getCanonicalPath(),
+                path -> new RepositoryIndex());
+        synchronized (index) {
+            final String commit = gitClientService.resolveCommit(localRepositoryPath, revision);
+            if (!commit.equals(index.commit)) {
+                update(localRepositoryPath, index, commit, null);
+            }
+            final Types types = new Types(index.sources.values());
+            final List<Endpoint> endpoints = new ArrayList<>();
+            for (final Handler handler : handlers(types)) {
+                final Set<String> used = new TreeSet<>(types.resolveAll(handler.type(), handler.method().references()));
+                for (final Mapping mapping : handler.mappings()) {
+                    if (mapping.owner() != handler.type()) {
+                        used.addAll(types.resolveAll(mapping.owner(), mapping.method().references()));
+                    }
+                }
+                final Set<String> classes = new TreeSet<>();
+                for (final String type : types.withSubtypes(used)) {
+                    if (!types.byName.get(type).isInterface()) {
+                        classes.add(types.binaryName(type));
+                    }
+                }
+                classes.remove(types.binaryName(handler.type().name()));
+                endpoints.add(new Endpoint(handler.operations(), types.binaryName(handler.type().name()),
+                        handler.method().signature(), handler.method().helpers(), List.copyOf(classes)));
+            }
+            return endpoints;
+        }
+    }
+
+    /**
+     * @param className   binary name of the handler's class, e.g. {@code com/acme/PetController}
+     * @param method      signature of the handler method, e.g. {@code getPet(long)}
+     * @param helpers     signatures of the methods of its class the handler calls
+     * @param usedClasses binary names of the other classes it uses
+     */
+    public record Endpoint(List<String> operations, String className, String method, Set<String> helpers, List<String> usedClasses) {
+    }
+
+    public Map<String, Long> getStats() {
+        long files = 0;
+        long types = 0;
+        for (final RepositoryIndex index : repositories.values()) {
+            synchronized (index) {
+                files += index.sources.size();
+                types += index.sources.values().stream().mapToLong(source -> source.types().size()).sum();
+            }
+        }
+        final Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("repositories", (long) repositories.size());
+        stats.put("sources", files);
+        stats.put("types", types);
+        stats.put("updates", updates.get());
+        stats.put("filesParsed", filesParsed.get());
+        stats.put("filesReused", filesReused.get());
+        stats.put("parseFailures", parseFailures.get());
+        return stats;
+    }
+
+    /**
+     * Main sources only: tests do not change what an endpoint does.
+     */
+    static boolean isIndexed(final String path) {
+        return path.endsWith(".java") && !path.startsWith("src/test/") && !path.contains("/src/test/");
+    }
+
+    /**
+     * Moves the index to {@code commit}. The new sources are built in a copy that replaces
+     * the index's only once every file has been read, so a failure halfway leaves the
+     * index at its previous commit and a retry starts from there.
+     */
+    private void update(final String localRepositoryPath,
+                        final RepositoryIndex index,
+                        final String commit,
+                        final Changes changes) throws IOException, InterruptedException {
+        final Map<String, SourceFile> sources = new HashMap<>(index.sources);
+        final Map<String, String> blobs = gitClientService.listFilesAtRevision(localRepositoryPath, commit);
+        final List<String> toParse = new ArrayList<>();
+        final Set<String> toParseBlobs = new HashSet<>();
+        for (final Map.Entry<String, String> blob : blobs.entrySet()) {
+            if (blob.getValue().equals(index.blobs.get(blob.getKey()))) {
+                continue;
+            }
+            if (isIndexed(blob.getKey())) {
+                toParse.add(blob.getKey());
+                toParseBlobs.add(blob.getValue());
+            } else if (changes != null) {
+                changes.unmappedFiles.add(blob.getKey());
+            }
+            if (changes != null) {
+                changes.files.add(blob.getKey());
+            }
+        }
+        for (final String path : index.blobs.keySet()) {
+            if (!blobs.containsKey(path)) {
+                final SourceFile removed = sources.remove(path);
+                if (changes != null) {
+                    changes.files.add(path);
+                    if (isIndexed(path)) {
+                        changes.record(removed, null);
+                    } else {
+                        changes.unmappedFiles.add(path);
+                    }
+                }
+            }
+        }
+
+        gitClientService.fetchMissingBlobs(localRepositoryPath, commit, toParseBlobs);
+        gitClientService.readFilesAtRevision(localRepositoryPath, toParse, commit, (path, size, content) -> {
+            SourceFile source = null;
+            if (content != null) {
+                try {
+                    source = JavaSourceIndexer.index(new String(content.readAllBytes(), StandardCharsets.UTF_8));
+                    filesParsed.incrementAndGet();
+                } catch (final IllegalArgumentException e) {
+                    parseFailures.incrementAndGet();
+                    log.warn("Could not parse {} at {}: {}", path, commit, e.getMessage());
+                    if (changes != null) {
+                        changes.unparsedFiles.add(path);
+                    }
+                }
+            }
+            final SourceFile previous = source != null ? sources.put(path, source) : sources.remove(path);
+            if (changes != null) {
+                changes.record(previous, source);
+            }
+        });
+
+        final int reused = Math.max(0, sources.size() - toParse.size());
+        filesReused.addAndGet(reused);
+        index.sources = sources;
+        index.blobs = blobs;
+        index.commit = commit;
+        updates.incrementAndGet();
+        log.debug("Indexed {} at {}: {} sources parsed, {} reused", localRepositoryPath, commit, toParse.size(), reused);
+    }
+
+    private EndpointImpact impact(final RepositoryIndex index, final Changes changes, final String base, final String head) {
+        final Types types = new Types(index.sources.values());
+        final Reach reach = types.reach(changes.types);
+
+        final Set<String> operations = new TreeSet<>(changes.previousOperations);
+        for (final Handler handler : handlers(types)) {
+            if (isAffected(handler, types, reach, changes)) {
+                operations.addAll(handler.operations());
+            }
+        }
+        return new EndpointImpact(base, head,
+                List.copyOf(new TreeSet<>(changes.files)),
+                List.copyOf(changes.types),
+                List.copyOf(operations),
+                List.copyOf(new TreeSet<>(changes.unmappedFiles)),
+                List.copyOf(new TreeSet<>(changes.unparsedFiles)));
+    }
+
+    /**
+     * Handler methods and the methods inheriting a mapping from an interface or
+     * superclass. Interfaces with implementations are served through those.
+     */
+    private static List<Handler> handlers(final Types types) {
+        final List<Handler> handlers = new ArrayList<>();
+        for (final TypeInfo type : types.byName.values()) {
+            if (type.isInterface() && types.subtypes.containsKey(type.name())) {
+                continue;
+            }
+            final Set<String> supertypes = types.supertypes.getOrDefault(type.name(), Set.of());
+            for (final MethodInfo method : type.methods()) {
+                final List<Mapping> mappings = new ArrayList<>();
+                if (method.isHandler()) {
+                    mappings.add(new Mapping(type, method));
+                }
+                for (final String supertype : supertypes) {
+                    final MethodInfo declared = types.byName.get(supertype).method(method.signature());
+                    if (!method.isHandler() && declared != null && declared.isHandler()) {
+                        mappings.add(new Mapping(types.byName.get(supertype), declared));
+                    }
+                }
+                if (!mappings.isEmpty()) {
+                    handlers.add(new Handler(type, method, mappings, supertypes));
+                }
+            }
+        }
+        return handlers;
+    }
+
+    private static boolean isAffected(final Handler handler, final Types types, final Reach reach, final Changes changes) {
+        final TypeInfo type = handler.type();
+        final MethodInfo method = handler.method();
+        if (changes.methods.contains(type.name() + "#" + method.signature())
+                || types.resolveAll(type, method.references()).stream().anyMatch(reach.used::contains)) {
+            return true;
+        }
+        final Set<String> mappingOwners = new HashSet<>();
+        for (final Mapping mapping : handler.mappings()) {
+            mappingOwners.add(mapping.owner().name());
+            if (mapping.owner() != type && (changes.methods.contains(mapping.owner().name() + "#" + mapping.method().signature())
+                    || types.resolveAll(mapping.owner(), mapping.method().references()).stream().anyMatch(reach.used::contains))) {
+                return true;
+            }
+        }
+        // an interface that only declares the mapping matters through that method alone
+        for (final String supertype : handler.supertypes()) {
+            if (!mappingOwners.contains(supertype) && reach.inherited.contains(supertype)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<String> operations(final List<String> basePaths, final MethodInfo method) {
+        final List<String> operations = new ArrayList<>();
+        for (final String httpMethod : method.httpMethods()) {
+            for (final String basePath : basePaths) {
+                for (final String path : method.paths()) {
+                    operations.add(httpMethod + " " + JavaSourceIndexer.joinPaths(basePath, path));
+                }
+            }
+        }
+        return operations;
+    }
+
+    private record Mapping(TypeInfo owner, MethodInfo method) {
+    }
+
+    private record Handler(TypeInfo type, MethodInfo method, List<Mapping> mappings, Set<String> supertypes) {
+
+        private List<String> operations() {
+            final List<String> operations = new ArrayList<>();
+            for (final Mapping mapping : mappings) {
+                // an implementation's own class-level mapping wins over the interface's
+                final List<String> basePaths = type.hasRequestMapping() ? type.basePaths() : mapping.owner().basePaths();
+                operations.addAll(EndpointImpactIndex.operations(basePaths, mapping.method()));
+            }
+            return operations;
+        }
+    }
+
+    private static final class RepositoryIndex {
+        private String commit;
+        private Map<String, String> blobs = Map.of();
+        private Map<String, SourceFile> sources = new HashMap<>();
+    }
+
+    /**
+     * What moving the index from one commit to the next changed.
+     */
+    private static final class Changes {
+        private final List<String> files = new ArrayList<>();
+        private final List<String> unmappedFiles = new ArrayList<>();
+        private final List<String> unparsedFiles = new ArrayList<>();
+        private final Set<String> types = new TreeSet<>();
+        // "type#signature" of methods whose code, or whose class's fields and constructors, changed
+        private final Set<String> methods = new HashSet<>();
+        // mappings of handlers that were changed or removed, as they were before the change
+        private final Set<String> previousOperations = new TreeSet<>();
+
+        private void record(final SourceFile before, final SourceFile after) {
+            final Map<String, TypeInfo> old = byName(before);
+            final Map<String, TypeInfo> now = byName(after);
+            final Set<String> names = new TreeSet<>(old.keySet());
+            names.addAll(now.keySet());
+            for (final String name : names) {
+                final TypeInfo previous = old.get(name);
+                final TypeInfo current = now.get(name);
+                if (previous != null && current != null && previous.hash().equals(current.hash())) {
+                    continue;
+                }
+                types.add(name);
+                final boolean structureChanged = previous == null || current == null
+                        || !previous.structureHash().equals(current.structureHash());
+                if (previous != null) {
+                    for (final MethodInfo method : previous.methods()) {
+                        final MethodInfo updated = current != null ? current.method(method.signature()) : null;
+                        if (method.isHandler() && (structureChanged || updated == null || !updated.hash().equals(method.hash()))) {
+                            previousOperations.addAll(operations(previous.basePaths(), method));
+                        }
+                    }
+                }
+                if (current != null) {
+                    for (final MethodInfo method : current.methods()) {
+                        final MethodInfo then = previous != null ? previous.method(method.signature()) : null;
+                        if (structureChanged || then == null || !then.hash().equals(method.hash())) {
+                            methods.add(name + "#" + method.signature());
+                        }
+                    }
+                }
+            }
+        }
+
+        private static Map<String, TypeInfo> byName(final SourceFile source) {
+            final Map<String, TypeInfo> types = new HashMap<>();
+            if (source != null) {
+                source.types().forEach(type -> types.put(type.name(), type));
+            }
+            return types;
+        }
+    }
+
+    /**
+     * Types reached by a change. A type is in {@code inherited} when it changed, uses a
+     * type in {@code used}, or inherits from a type in {@code inherited}; it is in
+     * {@code used} when it is in {@code inherited} or one of its subtypes is in
+     * {@code used}, since code holding an interface runs its implementations.
+     */
+    private record Reach(Set<String> inherited, Set<String> used) {
+    }
+
+    /**
+     * The indexed types of one commit, with names resolved the way javac would as far as
+     * the sources tell.
+     */
+    private static final class Types {
+        private final Map<String, TypeInfo> byName = new HashMap<>();
+        private final Map<String, SourceFile> sources = new HashMap<>();
+        private final Map<String, List<String>> bySimpleName = new HashMap<>();
+        private final Map<String, Set<String>> supertypes = new HashMap<>();
+        private final Map<String, Set<String>> subtypes = new HashMap<>();
+        private final Map<String, Set<String>> users = new HashMap<>();
+
+        private Types(final Iterable<SourceFile> files) {
+            for (final SourceFile file : files) {
+                for (final TypeInfo type : file.types()) {
+                    byName.put(type.name(), type);
+                    sources.put(type.name(), file);
+                    bySimpleName.computeIfAbsent(type.name().substring(type.name().lastIndexOf('.') + 1),
+                            name -> new ArrayList<>()).add(type.name());
+                }
+            }
+            for (final TypeInfo type : byName.values()) {
+                for (final String supertype : resolveAll(type, type.supertypes())) {
+                    supertypes.computeIfAbsent(type.name(), name -> new HashSet<>()).add(supertype);
+                    subtypes.computeIfAbsent(supertype, name -> new HashSet<>()).add(type.name());
+                }
+                for (final String used : resolveAll(type, type.references())) {
+                    users.computeIfAbsent(used, name -> new HashSet<>()).add(type.name());
+                }
+            }
+        }
+
+        private Set<String> withSubtypes(final Set<String> names) {
+            final Set<String> all = new HashSet<>();
+            final Deque<String> pending = new ArrayDeque<>(names);
+            while (!pending.isEmpty()) {
+                final String name = pending.pop();
+                if (all.add(name)) {
+                    pending.addAll(subtypes.getOrDefault(name, Set.of()));
+                }
+            }
+            return all;
+        }
+
+        /**
+         * The name in class files: {@code com/acme/Outer$Inner}.
+         */
+        private String binaryName(final String name) {
+            final String packageName = sources.get(name).packageName();
+            if (packageName.isEmpty()) {
+                return name.replace('.', '$');
+            }
+            return packageName.replace('.', '/') + "/" + name.substring(packageName.length() + 1).replace('.', '$');
+        }
+
+        private Reach reach(final Set<String> changed) {
+            final Set<String> inherited = new HashSet<>();
+            final Set<String> used = new HashSet<>();
+            final Deque<String> inheritedQueue = new ArrayDeque<>();
+            final Deque<String> usedQueue = new ArrayDeque<>();
+            for (final String type : changed) {
+                if (byName.containsKey(type) && inherited.add(type)) {
+                    inheritedQueue.add(type);
+                }
+            }
+            // removed types are not indexed any more; whoever named them has changed as well
+            while (!inheritedQueue.isEmpty() || !usedQueue.isEmpty()) {
+                if (!inheritedQueue.isEmpty()) {
+                    final String type = inheritedQueue.pop();
+                    if (used.add(type)) {
+                        usedQueue.add(type);
+                    }
+                    for (final String subtype : subtypes.getOrDefault(type, Set.of())) {
+                        if (inherited.add(subtype)) {
+                            inheritedQueue.add(subtype);
+                        }
+                    }
+                } else {
+                    final String type = usedQueue.pop();
+                    for (final String user : users.getOrDefault(type, Set.of())) {
+                        if (inherited.add(user)) {
+                            inheritedQueue.add(user);
+                        }
+                    }
+                    for (final String supertype : supertypes.getOrDefault(type, Set.of())) {
+                        if (used.add(supertype)) {
+                            usedQueue.add(supertype);
+                        }
+                    }
+                }
+            }
+            return new Reach(inherited, used);
+        }
+
+        /**
+         * Indexed types the names used in {@code context} may refer to, leaving out
+         * {@code context} itself.
+         */
+        private Set<String> resolveAll(final TypeInfo context, final Set<String> names) {
+            return resolveAll(context, List.copyOf(names));
+        }
+
+        private Set<String> resolveAll(final TypeInfo context, final List<String> names) {
+            final Set<String> resolved = new HashSet<>();
+            for (final String name : names) {
+                resolved.addAll(resolve(context, name));
+            }
+            resolved.remove(context.name());
+            return resolved;
+        }
+
+        private List<String> resolve(final TypeInfo context, final String name) {
+            if (byName.containsKey(name)) {
+                return List.of(name);
+            }
+            final int dot = name.indexOf('.');
+            if (dot > 0) {
+                // Outer.Inner: resolve the outer name, then look for the nested type
+                final List<String> nested = new ArrayList<>();
+                for (final String outer : resolve(context, name.substring(0, dot))) {
+                    if (byName.containsKey(outer + name.substring(dot))) {
+                        nested.add(outer + name.substring(dot));
+                    }
+                }
+                return nested;
+            }
+            for (String scope = context.name(); scope != null; scope = enclosing(scope)) {
+                if (scope.endsWith("." + name) || scope.equals(name)) {
+                    return List.of(scope);
+                }
+                if (byName.containsKey(scope + "." + name)) {
+                    return List.of(scope + "." + name);
+                }
+            }
+            final SourceFile file = sources.get(context.name());
+            for (final String imported : file.imports()) {
+                if (imported.endsWith("." + name)) {
+                    // explicitly imported; not indexed means a library type
+                    return byName.containsKey(imported) ? List.of(imported) : List.of();
+                }
+            }
+            final String samePackage = file.packageName().isEmpty() ? name : file.packageName() + "." + name;
+            if (byName.containsKey(samePackage)) {
+                return List.of(samePackage);
+            }
+            for (final String imported : file.imports()) {
+                if (imported.endsWith(".*") && byName.containsKey(imported.substring(0, imported.length() - 1) + name)) {
+                    return List.of(imported.substring(0, imported.length() - 1) + name);
+                }
+            }
+            return bySimpleName.getOrDefault(name, List.of());
+        }
+
+        private String enclosing(final String type) {
+            final int dot = type.lastIndexOf('.');
+            return dot > 0 && byName.containsKey(type.substring(0, dot)) ? type.substring(0, dot) : null;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.ftpl.rapidTestAI.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.ftpl.rapidTestAI.utils.OperationFingerprint;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * One endpoint to generate artifacts for, as read from an OpenAPI chunk file. Operations
+ * too large for a single prompt are split into numbered parts; {@code part} is 0 for an
+ * operation that was not split.
+ */
+@Getter
+@AllArgsConstructor
+public class EndpointTask {
+
+    private final String method;
+    private final String path;
+    private final int part;
+    private final String contextJson;
+    private final String fingerprint;
+
+    public EndpointTask(final String method, final String path, final String contextJson) {
+        this(method, path, 0, contextJson, null);
+    }
+
+    /**
+     * Builds the task for one operation of a chunk file. The fingerprint is taken out of
+     * the operation and the rest is rendered compact, so the prompt matches the size the
+     * chunk exporter budgeted for.
+     */
+    public static EndpointTask fromChunkOperation(final ObjectMapper mapper, final JsonNode operation) throws JsonProcessingException {
+        final String path = operation.get("path").asText();
+        final String method = operation.get("method").asText().toUpperCase(); // e.g., GET, POST
+        final String fingerprint = OpenAPIChunkExporter.fingerprintOf(operation);
+        final int part = operation.path(OpenAPIChunkExporter.PART_FIELD).asInt(0);
+        ((ObjectNode) operation).remove(OperationFingerprint.FIELD);
+        return new EndpointTask(method, path, part, mapper.writeValueAsString(operation), fingerprint);
+    }
+
+    // Endpoints are generated concurrently, so the method is part of the name to keep
+    // GET and POST on the same path from writing the same file.
+    public static String artifactBaseName(final String method, final String path) {
+        return path.replaceAll("[^a-zA-Z0-9]", "_") + "_" + method.toUpperCase();
+    }
+
+    public String getKey() {
+        final String key = method + " " + path;
+        return part > 0 ? key + "#" + part : key;
+    }
+
+    public String getArtifactBaseName() {
+        final String baseName = artifactBaseName(method, path);
+        return part > 0 ? baseName + "_part" + part : baseName;
+    }
+}
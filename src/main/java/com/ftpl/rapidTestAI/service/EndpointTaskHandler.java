@@ -0,0 +1,7 @@
+package com.ftpl.rapidTestAI.service;
+
+@FunctionalInterface
+public interface EndpointTaskHandler {
+
+    void handle(EndpointTask task) throws Exception;
+}
@@ -1,70 +1,145 @@
 package com.ftpl.rapidTestAI.service;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.ftpl.rapidTestAI.utils.ArtifactFiles;
+import com.ftpl.rapidTestAI.utils.GherkinSteps;
+import com.ftpl.rapidTestAI.utils.OperationManifest;
+import com.ftpl.rapidTestAI.utils.StepLibrary;
+import com.ftpl.rapidTestAI.utils.TokenEstimator;
 import com.theokanning.openai.completion.chat.ChatCompletionRequest;
-import com.theokanning.openai.completion.chat.ChatCompletionResult;
 import com.theokanning.openai.completion.chat.ChatMessage;
 import io.swagger.v3.oas.models.OpenAPI;
-import io.swagger.v3.parser.OpenAPIV3Parser;
-import com.theokanning.openai.service.OpenAiService;
+import io.swagger.v3.oas.models.PathItem;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 
 import java.io.File;
-import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Component
 public class GenerateTestOpenAPIService {
 
     @Autowired
-    private OpenAiService openAiService;
+    private LlmGateway llmGateway;
 
-    private final double threshold = 80.0;
+    @Autowired
+    private EndpointGenerationEngine generationEngine;
+
+    @Autowired
+    private OpenAPIContextSlicer contextSlicer;
+
+    @Autowired
+    private OpenAPISpecCache specCache;
+
+    @Autowired
+    private CompletionCache completionCache;
+
+    @Autowired
+    private GenerationMetrics metrics;
+
+    @Autowired
+    private PromptContextRetriever promptContextRetriever;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Value("${rapid-test-ai.llm.streaming:false}")
+    private boolean streaming;
+
+    @Value("${rapid-test-ai.pipeline.feature-concurrency:8}")
+    private int featureConcurrency;
+
+    @Value("${rapid-test-ai.pipeline.step-concurrency:8}")
+    private int stepConcurrency;
+
+    @Value("${rapid-test-ai.pipeline.write-concurrency:1}")
+    private int writeConcurrency;
+
+    @Value("${rapid-test-ai.pipeline.queue-capacity:16}")
+    private int stageQueueCapacity;
+
+    @Value("${rapid-test-ai.generation.multi-endpoint.enabled:false}")
+    private boolean multiEndpoint;
 
-    public void generateTestsFromOpenAPISpec(final File specFile,
-                                             final String featureOutputFilePath,
-                                             final String stepDefOutputFilePath) {
+    @Value("${rapid-test-ai.generation.multi-endpoint.max-endpoints:5}")
+    private int maxEndpointsPerRequest;
+
+    @Value("${rapid-test-ai.generation.multi-endpoint.max-context-tokens:3000}")
+    private int maxContextTokensPerRequest;
+
+    @Value("${rapid-test-ai.steps.shared-library.enabled:false}")
+    private boolean sharedStepLibrary;
+
+    @Value("${rapid-test-ai.steps.shared-library.package:}")
+    private String stepPackage;
+
+    @Value("${rapid-test-ai.steps.shared-library.max-steps-per-request:40}")
+    private int maxStepsPerRequest;
+
+    /**
+     * Generates artifacts for every operation of the spec. Each prompt carries only the
+     * slice of the spec the operation references rather than the whole document.
+     */
+    public GenerationReport generateTestsFromOpenAPISpec(final File specFile,
+                                                         final String featureOutputFilePath,
+                                                         final String stepDefOutputFilePath) throws InterruptedException {
         // 1. Parse OpenAPI spec
-        final OpenAPI openAPI = new OpenAPIV3Parser().read(specFile.getAbsolutePath());
-        String json = "";
-        try {
-            final ObjectMapper mapper = new ObjectMapper();
-            json = mapper.writerWithDefaultPrettyPrinter().writeValueAsString(openAPI);
-        } catch (final JsonProcessingException e) {
-            throw new RuntimeException(e);
-        }
+        final OpenAPI openAPI = specCache.get(specFile.getAbsolutePath());
 
-        // 2. For each path in the spec, generate tests
-        final String finalJson = json;
-        openAPI.getPaths().forEach((path, item) -> {
-            try {
-                generateFeatureFromOpenAPIPathAndMethod(
-                        finalJson,
-                        path,
-                        item.readOperationsMap().keySet().iterator().next().toString(),
-                        featureOutputFilePath,
-                        stepDefOutputFilePath
-                );
-            } catch (final Exception e) {
-                e.printStackTrace();
+        // 2. Slice the spec per operation
+        final List<EndpointTask> tasks = new ArrayList<>();
+        long sliceTokens = 0;
+        for (final Map.Entry<String, PathItem> pathEntry : openAPI.getPaths().entrySet()) {
+            for (final PathItem.HttpMethod method : pathEntry.getValue().readOperationsMap().keySet()) {
+                final String slice = contextSlicer.slice(openAPI, pathEntry.getKey(), method);
+                final int tokens = TokenEstimator.estimate(slice);
+                log.debug("Context for {} {}: {} tokens", method, pathEntry.getKey(), tokens);
+                sliceTokens += tokens;
+                tasks.add(new EndpointTask(method.name(), pathEntry.getKey(), slice));
             }
-        });
+        }
+        log.info("Sliced context for {} operations: {} prompt tokens", tasks.size(), sliceTokens);
+
+        // 3. Generate tests for every operation
+        final Map<String, CompletionTiming> timings = Collections.synchronizedMap(new TreeMap<>());
+        final GenerationReport report = generationEngine.run(tasks, task -> generateFeatureFromOpenAPIPathAndMethod(
+                task.getContextJson(), task.getPath(), task.getMethod(), featureOutputFilePath, stepDefOutputFilePath, timings));
+        report.setArtifactTimings(timings);
 
         log.info("Test generation complete from OpenAPI Spec File.");
+        return report;
     }
 
-    private void generateFeatureFromOpenAPIPathAndMethod(final String openAPIJson,
+    private void generateFeatureFromOpenAPIPathAndMethod(final String operationContextJson,
                                                          final String path,
                                                          final String method,
                                                          final String featureOutputFilePath,
-                                                         final String stepDefOutputFilePath) throws Exception {
+                                                         final String stepDefOutputFilePath,
+                                                         final Map<String, CompletionTiming> timings) throws Exception {
         // Build prompt for LLM
         final String prompt = String.format(
                 """
@@ -75,9 +150,10 @@ public class GenerateTestOpenAPIService {
         final String systemPrompt = String.format(
                 """
                    You are a test-generator. you understand this openAPI spec file format.
+                   Here is the part of the spec this operation uses:
                    %s
                 """,
-                openAPIJson
+                operationContextJson
         );
         final ChatMessage systemMessageForFeature = new ChatMessage("system", systemPrompt);
         final ChatMessage userMessageForFeature = new ChatMessage("user", prompt);
@@ -86,14 +162,9 @@ public class GenerateTestOpenAPIService {
                 .messages(List.of(systemMessageForFeature, userMessageForFeature))
                 .build();
 
-        ChatCompletionResult result = openAiService.createChatCompletion(request);
-        final String featureText = result.getChoices().get(0).getMessage().getContent();
-
         // 4. Write feature file
-        final String fileName = featureOutputFilePath + sanitize(path) + ".feature";
-        try (final FileWriter writer = new FileWriter(fileName)) {
-            writer.write(featureText);
-        }
+        final String fileName = featureOutputFilePath + EndpointTask.artifactBaseName(method, path) + ".feature";
+        timings.put(fileName, writeArtifact(request, Path.of(fileName), GenerationMetrics.STAGE_FEATURE));
 
         // 5. Similarly, request and write step definition
         final String stepPrompt = String.format(
@@ -105,23 +176,145 @@ public class GenerateTestOpenAPIService {
                 .model("gpt-4o-mini")
                 .messages(List.of(userMessageForStep))
                 .build();
-        result = openAiService.createChatCompletion(request);
-        final String stepDefs = result.getChoices().get(0).getMessage().getContent();
+        final String stepFile = stepDefOutputFilePath + EndpointTask.artifactBaseName(method, path) + "Steps.java";
+        timings.put(stepFile, writeArtifact(request, Path.of(stepFile), GenerationMetrics.STAGE_STEPS));
+    }
+
+    /**
+     * Generates one artifact into {@code file}. In streaming mode the answer is written
+     * as it arrives; either way the file only appears once it is complete. A failed
+     * generation deletes the partial file.
+     */
+    private CompletionTiming writeArtifact(final ChatCompletionRequest request, final Path file, final String stage) throws Exception {
+        try (final ArtifactFiles.PartialFile partial = ArtifactFiles.open(file)) {
+            final CompletionTiming timing;
+            try {
+                timing = generateInto(request, partial.writer(), stage);
+                partial.commit();
+            } catch (final Exception e) {
+                partial.discard();
+                throw e;
+            }
+            metrics.artifactWritten(stage);
+            return timing;
+        }
+    }
+
+    /**
+     * Generates one artifact into the {@code .partial} file of {@code file} without
+     * publishing it; the returned partial file is closed and ready to be committed. A
+     * failed generation deletes the partial file.
+     */
+    private ArtifactFiles.PartialFile writePartial(final ChatCompletionRequest request,
+                                                   final Path file,
+                                                   final String stage,
+                                                   final Map<String, CompletionTiming> timings) throws Exception {
+        try (final ArtifactFiles.PartialFile partial = ArtifactFiles.open(file)) {
+            try {
+                timings.put(file.toString(), generateInto(request, partial.writer(), stage));
+            } catch (final Exception e) {
+                partial.discard();
+                throw e;
+            }
+            return partial;
+        }
+    }
 
-        final String stepFile = stepDefOutputFilePath + sanitize(path) + "Steps.java";
-        try (final FileWriter writer = new FileWriter(stepFile)) {
-            writer.write(stepDefs);
+    private CompletionTiming generateInto(final ChatCompletionRequest request, final Writer writer, final String stage) throws Exception {
+        if (streaming) {
+            return llmGateway.stream(request, writer, stage);
         }
+        final long start = System.nanoTime();
+        final String content = llmGateway.complete(request, stage);
+        final long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        writer.write(content);
+        return new CompletionTiming(elapsedMillis, elapsedMillis, content.length());
+    }
+
+    public GenerationReport generateFeaturesFromChunks(final String chunkDirectoryPath,
+                                                       final String featureOutputFilePath,
+                                                       final String stepDefOutputFilePath) throws Exception {
+        return generateFeaturesFromChunks(chunkDirectoryPath, featureOutputFilePath, stepDefOutputFilePath, false);
+    }
+
+    public GenerationReport generateFeaturesFromChunks(final String chunkDirectoryPath,
+                                                       final String featureOutputFilePath,
+                                                       final String stepDefOutputFilePath,
+                                                       final boolean force) throws Exception {
+        return generateFeaturesFromChunks(chunkDirectoryPath, featureOutputFilePath, stepDefOutputFilePath, force, ProgressListener.NONE);
+    }
+
+    /**
+     * Generates artifacts for the operations that were added or changed since the last
+     * run, based on the operation fingerprints in the chunk manifest and the generation
+     * manifest kept in the feature output directory. Artifacts of operations that no
+     * longer exist in the spec are deleted. {@code force} regenerates everything.
+     */
+    public GenerationReport generateFeaturesFromChunks(final String chunkDirectoryPath,
+                                                       final String featureOutputFilePath,
+                                                       final String stepDefOutputFilePath,
+                                                       final boolean force,
+                                                       final ProgressListener progress) throws Exception {
+        return generateFeaturesFromChunks(chunkDirectoryPath, featureOutputFilePath, stepDefOutputFilePath, key -> force, progress);
+    }
+
+    /**
+     * Generates artifacts for the operations changed in the spec, as above, and for the
+     * operations whose implementation a code change affects, even though their spec is
+     * unchanged. Everything else is left as it is.
+     */
+    public GenerationReport generateImpactedFeatures(final String chunkDirectoryPath,
+                                                     final String featureOutputFilePath,
+                                                     final String stepDefOutputFilePath,
+                                                     final EndpointImpact impact,
+                                                     final ProgressListener progress) throws Exception {
+        final GenerationReport report = generateFeaturesFromChunks(
+                chunkDirectoryPath, featureOutputFilePath, stepDefOutputFilePath, impact::matches, null, 0, progress);
+        report.setImpactedOperations(impact.getOperations());
+        return report;
     }
 
-    private String sanitize(final String path) {
-        return path.replaceAll("[^a-zA-Z0-9]", "_");
+    /**
+     * Generates the operations changed in the spec, or all of them with {@code force}, in
+     * order of the coverage gap of their endpoints, the largest first, and only the first
+     * {@code limit} of them when {@code limit} is positive. Operations without a measured
+     * endpoint come last. The rest are reported as deferred and are generated on a later
+     * run, as their artifacts are still missing or out of date. Among operations of equal
+     * gap the least recently generated go first, so with {@code force} successive runs
+     * rotate through them instead of regenerating the same ones.
+     */
+    public GenerationReport generateByCoverageGap(final String chunkDirectoryPath,
+                                                  final String featureOutputFilePath,
+                                                  final String stepDefOutputFilePath,
+                                                  final List<EndpointCoverage> coverage,
+                                                  final boolean force,
+                                                  final int limit,
+                                                  final ProgressListener progress) throws Exception {
+        return generateFeaturesFromChunks(chunkDirectoryPath, featureOutputFilePath, stepDefOutputFilePath,
+                key -> force, key -> CoverageGapAnalyzer.gapOf(coverage, key), limit, progress);
     }
 
-    public void generateFeaturesFromChunks(final String chunkDirectoryPath,
-                                           final String featureOutputFilePath,
-                                           final String stepDefOutputFilePath) throws Exception {
-        final ObjectMapper mapper = new ObjectMapper();
+    private GenerationReport generateFeaturesFromChunks(final String chunkDirectoryPath,
+                                                        final String featureOutputFilePath,
+                                                        final String stepDefOutputFilePath,
+                                                        final Predicate<String> regenerate,
+                                                        final ProgressListener progress) throws Exception {
+        return generateFeaturesFromChunks(chunkDirectoryPath, featureOutputFilePath, stepDefOutputFilePath, regenerate, null, 0, progress);
+    }
+
+    /**
+     * @param regenerate operation keys to regenerate even when their fingerprint is unchanged
+     * @param priority   orders the operations to generate, the highest first; {@code null}
+     *                   keeps them in spec order
+     * @param limit      the most operations to generate, the rest being deferred; 0 for all
+     */
+    private GenerationReport generateFeaturesFromChunks(final String chunkDirectoryPath,
+                                                        final String featureOutputFilePath,
+                                                        final String stepDefOutputFilePath,
+                                                        final Predicate<String> regenerate,
+                                                        final ToIntFunction<String> priority,
+                                                        final int limit,
+                                                        final ProgressListener progress) throws Exception {
         final File chunkDir = new File(chunkDirectoryPath);
         final File[] chunkFiles = chunkDir.listFiles((dir, name) -> name.startsWith("openapi_chunk_") && name.endsWith(".json"));
 
@@ -129,91 +322,464 @@ public class GenerateTestOpenAPIService {
             throw new RuntimeException("No chunk files found in " + chunkDirectoryPath);
         }
 
+        Arrays.sort(chunkFiles, Comparator.comparing(File::getName));
+
+        final OperationManifest chunkManifest = OperationManifest.read(new File(chunkDir, OperationManifest.CHUNK_MANIFEST));
+        final File generationManifestFile = new File(featureOutputFilePath, OperationManifest.GENERATION_MANIFEST);
+        final OperationManifest generationManifest = OperationManifest.read(generationManifestFile);
+
+        // With a chunk manifest only the chunks holding changed operations have to be read
+        final Map<String, String> currentFingerprints = new HashMap<>();
+        final Set<String> chunksToRead = new HashSet<>();
+        for (final Map.Entry<String, OperationManifest.Entry> entry : chunkManifest.getOperations().entrySet()) {
+            currentFingerprints.put(entry.getKey(), entry.getValue().getFingerprint());
+            if (regenerate.test(entry.getKey()) || !isUpToDate(generationManifest, entry.getKey(), entry.getValue().getFingerprint())) {
+                chunksToRead.add(entry.getValue().getChunk());
+            }
+        }
+
+        final List<List<EndpointTask>> tasksByChunk = new ArrayList<>();
         for (final File chunkFile : chunkFiles) {
+            if (!chunkManifest.getOperations().isEmpty() && !chunksToRead.contains(chunkFile.getName())) {
+                continue;
+            }
+            final List<EndpointTask> chunkTasks = new ArrayList<>();
             final ArrayNode endpoints = (ArrayNode) mapper.readTree(chunkFile);
             for (final JsonNode endpoint : endpoints) {
-                final String path = endpoint.get("path").asText();
-                final String method = endpoint.get("method").asText().toUpperCase(); // e.g., GET, POST
-                final String fullContext = mapper.writerWithDefaultPrettyPrinter().writeValueAsString(endpoint);
+                final String key = OpenAPIChunkExporter.operationKey(endpoint);
+                final String fingerprint = OpenAPIChunkExporter.fingerprintOf(endpoint);
+                currentFingerprints.put(key, fingerprint);
+                if (!regenerate.test(key) && isUpToDate(generationManifest, key, fingerprint)) {
+                    continue;
+                }
+                chunkTasks.add(EndpointTask.fromChunkOperation(mapper, endpoint));
+            }
+            tasksByChunk.add(chunkTasks);
+        }
+
+        final List<EndpointTask> tasks = new ArrayList<>();
+        final List<List<EndpointTask>> groups = new ArrayList<>();
+        final List<String> deferred = new ArrayList<>();
+        if (priority == null && limit <= 0) {
+            for (final List<EndpointTask> chunkTasks : tasksByChunk) {
+                tasks.addAll(chunkTasks);
+                groups.addAll(groupForPrompts(chunkTasks));
+            }
+        } else {
+            selectByPriority(tasksByChunk, priority, limit, generationManifest, tasks, groups, deferred);
+        }
 
-                generateFeatureFromContext(fullContext, path, method, featureOutputFilePath, stepDefOutputFilePath);
+        final List<String> removed = deleteRemovedOperations(generationManifest, currentFingerprints.keySet());
+        final int unchanged = currentFingerprints.size() - tasks.size() - deferred.size();
+        log.info("{} operations to generate, {} deferred, {} unchanged, {} removed",
+                tasks.size(), deferred.size(), unchanged, removed.size());
+
+        final StepLibrary stepLibrary = sharedStepLibrary
+                ? StepLibrary.read(new File(stepDefOutputFilePath, StepLibrary.FILE_NAME))
+                : null;
+        final Map<String, CompletionTiming> timings = Collections.synchronizedMap(new TreeMap<>());
+        final List<PipelineItem> items = groups.stream().map(PipelineItem::new).toList();
+        final GenerationReport itemReport;
+        try {
+            itemReport = generationPipeline(featureOutputFilePath, stepDefOutputFilePath, generationManifest, stepLibrary, timings)
+                    .run(items, PipelineItem::getKey, progress);
+            if (stepLibrary != null) {
+                writeStepLibrary(stepLibrary, stepDefOutputFilePath, currentFingerprints.keySet());
             }
+        } finally {
+            generationManifest.write(generationManifestFile);
         }
+
+        final GenerationReport report = endpointReport(tasks.size(), items, itemReport);
+
+        report.setArtifactTimings(timings);
+        report.setUnchanged(unchanged);
+        report.setRemoved(removed);
+        report.setDeferred(deferred);
+        if (stepLibrary != null) {
+            report.setStepLibrary(stepLibrary.getStats());
+        }
+        return report;
     }
 
-    private void generateFeatureFromContext(final String contextJson,
-                                            final String path,
-                                            final String method,
-                                            final String featureOutputFilePath,
-                                            final String stepDefOutputFilePath) throws Exception {
-        log.info("Generating feature for path: {} and method: {}", path, method);
+    /**
+     * Keeps the {@code limit} operations of highest priority and groups them for prompts.
+     * Ties go to the operation generated longest ago, or never. Groups still come from a
+     * single chunk, and the group holding the operation of highest priority goes first.
+     */
+    private void selectByPriority(final List<List<EndpointTask>> tasksByChunk,
+                                  final ToIntFunction<String> priority,
+                                  final int limit,
+                                  final OperationManifest generationManifest,
+                                  final List<EndpointTask> tasks,
+                                  final List<List<EndpointTask>> groups,
+                                  final List<String> deferred) {
+        final Map<String, Integer> priorities = new HashMap<>();
+        final ToIntFunction<EndpointTask> priorityOf = task -> priority == null ? 0
+                : priorities.computeIfAbsent(task.getKey(), priority::applyAsInt);
+        final ToLongFunction<EndpointTask> generatedAt = task -> {
+            final OperationManifest.Entry generated = generationManifest.getOperations().get(task.getKey());
+            return generated == null || generated.getGeneratedAt() == null ? 0 : generated.getGeneratedAt();
+        };
+        final Comparator<EndpointTask> highestFirst = Comparator.comparingInt(priorityOf).reversed()
+                .thenComparingLong(generatedAt);
 
-        final String prompt = String.format(
-                """
-                Generate a Cucumber feature scenario for %s %s, including Given, When, Then steps, with placeholder parameters.
-                Ensure that you check for all the response params based on the OpenAPI spec.
-                Requirements:
-                1. Feature file must follow Gherkin syntax precisely
-                2. Include scenarios for:
-                   - Happy path (200 responses)
-                   - Invalid inputs (400 responses)
-                   - Not found cases (404 responses)
-                   - Edge cases (empty inputs, boundary values)
-                3. Organize scenarios logically with descriptive names
-                4. Include data tables where appropriate for test cases
-                5. Cover all validation rules and business logic
-                6. Return ONLY the pure Gherkin syntax content without any markdown, explanations or code blocks
-                """,
-                method, path
-        );
+        // stable, so operations of equal priority that were generated together stay in spec order
+        final List<EndpointTask> ranked = tasksByChunk.stream().flatMap(List::stream).sorted(highestFirst).toList();
+        final int selected = limit > 0 ? Math.min(limit, ranked.size()) : ranked.size();
+        final Set<EndpointTask> chosen = new HashSet<>(ranked.subList(0, selected));
+        ranked.subList(selected, ranked.size()).forEach(task -> deferred.add(task.getKey()));
 
-        final String systemPrompt = String.format(
-                """
-                You are a test-generator. You understand this OpenAPI spec format. Here's the endpoint summary context:
-                %s
-                """, contextJson
-        );
+        for (final List<EndpointTask> chunkTasks : tasksByChunk) {
+            final List<EndpointTask> chunkSelection = chunkTasks.stream().filter(chosen::contains).sorted(highestFirst).toList();
+            tasks.addAll(chunkSelection);
+            groups.addAll(groupForPrompts(chunkSelection));
+        }
+        groups.sort(Comparator.comparingInt((List<EndpointTask> group) -> priorityOf.applyAsInt(group.get(0))).reversed());
+    }
 
-        final ChatMessage systemMessage = new ChatMessage("system", systemPrompt);
-        final ChatMessage userMessage = new ChatMessage("user", prompt);
+    private static boolean isUpToDate(final OperationManifest generationManifest, final String key, final String fingerprint) {
+        final OperationManifest.Entry generated = generationManifest.getOperations().get(key);
+        if (generated == null || !generated.getFingerprint().equals(fingerprint)) {
+            return false;
+        }
+        for (final String artifact : generated.getArtifacts()) {
+            if (!new File(artifact).isFile()) {
+                return false;
+            }
+        }
+        return true;
+    }
 
-        ChatCompletionRequest request = ChatCompletionRequest.builder()
-                .model("gpt-4o-mini")
-                .messages(List.of(systemMessage, userMessage))
-                .build();
+    private static List<String> deleteRemovedOperations(final OperationManifest generationManifest, final Set<String> currentKeys) {
+        final List<String> removed = new ArrayList<>();
+        final Iterator<Map.Entry<String, OperationManifest.Entry>> entries = generationManifest.getOperations().entrySet().iterator();
+        while (entries.hasNext()) {
+            final Map.Entry<String, OperationManifest.Entry> entry = entries.next();
+            if (currentKeys.contains(entry.getKey())) {
+                continue;
+            }
+            for (final String artifact : entry.getValue().getArtifacts()) {
+                final File file = new File(artifact);
+                if (file.exists() && !file.delete()) {
+                    log.warn("Could not delete artifact {} of removed operation {}", artifact, entry.getKey());
+                }
+            }
+            removed.add(entry.getKey());
+            entries.remove();
+        }
+        return removed;
+    }
 
-        ChatCompletionResult result = openAiService.createChatCompletion(request);
-        final String featureText = result.getChoices().get(0).getMessage().getContent();
+    /**
+     * Splits the operations of one chunk into the groups that share a prompt. Without
+     * multi-endpoint mode every operation is a group of its own. Otherwise consecutive
+     * operations are grouped up to the endpoint and context token limits; an operation
+     * whose context alone exceeds the token limit is always prompted on its own.
+     */
+    private List<List<EndpointTask>> groupForPrompts(final List<EndpointTask> chunkTasks) {
+        final List<List<EndpointTask>> groups = new ArrayList<>();
+        List<EndpointTask> current = new ArrayList<>();
+        int currentTokens = 0;
+        for (final EndpointTask task : chunkTasks) {
+            final int tokens = TokenEstimator.estimate(task.getContextJson());
+            if (!current.isEmpty() && (!multiEndpoint
+                    || current.size() >= maxEndpointsPerRequest
+                    || currentTokens + tokens > maxContextTokensPerRequest)) {
+                groups.add(current);
+                current = new ArrayList<>();
+                currentTokens = 0;
+            }
+            current.add(task);
+            currentTokens += tokens;
+        }
+        if (!current.isEmpty()) {
+            groups.add(current);
+        }
+        return groups;
+    }
 
-        final String featureFile = featureOutputFilePath + sanitize(path) + ".feature";
-        try (final FileWriter writer = new FileWriter(featureFile)) {
-            writer.write(featureText);
+    /**
+     * Feature generation, step generation and publishing run as separate stages, so the
+     * step definitions of one operation are generated while the features of the next
+     * ones are. Both artifacts of an operation are published together in the write stage,
+     * which also records them in the generation manifest. An operation that fails in a
+     * stage is dropped from its group; the rest of the group carries on.
+     * <p>
+     * With a {@code stepLibrary} the step stage asks only for the steps of a feature the
+     * library has no body for, and the write stage records the feature's steps in the
+     * library instead of publishing a step class; the classes are rendered once the
+     * pipeline is done. A failed step request does not drop the operation: its steps stay
+     * undefined until {@link #writeStepLibrary} retries them.
+     */
+    private StagedPipeline<PipelineItem> generationPipeline(final String featureOutputFilePath,
+                                                            final String stepDefOutputFilePath,
+                                                            final OperationManifest generationManifest,
+                                                            final StepLibrary stepLibrary,
+                                                            final Map<String, CompletionTiming> timings) {
+        return new StagedPipeline<PipelineItem>()
+                .stage("feature", featureConcurrency, stageQueueCapacity, item -> {
+                    final Map<String, String> batched = item.tasks.size() > 1
+                            ? generateBatched(item, PromptFactory.multiFeatureRequest(mapper, item.tasks), GenerationMetrics.STAGE_FEATURE, text -> text.contains("Feature:"))
+                            : Map.of();
+                    for (final EndpointTask task : item.liveTasks()) {
+                        item.attempt(task, () -> {
+                            log.info("Generating feature for path: {} and method: {}", task.getPath(), task.getMethod());
+                            // a batched answer is cached under the plain request
+                            final PromptContextRetriever.References references = batched.containsKey(task.getKey())
+                                    ? PromptContextRetriever.References.NONE
+                                    : promptContextRetriever.retrieve(task);
+                            item.references.put(task.getKey(), references);
+                            final ChatCompletionRequest request = PromptFactory.featureRequest(
+                                    task.getContextJson(), task.getMethod(), task.getPath(), references.schemas());
+                            item.features.put(task.getKey(), writePartial(request, batched.get(task.getKey()),
+                                    Path.of(featureOutputFilePath + task.getArtifactBaseName() + ".feature"), GenerationMetrics.STAGE_FEATURE, timings));
+                        });
+                    }
+                })
+                .stage("steps", stepConcurrency, stageQueueCapacity, item -> {
+                    // the step prompt embeds the feature; read it back rather than holding every answer in memory
+                    final Map<String, String> featureTexts = new LinkedHashMap<>();
+                    for (final EndpointTask task : item.liveTasks()) {
+                        item.attempt(task, () -> featureTexts.put(task.getKey(), Files.readString(item.features.get(task.getKey()).getPartialPath())));
+                    }
+                    if (stepLibrary != null) {
+                        for (final EndpointTask task : item.liveTasks()) {
+                            item.attempt(task, () -> {
+                                final List<GherkinSteps.Step> featureSteps = GherkinSteps.stepsOf(featureTexts.get(task.getKey()));
+                                item.featureSteps.put(task.getKey(), featureSteps);
+                                final List<GherkinSteps.Step> claimed = stepLibrary.claim(featureSteps);
+                                try {
+                                    generateStepBodies(stepLibrary, featureTexts.get(task.getKey()), claimed);
+                                } catch (final InterruptedException e) {
+                                    throw e;
+                                } catch (final Exception e) {
+                                    // the feature is kept; writeStepLibrary retries the steps still undefined
+                                    log.warn("Could not generate {} steps for {}, retried before the library is written",
+                                            claimed.size(), task.getKey(), e);
+                                }
+                            });
+                        }
+                        return;
+                    }
+                    final List<EndpointTask> live = item.liveTasks();
+                    final Map<String, String> batched = live.size() > 1
+                            ? generateBatched(item, PromptFactory.multiStepRequest(mapper, live, featureTexts), GenerationMetrics.STAGE_STEPS, text -> !text.isBlank())
+                            : Map.of();
+                    for (final EndpointTask task : live) {
+                        item.attempt(task, () -> {
+                            final List<String> stepDefinitions = batched.containsKey(task.getKey())
+                                    ? List.of()
+                                    : item.references.getOrDefault(task.getKey(), PromptContextRetriever.References.NONE).stepDefinitions();
+                            final ChatCompletionRequest request = PromptFactory.stepRequest(
+                                    featureTexts.get(task.getKey()), task.getMethod(), task.getPath(), stepDefinitions);
+                            item.steps.put(task.getKey(), writePartial(request, batched.get(task.getKey()),
+                                    Path.of(stepDefOutputFilePath + task.getArtifactBaseName() + "Steps.java"), GenerationMetrics.STAGE_STEPS, timings));
+                        });
+                    }
+                })
+                .stage("write", writeConcurrency, stageQueueCapacity, item -> {
+                    for (final EndpointTask task : item.liveTasks()) {
+                        item.attempt(task, () -> {
+                            final ArtifactFiles.PartialFile feature = item.features.get(task.getKey());
+                            feature.commit();
+                            metrics.artifactWritten(GenerationMetrics.STAGE_FEATURE);
+                            final Path stepsTarget;
+                            if (stepLibrary != null) {
+                                stepsTarget = Path.of(stepDefOutputFilePath + task.getArtifactBaseName() + "Steps.java");
+                                stepLibrary.assign(task.getKey(), task.getArtifactBaseName() + "Steps", item.featureSteps.get(task.getKey()));
+                            } else {
+                                final ArtifactFiles.PartialFile steps = item.steps.get(task.getKey());
+                                steps.commit();
+                                metrics.artifactWritten(GenerationMetrics.STAGE_STEPS);
+                                stepsTarget = steps.getTarget();
+                            }
+                            final OperationManifest.Entry entry = new OperationManifest.Entry(task.getFingerprint(), null);
+                            entry.setGeneratedAt(System.currentTimeMillis());
+                            entry.setArtifacts(List.of(feature.getTarget().toString(), stepsTarget.toString()));
+                            synchronized (generationManifest) {
+                                generationManifest.getOperations().put(task.getKey(), entry);
+                            }
+                        });
+                    }
+                });
+    }
+
+    /**
+     * Generates the bodies of library steps claimed by the caller, up to
+     * {@code maxStepsPerRequest} steps per request. Steps an answer leaves out are released
+     * and stay undefined until a later request; a failed request releases the rest and
+     * fails the caller.
+     */
+    private void generateStepBodies(final StepLibrary stepLibrary,
+                                    final String featureText,
+                                    final List<GherkinSteps.Step> steps) throws Exception {
+        final Set<String> undefined = new HashSet<>(steps.stream().map(GherkinSteps.Step::expression).toList());
+        try {
+            for (int start = 0; start < steps.size(); start += maxStepsPerRequest) {
+                final List<GherkinSteps.Step> batch = steps.subList(start, Math.min(steps.size(), start + maxStepsPerRequest));
+                final String answer = llmGateway.complete(PromptFactory.stepBodiesRequest(mapper, featureText, batch), GenerationMetrics.STAGE_STEPS);
+                final Map<String, String> bodies = MultiEndpointResponse.split(mapper, answer,
+                        batch.stream().map(GherkinSteps.Step::expression).toList(), body -> !body.isBlank());
+                bodies.forEach((expression, body) -> {
+                    stepLibrary.define(expression, body);
+                    undefined.remove(expression);
+                });
+            }
+        } finally {
+            stepLibrary.release(undefined);
         }
+    }
 
-        // Generate Step Definitions
-        final String stepPrompt = String.format(
-                """
-                        Generate Java-based Cucumber step definition classes for the following Cucumber `.feature` file as below:
-                        %s
-                        and path: %s
-                        and method: %s
-                        Only return the Java code. Do not include any explanations or markdown formatting.
-                """, featureText, method, path
-        );
-        final ChatMessage stepMessage = new ChatMessage("user", stepPrompt);
-        request = ChatCompletionRequest.builder()
-                .model("gpt-4o-mini")
-                .messages(List.of(stepMessage))
-                .build();
+    /**
+     * Retries the library steps still without a body, then renders the step classes of
+     * all endpoints. Steps that still fail are rendered as pending.
+     */
+    private void writeStepLibrary(final StepLibrary stepLibrary,
+                                  final String stepDefOutputFilePath,
+                                  final Set<String> currentKeys) throws Exception {
+        stepLibrary.retainEndpoints(currentKeys);
+        final List<GherkinSteps.Step> undefined = stepLibrary.claimUndefined();
+        try {
+            generateStepBodies(stepLibrary, null, undefined);
+        } catch (final InterruptedException e) {
+            throw e;
+        } catch (final Exception e) {
+            log.warn("Could not generate {} undefined steps, they stay pending", undefined.size(), e);
+        }
+        final int written = stepLibrary.write(Path.of(stepDefOutputFilePath), stepPackage);
+        for (int i = 0; i < written; i++) {
+            metrics.artifactWritten(GenerationMetrics.STAGE_STEPS);
+        }
+        log.info("Step library {}, {} step classes rewritten", stepLibrary.getStats(), written);
+    }
 
-        result = openAiService.createChatCompletion(request);
-        final String stepText = result.getChoices().get(0).getMessage().getContent();
+    /**
+     * Sends one prompt for all endpoints of a group and returns the answers that could be
+     * split off and validated. An unusable answer is logged and yields nothing, so every
+     * endpoint of the group falls back to its own request.
+     */
+    private Map<String, String> generateBatched(final PipelineItem item,
+                                                final ChatCompletionRequest request,
+                                                final String stage,
+                                                final Predicate<String> valid) throws InterruptedException {
+        final List<String> keys = item.liveTasks().stream().map(EndpointTask::getKey).toList();
+        try {
+            final Map<String, String> answers = MultiEndpointResponse.split(mapper, llmGateway.complete(request, stage), keys, valid);
+            log.info("Generated {} of {} endpoints in one request", answers.size(), keys.size());
+            return answers;
+        } catch (final InterruptedException e) {
+            throw e;
+        } catch (final Exception e) {
+            log.warn("Multi-endpoint request for {} failed, falling back to one request per endpoint", keys, e);
+            return Map.of();
+        }
+    }
 
-        final String stepFile = stepDefOutputFilePath + sanitize(path) + "Steps.java";
-        try (final FileWriter writer = new FileWriter(stepFile)) {
-            writer.write(stepText);
+    /**
+     * Writes {@code batchedAnswer} as the answer to {@code request} when there is one, so
+     * a later single-endpoint run finds it in the cache, and generates it otherwise.
+     */
+    private ArtifactFiles.PartialFile writePartial(final ChatCompletionRequest request,
+                                                   final String batchedAnswer,
+                                                   final Path file,
+                                                   final String stage,
+                                                   final Map<String, CompletionTiming> timings) throws Exception {
+        if (batchedAnswer == null) {
+            return writePartial(request, file, stage, timings);
         }
+        completionCache.put(CompletionCache.keyOf(request), batchedAnswer);
+        try (final ArtifactFiles.PartialFile partial = ArtifactFiles.open(file)) {
+            try {
+                partial.writer().write(batchedAnswer);
+            } catch (final IOException e) {
+                partial.discard();
+                throw e;
+            }
+            return partial;
+        }
+    }
+
+    /**
+     * Expands the per-group outcome of the pipeline into one entry per operation. A group
+     * that failed as a whole fails all of its operations that had not failed already.
+     */
+    private static GenerationReport endpointReport(final int total, final List<PipelineItem> items, final GenerationReport itemReport) {
+        final GenerationReport report = new GenerationReport(total);
+        for (final PipelineItem item : items) {
+            final String groupFailure = itemReport.getFailed().get(item.getKey());
+            for (final EndpointTask task : item.tasks) {
+                final Exception failure = item.failures.get(task.getKey());
+                if (failure != null) {
+                    report.recordFailure(task.getKey(), failure);
+                } else if (groupFailure != null) {
+                    report.recordFailure(task.getKey(), new IllegalStateException(groupFailure));
+                } else {
+                    report.recordSuccess(task.getKey());
+                }
+            }
+        }
+        report.setElapsedMillis(itemReport.getElapsedMillis());
+        report.setStageMetrics(itemReport.getStageMetrics());
+        return report;
     }
 
+    /**
+     * The operations sharing a prompt on their way through the generation pipeline, with
+     * the unpublished artifacts produced so far. Only one stage works on an item at a
+     * time; the stage queues hand it over safely.
+     */
+    private static final class PipelineItem {
+        private final List<EndpointTask> tasks;
+        private final Map<String, ArtifactFiles.PartialFile> features = new HashMap<>();
+        private final Map<String, ArtifactFiles.PartialFile> steps = new HashMap<>();
+        private final Map<String, PromptContextRetriever.References> references = new HashMap<>();
+        private final Map<String, List<GherkinSteps.Step>> featureSteps = new HashMap<>();
+        private final Map<String, Exception> failures = new HashMap<>();
+
+        private PipelineItem(final List<EndpointTask> tasks) {
+            this.tasks = tasks;
+        }
+
+        private String getKey() {
+            return tasks.stream().map(EndpointTask::getKey).collect(Collectors.joining(", "));
+        }
+
+        private List<EndpointTask> liveTasks() {
+            return tasks.stream().filter(task -> !failures.containsKey(task.getKey())).toList();
+        }
 
+        private void attempt(final EndpointTask task, final Step step) throws InterruptedException {
+            try {
+                step.run();
+            } catch (final InterruptedException e) {
+                throw e;
+            } catch (final Exception e) {
+                log.error("Generation failed for {}", task.getKey(), e);
+                failures.put(task.getKey(), e);
+                discard(features.remove(task.getKey()));
+                discard(steps.remove(task.getKey()));
+            }
+        }
+
+        /**
+         * Deletes an artifact of a failed operation that was not published, so no
+         * {@code .partial} file is left behind for it.
+         */
+        private static void discard(final ArtifactFiles.PartialFile partial) {
+            if (partial == null) {
+                return;
+            }
+            try {
+                partial.discard();
+            } catch (final IOException e) {
+                log.warn("Could not delete {}", partial.getPartialPath(), e);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface Step {
+        void run() throws Exception;
+    }
 }
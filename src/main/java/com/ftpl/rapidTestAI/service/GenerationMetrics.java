@@ -0,0 +1,111 @@
+package com.ftpl.rapidTestAI.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timers and counters for every step from spec to artifacts, published as
+ * {@code rapidtest.*} meters through Actuator ({@code /actuator/prometheus}). Timings
+ * are taken with a {@link Timer.Sample} from {@link #start()} and recorded by the
+ * method for the step that finished.
+ */
+@Component
+public class GenerationMetrics {
+
+    public static final String STAGE_FEATURE = "feature";
+    public static final String STAGE_STEPS = "steps";
+    public static final String STAGE_EMBEDDING = "embedding";
+
+    private final MeterRegistry registry;
+
+    public GenerationMetrics(final MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    public Timer.Sample start() {
+        return Timer.start(registry);
+    }
+
+    public void specParsed(final Timer.Sample sample, final boolean success) {
+        sample.stop(Timer.builder("rapidtest.spec.parse")
+                .description("Time to parse an OpenAPI spec")
+                .tag("outcome", outcome(success))
+                .register(registry));
+    }
+
+    public void summaryWritten(final Timer.Sample sample, final int operations) {
+        sample.stop(Timer.builder("rapidtest.summary.write")
+                .description("Time to build and write the operation summary of a spec")
+                .register(registry));
+        registry.counter("rapidtest.summary.operations").increment(operations);
+    }
+
+    public void chunksWritten(final Timer.Sample sample, final int chunks) {
+        sample.stop(Timer.builder("rapidtest.chunks.write")
+                .description("Time to pack the summary into chunk files")
+                .register(registry));
+        registry.counter("rapidtest.chunks.written").increment(chunks);
+    }
+
+    /**
+     * Records one LLM call that was not answered from the cache. The latency timer
+     * publishes a histogram so percentiles can be computed per model and stage.
+     */
+    public void llmCall(final Timer.Sample sample, final String model, final String stage, final boolean success) {
+        sample.stop(Timer.builder("rapidtest.llm.latency")
+                .description("Latency of LLM calls")
+                .tag("model", model)
+                .tag("stage", stage)
+                .tag("outcome", outcome(success))
+                .publishPercentileHistogram()
+                .register(registry));
+    }
+
+    public void llmFirstByte(final long nanos, final String model, final String stage) {
+        Timer.builder("rapidtest.llm.first-byte")
+                .description("Time to the first streamed token of LLM calls")
+                .tag("model", model)
+                .tag("stage", stage)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void llmTokens(final String model, final String stage, final long promptTokens, final long completionTokens) {
+        tokens(model, stage, "prompt").increment(promptTokens);
+        tokens(model, stage, "completion").increment(completionTokens);
+    }
+
+    public void llmCacheHit(final String stage) {
+        registry.counter("rapidtest.llm.cache.hits", "stage", stage).increment();
+    }
+
+    public void artifactWritten(final String kind) {
+        registry.counter("rapidtest.artifacts.written", "kind", kind).increment();
+    }
+
+    public void gitCommand(final Timer.Sample sample, final String command, final int exitCode) {
+        sample.stop(Timer.builder("rapidtest.git.command")
+                .description("Duration of git subprocesses")
+                .tag("command", command)
+                .tag("outcome", outcome(exitCode == 0))
+                .register(registry));
+    }
+
+    private Counter tokens(final String model, final String stage, final String type) {
+        return Counter.builder("rapidtest.llm.tokens")
+                .description("Tokens sent to and received from the LLM; estimated for streamed calls")
+                .tag("model", model)
+                .tag("stage", stage)
+                .tag("type", type)
+                .register(registry);
+    }
+
+    private static String outcome(final boolean success) {
+        return success ? "success" : "failure";
+    }
+}
@@ -0,0 +1,73 @@
+package com.ftpl.rapidTestAI.service;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Outcome of a generation run. Failures are recorded per endpoint so that one bad
+ * endpoint never aborts the rest of the run.
+ */
+@Getter
+public class GenerationReport {
+
+    private final int total;
+    private final List<String> succeeded = Collections.synchronizedList(new ArrayList<>());
+    private final Map<String, String> failed = Collections.synchronizedMap(new TreeMap<>());
+    private long elapsedMillis;
+    private int unchanged;
+    private List<String> removed = List.of();
+    private List<String> impactedOperations = List.of();
+    private List<String> deferred = List.of();
+    private Map<String, CompletionTiming> artifactTimings = Map.of();
+    private Map<String, StageMetrics> stageMetrics = Map.of();
+    private Map<String, Long> stepLibrary = Map.of();
+
+    public GenerationReport(final int total) {
+        this.total = total;
+    }
+
+    void recordSuccess(final String key) {
+        succeeded.add(key);
+    }
+
+    void recordFailure(final String key, final Throwable error) {
+        failed.put(key, error.getClass().getSimpleName() + ": " + error.getMessage());
+    }
+
+    void setElapsedMillis(final long elapsedMillis) {
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    void setUnchanged(final int unchanged) {
+        this.unchanged = unchanged;
+    }
+
+    void setRemoved(final List<String> removed) {
+        this.removed = removed;
+    }
+
+    void setImpactedOperations(final List<String> impactedOperations) {
+        this.impactedOperations = impactedOperations;
+    }
+
+    void setDeferred(final List<String> deferred) {
+        this.deferred = deferred;
+    }
+
+    void setStageMetrics(final Map<String, StageMetrics> stageMetrics) {
+        this.stageMetrics = stageMetrics;
+    }
+
+    void setStepLibrary(final Map<String, Long> stepLibrary) {
+        this.stepLibrary = stepLibrary;
+    }
+
+    void setArtifactTimings(final Map<String, CompletionTiming> artifactTimings) {
+        this.artifactTimings = artifactTimings;
+    }
+}
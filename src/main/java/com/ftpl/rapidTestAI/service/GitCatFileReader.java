@@ -0,0 +1,253 @@
+package com.ftpl.rapidTestAI.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * A long-running {@code git cat-file --batch} process for one repository.
+ * <p>
+ * Objects are requested by name, e.g. {@code <commit>:<path>}, and their content is read
+ * by the exact size git reports, so binary files and line endings come back unchanged.
+ * The requests of a batch are written by a separate thread while the responses are
+ * read, so neither side blocks on a full pipe however many objects are requested. Each
+ * object is handed to the caller as a stream over its bytes, so a batch never holds
+ * more than one object unless the caller keeps them.
+ * <p>
+ * A reader serves one batch at a time. If a batch fails halfway, the process is killed
+ * and the reader reports itself as no longer usable.
+ */
+public class GitCatFileReader implements AutoCloseable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Receives the objects of a batch in request order.
+     */
+    @FunctionalInterface
+    public interface BlobConsumer {
+        /**
+         * @param content the object's bytes, valid only during the call; {@code null}
+         *                when the object does not exist
+         */
+        void accept(String objectName, long size, InputStream content) throws IOException;
+    }
+
+    private final File repository;
+    private final Process process;
+    private final OutputStream requests;
+    private final InputStream responses;
+    private boolean broken;
+
+    public GitCatFileReader(final File repository) throws IOException {
+        this.repository = repository;
+        this.process = new ProcessBuilder("git", "cat-file", "--batch")
+                .directory(repository)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        this.requests = new BufferedOutputStream(process.getOutputStream(), BUFFER_SIZE);
+        this.responses = new BufferedInputStream(process.getInputStream(), BUFFER_SIZE);
+    }
+
+    public synchronized boolean isUsable() {
+        return !broken && process.isAlive();
+    }
+
+    /**
+     * Returns the full object id a revision expression names, or {@code null} when it
+     * does not resolve. Refs are read at the time of the call.
+     */
+    public String resolve(final String revision) throws IOException, InterruptedException {
+        final String[] objectId = new String[1];
+        batch(List.of(revision), (name, header, content) -> objectId[0] = header == null ? null : header.objectId);
+        return objectId[0];
+    }
+
+    /**
+     * Returns the content of one object, or {@code null} when it does not exist.
+     */
+    public byte[] read(final String objectName) throws IOException, InterruptedException {
+        final ByteArrayOutputStream content = new ByteArrayOutputStream();
+        final boolean[] found = new boolean[1];
+        readAll(List.of(objectName), (name, size, stream) -> {
+            if (stream != null) {
+                found[0] = true;
+                stream.transferTo(content);
+            }
+        });
+        return found[0] ? content.toByteArray() : null;
+    }
+
+    /**
+     * Streams many objects through the process in one pass, in request order.
+     */
+    public void readAll(final List<String> objectNames, final BlobConsumer consumer) throws IOException, InterruptedException {
+        batch(objectNames, (name, header, content) -> consumer.accept(name, header == null ? -1 : header.size, content));
+    }
+
+    @Override
+    public synchronized void close() {
+        broken = true;
+        try {
+            requests.close();
+        } catch (final IOException e) {
+            // process already gone
+        }
+        process.destroy();
+    }
+
+    private synchronized void batch(final List<String> objectNames, final ResponseHandler handler) throws IOException, InterruptedException {
+        if (!isUsable()) {
+            throw new IOException("git cat-file for " + repository + " is no longer running");
+        }
+        for (final String objectName : objectNames) {
+            if (objectName.indexOf('\n') >= 0) {
+                throw new IllegalArgumentException("Object names cannot contain a newline: " + objectName);
+            }
+        }
+
+        final FutureTask<Void> writer = new FutureTask<>(() -> {
+            for (final String objectName : objectNames) {
+                requests.write(objectName.getBytes(StandardCharsets.UTF_8));
+                requests.write('\n');
+            }
+            requests.flush();
+            return null;
+        });
+        final Thread writerThread = new Thread(writer, "git-cat-file-requests");
+        writerThread.setDaemon(true);
+        writerThread.start();
+
+        boolean completed = false;
+        try {
+            for (final String objectName : objectNames) {
+                final Header header = Header.parse(readLine());
+                if (header == null) {
+                    handler.accept(objectName, null, null);
+                    continue;
+                }
+                final ObjectStream content = new ObjectStream(responses, header.size);
+                handler.accept(objectName, header, content);
+                content.skipRemaining();
+                if (responses.read() != '\n') {
+                    throw new IOException("Malformed git cat-file response for " + objectName);
+                }
+            }
+            writer.get();
+            completed = true;
+        } catch (final ExecutionException e) {
+            throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+        } finally {
+            if (!completed) {
+                // the stream is somewhere inside a response; it cannot be reused
+                close();
+                writerThread.interrupt();
+            }
+        }
+    }
+
+    private String readLine() throws IOException {
+        final ByteArrayOutputStream line = new ByteArrayOutputStream(80);
+        int b;
+        while ((b = responses.read()) != '\n') {
+            if (b < 0) {
+                throw new IOException("git cat-file for " + repository + " exited");
+            }
+            line.write(b);
+        }
+        return line.toString(StandardCharsets.UTF_8);
+    }
+
+    @FunctionalInterface
+    private interface ResponseHandler {
+        void accept(String objectName, Header header, InputStream content) throws IOException;
+    }
+
+    /**
+     * {@code <oid> <type> <size>}; {@code <name> missing} and {@code <name> ambiguous}
+     * parse to {@code null}.
+     */
+    private record Header(String objectId, String type, long size) {
+        private static Header parse(final String line) throws IOException {
+            final String[] parts = line.split(" ");
+            if (parts.length == 3) {
+                try {
+                    return new Header(parts[0], parts[1], Long.parseLong(parts[2]));
+                } catch (final NumberFormatException e) {
+                    // a name with spaces, reported missing below
+                }
+            }
+            if (line.endsWith(" missing") || line.endsWith(" ambiguous")) {
+                return null;
+            }
+            throw new IOException("Unexpected git cat-file response: " + line);
+        }
+    }
+
+    /**
+     * The bytes of one object inside the response stream. Closing it does not close the
+     * process output.
+     */
+    private static final class ObjectStream extends InputStream {
+        private final InputStream in;
+        private long remaining;
+
+        private ObjectStream(final InputStream in, final long size) {
+            this.in = in;
+            this.remaining = size;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            final int b = in.read();
+            if (b < 0) {
+                throw new IOException("git cat-file output ended inside an object");
+            }
+            remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            final int read = in.read(buffer, offset, (int) Math.min(length, remaining));
+            if (read < 0) {
+                throw new IOException("git cat-file output ended inside an object");
+            }
+            remaining -= read;
+            return read;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), remaining);
+        }
+
+        private void skipRemaining() throws IOException {
+            while (remaining > 0) {
+                final long skipped = in.skip(remaining);
+                if (skipped <= 0) {
+                    if (in.read() < 0) {
+                        throw new IOException("git cat-file output ended inside an object");
+                    }
+                    remaining--;
+                } else {
+                    remaining -= skipped;
+                }
+            }
+        }
+    }
+}
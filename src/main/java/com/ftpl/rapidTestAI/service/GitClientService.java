@@ -1,19 +1,38 @@
 package com.ftpl.rapidTestAI.service;
 
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @Slf4j
 @Component
 public class GitClientService {
 
+    @Autowired
+    private GenerationMetrics metrics;
+
+    // one git cat-file --batch process per repository, started on first use
+    private final Map<String, GitCatFileReader> catFileReaders = new HashMap<>();
+
     public void cloneRepository(final String localRepositoryPath,
                                 final String remoteUrl)
             throws IOException, InterruptedException {
@@ -27,11 +46,13 @@ public class GitClientService {
             localDir.getParentFile().mkdirs();
         }
         final ProcessBuilder processBuilder = new ProcessBuilder("git", "clone", remoteUrl, localRepositoryPath);
+        final Timer.Sample sample = metrics.start();
         final Process process = processBuilder.start();
         logProcessOutput(process);
         // Also log any error output to help diagnose issues
         logProcessError(process);
         final int exitCode = process.waitFor();
+        metrics.gitCommand(sample, "clone", exitCode);
         if (exitCode != 0) {
             throw new IOException("Git clone failed with exit code: " + exitCode + ". Check if the remote URL is correct and you have proper permissions.");
         }
@@ -46,6 +67,7 @@ public class GitClientService {
         final List<String> changedFiles = new ArrayList<>();
         final ProcessBuilder processBuilder = new ProcessBuilder("git", "diff", "--name-only", baseRef, headRef);
         processBuilder.directory(new File(localRepositoryPath));
+        final Timer.Sample sample = metrics.start();
         final Process process = processBuilder.start();
 
         try (final BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
@@ -56,6 +78,7 @@ public class GitClientService {
         }
 
         final int exitCode = process.waitFor();
+        metrics.gitCommand(sample, "diff", exitCode);
         if (exitCode != 0) {
             logProcessError(process);
             throw new IOException("Git diff failed with exit code: " + exitCode);
@@ -86,6 +109,7 @@ public class GitClientService {
         final List<String> changedFiles = new ArrayList<>();
         final ProcessBuilder processBuilder = new ProcessBuilder("git", "diff", "--name-only");
         processBuilder.directory(new File(localRepositoryPath));
+        final Timer.Sample sample = metrics.start();
         final Process process = processBuilder.start();
 
         try (final BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
@@ -96,6 +120,7 @@ public class GitClientService {
         }
 
         final int exitCode = process.waitFor();
+        metrics.gitCommand(sample, "diff", exitCode);
         if (exitCode != 0) {
             try (final BufferedReader errorReader = new BufferedReader(new InputStreamReader(process.getErrorStream()))) {
                 String errorLine;
@@ -114,12 +139,22 @@ public class GitClientService {
                                                           final String headBranch)
             throws IOException, InterruptedException {
         // Ensure we have the latest info from the remote
+        fetchOrigin(localRepositoryPath);
+        return getChangesFromOrigin(localRepositoryPath, baseBranch, headBranch);
+    }
+
+    public void fetchOrigin(final String localRepositoryPath) throws IOException, InterruptedException {
         final ProcessBuilder fetchProcessBuilder = new ProcessBuilder("git", "fetch", "origin");
         fetchProcessBuilder.directory(new File(localRepositoryPath));
+        final Timer.Sample sample = metrics.start();
         final Process fetchProcess = fetchProcessBuilder.start();
-        fetchProcess.waitFor();
-
-        return getChangesFromOrigin(localRepositoryPath, baseBranch, headBranch);
+        logProcessOutput(fetchProcess);
+        final int exitCode = fetchProcess.waitFor();
+        metrics.gitCommand(sample, "fetch", exitCode);
+        if (exitCode != 0) {
+            logProcessError(fetchProcess);
+            throw new IOException("Git fetch failed with exit code: " + exitCode);
+        }
     }
 
     public List<String> getLocalChangesComparedToRemote(final String localRepositoryPath,
@@ -136,6 +171,7 @@ public class GitClientService {
         final ProcessBuilder processBuilder = new ProcessBuilder("git", "diff", "--name-only",
                 "origin/" + baseBranch, "origin/" + headBranch);
         processBuilder.directory(new File(localRepositoryPath));
+        final Timer.Sample sample = metrics.start();
         final Process process = processBuilder.start();
 
         try (final BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
@@ -146,6 +182,7 @@ public class GitClientService {
         }
 
         final int exitCode = process.waitFor();
+        metrics.gitCommand(sample, "diff", exitCode);
         if (exitCode != 0) {
             logProcessError(process);
             throw new IOException("Git diff failed with exit code: " + exitCode);
@@ -154,30 +191,272 @@ public class GitClientService {
         return changedFiles;
     }
 
+    /**
+     * Content of one file at a revision, decoded as UTF-8 with line endings unchanged.
+     */
     public String getFileContentAtRevision(final String localRepositoryPath,
                                            final String filePath,
                                            final String revision)
             throws IOException, InterruptedException {
-        final ProcessBuilder processBuilder = new ProcessBuilder("git", "show", revision + ":" + filePath);
-        processBuilder.directory(new File(localRepositoryPath));
-        final Process process = processBuilder.start();
+        final byte[] content = getFileContentsAtRevision(localRepositoryPath, List.of(filePath), revision).get(filePath);
+        if (content == null) {
+            throw new IOException("Error getting file content for " + filePath + " at revision " + revision + ": no such file");
+        }
+        return new String(content, StandardCharsets.UTF_8);
+    }
 
-        final StringBuilder content = new StringBuilder();
-        try (final BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                content.append(line).append("\n");
+    /**
+     * Exact bytes of many files at a revision, keyed by path in request order. Files
+     * that do not exist at the revision, e.g. because it deletes them, are left out.
+     */
+    public Map<String, byte[]> getFileContentsAtRevision(final String localRepositoryPath,
+                                                         final List<String> filePaths,
+                                                         final String revision)
+            throws IOException, InterruptedException {
+        final Map<String, byte[]> contents = new LinkedHashMap<>();
+        readFilesAtRevision(localRepositoryPath, filePaths, revision, (path, size, content) -> {
+            if (content != null) {
+                contents.put(path, content.readAllBytes());
+            }
+        });
+        return contents;
+    }
+
+    /**
+     * Streams files at a revision through the repository's {@code git cat-file --batch}
+     * process, one file at a time and in request order, so no process is started per
+     * file and only the file being consumed is held in memory. The revision is resolved
+     * to a commit once, so a fetch during the batch cannot mix two states of a branch.
+     */
+    public void readFilesAtRevision(final String localRepositoryPath,
+                                    final List<String> filePaths,
+                                    final String revision,
+                                    final GitCatFileReader.BlobConsumer consumer)
+            throws IOException, InterruptedException {
+        final Timer.Sample sample = metrics.start();
+        boolean success = false;
+        try {
+            final String commit = resolveCommit(localRepositoryPath, revision);
+            final GitCatFileReader reader = catFileReader(localRepositoryPath);
+            final List<String> objectNames = new ArrayList<>(filePaths.size());
+            for (final String filePath : filePaths) {
+                objectNames.add(commit + ":" + filePath);
             }
+            final int pathStart = commit.length() + 1;
+            reader.readAll(objectNames, (objectName, size, content) -> consumer.accept(objectName.substring(pathStart), size, content));
+            success = true;
+        } finally {
+            metrics.gitCommand(sample, "cat-file", success ? 0 : 1);
         }
+    }
 
-        final int exitCode = process.waitFor();
-        if (exitCode != 0) {
-            logProcessError(process);
-            throw new IOException("Error getting file content for " + filePath + " at revision " + revision + " (exit code: " + exitCode + ")");
+    /**
+     * The commit a revision such as {@code origin/main} names, read at the time of the call.
+     */
+    public String resolveCommit(final String localRepositoryPath, final String revision) throws IOException, InterruptedException {
+        final String commit = catFileReader(localRepositoryPath).resolve(revision + "^{commit}");
+        if (commit == null) {
+            throw new IOException("Revision " + revision + " does not name a commit in " + localRepositoryPath);
         }
+        return commit;
+    }
 
-        return content.toString();
+    /**
+     * Blob ids of all files at a revision, keyed by path. Only trees are read, so this
+     * needs no file content even in a blobless clone.
+     */
+    public Map<String, String> listFilesAtRevision(final String localRepositoryPath, final String revision)
+            throws IOException, InterruptedException {
+        final String output = new String(git(localRepositoryPath, "ls-tree", null,
+                "git", "ls-tree", "-r", "-z", "--full-tree", revision), StandardCharsets.UTF_8);
+        final Map<String, String> files = new LinkedHashMap<>();
+        for (final String entry : output.split("\0")) {
+            // <mode> SP <type> SP <object> TAB <path>
+            final int tab = entry.indexOf('\t');
+            final String[] header = tab < 0 ? new String[0] : entry.substring(0, tab).split(" ");
+            if (header.length == 3 && header[1].equals("blob")) {
+                files.put(entry.substring(tab + 1), header[2]);
+            }
+        }
+        return files;
     }
 
+    /**
+     * Fetches the blobs of a commit that a partial clone does not have yet in a single
+     * request. Reading them one by one would start a lazy fetch per blob. Returns the
+     * number of blobs fetched; in a full clone nothing is missing and nothing is fetched.
+     */
+    public int fetchMissingBlobs(final String localRepositoryPath,
+                                 final String commit,
+                                 final Collection<String> blobIds)
+            throws IOException, InterruptedException {
+        if (blobIds.isEmpty()) {
+            return 0;
+        }
+        final String promisor = promisorRemote(localRepositoryPath);
+        if (promisor == null) {
+            return 0;
+        }
+        final Set<String> wanted = new HashSet<>(blobIds);
+        final StringBuilder missing = new StringBuilder();
+        int count = 0;
+        final String objects = new String(git(localRepositoryPath, "rev-list", null,
+                "git", "rev-list", "--objects", "--no-walk", "--missing=print", commit), StandardCharsets.UTF_8);
+        for (final String line : objects.split("\n")) {
+            if (line.startsWith("?") && wanted.contains(line.substring(1).trim())) {
+                missing.append(line.substring(1).trim()).append('\n');
+                count++;
+            }
+        }
+        if (count > 0) {
+            // the same request git makes for a single missing object, with all of them on stdin
+            git(localRepositoryPath, "fetch", missing.toString(),
+                    "git", "-c", "fetch.negotiationAlgorithm=noop", "fetch", "--quiet", promisor, "--no-tags",
+                    "--no-write-fetch-head", "--recurse-submodules=no", "--filter=blob:none", "--stdin");
+            log.info("Fetched {} missing blobs of {} into {}", count, commit, localRepositoryPath);
+        }
+        return count;
+    }
 
+    /**
+     * Like {@link #fetchMissingBlobs}, for files given by path. Call it before reading
+     * many files at a commit of a partial clone.
+     */
+    public int fetchMissingFiles(final String localRepositoryPath,
+                                 final String commit,
+                                 final Collection<String> filePaths)
+            throws IOException, InterruptedException {
+        if (filePaths.isEmpty() || promisorRemote(localRepositoryPath) == null) {
+            return 0;
+        }
+        final Map<String, String> blobs = listFilesAtRevision(localRepositoryPath, commit);
+        final List<String> blobIds = new ArrayList<>(filePaths.size());
+        for (final String filePath : filePaths) {
+            final String blobId = blobs.get(filePath);
+            if (blobId != null) {
+                blobIds.add(blobId);
+            }
+        }
+        return fetchMissingBlobs(localRepositoryPath, commit, blobIds);
+    }
+
+    /**
+     * Stops the {@code git cat-file} process of a repository, if one runs. Call it before
+     * the repository is deleted; a later read starts a new process.
+     */
+    public void closeCatFileReader(final String localRepositoryPath) throws IOException {
+        final String key = new File(localRepositoryPath).getCanonicalPath();
+        final GitCatFileReader reader;
+        synchronized (catFileReaders) {
+            reader = catFileReaders.remove(key);
+        }
+        if (reader != null) {
+            reader.close();
+        }
+    }
+
+    @PreDestroy
+    public void closeCatFileReaders() {
+        final List<GitCatFileReader> readers;
+        synchronized (catFileReaders) {
+            readers = new ArrayList<>(catFileReaders.values());
+            catFileReaders.clear();
+        }
+        readers.forEach(GitCatFileReader::close);
+    }
+
+    // a partial clone marks the remote it was cloned from: remote.<name>.promisor=true
+    private String promisorRemote(final String localRepositoryPath) throws IOException, InterruptedException {
+        final String remotes = new String(git(localRepositoryPath, "config", null, true,
+                "git", "config", "--get-regexp", "^remote\\..*\\.promisor$"), StandardCharsets.UTF_8);
+        for (final String line : remotes.split("\n")) {
+            if (line.endsWith(".promisor true")) {
+                return line.substring("remote.".length(), line.length() - ".promisor true".length());
+            }
+        }
+        return null;
+    }
+
+    private byte[] git(final String localRepositoryPath,
+                       final String name,
+                       final String input,
+                       final String... command) throws IOException, InterruptedException {
+        return git(localRepositoryPath, name, input, false, command);
+    }
+
+    // stdout of a git command; stderr goes to the log. A lookup may exit with 1 for "not found".
+    private byte[] git(final String localRepositoryPath,
+                       final String name,
+                       final String input,
+                       final boolean notFoundIsEmpty,
+                       final String... command) throws IOException, InterruptedException {
+        final Timer.Sample sample = metrics.start();
+        final Process process = new ProcessBuilder(command)
+                .directory(new File(localRepositoryPath))
+                .redirectError(ProcessBuilder.Redirect.PIPE)
+                .start();
+        // drained on its own thread, so git never blocks on a full stderr pipe while stdout is read
+        final ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        final Thread errorDrain = new Thread(() -> {
+            try (final InputStream stderr = process.getErrorStream()) {
+                stderr.transferTo(errors);
+            } catch (final IOException e) {
+                // the process is gone; what was read is all there is
+            }
+        }, "git-" + name + "-stderr");
+        errorDrain.setDaemon(true);
+        errorDrain.start();
+        final byte[] output;
+        final int exitCode;
+        try {
+            try (final OutputStream stdin = process.getOutputStream()) {
+                if (input != null) {
+                    stdin.write(input.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            output = process.getInputStream().readAllBytes();
+            exitCode = process.waitFor();
+            errorDrain.join();
+        } finally {
+            process.destroy();
+        }
+        metrics.gitCommand(sample, name, exitCode);
+        if (notFoundIsEmpty && exitCode == 1) {
+            return new byte[0];
+        }
+        if (exitCode != 0) {
+            for (final String line : errors.toString(StandardCharsets.UTF_8).split("\n")) {
+                if (!line.isBlank()) {
+                    log.error("Git Error: {}", line);
+                }
+            }
+            throw new IOException("Git " + name + " failed with exit code: " + exitCode);
+        }
+        return output;
+    }
+
+    private GitCatFileReader catFileReader(final String localRepositoryPath) throws IOException {
+        final File repository = new File(localRepositoryPath).getCanonicalFile();
+        final String key = repository.getPath();
+        final List<GitCatFileReader> stale = new ArrayList<>();
+        try {
+            synchronized (catFileReaders) {
+                // readers of repositories that were deleted without closeCatFileReader
+                catFileReaders.entrySet().removeIf(entry -> !new File(entry.getKey()).isDirectory() && stale.add(entry.getValue()));
+                final GitCatFileReader existing = catFileReaders.get(key);
+                if (existing != null && existing.isUsable()) {
+                    return existing;
+                }
+                if (existing != null) {
+                    log.warn("git cat-file for {} stopped, starting a new one", key);
+                    stale.add(existing);
+                }
+                final GitCatFileReader reader = new GitCatFileReader(repository);
+                catFileReaders.put(key, reader);
+                return reader;
+            }
+        } finally {
+            stale.forEach(GitCatFileReader::close);
+        }
+    }
 }
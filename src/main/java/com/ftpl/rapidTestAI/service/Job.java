@@ -0,0 +1,89 @@
+package com.ftpl.rapidTestAI.service;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Getter;
+
+import java.time.Instant;
+import java.util.concurrent.Future;
+
+/**
+ * A unit of work queued on the {@link JobService}. State changes are synchronized on
+ * the job; once a job reaches a final status it never changes again.
+ */
+@Getter
+public class Job {
+
+    public enum Status {
+        QUEUED, RUNNING, SUCCEEDED, FAILED, CANCELLED;
+
+        public boolean isFinished() {
+            return this == SUCCEEDED || this == FAILED || this == CANCELLED;
+        }
+    }
+
+    private final String id;
+    private final String type;
+    private final Instant submittedAt = Instant.now();
+    private volatile Status status = Status.QUEUED;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile int completed;
+    private volatile int total;
+    private volatile Object result;
+    private volatile String error;
+
+    @JsonIgnore
+    private volatile Future<?> future;
+
+    Job(final String id, final String type) {
+        this.id = id;
+        this.type = type;
+    }
+
+    void setFuture(final Future<?> future) {
+        this.future = future;
+    }
+
+    synchronized boolean start() {
+        if (status != Status.QUEUED) {
+            return false;
+        }
+        status = Status.RUNNING;
+        startedAt = Instant.now();
+        return true;
+    }
+
+    synchronized void progress(final int completed, final int total) {
+        this.completed = completed;
+        this.total = total;
+    }
+
+    synchronized boolean succeed(final Object result) {
+        if (status.isFinished()) {
+            return false;
+        }
+        this.result = result;
+        return finish(Status.SUCCEEDED);
+    }
+
+    synchronized boolean fail(final Throwable error) {
+        if (status.isFinished()) {
+            return false;
+        }
+        this.error = error.getClass().getSimpleName() + ": " + error.getMessage();
+        return finish(Status.FAILED);
+    }
+
+    synchronized boolean cancel() {
+        if (status.isFinished()) {
+            return false;
+        }
+        return finish(Status.CANCELLED);
+    }
+
+    private boolean finish(final Status finalStatus) {
+        status = finalStatus;
+        finishedAt = Instant.now();
+        return true;
+    }
+}
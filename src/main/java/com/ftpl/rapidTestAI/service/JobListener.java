@@ -0,0 +1,7 @@
+package com.ftpl.rapidTestAI.service;
+
+@FunctionalInterface
+public interface JobListener {
+
+    void onUpdate(Job job);
+}
@@ -0,0 +1,12 @@
+package com.ftpl.rapidTestAI.service;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.TOO_MANY_REQUESTS)
+public class JobQueueFullException extends RuntimeException {
+
+    public JobQueueFullException(final int capacity) {
+        super("Job queue is full (" + capacity + " jobs waiting), retry later");
+    }
+}
@@ -0,0 +1,187 @@
+package com.ftpl.rapidTestAI.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs long operations off the request thread. Jobs wait in a bounded queue for one of
+ * a fixed number of workers; when the queue is full, {@link #submit} fails fast with
+ * {@link JobQueueFullException} instead of letting work pile up. Finished jobs are kept
+ * for the retention period so their status and result can still be polled.
+ */
+@Slf4j
+@Component
+public class JobService {
+
+    private final ThreadPoolExecutor executor;
+    private final int queueCapacity;
+    private final Duration retention;
+
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    private final Map<String, List<JobListener>> listeners = new ConcurrentHashMap<>();
+
+    public JobService(@Value("${rapid-test-ai.jobs.workers:2}") final int workers,
+                      @Value("${rapid-test-ai.jobs.queue-capacity:16}") final int queueCapacity,
+                      @Value("${rapid-test-ai.jobs.retention:1h}") final Duration retention) {
+        if (workers <= 0 || queueCapacity <= 0) {
+            throw new IllegalArgumentException("workers and queueCapacity must be positive");
+        }
+        this.queueCapacity = queueCapacity;
+        this.retention = retention;
+        final AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    final Thread thread = new Thread(runnable, "job-worker-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    public Job submit(final String type, final JobTask task) {
+        purgeExpired();
+        final Job job = new Job(UUID.randomUUID().toString(), type);
+        jobs.put(job.getId(), job);
+        try {
+            job.setFuture(executor.submit(() -> execute(job, task)));
+        } catch (final RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            throw new JobQueueFullException(queueCapacity);
+        }
+        log.info("Queued {} job {} ({} waiting)", type, job.getId(), executor.getQueue().size());
+        return job;
+    }
+
+    public Optional<Job> get(final String id) {
+        return Optional.ofNullable(jobs.get(id));
+    }
+
+    public List<Job> list() {
+        final List<Job> all = new ArrayList<>(jobs.values());
+        all.sort(Comparator.comparing(Job::getSubmittedAt));
+        return all;
+    }
+
+    /**
+     * Cancels a job. A queued job is dropped from the queue; a running job is
+     * interrupted and ends as soon as its work reacts to the interrupt.
+     */
+    public Optional<Job> cancel(final String id) {
+        final Job job = jobs.get(id);
+        if (job == null) {
+            return Optional.empty();
+        }
+        if (job.cancel()) {
+            final Future<?> future = job.getFuture();
+            if (future != null) {
+                future.cancel(true);
+                executor.remove((Runnable) future);
+            }
+            log.info("Cancelled {} job {}", job.getType(), id);
+            notifyListeners(job);
+        }
+        return Optional.of(job);
+    }
+
+    /**
+     * Registers a listener for state and progress changes of a job. A listener added to a
+     * job that has already finished is called once right away.
+     */
+    public boolean addListener(final String id, final JobListener listener) {
+        final Job job = jobs.get(id);
+        if (job == null) {
+            return false;
+        }
+        listeners.computeIfAbsent(id, key -> new CopyOnWriteArrayList<>()).add(listener);
+        if (job.getStatus().isFinished()) {
+            notifyListeners(job);
+        }
+        return true;
+    }
+
+    public void removeListener(final String id, final JobListener listener) {
+        final List<JobListener> jobListeners = listeners.get(id);
+        if (jobListeners != null) {
+            jobListeners.remove(listener);
+        }
+    }
+
+    public int getQueuedJobs() {
+        return executor.getQueue().size();
+    }
+
+    public int getActiveJobs() {
+        return executor.getActiveCount();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void execute(final Job job, final JobTask task) {
+        if (!job.start()) {
+            return;
+        }
+        notifyListeners(job);
+        try {
+            final Object result = task.run((completed, total) -> {
+                job.progress(completed, total);
+                notifyListeners(job);
+            });
+            if (job.succeed(result)) {
+                log.info("{} job {} succeeded", job.getType(), job.getId());
+            }
+        } catch (final InterruptedException e) {
+            job.cancel();
+            Thread.currentThread().interrupt();
+        } catch (final Exception e) {
+            if (job.fail(e)) {
+                log.error("{} job {} failed", job.getType(), job.getId(), e);
+            }
+        }
+        notifyListeners(job);
+    }
+
+    private void notifyListeners(final Job job) {
+        final List<JobListener> jobListeners = job.getStatus().isFinished()
+                ? listeners.remove(job.getId())
+                : listeners.get(job.getId());
+        if (jobListeners == null) {
+            return;
+        }
+        for (final JobListener listener : jobListeners) {
+            try {
+                listener.onUpdate(job);
+            } catch (final RuntimeException e) {
+                log.warn("Job listener failed for {}, removing it", job.getId(), e);
+                jobListeners.remove(listener);
+            }
+        }
+    }
+
+    private void purgeExpired() {
+        final Instant cutoff = Instant.now().minus(retention);
+        jobs.values().removeIf(job -> job.getStatus().isFinished() && job.getFinishedAt().isBefore(cutoff));
+    }
+}
@@ -0,0 +1,10 @@
+package com.ftpl.rapidTestAI.service;
+
+/**
+ * Work run by a {@link Job}. The returned value becomes the job result.
+ */
+@FunctionalInterface
+public interface JobTask {
+
+    Object run(ProgressListener progress) throws Exception;
+}
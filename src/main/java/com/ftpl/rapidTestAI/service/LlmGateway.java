@@ -0,0 +1,196 @@
+package com.ftpl.rapidTestAI.service;
+
+import com.ftpl.rapidTestAI.utils.TokenEstimator;
+import com.theokanning.openai.Usage;
+import com.theokanning.openai.completion.chat.ChatCompletionChunk;
+import com.theokanning.openai.completion.chat.ChatCompletionRequest;
+import com.theokanning.openai.completion.chat.ChatCompletionResult;
+import com.theokanning.openai.completion.chat.ChatMessage;
+import com.theokanning.openai.embedding.Embedding;
+import com.theokanning.openai.embedding.EmbeddingRequest;
+import com.theokanning.openai.embedding.EmbeddingResult;
+import com.theokanning.openai.service.OpenAiService;
+import io.micrometer.core.instrument.Timer;
+import io.reactivex.disposables.Disposable;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Single entry point for chat completions. Answers are served from the
+ * {@link CompletionCache} when the exact same request was made before; otherwise the
+ * call is admitted through the {@link LlmRequestScheduler} so that concurrent
+ * generation stays inside the configured requests-per-minute and tokens-per-minute
+ * budgets.
+ */
+@Slf4j
+@Component
+public class LlmGateway {
+
+    @Autowired
+    private OpenAiService openAiService;
+
+    @Autowired
+    private LlmRequestScheduler scheduler;
+
+    @Autowired
+    private CompletionCache completionCache;
+
+    @Autowired
+    private GenerationMetrics metrics;
+
+    @Value("${rapid-test-ai.llm.expected-completion-tokens:1500}")
+    private int expectedCompletionTokens;
+
+    /**
+     * Completes {@code request}. {@code stage} names the pipeline step the call belongs
+     * to, for the latency and token metrics.
+     */
+    public String complete(final ChatCompletionRequest request, final String stage) throws InterruptedException {
+        final String cacheKey = CompletionCache.keyOf(request);
+        final String cached = completionCache.get(cacheKey);
+        if (cached != null) {
+            log.debug("Completion cache hit for {}", cacheKey);
+            metrics.llmCacheHit(stage);
+            return cached;
+        }
+
+        final int estimatedTokens = TokenEstimator.estimate(request) + expectedCompletionTokens;
+        scheduler.acquire(estimatedTokens);
+
+        final Timer.Sample sample = metrics.start();
+        final ChatCompletionResult result;
+        try {
+            result = openAiService.createChatCompletion(request);
+        } catch (final RuntimeException e) {
+            metrics.llmCall(sample, request.getModel(), stage, false);
+            throw e;
+        }
+        metrics.llmCall(sample, request.getModel(), stage, true);
+        final Usage usage = result.getUsage();
+        if (usage != null) {
+            scheduler.reconcile(estimatedTokens, usage.getTotalTokens());
+            metrics.llmTokens(request.getModel(), stage, usage.getPromptTokens(), usage.getCompletionTokens());
+        }
+        final String content = result.getChoices().get(0).getMessage().getContent();
+        completionCache.put(cacheKey, content);
+        return content;
+    }
+
+    /**
+     * Embeds {@code texts} in one request, returning the vectors in the order of the
+     * texts. Embedding requests share the request and token budgets with completions and
+     * are not cached.
+     */
+    public List<float[]> embed(final String model, final List<String> texts) throws InterruptedException {
+        final int estimatedTokens = texts.stream().mapToInt(TokenEstimator::estimate).sum();
+        scheduler.acquire(estimatedTokens);
+
+        final Timer.Sample sample = metrics.start();
+        final EmbeddingResult result;
+        try {
+            result = openAiService.createEmbeddings(EmbeddingRequest.builder().model(model).input(texts).build());
+        } catch (final RuntimeException e) {
+            metrics.llmCall(sample, model, GenerationMetrics.STAGE_EMBEDDING, false);
+            throw e;
+        }
+        metrics.llmCall(sample, model, GenerationMetrics.STAGE_EMBEDDING, true);
+        final Usage usage = result.getUsage();
+        if (usage != null) {
+            scheduler.reconcile(estimatedTokens, usage.getTotalTokens());
+            metrics.llmTokens(model, GenerationMetrics.STAGE_EMBEDDING, usage.getPromptTokens(), 0);
+        }
+        final float[][] vectors = new float[texts.size()][];
+        for (final Embedding embedding : result.getData()) {
+            final List<Double> values = embedding.getEmbedding();
+            final float[] vector = new float[values.size()];
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] = values.get(i).floatValue();
+            }
+            vectors[embedding.getIndex()] = vector;
+        }
+        return Arrays.asList(vectors);
+    }
+
+    /**
+     * Streams the completion into {@code sink} as the deltas arrive instead of waiting
+     * for the whole answer. A cached answer is written in one go. The stream carries no
+     * usage, so the token bucket is reconciled from the length of the streamed text.
+     */
+    public CompletionTiming stream(final ChatCompletionRequest request, final Writer sink, final String stage) throws InterruptedException, IOException {
+        final long start = System.nanoTime();
+        final String cacheKey = CompletionCache.keyOf(request);
+        final String cached = completionCache.get(cacheKey);
+        if (cached != null) {
+            log.debug("Completion cache hit for {}", cacheKey);
+            metrics.llmCacheHit(stage);
+            sink.write(cached);
+            final long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+            return new CompletionTiming(elapsedMillis, elapsedMillis, cached.length());
+        }
+
+        final int promptTokens = TokenEstimator.estimate(request);
+        final int estimatedTokens = promptTokens + expectedCompletionTokens;
+        scheduler.acquire(estimatedTokens);
+
+        // the cache needs the whole answer; without it nothing but the sink holds the text
+        final StringBuilder content = completionCache.isEnabled() ? new StringBuilder() : null;
+        long firstByteNanos = -1;
+        long characters = 0;
+        final Timer.Sample sample = metrics.start();
+        boolean success = false;
+        final Iterator<ChatCompletionChunk> chunks = openAiService.streamChatCompletion(request).blockingIterable().iterator();
+        try {
+            while (chunks.hasNext()) {
+                final String delta = deltaOf(chunks.next());
+                if (delta == null || delta.isEmpty()) {
+                    continue;
+                }
+                if (firstByteNanos < 0) {
+                    firstByteNanos = System.nanoTime();
+                    metrics.llmFirstByte(firstByteNanos - start, request.getModel(), stage);
+                }
+                sink.write(delta);
+                characters += delta.length();
+                if (content != null) {
+                    content.append(delta);
+                }
+            }
+            success = true;
+        } catch (final RuntimeException e) {
+            if (e.getCause() instanceof InterruptedException) {
+                throw (InterruptedException) e.getCause();
+            }
+            throw e;
+        } finally {
+            if (chunks instanceof Disposable) {
+                ((Disposable) chunks).dispose();
+            }
+            metrics.llmCall(sample, request.getModel(), stage, success);
+        }
+        final int completionTokens = TokenEstimator.estimate(characters);
+        scheduler.reconcile(estimatedTokens, promptTokens + completionTokens);
+        metrics.llmTokens(request.getModel(), stage, promptTokens, completionTokens);
+
+        if (content != null) {
+            completionCache.put(cacheKey, content.toString());
+        }
+        final long end = System.nanoTime();
+        return new CompletionTiming(((firstByteNanos < 0 ? end : firstByteNanos) - start) / 1_000_000, (end - start) / 1_000_000, characters);
+    }
+
+    private static String deltaOf(final ChatCompletionChunk chunk) {
+        if (chunk.getChoices() == null || chunk.getChoices().isEmpty()) {
+            return null;
+        }
+        final ChatMessage delta = chunk.getChoices().get(0).getMessage();
+        return delta != null ? delta.getContent() : null;
+    }
+}
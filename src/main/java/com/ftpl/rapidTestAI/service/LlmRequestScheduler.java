@@ -0,0 +1,89 @@
+package com.ftpl.rapidTestAI.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Admission control for LLM calls. Two token buckets, one for requests and one for
+ * tokens, refill continuously at the configured per-minute rates; a caller blocks in
+ * {@link #acquire(int)} until both buckets can cover its request.
+ */
+@Slf4j
+@Component
+public class LlmRequestScheduler {
+
+    private static final double NANOS_PER_MINUTE = TimeUnit.MINUTES.toNanos(1);
+
+    private final int requestsPerMinute;
+    private final int tokensPerMinute;
+
+    private double availableRequests;
+    private double availableTokens;
+    private long lastRefillNanos;
+
+    public LlmRequestScheduler(@Value("${rapid-test-ai.llm.requests-per-minute:500}") final int requestsPerMinute,
+                               @Value("${rapid-test-ai.llm.tokens-per-minute:200000}") final int tokensPerMinute) {
+        if (requestsPerMinute <= 0 || tokensPerMinute <= 0) {
+            throw new IllegalArgumentException("Rate limits must be positive");
+        }
+        this.requestsPerMinute = requestsPerMinute;
+        this.tokensPerMinute = tokensPerMinute;
+        this.availableRequests = requestsPerMinute;
+        this.availableTokens = tokensPerMinute;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * Blocks until one request and {@code estimatedTokens} tokens are available, then
+     * debits both buckets. Requests larger than the whole per-minute token budget are
+     * clamped so they can still run once the bucket is full.
+     */
+    public synchronized void acquire(final int estimatedTokens) throws InterruptedException {
+        final double tokens = Math.min(Math.max(estimatedTokens, 0), tokensPerMinute);
+        while (true) {
+            refill();
+            if (availableRequests >= 1 && availableTokens >= tokens) {
+                availableRequests -= 1;
+                availableTokens -= tokens;
+                return;
+            }
+            final double requestDeficit = Math.max(0, 1 - availableRequests);
+            final double tokenDeficit = Math.max(0, tokens - availableTokens);
+            final double waitNanos = Math.max(
+                    requestDeficit * NANOS_PER_MINUTE / requestsPerMinute,
+                    tokenDeficit * NANOS_PER_MINUTE / tokensPerMinute);
+            final long waitMillis = Math.max(1, (long) Math.ceil(waitNanos / 1_000_000d));
+            log.debug("Rate limit reached, waiting {} ms for {} tokens", waitMillis, (long) tokens);
+            wait(waitMillis);
+        }
+    }
+
+    /**
+     * Corrects the token bucket once the real usage of a call is known. Over-use is
+     * carried as debt so that later callers wait for it to be paid back.
+     */
+    public synchronized void reconcile(final int estimatedTokens, final long actualTokens) {
+        refill();
+        availableTokens = Math.min(tokensPerMinute, availableTokens + estimatedTokens - actualTokens);
+        notifyAll();
+    }
+
+    public int getRequestsPerMinute() {
+        return requestsPerMinute;
+    }
+
+    public int getTokensPerMinute() {
+        return tokensPerMinute;
+    }
+
+    private void refill() {
+        final long now = System.nanoTime();
+        final double elapsed = now - lastRefillNanos;
+        lastRefillNanos = now;
+        availableRequests = Math.min(requestsPerMinute, availableRequests + elapsed * requestsPerMinute / NANOS_PER_MINUTE);
+        availableTokens = Math.min(tokensPerMinute, availableTokens + elapsed * tokensPerMinute / NANOS_PER_MINUTE);
+    }
+}
@@ -0,0 +1,59 @@
+package com.ftpl.rapidTestAI.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Splits the answer to a multi-endpoint prompt, a JSON object keyed by
+ * {@code "METHOD path"}, into one artifact per endpoint. Models tend to wrap JSON in a
+ * markdown fence or add a sentence around it, so only the outermost object of the answer
+ * is parsed. Entries that are missing, not a string or rejected by {@code valid} are left
+ * out; the caller generates those endpoints one at a time.
+ */
+@Slf4j
+final class MultiEndpointResponse {
+
+    private MultiEndpointResponse() {
+    }
+
+    static Map<String, String> split(final ObjectMapper mapper,
+                                     final String answer,
+                                     final Collection<String> keys,
+                                     final Predicate<String> valid) throws JsonProcessingException {
+        final int start = answer.indexOf('{');
+        final int end = answer.lastIndexOf('}');
+        if (start < 0 || end < start) {
+            throw new IllegalArgumentException("Answer holds no JSON object");
+        }
+        final JsonNode object = mapper.readTree(answer.substring(start, end + 1));
+
+        final Map<String, String> artifacts = new LinkedHashMap<>();
+        for (final String key : keys) {
+            final JsonNode value = object.get(key);
+            if (value != null && value.isTextual() && valid.test(value.asText())) {
+                artifacts.put(key, value.asText());
+            }
+        }
+
+        if (artifacts.size() < keys.size()) {
+            log.warn("Multi-endpoint answer is missing or has invalid entries for {} of {} endpoints",
+                    keys.size() - artifacts.size(), keys.size());
+        }
+        final Iterator<String> fields = object.fieldNames();
+        while (fields.hasNext()) {
+            final String field = fields.next();
+            if (!keys.contains(field)) {
+                log.debug("Ignoring unexpected endpoint {} in multi-endpoint answer", field);
+            }
+        }
+        return artifacts;
+    }
+}
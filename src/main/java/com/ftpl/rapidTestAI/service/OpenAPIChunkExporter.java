@@ -1,61 +1,289 @@
 package com.ftpl.rapidTestAI.service;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.ftpl.rapidTestAI.utils.BinPacker;
+import com.ftpl.rapidTestAI.utils.OperationFingerprint;
+import com.ftpl.rapidTestAI.utils.OperationManifest;
+import com.ftpl.rapidTestAI.utils.TokenEstimator;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Splits the summary into chunk files sized by estimated tokens rather than by
+ * operation count. Chunks are assembled from byte ranges of the summary file.
+ * Operations are packed first-fit-decreasing against the token budget; an operation
+ * that alone exceeds the budget is split into parts by response code.
+ */
 @Slf4j
 @Component
 public class OpenAPIChunkExporter {
 
-    private static final int CHUNK_SIZE = 5; // You can adjust based on your token budget
-    private static final String CHUNK_DIR = "chunks";
+    public static final String PART_FIELD = "part";
 
-    public void OpenAPISummarizedFileToChunks(final String summarizedFilePath) {
-        try {
-            final File inputFile = new File(summarizedFilePath);
-            final File chunkDir = new File(CHUNK_DIR);
-            if (!chunkDir.exists()) {
-                chunkDir.mkdirs();
-            }
+    private static final Map<Path, Object> DIRECTORY_LOCKS = new ConcurrentHashMap<>();
 
+    @Autowired
+    private GenerationMetrics metrics;
 
-            final ObjectMapper mapper = new ObjectMapper();
-            final JsonNode rootNode = mapper.readTree(inputFile);
+    @Value("${rapid-test-ai.chunk.directory:chunks}")
+    private String chunkDirectory = "chunks";
 
-            if (!rootNode.isArray()) {
+    @Value("${rapid-test-ai.chunk.token-budget:6000}")
+    private int tokenBudget = 6000;
+
+    /**
+     * Cuts chunks from an existing summary file. The file is read one operation at a
+     * time to record the byte range of each operation; it is never held in memory whole.
+     */
+    public void OpenAPISummarizedFileToChunks(final String summarizedFilePath) {
+        final File inputFile = new File(summarizedFilePath);
+        final ObjectMapper mapper = new ObjectMapper();
+        final List<SummaryEntry> entries = new ArrayList<>();
+        try (final JsonParser parser = mapper.getFactory().createParser(inputFile)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
                 log.error("Invalid JSON format: expected an array");
                 return;
             }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                final long start = parser.currentTokenLocation().getByteOffset();
+                final JsonNode operation = parser.readValueAsTree();
+                final long end = parser.currentLocation().getByteOffset();
+                entries.add(new SummaryEntry(entries.size(), operationKey(operation), fingerprintOf(operation),
+                        start, (int) (end - start), estimateTokens(mapper, operation)));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        writeChunks(inputFile, entries);
+    }
 
-            final ArrayNode array = (ArrayNode) rootNode;
-            final int total = array.size();
-            final int chunkCount = (int) Math.ceil(total / (double) CHUNK_SIZE);
+    /**
+     * Packs the operations of a summary file into chunk files and writes the chunk
+     * manifest. Operation bytes are copied straight from the summary file; only
+     * operations that must be split by response code are parsed. Exports into the same
+     * chunk directory run one at a time, so the directory always holds the chunks and
+     * manifest of a single export; the last one wins.
+     */
+    public void writeChunks(final File summaryFile, final List<SummaryEntry> entries) {
+        final File chunkDir = new File(chunkDirectory);
+        synchronized (DIRECTORY_LOCKS.computeIfAbsent(chunkDir.toPath().toAbsolutePath().normalize(), dir -> new Object())) {
+            writeChunks(summaryFile, entries, chunkDir);
+        }
+    }
 
-            for (int i = 0; i < chunkCount; i++) {
-                final int start = i * CHUNK_SIZE;
-                final int end = Math.min(start + CHUNK_SIZE, total);
+    private void writeChunks(final File summaryFile, final List<SummaryEntry> entries, final File chunkDir) {
+        if (!chunkDir.exists()) {
+            chunkDir.mkdirs();
+        }
+        deleteStaleChunks(chunkDir);
 
-                final ArrayNode chunk = mapper.createArrayNode();
-                for (int j = start; j < end; j++) {
-                    chunk.add(array.get(j));
+        final Timer.Sample sample = metrics.start();
+        final ObjectMapper mapper = new ObjectMapper();
+        try (final FileChannel summary = FileChannel.open(summaryFile.toPath(), StandardOpenOption.READ)) {
+            final List<PackedOperation> operations = new ArrayList<>();
+            for (final SummaryEntry entry : entries) {
+                if (entry.getTokens() > tokenBudget) {
+                    final ObjectNode operation = (ObjectNode) mapper.readTree(readSpan(summary, entry));
+                    operations.addAll(splitByResponseCode(mapper, operation, entry, operations.size()));
+                } else {
+                    operations.add(new PackedOperation(operations.size(), entry.getKey(), entry.getFingerprint(), entry.getTokens(), entry, null));
                 }
+            }
+
+            final List<List<PackedOperation>> bins = BinPacker.firstFitDecreasing(operations, PackedOperation::tokens, tokenBudget);
+            final OperationManifest manifest = new OperationManifest();
 
-                final String chunkFilename = "chunks/openapi_chunk_" + (i + 1) + ".json";
-                try (final BufferedWriter writer = new BufferedWriter(new FileWriter(chunkFilename))) {
-                    writer.write(mapper.writerWithDefaultPrettyPrinter().writeValueAsString(chunk));
+            for (int i = 0; i < bins.size(); i++) {
+                final List<PackedOperation> bin = bins.get(i);
+                // keep spec order inside a chunk so related operations stay together
+                bin.sort(Comparator.comparingInt(PackedOperation::order));
+
+                final String chunkName = "openapi_chunk_" + (i + 1) + ".json";
+                final OperationManifest.ChunkInfo chunkInfo = new OperationManifest.ChunkInfo();
+                for (final PackedOperation packed : bin) {
+                    chunkInfo.setEstimatedTokens(chunkInfo.getEstimatedTokens() + packed.tokens());
+                    chunkInfo.getOperations().add(packed.key());
+                    manifest.getOperations().put(packed.key(), new OperationManifest.Entry(packed.fingerprint(), chunkName));
                 }
+                manifest.getChunks().put(chunkName, chunkInfo);
+
+                final File chunkFilename = new File(chunkDir, chunkName);
+                writeChunk(mapper, summary, bin, chunkFilename);
 
-                log.info("✅ Wrote chunk {} to {}", i + 1, chunkFilename);
+                log.info("✅ Wrote chunk {} to {} (~{} tokens, {} operations)",
+                        i + 1, chunkFilename, chunkInfo.getEstimatedTokens(), bin.size());
             }
+
+            manifest.write(new File(chunkDir, OperationManifest.CHUNK_MANIFEST));
+            metrics.chunksWritten(sample, bins.size());
+            log.info("✅ Wrote manifest for {} operations in {} chunks", manifest.getOperations().size(), bins.size());
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
+
+    private static void writeChunk(final ObjectMapper mapper,
+                                   final FileChannel summary,
+                                   final List<PackedOperation> bin,
+                                   final File chunkFile) throws IOException {
+        try (final FileChannel out = FileChannel.open(chunkFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeAscii(out, "[\n");
+            for (int i = 0; i < bin.size(); i++) {
+                if (i > 0) {
+                    writeAscii(out, ",\n");
+                }
+                final PackedOperation packed = bin.get(i);
+                if (packed.node() != null) {
+                    out.write(ByteBuffer.wrap(mapper.writerWithDefaultPrettyPrinter().writeValueAsBytes(packed.node())));
+                } else {
+                    long position = packed.span().getOffset();
+                    long remaining = packed.span().getLength();
+                    while (remaining > 0) {
+                        final long transferred = summary.transferTo(position, remaining, out);
+                        if (transferred <= 0) {
+                            throw new IOException("Summary file ended inside " + packed.key());
+                        }
+                        position += transferred;
+                        remaining -= transferred;
+                    }
+                }
+            }
+            writeAscii(out, "\n]\n");
+        }
+    }
+
+    private static byte[] readSpan(final FileChannel summary, final SummaryEntry entry) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(entry.getLength());
+        while (buffer.hasRemaining()) {
+            if (summary.read(buffer, entry.getOffset() + buffer.position()) < 0) {
+                throw new IOException("Summary file ended inside " + entry.getKey());
+            }
+        }
+        return buffer.array();
+    }
+
+    private static void writeAscii(final FileChannel out, final String text) throws IOException {
+        out.write(ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    public void setChunkDirectory(final String chunkDirectory) {
+        this.chunkDirectory = chunkDirectory;
+    }
+
+    public void setTokenBudget(final int tokenBudget) {
+        this.tokenBudget = tokenBudget;
+    }
+
+    /**
+     * Key of an operation node, {@code "METHOD path"}, with {@code "#n"} appended for
+     * the n-th part of an operation that was split by response code.
+     */
+    public static String operationKey(final JsonNode operation) {
+        final String key = operation.get("method").asText().toUpperCase() + " " + operation.get("path").asText();
+        final JsonNode part = operation.get(PART_FIELD);
+        return part != null ? key + "#" + part.asInt() : key;
+    }
+
+    public static String fingerprintOf(final JsonNode operation) {
+        final JsonNode fingerprint = operation.get(OperationFingerprint.FIELD);
+        return fingerprint != null ? fingerprint.asText() : OperationFingerprint.of(operation);
+    }
+
+    /**
+     * Distributes the responses of an oversized operation over as few parts as fit the
+     * budget, each part carrying the rest of the operation unchanged. A single response
+     * that is larger than the budget still ends up in a part of its own.
+     */
+    private List<PackedOperation> splitByResponseCode(final ObjectMapper mapper,
+                                                      final ObjectNode operation,
+                                                      final SummaryEntry entry,
+                                                      final int order) throws JsonProcessingException {
+        final JsonNode responses = operation.get("responses");
+        if (responses == null || responses.size() < 2) {
+            log.warn("{} exceeds the chunk token budget and cannot be split further", entry.getKey());
+            return List.of(new PackedOperation(order, entry.getKey(), entry.getFingerprint(), entry.getTokens(), entry, null));
+        }
+
+        // placeholders so the base estimate covers the fields every part gets
+        final ObjectNode base = operation.deepCopy();
+        base.remove("responses");
+        base.put(PART_FIELD, responses.size());
+        base.put("parts", responses.size());
+        base.put(OperationFingerprint.FIELD, fingerprintOf(operation));
+        base.putObject("responses");
+        final int baseTokens = estimateTokens(mapper, base);
+
+        final List<ObjectNode> groups = new ArrayList<>();
+        ObjectNode current = mapper.createObjectNode();
+        int currentTokens = baseTokens;
+        final Iterator<Map.Entry<String, JsonNode>> responseEntries = responses.fields();
+        while (responseEntries.hasNext()) {
+            final Map.Entry<String, JsonNode> response = responseEntries.next();
+            // key, quotes, colon and separator
+            final int responseTokens = TokenEstimator.estimate(response.getKey()) + 2 + estimateTokens(mapper, response.getValue());
+            if (!current.isEmpty() && currentTokens + responseTokens > tokenBudget) {
+                groups.add(current);
+                current = mapper.createObjectNode();
+                currentTokens = baseTokens;
+            }
+            current.set(response.getKey(), response.getValue());
+            currentTokens += responseTokens;
+        }
+        groups.add(current);
+
+        final List<PackedOperation> parts = new ArrayList<>();
+        for (int i = 0; i < groups.size(); i++) {
+            final ObjectNode part = base.deepCopy();
+            part.put(PART_FIELD, i + 1);
+            part.put("parts", groups.size());
+            part.set("responses", groups.get(i));
+            part.put(OperationFingerprint.FIELD, OperationFingerprint.of(part));
+            parts.add(new PackedOperation(order + i, operationKey(part), fingerprintOf(part), estimateTokens(mapper, part), null, part));
+        }
+        log.info("Split {} into {} parts by response code", entry.getKey(), parts.size());
+        return parts;
+    }
+
+    private static int estimateTokens(final ObjectMapper mapper, final JsonNode node) throws JsonProcessingException {
+        return TokenEstimator.estimate(mapper.writeValueAsString(node));
+    }
+
+    // A smaller spec produces fewer chunks; leftovers from a previous run would otherwise
+    // be picked up as live operations by the generator.
+    private static void deleteStaleChunks(final File chunkDir) {
+        final File[] stale = chunkDir.listFiles((dir, name) -> name.startsWith("openapi_chunk_") && name.endsWith(".json"));
+        if (stale == null) {
+            return;
+        }
+        for (final File file : stale) {
+            if (!file.delete()) {
+                log.warn("Could not delete stale chunk {}", file);
+            }
+        }
+    }
+
+    /**
+     * An operation to pack: either a byte range of the summary file or, for parts of a
+     * split operation, the part node itself.
+     */
+    private record PackedOperation(int order, String key, String fingerprint, int tokens, SummaryEntry span, JsonNode node) {
+    }
 }
@@ -0,0 +1,181 @@
+package com.ftpl.rapidTestAI.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.ftpl.rapidTestAI.utils.TokenEstimator;
+import io.swagger.v3.core.util.Json;
+import io.swagger.v3.oas.models.OpenAPI;
+import io.swagger.v3.oas.models.Operation;
+import io.swagger.v3.oas.models.PathItem;
+import io.swagger.v3.oas.models.security.SecurityRequirement;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Cuts an OpenAPI document down to what a single operation needs: the operation itself,
+ * its path-level parameters, the transitive {@code $ref} closure over
+ * {@code components} (schemas, parameters, request bodies, responses, headers, ...) and
+ * the security schemes it requires. The slice is rendered as compact JSON for prompts.
+ */
+@Slf4j
+@Component
+public class OpenAPIContextSlicer {
+
+    private static final String COMPONENTS_PREFIX = "#/components/";
+
+    private final ObjectMapper mapper = Json.mapper();
+
+    @Autowired
+    private OpenAPISpecCache specCache;
+
+    public String slice(final OpenAPI openAPI, final String path, final PathItem.HttpMethod method) {
+        final PathItem pathItem = openAPI.getPaths().get(path);
+        final Operation operation = pathItem.readOperationsMap().get(method);
+        if (operation == null) {
+            throw new IllegalArgumentException("No " + method + " operation for " + path);
+        }
+
+        final ObjectNode slice = mapper.createObjectNode();
+        slice.put("openapi", openAPI.getOpenapi());
+        if (openAPI.getInfo() != null) {
+            slice.set("info", mapper.valueToTree(openAPI.getInfo()));
+        }
+        if (openAPI.getServers() != null) {
+            slice.set("servers", mapper.valueToTree(openAPI.getServers()));
+        }
+
+        final ObjectNode pathNode = mapper.createObjectNode();
+        if (pathItem.getParameters() != null && !pathItem.getParameters().isEmpty()) {
+            pathNode.set("parameters", mapper.valueToTree(pathItem.getParameters()));
+        }
+        pathNode.set(method.name().toLowerCase(), mapper.valueToTree(operation));
+        slice.putObject("paths").set(path, pathNode);
+
+        final List<SecurityRequirement> security = operation.getSecurity() != null ? operation.getSecurity() : openAPI.getSecurity();
+        if (operation.getSecurity() == null && security != null) {
+            slice.set("security", mapper.valueToTree(security));
+        }
+
+        final ObjectNode components = resolveComponents(openAPI, pathNode, security);
+        if (!components.isEmpty()) {
+            slice.set("components", components);
+        }
+
+        try {
+            return mapper.writeValueAsString(slice);
+        } catch (final JsonProcessingException e) {
+            throw new IllegalStateException("Unable to render context slice for " + method + " " + path, e);
+        }
+    }
+
+    /**
+     * Token cost of the full spec as it used to be embedded in every prompt, against the
+     * slice for each operation.
+     */
+    public List<ContextSliceReport> report(final OpenAPI openAPI) {
+        final int fullSpecTokens;
+        try {
+            fullSpecTokens = TokenEstimator.estimate(new ObjectMapper().writerWithDefaultPrettyPrinter().writeValueAsString(openAPI));
+        } catch (final JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+
+        final List<ContextSliceReport> reports = new ArrayList<>();
+        for (final Map.Entry<String, PathItem> pathEntry : openAPI.getPaths().entrySet()) {
+            for (final PathItem.HttpMethod method : pathEntry.getValue().readOperationsMap().keySet()) {
+                final String slice = slice(openAPI, pathEntry.getKey(), method);
+                reports.add(new ContextSliceReport(method + " " + pathEntry.getKey(), fullSpecTokens, TokenEstimator.estimate(slice)));
+            }
+        }
+        return reports;
+    }
+
+    private ObjectNode resolveComponents(final OpenAPI openAPI,
+                                         final JsonNode pathNode,
+                                         final List<SecurityRequirement> security) {
+        final ObjectNode components = mapper.createObjectNode();
+        if (openAPI.getComponents() == null) {
+            return components;
+        }
+        final JsonNode sourceTree = specCache.componentsTree(openAPI);
+
+        final Set<String> seen = new HashSet<>();
+        final Deque<JsonNode> pending = new ArrayDeque<>();
+        pending.push(pathNode);
+
+        if (security != null) {
+            for (final SecurityRequirement requirement : security) {
+                for (final String scheme : requirement.keySet()) {
+                    pending.push(include(components, sourceTree, "securitySchemes", scheme, seen));
+                }
+            }
+        }
+
+        while (!pending.isEmpty()) {
+            final JsonNode node = pending.pop();
+            for (final String ref : collectRefs(node)) {
+                if (!ref.startsWith(COMPONENTS_PREFIX)) {
+                    continue;
+                }
+                final String[] parts = ref.substring(COMPONENTS_PREFIX.length()).split("/", 2);
+                if (parts.length == 2) {
+                    pending.push(include(components, sourceTree, parts[0], parts[1], seen));
+                }
+            }
+        }
+        return components;
+    }
+
+    private static JsonNode include(final ObjectNode components,
+                                    final JsonNode sourceTree,
+                                    final String type,
+                                    final String name,
+                                    final Set<String> seen) {
+        if (!seen.add(type + "/" + name)) {
+            return components.missingNode();
+        }
+        final JsonNode component = sourceTree.path(type).path(name);
+        if (component.isMissingNode()) {
+            log.warn("Unresolvable reference #/components/{}/{}", type, name);
+            return component;
+        }
+        final ObjectNode typeNode = components.has(type) ? (ObjectNode) components.get(type) : components.putObject(type);
+        typeNode.set(name, component);
+        return component;
+    }
+
+    private static List<String> collectRefs(final JsonNode node) {
+        final List<String> refs = new ArrayList<>();
+        final Deque<JsonNode> stack = new ArrayDeque<>();
+        stack.push(node);
+        while (!stack.isEmpty()) {
+            final JsonNode current = stack.pop();
+            if (current.isObject()) {
+                final Iterator<Map.Entry<String, JsonNode>> fields = current.fields();
+                while (fields.hasNext()) {
+                    final Map.Entry<String, JsonNode> field = fields.next();
+                    if ("$ref".equals(field.getKey()) && field.getValue().isTextual()) {
+                        refs.add(field.getValue().asText());
+                    } else {
+                        stack.push(field.getValue());
+                    }
+                }
+            } else if (current.isArray()) {
+                current.forEach(stack::push);
+            }
+        }
+        return refs;
+    }
+}
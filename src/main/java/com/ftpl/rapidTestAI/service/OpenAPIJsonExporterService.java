@@ -5,69 +5,147 @@ import io.swagger.v3.oas.models.examples.Example;
 import io.swagger.v3.oas.models.media.*;
 import io.swagger.v3.oas.models.responses.*;
 import io.swagger.v3.oas.models.security.*;
-import io.swagger.v3.parser.OpenAPIV3Parser;
+import io.micrometer.core.instrument.Timer;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ftpl.rapidTestAI.utils.OperationFingerprint;
+import com.ftpl.rapidTestAI.utils.TokenEstimator;
 import com.fasterxml.jackson.databind.node.*;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.io.File;
-import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 @Slf4j
 @Component
 public class OpenAPIJsonExporterService {
 
+    private static final int WINDOW_PER_THREAD = 4;
+
     @Autowired
     private OpenAPIChunkExporter chunkExporter;
 
+    @Autowired
+    private GenerationMetrics metrics;
+
+    @Autowired
+    private OpenAPISpecCache specCache;
+
+    @Value("${rapid-test-ai.summary.max-ref-depth:32}")
+    private int maxRefDepth = 32;
+
+    // threads summarizing paths; 0 uses one per available processor
+    @Value("${rapid-test-ai.summary.parallelism:0}")
+    private int parallelism = 0;
 
     public void parseOpenAPIJsonToSummary(final String specFilePath,
-                                          final String outputFilePath) {
+                                          final String outputFilePath) throws IOException, InterruptedException {
+        parseOpenAPIJsonToSummary(specFilePath, outputFilePath, ProgressListener.NONE);
+    }
+
+    /**
+     * Writes the summary and its chunks, reporting progress per path of the spec.
+     *
+     * @throws IllegalArgumentException when the spec cannot be parsed
+     * @throws IOException when the summary cannot be written
+     * @throws InterruptedException when interrupted; the summary is then incomplete
+     */
+    public void parseOpenAPIJsonToSummary(final String specFilePath,
+                                          final String outputFilePath,
+                                          final ProgressListener progress) throws IOException, InterruptedException {
         final File specFile = new File(specFilePath);
-        final OpenAPI openAPI = new OpenAPIV3Parser().read(specFile.getAbsolutePath());
+        final OpenAPI openAPI = specCache.get(specFile.getAbsolutePath());
 
         if (openAPI == null) {
-            log.info("Failed to parse OpenAPI spec.");
-            return;
+            throw new IllegalArgumentException("Failed to parse OpenAPI spec " + specFilePath);
         }
 
         final ObjectMapper mapper = new ObjectMapper();
-        final ArrayNode endpointsArray = mapper.createArrayNode();
-
-        for (final Map.Entry<String, PathItem> pathEntry : openAPI.getPaths().entrySet()) {
-            final String path = pathEntry.getKey();
-            final PathItem item = pathEntry.getValue();
-
-            addOperation(openAPI, endpointsArray, mapper, "GET", path, item.getGet());
-            addOperation(openAPI, endpointsArray, mapper, "POST", path, item.getPost());
-            addOperation(openAPI, endpointsArray, mapper, "PUT", path, item.getPut());
-            addOperation(openAPI, endpointsArray, mapper, "DELETE", path, item.getDelete());
-            addOperation(openAPI, endpointsArray, mapper, "PATCH", path, item.getPatch());
+        final SchemaResolver schemaResolver = new SchemaResolver(mapper, openAPI, maxRefDepth);
+
+        // Paths are summarized in parallel, at most a window of them ahead of the writer.
+        // Each operation is written as soon as its path is done, in spec order, so the
+        // summary never exists in memory as a whole and does not depend on the number of
+        // threads; chunks are then cut from the file by byte range.
+        final File outputFile = new File(outputFilePath + "openapi_summary.json");
+        final List<SummaryEntry> entries;
+        final int totalPaths = openAPI.getPaths().size();
+        int completedPaths = 0;
+        final int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        final ForkJoinPool pool = new ForkJoinPool(threads);
+        final Deque<Future<List<SummarizedOperation>>> window = new ArrayDeque<>();
+        final Timer.Sample summary = metrics.start();
+        try (final SummaryStreamWriter writer = new SummaryStreamWriter(mapper, outputFile)) {
+            final Iterator<Map.Entry<String, PathItem>> paths = openAPI.getPaths().entrySet().iterator();
+            while (paths.hasNext() || !window.isEmpty()) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException("Summary of " + specFilePath + " interrupted after "
+                            + completedPaths + " of " + totalPaths + " paths");
+                }
+                if (paths.hasNext() && window.size() < threads * WINDOW_PER_THREAD) {
+                    final Map.Entry<String, PathItem> pathEntry = paths.next();
+                    window.add(pool.submit(() -> summarizePath(schemaResolver, mapper, pathEntry.getKey(), pathEntry.getValue())));
+                    continue;
+                }
+                for (final SummarizedOperation operation : window.poll().get()) {
+                    writer.write(operation.node(), operation.tokens());
+                }
+                progress.onProgress(++completedPaths, totalPaths);
+            }
+            entries = writer.getEntries();
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException("Summarizing " + specFilePath + " failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
         }
 
-        // Output as formatted JSON string
-        final String outputFileName = outputFilePath + "openapi_summary.json";
-        try {
-            final String jsonOutput = mapper.writerWithDefaultPrettyPrinter().writeValueAsString(endpointsArray);
-            final FileWriter writer = new FileWriter(outputFileName);
-            writer.write(jsonOutput);
-            writer.close();
-        } catch (final Exception e) {
-            log.error("error while writing the output file in parseOpenAPIJsonToSummary function", e);
-            e.printStackTrace();
-        }
+        metrics.summaryWritten(summary, entries.size());
+        log.info("✅ JSON summary of {} operations written to openapi_summary.json with {} threads", entries.size(), threads);
+        log.info("Schema resolution: {}", schemaResolver.getStats());
 
-        log.info("✅ JSON summary written to openapi_summary.json");
+        chunkExporter.writeChunks(outputFile, entries);
+    }
 
-        chunkExporter.OpenAPISummarizedFileToChunks(outputFileName);
+    /**
+     * Builds the operations of one path in method order. Runs on a pool thread; the
+     * schema resolver is shared and thread-safe, every other node is created here.
+     */
+    private static List<SummarizedOperation> summarizePath(final SchemaResolver schemaResolver,
+                                                           final ObjectMapper mapper,
+                                                           final String path,
+                                                           final PathItem item) throws IOException {
+        final List<SummarizedOperation> operations = new ArrayList<>(5);
+        addOperation(operations, mapper, buildOperation(schemaResolver, mapper, "GET", path, item.getGet()));
+        addOperation(operations, mapper, buildOperation(schemaResolver, mapper, "POST", path, item.getPost()));
+        addOperation(operations, mapper, buildOperation(schemaResolver, mapper, "PUT", path, item.getPut()));
+        addOperation(operations, mapper, buildOperation(schemaResolver, mapper, "DELETE", path, item.getDelete()));
+        addOperation(operations, mapper, buildOperation(schemaResolver, mapper, "PATCH", path, item.getPatch()));
+        return operations;
     }
 
-    private static void addOperation(final OpenAPI openAPI, final ArrayNode array, final ObjectMapper mapper, final String method, final String path, final Operation op) {
-        if (op == null) return;
+    private static void addOperation(final List<SummarizedOperation> operations, final ObjectMapper mapper, final ObjectNode operationNode) throws IOException {
+        if (operationNode != null) {
+            operations.add(new SummarizedOperation(operationNode, TokenEstimator.estimate(mapper.writeValueAsString(operationNode))));
+        }
+    }
+
+    private static ObjectNode buildOperation(final SchemaResolver schemaResolver, final ObjectMapper mapper, final String method, final String path, final Operation op) {
+        if (op == null) return null;
 
         final ObjectNode operationNode = mapper.createObjectNode();
         operationNode.put("method", method);
@@ -81,7 +159,7 @@ public class OpenAPIJsonExporterService {
             final ObjectNode requestBody = mapper.createObjectNode();
             for (final Map.Entry<String, MediaType> entry : op.getRequestBody().getContent().entrySet()) {
                 final ObjectNode mediaTypeNode = mapper.createObjectNode();
-                mediaTypeNode.set("schema", schemaToJson(mapper, entry.getValue().getSchema(), openAPI));
+                mediaTypeNode.set("schema", schemaResolver.toJson(entry.getValue().getSchema()));
                 mediaTypeNode.set("examples", exampleToJson(mapper, entry.getValue()));
                 requestBody.set(entry.getKey(), mediaTypeNode);
             }
@@ -99,7 +177,7 @@ public class OpenAPIJsonExporterService {
                     final ObjectNode contentNode = mapper.createObjectNode();
                     for (final Map.Entry<String, MediaType> media : respEntry.getValue().getContent().entrySet()) {
                         final ObjectNode mediaNode = mapper.createObjectNode();
-                        mediaNode.set("schema", schemaToJson(mapper, media.getValue().getSchema(), openAPI));
+                        mediaNode.set("schema", schemaResolver.toJson(media.getValue().getSchema()));
                         mediaNode.set("examples", exampleToJson(mapper, media.getValue()));
                         contentNode.set(media.getKey(), mediaNode);
                     }
@@ -124,7 +202,8 @@ public class OpenAPIJsonExporterService {
             operationNode.set("security", securityArray);
         }
 
-        array.add(operationNode);
+        operationNode.put(OperationFingerprint.FIELD, OperationFingerprint.of(operationNode));
+        return operationNode;
     }
 
     private static ObjectNode schemaToJson(final ObjectMapper mapper, final Schema<?> schema) {
@@ -142,91 +221,6 @@ public class OpenAPIJsonExporterService {
         return schemaNode;
     }
 
-    private static ObjectNode schemaToJson(final ObjectMapper mapper, final Schema<?> schema, final OpenAPI openAPI) {
-        final ObjectNode schemaNode = mapper.createObjectNode();
-        if (schema == null) return schemaNode;
-
-        // Handle $ref
-        if (schema.get$ref() != null) {
-            final String refName = schema.get$ref().replace("#/components/schemas/", "");
-            final Schema<?> refSchema = openAPI.getComponents().getSchemas().get(refName);
-            if (refSchema != null) {
-                schemaNode.put("ref", refName);
-                final ObjectNode resolved = schemaToJson(mapper, refSchema, openAPI);
-                schemaNode.set("resolved", resolved);
-            }
-            return schemaNode;
-        }
-
-        // Type
-        if (schema.getType() != null) {
-            schemaNode.put("type", schema.getType());
-        }
-
-        // Description
-        if (schema.getDescription() != null) {
-            schemaNode.put("description", schema.getDescription());
-        }
-
-        // Required fields
-        if (schema.getRequired() != null && !schema.getRequired().isEmpty()) {
-            final ArrayNode requiredArray = mapper.createArrayNode();
-            for (final String req : schema.getRequired()) {
-                requiredArray.add(req);
-            }
-            schemaNode.set("required", requiredArray);
-        }
-
-        // Properties
-        if (schema.getProperties() != null) {
-            final ObjectNode props = mapper.createObjectNode();
-            for (final Map.Entry<String, Schema> prop : schema.getProperties().entrySet()) {
-                final ObjectNode propNode = schemaToJson(mapper, prop.getValue(), openAPI);
-                // Add property description (if available)
-                if (prop.getValue().getDescription() != null) {
-                    propNode.put("description", prop.getValue().getDescription());
-                }
-                props.set(prop.getKey(), propNode);
-            }
-            schemaNode.set("properties", props);
-        }
-
-        // Items (for arrays)
-        if (schema.getItems() != null) {
-            schemaNode.set("items", schemaToJson(mapper, schema.getItems(), openAPI));
-        }
-
-        // allOf
-        if (schema.getAllOf() != null && !schema.getAllOf().isEmpty()) {
-            final ArrayNode allOfArray = mapper.createArrayNode();
-            for (final Schema<?> s : schema.getAllOf()) {
-                allOfArray.add(schemaToJson(mapper, s, openAPI));
-            }
-            schemaNode.set("allOf", allOfArray);
-        }
-
-        // anyOf
-        if (schema.getAnyOf() != null && !schema.getAnyOf().isEmpty()) {
-            final ArrayNode anyOfArray = mapper.createArrayNode();
-            for (final Schema<?> s : schema.getAnyOf()) {
-                anyOfArray.add(schemaToJson(mapper, s, openAPI));
-            }
-            schemaNode.set("anyOf", anyOfArray);
-        }
-
-        // oneOf
-        if (schema.getOneOf() != null && !schema.getOneOf().isEmpty()) {
-            final ArrayNode oneOfArray = mapper.createArrayNode();
-            for (final Schema<?> s : schema.getOneOf()) {
-                oneOfArray.add(schemaToJson(mapper, s, openAPI));
-            }
-            schemaNode.set("oneOf", oneOfArray);
-        }
-
-        return schemaNode;
-    }
-
-
     private static ObjectNode exampleToJson(final ObjectMapper mapper, final MediaType media) {
         final ObjectNode exampleNode = mapper.createObjectNode();
         if (media.getExample() != null) {
@@ -244,4 +238,7 @@ public class OpenAPIJsonExporterService {
     private static String safe(final String s) {
         return s == null ? "" : s;
     }
+
+    private record SummarizedOperation(ObjectNode node, int tokens) {
+    }
 }
@@ -0,0 +1,307 @@
+package com.ftpl.rapidTestAI.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.micrometer.core.instrument.Timer;
+import io.swagger.v3.core.util.Json;
+import io.swagger.v3.oas.models.OpenAPI;
+import io.swagger.v3.parser.OpenAPIV3Parser;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Parsed OpenAPI models shared by summarization, generation and context slicing, so a
+ * spec is parsed once rather than on every request.
+ * <p>
+ * Entries are keyed by the canonical path of the spec file. An entry is served while
+ * the file's modification time and size are unchanged; otherwise the content hash
+ * decides whether the spec has to be parsed again. Concurrent requests for a spec that
+ * is being parsed wait for that parse instead of starting their own. The cache is an
+ * LRU bounded by entry count and by the total size of the cached spec files, which
+ * stands in for the size of the parsed models. Files the spec references through
+ * external {@code $ref}s are not tracked; {@link #invalidate} drops an entry after such
+ * a file changed.
+ * <p>
+ * Next to each model the cache keeps its {@code components} as a JSON tree, converted
+ * on first use, for slicing. Cached models and trees are shared between requests and
+ * must not be mutated.
+ */
+@Slf4j
+@Component
+public class OpenAPISpecCache {
+
+    private final boolean enabled;
+    private final int maxEntries;
+    private final long maxSpecBytes;
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, CompletableFuture<OpenAPI>> loading = new ConcurrentHashMap<>();
+    private long specBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong unchangedContentHits = new AtomicLong();
+    private final AtomicLong sharedLoads = new AtomicLong();
+    private final AtomicLong parses = new AtomicLong();
+    private final AtomicLong parseFailures = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    @Autowired
+    private GenerationMetrics metrics;
+
+    public OpenAPISpecCache(@Value("${rapid-test-ai.spec-cache.enabled:true}") final boolean enabled,
+                            @Value("${rapid-test-ai.spec-cache.max-entries:16}") final int maxEntries,
+                            @Value("${rapid-test-ai.spec-cache.max-spec-bytes:67108864}") final long maxSpecBytes) {
+        this.enabled = enabled;
+        this.maxEntries = maxEntries;
+        this.maxSpecBytes = maxSpecBytes;
+    }
+
+    /**
+     * Returns the parsed spec, or {@code null} when it cannot be parsed, as
+     * {@link OpenAPIV3Parser#read} does. Failed parses are not cached. Locations that are
+     * not regular files, such as URLs, are parsed on every call.
+     */
+    public OpenAPI get(final String specLocation) {
+        final File specFile = new File(specLocation);
+        if (!enabled || !specFile.isFile()) {
+            return parse(specLocation);
+        }
+
+        final Path path;
+        final FileStamp stamp;
+        try {
+            path = specFile.toPath().toRealPath();
+            stamp = FileStamp.of(path);
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Unable to read spec " + specLocation, e);
+        }
+        final String key = path.toString();
+
+        synchronized (this) {
+            final Entry entry = entries.get(key);
+            if (entry != null && entry.stamp.equals(stamp)) {
+                hits.incrementAndGet();
+                return entry.openAPI;
+            }
+        }
+
+        final CompletableFuture<OpenAPI> load = new CompletableFuture<>();
+        final CompletableFuture<OpenAPI> running = loading.putIfAbsent(key, load);
+        if (running != null) {
+            sharedLoads.incrementAndGet();
+            return await(running, key);
+        }
+        try {
+            final OpenAPI openAPI = load(key, path);
+            load.complete(openAPI);
+            return openAPI;
+        } catch (final RuntimeException e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, load);
+        }
+    }
+
+    /**
+     * The {@code components} of {@code openAPI} as a JSON tree, converted once per cached
+     * spec. Specs this cache does not hold are converted on every call.
+     */
+    public JsonNode componentsTree(final OpenAPI openAPI) {
+        Entry cached = null;
+        synchronized (this) {
+            for (final Entry entry : entries.values()) {
+                if (entry.openAPI == openAPI) {
+                    cached = entry;
+                    break;
+                }
+            }
+        }
+        if (cached == null) {
+            return Json.mapper().valueToTree(openAPI.getComponents());
+        }
+        JsonNode tree = cached.componentsTree;
+        if (tree == null) {
+            // converting twice under a race is harmless; both trees are equal
+            tree = Json.mapper().valueToTree(openAPI.getComponents());
+            cached.componentsTree = tree;
+        }
+        return tree;
+    }
+
+    /**
+     * Drops the cached model of one spec file, so the next request parses it again.
+     */
+    public synchronized boolean invalidate(final String specLocation) {
+        String key = specLocation;
+        try {
+            key = new File(specLocation).toPath().toRealPath().toString();
+        } catch (final IOException e) {
+            // file is gone; its entry can only be under the path as given
+        }
+        final Entry removed = entries.remove(key);
+        if (removed == null) {
+            return false;
+        }
+        specBytes -= removed.stamp.size;
+        invalidations.incrementAndGet();
+        log.info("Invalidated cached spec {}", key);
+        return true;
+    }
+
+    public synchronized int invalidateAll() {
+        final int removed = entries.size();
+        entries.clear();
+        specBytes = 0;
+        invalidations.addAndGet(removed);
+        log.info("Invalidated {} cached specs", removed);
+        return removed;
+    }
+
+    public Map<String, Long> getStats() {
+        final Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("hits", hits.get());
+        stats.put("unchangedContentHits", unchangedContentHits.get());
+        stats.put("sharedLoads", sharedLoads.get());
+        stats.put("parses", parses.get());
+        stats.put("parseFailures", parseFailures.get());
+        stats.put("evictions", evictions.get());
+        stats.put("invalidations", invalidations.get());
+        synchronized (this) {
+            stats.put("entries", (long) entries.size());
+            stats.put("specBytes", specBytes);
+        }
+        stats.put("loading", (long) loading.size());
+        return stats;
+    }
+
+    private OpenAPI load(final String key, final Path path) {
+        // stamp before hashing, so a write racing with the hash leaves a stale stamp behind, not a stale model
+        final FileStamp stamp;
+        final byte[] hash;
+        try {
+            stamp = FileStamp.of(path);
+            hash = sha256(path);
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Unable to read spec " + path, e);
+        }
+
+        synchronized (this) {
+            final Entry entry = entries.get(key);
+            if (entry != null && Arrays.equals(entry.hash, hash)) {
+                // touched or rewritten with the same content
+                specBytes += stamp.size - entry.stamp.size;
+                final Entry touched = new Entry(entry.openAPI, stamp, hash);
+                touched.componentsTree = entry.componentsTree;
+                entries.put(key, touched);
+                unchangedContentHits.incrementAndGet();
+                return entry.openAPI;
+            }
+        }
+
+        final OpenAPI openAPI = parse(path.toString());
+        if (openAPI == null) {
+            return null;
+        }
+        synchronized (this) {
+            final Entry previous = entries.put(key, new Entry(openAPI, stamp, hash));
+            specBytes += stamp.size - (previous != null ? previous.stamp.size : 0);
+            evictOverLimits(key);
+        }
+        return openAPI;
+    }
+
+    private OpenAPI parse(final String specLocation) {
+        final Timer.Sample sample = metrics.start();
+        final OpenAPI openAPI = new OpenAPIV3Parser().read(specLocation);
+        metrics.specParsed(sample, openAPI != null);
+        parses.incrementAndGet();
+        if (openAPI == null) {
+            parseFailures.incrementAndGet();
+        }
+        return openAPI;
+    }
+
+    private void evictOverLimits(final String keep) {
+        final Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || specBytes > maxSpecBytes) && eldest.hasNext()) {
+            final Map.Entry<String, Entry> entry = eldest.next();
+            if (entry.getKey().equals(keep)) {
+                // a single spec over the byte limit is still kept; the next one evicts it
+                continue;
+            }
+            eldest.remove();
+            specBytes -= entry.getValue().stamp.size;
+            evictions.incrementAndGet();
+            log.info("Evicted cached spec {}", entry.getKey());
+        }
+    }
+
+    private static OpenAPI await(final CompletableFuture<OpenAPI> load, final String key) {
+        try {
+            return load.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting for spec " + key);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException("Parsing spec " + key + " failed", e.getCause());
+        }
+    }
+
+    private static byte[] sha256(final Path path) throws IOException {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        try (final InputStream in = new DigestInputStream(Files.newInputStream(path), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        return digest.digest();
+    }
+
+    private record FileStamp(long modifiedMillis, long size) {
+        private static FileStamp of(final Path path) throws IOException {
+            return new FileStamp(Files.getLastModifiedTime(path).toMillis(), Files.size(path));
+        }
+    }
+
+    private static final class Entry {
+        private final OpenAPI openAPI;
+        private final FileStamp stamp;
+        private final byte[] hash;
+        private volatile JsonNode componentsTree;
+
+        private Entry(final OpenAPI openAPI, final FileStamp stamp, final byte[] hash) {
+            this.openAPI = openAPI;
+            this.stamp = stamp;
+            this.hash = hash;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.ftpl.rapidTestAI.service;
+
+/**
+ * Receives progress of a long-running operation as completed units out of a total.
+ */
+@FunctionalInterface
+public interface ProgressListener {
+
+    ProgressListener NONE = (completed, total) -> {
+    };
+
+    void onProgress(int completed, int total);
+}
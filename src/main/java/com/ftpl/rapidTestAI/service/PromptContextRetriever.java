@@ -0,0 +1,323 @@
+package com.ftpl.rapidTestAI.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import com.ftpl.rapidTestAI.utils.DiskBackedEmbeddingStore;
+import com.ftpl.rapidTestAI.utils.DiskBackedEmbeddingStore.StoredEmbedding;
+import com.ftpl.rapidTestAI.utils.HnswEmbeddingStore;
+import com.ftpl.rapidTestAI.utils.HnswIndex;
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Retrieves existing material relevant to an endpoint for its prompts: step definition
+ * classes already in the test project, whose steps the generated ones should reuse, and
+ * schemas of the API the endpoint's own context does not include.
+ * <p>
+ * {@link #index} ingests every step definition class ({@code .java} files declaring
+ * {@code @Given}, {@code @When} or {@code @Then} steps) and every schema under
+ * {@code components.schemas} of the JSON and YAML specs under a directory into a
+ * {@link DiskBackedEmbeddingStore}, which embeds only the segments it does not hold yet,
+ * also across restarts. The live rows are searched through one {@link HnswEmbeddingStore}
+ * per kind, so that neither search walks the other kind's nodes; each index call adds
+ * the new rows to those graphs and removes the rows that are gone. Each endpoint then
+ * costs one query embedding and two approximate searches.
+ */
+@Slf4j
+@Component
+public class PromptContextRetriever {
+
+    public static final String KIND = "kind";
+    public static final String KIND_STEP = "step";
+    public static final String KIND_SCHEMA = "schema";
+    public static final String SOURCE = "source";
+    public static final String NAME = "name";
+
+    /**
+     * Texts of the retrieved schemas and step definition classes, most relevant first.
+     */
+    public record References(List<String> schemas, List<String> stepDefinitions) {
+
+        public static final References NONE = new References(List.of(), List.of());
+    }
+
+    @Autowired
+    private LlmGateway llmGateway;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ObjectMapper yamlMapper = new ObjectMapper(new YAMLFactory());
+
+    @Value("${rapid-test-ai.retrieval.enabled:false}")
+    private boolean enabled;
+
+    @Value("${rapid-test-ai.retrieval.embedding-model:text-embedding-3-small}")
+    private String embeddingModel = "text-embedding-3-small";
+
+    @Value("${rapid-test-ai.retrieval.top-k:3}")
+    private int topK = 3;
+
+    @Value("${rapid-test-ai.retrieval.batch-size:64}")
+    private int batchSize = 64;
+
+    @Value("${rapid-test-ai.retrieval.max-chars:6000}")
+    private int maxChars = 6000;
+
+    @Value("${rapid-test-ai.retrieval.hnsw.m:16}")
+    private int m = 16;
+
+    @Value("${rapid-test-ai.retrieval.hnsw.ef-construction:200}")
+    private int efConstruction = 200;
+
+    @Value("${rapid-test-ai.retrieval.hnsw.ef-search:64}")
+    private int efSearch = 64;
+
+    @Value("${rapid-test-ai.retrieval.store-directory:.rapid-test-ai/retrieval}")
+    private String storeDirectory = ".rapid-test-ai/retrieval";
+
+    // opened by the first index call; guarded by this
+    private DiskBackedEmbeddingStore corpus;
+    // id -> kind of every row in the HNSW indexes; guarded by this
+    private final Map<String, String> indexedKinds = new HashMap<>();
+    // kind -> index of the segments of that kind
+    private volatile Map<String, HnswEmbeddingStore> stores;
+
+    private final AtomicLong indexedSegments = new AtomicLong();
+    private final AtomicLong embeddedSegments = new AtomicLong();
+    private final AtomicLong reusedSegments = new AtomicLong();
+    private final AtomicLong retrievals = new AtomicLong();
+    private final AtomicLong retrievalNanos = new AtomicLong();
+
+    /**
+     * Brings the index up to date with the step definitions and schemas under
+     * {@code referencePath} and returns how many it holds. Segments already embedded with
+     * the same text are reused; the HNSW graphs gain only the rows that were added, and a
+     * graph is rebuilt from the stored vectors once most of its nodes have been removed.
+     */
+    public synchronized int index(final String referencePath) throws IOException, InterruptedException {
+        final List<TextSegment> segments = new ArrayList<>();
+        try (final Stream<Path> files = Files.walk(Paths.get(referencePath))) {
+            for (final Path file : files.filter(Files::isRegularFile).sorted().toList()) {
+                final String name = file.getFileName().toString();
+                if (name.endsWith(".java")) {
+                    addStepDefinitions(file, segments);
+                } else if (name.endsWith(".json") || name.endsWith(".yaml") || name.endsWith(".yml")) {
+                    addSchemas(file, name.endsWith(".json") ? mapper : yamlMapper, segments);
+                }
+            }
+        }
+
+        if (corpus == null) {
+            corpus = new DiskBackedEmbeddingStore(Paths.get(storeDirectory));
+        }
+        final DiskBackedEmbeddingStore.IngestionReport report;
+        try {
+            report = corpus.ingest(segments.stream().map(segment -> Document.from(segment.text(), segment.metadata())).toList(),
+                    null, new GatewayEmbeddingModel());
+        } catch (final EmbeddingInterrupted e) {
+            throw (InterruptedException) e.getCause();
+        }
+        updateIndexes();
+        indexedSegments.set(indexedKinds.size());
+        embeddedSegments.addAndGet(report.segmentsEmbedded());
+        reusedSegments.addAndGet(report.unchanged());
+        log.info("Indexed {} step definitions and schemas under {} for retrieval: {} embedded, {} reused, {} removed",
+                indexedKinds.size(), referencePath, report.segmentsEmbedded(), report.unchanged(), report.removed());
+        return indexedKinds.size();
+    }
+
+    /**
+     * The step definitions and schemas most similar to the endpoint; none when retrieval
+     * is disabled or nothing was indexed. Schemas named in the endpoint's context are
+     * left out, the prompt carries them already.
+     */
+    public References retrieve(final EndpointTask task) throws InterruptedException {
+        final Map<String, HnswEmbeddingStore> indexes = stores;
+        if (!enabled || indexes == null) {
+            return References.NONE;
+        }
+        final long start = System.nanoTime();
+        final String query = truncate(task.getMethod() + " " + task.getPath() + "\n" + task.getContextJson());
+        final Embedding embedding = Embedding.from(llmGateway.embed(embeddingModel, List.of(query)).get(0));
+
+        final List<String> schemas = new ArrayList<>();
+        for (final EmbeddingMatch<TextSegment> match : search(indexes.get(KIND_SCHEMA), embedding, topK * 2)) {
+            if (schemas.size() < topK && !task.getContextJson().contains("\"" + match.embedded().metadata().getString(NAME) + "\"")) {
+                schemas.add(match.embedded().text());
+            }
+        }
+        final List<String> stepDefinitions = search(indexes.get(KIND_STEP), embedding, topK).stream()
+                .map(match -> match.embedded().text())
+                .toList();
+        retrievals.incrementAndGet();
+        retrievalNanos.addAndGet(System.nanoTime() - start);
+        return new References(schemas, stepDefinitions);
+    }
+
+    public Map<String, Long> getStats() {
+        final Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("indexedSegments", indexedSegments.get());
+        stats.put("embeddedSegments", embeddedSegments.get());
+        stats.put("reusedSegments", reusedSegments.get());
+        final long count = retrievals.get();
+        stats.put("retrievals", count);
+        stats.put("averageRetrievalMillis", count == 0 ? 0 : retrievalNanos.get() / count / 1_000_000);
+        final Map<String, HnswEmbeddingStore> indexes = stores;
+        if (indexes != null) {
+            long searches = 0;
+            long searchMicros = 0;
+            for (final HnswEmbeddingStore index : indexes.values()) {
+                final Map<String, Long> indexStats = index.getStats();
+                searches += indexStats.get("searches");
+                searchMicros += indexStats.get("searches") * indexStats.get("averageSearchMicros");
+            }
+            stats.put("averageSearchMicros", searches == 0 ? 0 : searchMicros / searches);
+        }
+        return stats;
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (corpus != null) {
+            try {
+                corpus.close();
+            } catch (final IOException e) {
+                log.warn("Failed to close the retrieval store", e);
+            }
+            corpus = null;
+        }
+    }
+
+    /**
+     * Applies the rows added to and removed from the corpus since the last call to the
+     * HNSW indexes, which are created from the stored vectors on the first call.
+     */
+    private void updateIndexes() {
+        final List<String> ids = corpus.ids();
+        final Set<String> live = new HashSet<>(ids);
+        final List<String> removed = indexedKinds.keySet().stream().filter(id -> !live.contains(id)).toList();
+        removed.forEach(indexedKinds::remove);
+        final Map<String, List<StoredEmbedding>> added = new HashMap<>();
+        for (final StoredEmbedding row : corpus.embeddings(ids.stream().filter(id -> !indexedKinds.containsKey(id)).toList())) {
+            final String kind = row.segment().metadata().getString(KIND);
+            indexedKinds.put(row.id(), kind);
+            added.computeIfAbsent(kind, key -> new ArrayList<>()).add(row);
+        }
+
+        final Map<String, HnswEmbeddingStore> indexes = new HashMap<>();
+        for (final String kind : List.of(KIND_STEP, KIND_SCHEMA)) {
+            final HnswEmbeddingStore current = stores == null ? null : stores.get(kind);
+            if (current != null) {
+                current.removeAll(removed);
+            }
+            final boolean rebuild = current == null
+                    || current.getStats().get("removed") > current.getStats().get("embeddings");
+            final HnswEmbeddingStore index = rebuild
+                    ? new HnswEmbeddingStore(new HnswIndex.Parameters(m, efConstruction, efSearch))
+                    : current;
+            final List<StoredEmbedding> rows = rebuild
+                    ? corpus.embeddings(ids.stream().filter(id -> kind.equals(indexedKinds.get(id))).toList())
+                    : added.getOrDefault(kind, List.of());
+            index.addAll(rows.stream().map(StoredEmbedding::id).toList(),
+                    rows.stream().map(StoredEmbedding::embedding).toList(),
+                    rows.stream().map(StoredEmbedding::segment).toList());
+            indexes.put(kind, index);
+        }
+        stores = Map.copyOf(indexes);
+    }
+
+    private static List<EmbeddingMatch<TextSegment>> search(final HnswEmbeddingStore index,
+                                                            final Embedding query,
+                                                            final int maxResults) {
+        return index.search(EmbeddingSearchRequest.builder()
+                .queryEmbedding(query)
+                .maxResults(maxResults)
+                .build()).matches();
+    }
+
+    private void addStepDefinitions(final Path file, final List<TextSegment> segments) throws IOException {
+        final String source = Files.readString(file);
+        if (source.contains("@Given") || source.contains("@When") || source.contains("@Then")) {
+            final String name = file.getFileName().toString();
+            segments.add(TextSegment.from(truncate(source), Metadata.from(KIND, KIND_STEP)
+                    .put(SOURCE, file.toString())
+                    .put(NAME, name.substring(0, name.length() - ".java".length()))));
+        }
+    }
+
+    private void addSchemas(final Path file, final ObjectMapper reader, final List<TextSegment> segments) {
+        final JsonNode schemas;
+        try {
+            schemas = reader.readTree(file.toFile()).path("components").path("schemas");
+        } catch (final IOException e) {
+            log.debug("Skipping {} for retrieval, not a readable spec: {}", file, e.getMessage());
+            return;
+        }
+        final Iterator<Map.Entry<String, JsonNode>> fields = schemas.fields();
+        while (fields.hasNext()) {
+            final Map.Entry<String, JsonNode> schema = fields.next();
+            segments.add(TextSegment.from(truncate("Schema " + schema.getKey() + ": " + schema.getValue()), Metadata.from(KIND, KIND_SCHEMA)
+                    .put(SOURCE, file.toString())
+                    .put(NAME, schema.getKey())));
+        }
+    }
+
+    private String truncate(final String text) {
+        return text.length() <= maxChars ? text : text.substring(0, maxChars);
+    }
+
+    /**
+     * Embeds through the gateway, {@code batch-size} texts to a request.
+     */
+    private final class GatewayEmbeddingModel implements EmbeddingModel {
+
+        @Override
+        public Response<List<Embedding>> embedAll(final List<TextSegment> segments) {
+            final List<Embedding> embeddings = new ArrayList<>();
+            for (int start = 0; start < segments.size(); start += batchSize) {
+                final List<TextSegment> batch = segments.subList(start, Math.min(segments.size(), start + batchSize));
+                try {
+                    llmGateway.embed(embeddingModel, batch.stream().map(TextSegment::text).toList())
+                            .forEach(vector -> embeddings.add(Embedding.from(vector)));
+                } catch (final InterruptedException e) {
+                    throw new EmbeddingInterrupted(e);
+                }
+            }
+            return Response.from(embeddings);
+        }
+    }
+
+    // carries an interrupt out of EmbeddingModel, which cannot throw it
+    private static final class EmbeddingInterrupted extends RuntimeException {
+
+        private EmbeddingInterrupted(final InterruptedException cause) {
+            super(cause);
+        }
+    }
+}
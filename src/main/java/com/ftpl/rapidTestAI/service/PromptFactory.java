@@ -0,0 +1,228 @@
+package com.ftpl.rapidTestAI.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ftpl.rapidTestAI.utils.GherkinSteps;
+import com.ftpl.rapidTestAI.utils.StepLibrary;
+import com.theokanning.openai.completion.chat.ChatCompletionRequest;
+import com.theokanning.openai.completion.chat.ChatMessage;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Chat requests for generating the artifacts of one endpoint. Interactive and batch
+ * generation both build their requests here, so the same endpoint always produces the
+ * same request and shares its {@link CompletionCache} entry.
+ * <p>
+ * The multi-endpoint requests cover several endpoints in one round trip and ask for a
+ * JSON object keyed by {@link EndpointTask#getKey()}; see {@link MultiEndpointResponse}.
+ */
+public final class PromptFactory {
+
+    public static final String MODEL = "gpt-4o-mini";
+
+    /** Prefixes the JSON array of endpoint keys a multi-endpoint answer must be keyed by. */
+    public static final String ENDPOINT_KEYS_LABEL = "Endpoint keys: ";
+
+    /** Prefixes the JSON array of step expressions a step body answer must be keyed by. */
+    public static final String STEP_KEYS_LABEL = "Step expressions: ";
+
+    private PromptFactory() {
+    }
+
+    public static ChatCompletionRequest featureRequest(final String contextJson, final String method, final String path) {
+        return featureRequest(contextJson, method, path, List.of());
+    }
+
+    /**
+     * The feature request with related schemas of the API appended to the context; without
+     * any it is the same request as above.
+     */
+    public static ChatCompletionRequest featureRequest(final String contextJson,
+                                                       final String method,
+                                                       final String path,
+                                                       final List<String> relatedSchemas) {
+        final String prompt = String.format(
+                """
+                Generate a Cucumber feature scenario for %s %s, including Given, When, Then steps, with placeholder parameters.
+                Ensure that you check for all the response params based on the OpenAPI spec.
+                Requirements:
+                1. Feature file must follow Gherkin syntax precisely
+                2. Include scenarios for:
+                   - Happy path (200 responses)
+                   - Invalid inputs (400 responses)
+                   - Not found cases (404 responses)
+                   - Edge cases (empty inputs, boundary values)
+                3. Organize scenarios logically with descriptive names
+                4. Include data tables where appropriate for test cases
+                5. Cover all validation rules and business logic
+                6. Return ONLY the pure Gherkin syntax content without any markdown, explanations or code blocks
+                """,
+                method, path
+        );
+
+        String systemPrompt = String.format(
+                """
+                You are a test-generator. You understand this OpenAPI spec format. Here's the endpoint summary context:
+                %s
+                """, contextJson
+        );
+        if (!relatedSchemas.isEmpty()) {
+            systemPrompt += String.format(
+                    """
+                    Related schemas of the same API, for reference:
+                    %s
+                    """, String.join("\n", relatedSchemas)
+            );
+        }
+
+        final ChatMessage systemMessage = new ChatMessage("system", systemPrompt);
+        final ChatMessage userMessage = new ChatMessage("user", prompt);
+
+        return ChatCompletionRequest.builder()
+                .model(MODEL)
+                .messages(List.of(systemMessage, userMessage))
+                .build();
+    }
+
+    public static ChatCompletionRequest stepRequest(final String featureText, final String method, final String path) {
+        return stepRequest(featureText, method, path, List.of());
+    }
+
+    /**
+     * The step request with step definition classes that already exist in the project,
+     * so that their steps are reused instead of defined again; without any it is the same
+     * request as above.
+     */
+    public static ChatCompletionRequest stepRequest(final String featureText,
+                                                    final String method,
+                                                    final String path,
+                                                    final List<String> existingStepDefinitions) {
+        String stepPrompt = String.format(
+                """
+                        Generate Java-based Cucumber step definition classes for the following Cucumber `.feature` file as below:
+                        %s
+                        and path: %s
+                        and method: %s
+                        Only return the Java code. Do not include any explanations or markdown formatting.
+                """, featureText, method, path
+        );
+        if (!existingStepDefinitions.isEmpty()) {
+            stepPrompt += String.format(
+                    """
+                    These step definition classes already exist in the project. Do not define their steps again;
+                    reuse their step expressions and helpers wherever they fit:
+                    %s
+                    """, String.join("\n", existingStepDefinitions)
+            );
+        }
+        final ChatMessage stepMessage = new ChatMessage("user", stepPrompt);
+        return ChatCompletionRequest.builder()
+                .model(MODEL)
+                .messages(List.of(stepMessage))
+                .build();
+    }
+
+    public static ChatCompletionRequest multiFeatureRequest(final ObjectMapper mapper, final List<EndpointTask> tasks) throws JsonProcessingException {
+        final StringBuilder contexts = new StringBuilder();
+        for (final EndpointTask task : tasks) {
+            contexts.append(task.getKey()).append(":\n").append(task.getContextJson()).append('\n');
+        }
+        final String systemPrompt = String.format(
+                """
+                You are a test-generator. You understand this OpenAPI spec format. Here are the endpoint summaries:
+                %s
+                """, contexts
+        );
+        final String prompt = String.format(
+                """
+                Generate a Cucumber feature file for each of the endpoints above, including Given, When, Then steps, with placeholder parameters.
+                Ensure that you check for all the response params based on the OpenAPI spec.
+                Requirements:
+                1. Each feature file must follow Gherkin syntax precisely
+                2. Include scenarios for:
+                   - Happy path (200 responses)
+                   - Invalid inputs (400 responses)
+                   - Not found cases (404 responses)
+                   - Edge cases (empty inputs, boundary values)
+                3. Organize scenarios logically with descriptive names
+                4. Include data tables where appropriate for test cases
+                5. Cover all validation rules and business logic
+                6. Return ONLY a JSON object whose keys are exactly the endpoint keys below and whose values are
+                   the pure Gherkin content of that endpoint's feature file as a string, without markdown or explanations
+                %s%s
+                """, ENDPOINT_KEYS_LABEL, keysOf(mapper, tasks)
+        );
+        return ChatCompletionRequest.builder()
+                .model(MODEL)
+                .messages(List.of(new ChatMessage("system", systemPrompt), new ChatMessage("user", prompt)))
+                .build();
+    }
+
+    public static ChatCompletionRequest multiStepRequest(final ObjectMapper mapper,
+                                                         final List<EndpointTask> tasks,
+                                                         final Map<String, String> featureTexts) throws JsonProcessingException {
+        final String stepPrompt = String.format(
+                """
+                        Generate Java-based Cucumber step definition classes for the following Cucumber `.feature` files,
+                        given as a JSON object keyed by endpoint (method and path):
+                        %s
+                        Return ONLY a JSON object whose keys are exactly the endpoint keys below and whose values are
+                        the Java code of that endpoint's step definition class as a string, without markdown or explanations.
+                        %s%s
+                """, mapper.writeValueAsString(featureTexts), ENDPOINT_KEYS_LABEL, keysOf(mapper, tasks)
+        );
+        return ChatCompletionRequest.builder()
+                .model(MODEL)
+                .messages(List.of(new ChatMessage("user", stepPrompt)))
+                .build();
+    }
+
+    /**
+     * Asks for the method bodies of steps of the shared step library, as a JSON object
+     * keyed by the step expressions. The signatures are fixed, so only the bodies are
+     * asked for. {@code featureText} is the feature the steps were first seen in, for
+     * context; {@code null} when the steps come from several features.
+     */
+    public static ChatCompletionRequest stepBodiesRequest(final ObjectMapper mapper,
+                                                          final String featureText,
+                                                          final List<GherkinSteps.Step> steps) throws JsonProcessingException {
+        final StringBuilder signatures = new StringBuilder();
+        for (final GherkinSteps.Step step : steps) {
+            final List<String> parameters = StepLibrary.parametersOf(step.expression(), step.argument());
+            signatures.append(step.keyword()).append(' ').append(step.expression())
+                    .append(" (").append(parameters.isEmpty() ? "no parameters" : String.join(", ", parameters))
+                    .append("), as in: ").append(step.example()).append('\n');
+        }
+        final String feature = featureText == null ? "" : String.format(
+                """
+                They come from this Cucumber feature:
+                %s
+                """, featureText.strip());
+        final String stepPrompt = String.format(
+                """
+                Write the bodies of Java Cucumber step definition methods using RestAssured and JUnit 5.
+                %s\
+                The steps form a library shared by the tests of all endpoints of the API, so write each body generically,
+                taking every value from its parameters. Methods share state through the field `context` with the public fields
+                `String baseUrl`, `RequestSpecification request`, `Response response` and `Map<String, Object> values`.
+                Imported are %s; use fully qualified names for anything else.
+                The steps, each with the parameters of its method:
+                %s\
+                Return ONLY a JSON object whose keys are exactly the step expressions below and whose values are the
+                statements of that step's method body as a string, without the signature, markdown or explanations.
+                %s%s
+                """, feature, String.join(", ", StepLibrary.IMPORTS), signatures, STEP_KEYS_LABEL,
+                mapper.writeValueAsString(steps.stream().map(GherkinSteps.Step::expression).toList())
+        );
+        return ChatCompletionRequest.builder()
+                .model(MODEL)
+                .messages(List.of(new ChatMessage("user", stepPrompt)))
+                .build();
+    }
+
+    private static String keysOf(final ObjectMapper mapper, final List<EndpointTask> tasks) throws JsonProcessingException {
+        return mapper.writeValueAsString(tasks.stream().map(EndpointTask::getKey).toList());
+    }
+}
@@ -0,0 +1,311 @@
+package com.ftpl.rapidTestAI.service;
+
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+import java.util.stream.Stream;
+
+/**
+ * Managed clones of remote repositories, one workspace per remote URL.
+ * <p>
+ * Workspaces are partial clones without a checkout ({@code --filter=blob:none}, and
+ * {@code --depth} when configured): diffs only need trees, and the blobs of the files
+ * that are read are fetched on demand. Each workspace has a read/write lock. Readers
+ * hold a {@link Lease} while they run git against the workspace; cloning, fetching and
+ * deleting take the write lock. A workspace fetched less than the freshness window ago
+ * is not fetched again, so concurrent requests for one remote share a single fetch.
+ * When the workspaces use more disk than the quota, the least recently used ones that
+ * nobody holds are deleted.
+ */
+@Slf4j
+@Component
+public class RepositoryWorkspacePool {
+
+    private final Path root;
+    private final Duration fetchFreshness;
+    private final long maxDiskBytes;
+    private final String cloneFilter;
+    private final int depth;
+
+    private final Map<String, Workspace> workspaces = new ConcurrentHashMap<>();
+
+    private final AtomicLong clones = new AtomicLong();
+    private final AtomicLong fetches = new AtomicLong();
+    private final AtomicLong freshHits = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    @Autowired
+    private GenerationMetrics metrics;
+
+    @Autowired
+    private GitClientService gitClientService;
+
+    public RepositoryWorkspacePool(@Value("${rapid-test-ai.git.workspaces.directory:.rapid-test-ai/workspaces}") final String directory,
+                                   @Value("${rapid-test-ai.git.workspaces.fetch-freshness:30s}") final Duration fetchFreshness,
+                                   @Value("${rapid-test-ai.git.workspaces.max-disk-size:10GB}") final DataSize maxDiskSize,
+                                   @Value("${rapid-test-ai.git.workspaces.clone-filter:blob:none}") final String cloneFilter,
+                                   @Value("${rapid-test-ai.git.workspaces.depth:0}") final int depth) {
+        this.root = Paths.get(directory).toAbsolutePath();
+        this.fetchFreshness = fetchFreshness;
+        this.maxDiskBytes = maxDiskSize.toBytes();
+        this.cloneFilter = cloneFilter;
+        this.depth = depth;
+    }
+
+    /**
+     * Returns a lease on an up-to-date workspace for the remote, cloning or fetching it
+     * first when needed. The workspace is not fetched or deleted until the lease is
+     * closed; the lease may be closed from another thread.
+     */
+    public Lease acquire(final String remoteUrl) throws IOException, InterruptedException {
+        while (true) {
+            final Workspace workspace = workspaces.computeIfAbsent(remoteUrl, url -> new Workspace(url, root.resolve(directoryName(url))));
+
+            final long readStamp = workspace.lock.readLockInterruptibly();
+            if (!workspace.evicted && workspace.isFresh(fetchFreshness)) {
+                freshHits.incrementAndGet();
+                return workspace.lease(readStamp);
+            }
+            workspace.lock.unlockRead(readStamp);
+
+            long stamp = workspace.lock.writeLockInterruptibly();
+            try {
+                if (workspace.evicted) {
+                    // deleted between our lookup and the lock; start over with a new workspace
+                    continue;
+                }
+                if (workspace.isFresh(fetchFreshness)) {
+                    // another request fetched while we waited for the lock
+                    freshHits.incrementAndGet();
+                } else {
+                    update(workspace);
+                    evictOverQuota(workspace);
+                }
+                stamp = workspace.lock.tryConvertToReadLock(stamp);
+                return workspace.lease(stamp);
+            } finally {
+                if (StampedLock.isWriteLockStamp(stamp)) {
+                    workspace.lock.unlockWrite(stamp);
+                }
+            }
+        }
+    }
+
+    public Map<String, Long> getStats() {
+        final Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("workspaces", (long) workspaces.size());
+        stats.put("diskBytes", workspaces.values().stream().mapToLong(workspace -> workspace.diskBytes).sum());
+        stats.put("clones", clones.get());
+        stats.put("fetches", fetches.get());
+        stats.put("freshHits", freshHits.get());
+        stats.put("evictions", evictions.get());
+        return stats;
+    }
+
+    private void update(final Workspace workspace) throws IOException, InterruptedException {
+        if (Files.isDirectory(workspace.directory.resolve(".git"))) {
+            final List<String> fetch = new ArrayList<>(List.of("git", "fetch", "--prune", "--quiet"));
+            if (depth > 0) {
+                fetch.add("--depth=" + depth);
+            }
+            fetch.add("origin");
+            git(workspace.directory.toFile(), "fetch", fetch);
+            fetches.incrementAndGet();
+        } else {
+            removeDirectory(workspace.directory);
+            Files.createDirectories(root);
+            final List<String> clone = new ArrayList<>(List.of("git", "clone", "--quiet", "--no-checkout"));
+            if (!cloneFilter.isBlank()) {
+                clone.add("--filter=" + cloneFilter);
+            }
+            if (depth > 0) {
+                clone.add("--depth=" + depth);
+                clone.add("--no-single-branch");
+            }
+            clone.add(workspace.remoteUrl);
+            clone.add(workspace.directory.toString());
+            try {
+                git(root.toFile(), "clone", clone);
+            } catch (final IOException e) {
+                removeDirectory(workspace.directory);
+                throw e;
+            }
+            clones.incrementAndGet();
+            log.info("Cloned {} into workspace {}", workspace.remoteUrl, workspace.directory);
+        }
+        workspace.fetchedAt = System.nanoTime();
+        workspace.fetched = true;
+        workspace.diskBytes = diskUsage(workspace.directory);
+    }
+
+    private void evictOverQuota(final Workspace current) {
+        long total = workspaces.values().stream().mapToLong(workspace -> workspace.diskBytes).sum();
+        if (total <= maxDiskBytes) {
+            return;
+        }
+        final List<Workspace> coldestFirst = new ArrayList<>(workspaces.values());
+        coldestFirst.sort(Comparator.comparingLong(workspace -> workspace.lastUsed));
+        for (final Workspace workspace : coldestFirst) {
+            if (total <= maxDiskBytes) {
+                break;
+            }
+            if (workspace == current) {
+                continue;
+            }
+            final long stamp = workspace.lock.tryWriteLock();
+            if (stamp == 0) {
+                // in use; it stays until a later request finds it idle
+                continue;
+            }
+            try {
+                workspace.evicted = true;
+                workspaces.remove(workspace.remoteUrl, workspace);
+                removeDirectory(workspace.directory);
+                total -= workspace.diskBytes;
+                evictions.incrementAndGet();
+                log.info("Evicted workspace of {} ({} bytes)", workspace.remoteUrl, workspace.diskBytes);
+            } catch (final IOException e) {
+                log.warn("Could not delete workspace {}", workspace.directory, e);
+            } finally {
+                workspace.lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    private void git(final File directory, final String name, final List<String> command) throws IOException, InterruptedException {
+        final Timer.Sample sample = metrics.start();
+        final Process process = new ProcessBuilder(command)
+                .directory(directory)
+                .redirectErrorStream(true)
+                .start();
+        final String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8).trim();
+        final int exitCode = process.waitFor();
+        metrics.gitCommand(sample, name, exitCode);
+        if (exitCode != 0) {
+            throw new IOException("git " + name + " failed with exit code " + exitCode + (output.isEmpty() ? "" : ": " + output));
+        }
+    }
+
+    /**
+     * Readable and collision-free: the repository name from the URL plus a hash of the
+     * whole URL.
+     */
+    static String directoryName(final String remoteUrl) {
+        String name = remoteUrl.replaceAll("[/\\\\]+$", "");
+        name = name.substring(Math.max(name.lastIndexOf('/'), name.lastIndexOf(':')) + 1).replaceAll("\\.git$", "");
+        name = name.replaceAll("[^A-Za-z0-9._-]", "_");
+        try {
+            final byte[] hash = MessageDigest.getInstance("SHA-256").digest(remoteUrl.getBytes(StandardCharsets.UTF_8));
+            return (name.isEmpty() ? "repo" : name) + "-" + HexFormat.of().formatHex(hash, 0, 6);
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static long diskUsage(final Path directory) throws IOException {
+        try (final Stream<Path> files = Files.walk(directory)) {
+            return files.filter(Files::isRegularFile).mapToLong(file -> {
+                try {
+                    return Files.size(file);
+                } catch (final IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }).sum();
+        } catch (final UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    // the cat-file process of a workspace must not outlive it, or a reclone would read through a stale one
+    private void removeDirectory(final Path directory) throws IOException {
+        gitClientService.closeCatFileReader(directory.toString());
+        deleteDirectory(directory);
+    }
+
+    private static void deleteDirectory(final Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (final Stream<Path> files = Files.walk(directory)) {
+            for (final Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    /**
+     * Shared access to a workspace. Close it when done with the directory.
+     */
+    public static final class Lease implements AutoCloseable {
+        private final Workspace workspace;
+        private final long stamp;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private Lease(final Workspace workspace, final long stamp) {
+            this.workspace = workspace;
+            this.stamp = stamp;
+        }
+
+        public Path getDirectory() {
+            return workspace.directory;
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                workspace.lastUsed = System.nanoTime();
+                workspace.lock.unlockRead(stamp);
+            }
+        }
+    }
+
+    private static final class Workspace {
+        private final String remoteUrl;
+        private final Path directory;
+        // not reentrant and not owned by a thread, so a lease can end on a streaming thread
+        private final StampedLock lock = new StampedLock();
+        private volatile long fetchedAt;
+        private volatile boolean fetched;
+        private volatile long lastUsed = System.nanoTime();
+        private volatile long diskBytes;
+        private volatile boolean evicted;
+
+        private Workspace(final String remoteUrl, final Path directory) {
+            this.remoteUrl = remoteUrl;
+            this.directory = directory;
+        }
+
+        private boolean isFresh(final Duration freshness) {
+            return fetched && System.nanoTime() - fetchedAt < freshness.toNanos();
+        }
+
+        private Lease lease(final long stamp) {
+            lastUsed = System.nanoTime();
+            return new Lease(this, stamp);
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package com.ftpl.rapidTestAI.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.swagger.v3.oas.models.OpenAPI;
+import io.swagger.v3.oas.models.media.Schema;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Expands schemas of one spec into summary JSON, resolving {@code #/components/schemas}
+ * references.
+ * <p>
+ * Each referenced schema is expanded once and the resulting node is reused for every
+ * later reference, so shared models cost one expansion instead of one per use.
+ * Schemas that reference each other, directly or through others, form a cycle group.
+ * Expanding a schema walks its group depth-first and emits any group member that was
+ * already expanded as {@code {"ref": X, "circular": true}}, so an expansion only
+ * depends on the schema it starts from and can be reused anywhere. Chains of
+ * references deeper than {@code maxDepth} end in {@code {"ref": X, "truncated": true}};
+ * a cut-off expansion is never cached.
+ * <p>
+ * Cached nodes are shared between operations and must not be mutated.
+ */
+public class SchemaResolver {
+
+    private static final String SCHEMA_REF_PREFIX = "#/components/schemas/";
+
+    private final ObjectMapper mapper;
+    private final Map<String, Schema> schemas;
+    private final Map<String, Integer> cycleGroups;
+    private final int maxDepth;
+
+    private final Map<String, Expansion> cache = new ConcurrentHashMap<>();
+
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong expansions = new AtomicLong();
+    private final AtomicLong expandedNodes = new AtomicLong();
+    private final AtomicLong largestExpansion = new AtomicLong();
+    private final AtomicLong circularReferences = new AtomicLong();
+    private final AtomicLong truncations = new AtomicLong();
+
+    public SchemaResolver(final ObjectMapper mapper, final OpenAPI openAPI, final int maxDepth) {
+        this.mapper = mapper;
+        this.schemas = openAPI.getComponents() != null && openAPI.getComponents().getSchemas() != null
+                ? openAPI.getComponents().getSchemas()
+                : Map.of();
+        this.cycleGroups = cycleGroups(schemas);
+        this.maxDepth = maxDepth;
+    }
+
+    public ObjectNode toJson(final Schema<?> schema) {
+        return toJson(schema, new Frame(-1, 0), 0);
+    }
+
+    public Map<String, Long> getStats() {
+        final Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("cacheHits", cacheHits.get());
+        stats.put("expansions", expansions.get());
+        stats.put("cachedSchemas", (long) cache.size());
+        stats.put("expandedNodes", expandedNodes.get());
+        stats.put("largestExpansion", largestExpansion.get());
+        stats.put("circularReferences", circularReferences.get());
+        stats.put("truncations", truncations.get());
+        return stats;
+    }
+
+    private ObjectNode toJson(final Schema<?> schema, final Frame frame, final int depth) {
+        final ObjectNode schemaNode = frame.newNode();
+        if (schema == null) return schemaNode;
+
+        // Handle $ref
+        if (schema.get$ref() != null) {
+            final String refName = refName(schema);
+            final Schema<?> refSchema = schemas.get(refName);
+            if (refSchema != null) {
+                schemaNode.put("ref", refName);
+                resolve(refName, refSchema, schemaNode, frame, depth);
+            }
+            return schemaNode;
+        }
+
+        // Type
+        if (schema.getType() != null) {
+            schemaNode.put("type", schema.getType());
+        }
+
+        // Description
+        if (schema.getDescription() != null) {
+            schemaNode.put("description", schema.getDescription());
+        }
+
+        // Required fields
+        if (schema.getRequired() != null && !schema.getRequired().isEmpty()) {
+            final ArrayNode requiredArray = mapper.createArrayNode();
+            for (final String req : schema.getRequired()) {
+                requiredArray.add(req);
+            }
+            schemaNode.set("required", requiredArray);
+        }
+
+        // Properties
+        if (schema.getProperties() != null) {
+            final ObjectNode props = frame.newNode();
+            for (final Map.Entry<String, Schema> prop : schema.getProperties().entrySet()) {
+                final ObjectNode propNode = toJson(prop.getValue(), frame, depth);
+                // Add property description (if available)
+                if (prop.getValue().getDescription() != null) {
+                    propNode.put("description", prop.getValue().getDescription());
+                }
+                props.set(prop.getKey(), propNode);
+            }
+            schemaNode.set("properties", props);
+        }
+
+        // Items (for arrays)
+        if (schema.getItems() != null) {
+            schemaNode.set("items", toJson(schema.getItems(), frame, depth));
+        }
+
+        // allOf, anyOf, oneOf
+        composition(schemaNode, "allOf", schema.getAllOf(), frame, depth);
+        composition(schemaNode, "anyOf", schema.getAnyOf(), frame, depth);
+        composition(schemaNode, "oneOf", schema.getOneOf(), frame, depth);
+
+        return schemaNode;
+    }
+
+    private void composition(final ObjectNode schemaNode, final String field, final List<Schema> members, final Frame frame, final int depth) {
+        if (members == null || members.isEmpty()) {
+            return;
+        }
+        final ArrayNode array = mapper.createArrayNode();
+        for (final Schema<?> member : members) {
+            array.add(toJson(member, frame, depth));
+        }
+        schemaNode.set(field, array);
+    }
+
+    private void resolve(final String refName, final Schema<?> refSchema, final ObjectNode refNode, final Frame frame, final int depth) {
+        final boolean sameGroup = cycleGroups.get(refName) == frame.group;
+
+        if (sameGroup && frame.visited.contains(refName)) {
+            circularReferences.incrementAndGet();
+            refNode.put("circular", true);
+            return;
+        }
+
+        if (!sameGroup) {
+            final Expansion cached = cache.get(refName);
+            if (cached != null && depth + cached.height <= maxDepth) {
+                cacheHits.incrementAndGet();
+                refNode.set("resolved", cached.node);
+                frame.reach(depth + cached.height);
+                return;
+            }
+        }
+
+        if (depth >= maxDepth) {
+            truncations.incrementAndGet();
+            refNode.put("truncated", true);
+            frame.truncated = true;
+            return;
+        }
+
+        if (sameGroup) {
+            // another member of the cycle group being expanded: inline it into the same expansion
+            frame.visited.add(refName);
+            frame.reach(depth + 1);
+            refNode.set("resolved", toJson(refSchema, frame, depth + 1));
+            return;
+        }
+
+        final Frame child = new Frame(cycleGroups.get(refName), depth);
+        child.visited.add(refName);
+        child.reach(depth + 1);
+        final ObjectNode resolved = toJson(refSchema, child, depth + 1);
+        refNode.set("resolved", resolved);
+
+        expansions.incrementAndGet();
+        expandedNodes.addAndGet(child.nodes);
+        largestExpansion.accumulateAndGet(child.nodes, Math::max);
+        if (!child.truncated) {
+            cache.putIfAbsent(refName, new Expansion(resolved, child.reached - depth));
+        }
+
+        frame.reach(child.reached);
+        frame.truncated |= child.truncated;
+    }
+
+    private static String refName(final Schema<?> schema) {
+        return schema.get$ref().replace(SCHEMA_REF_PREFIX, "");
+    }
+
+    /**
+     * Numbers the strongly connected components of the reference graph, so that two
+     * schemas share a number exactly when each can reach the other. Iterative Tarjan, as
+     * reference chains in generated specs can be long enough to overflow the stack.
+     */
+    private static Map<String, Integer> cycleGroups(final Map<String, Schema> schemas) {
+        final Map<String, List<String>> edges = new HashMap<>();
+        for (final Map.Entry<String, Schema> entry : schemas.entrySet()) {
+            final List<String> targets = new ArrayList<>();
+            collectRefs(entry.getValue(), schemas, targets);
+            edges.put(entry.getKey(), targets);
+        }
+
+        final Map<String, Integer> groups = new HashMap<>();
+        final Map<String, Integer> index = new HashMap<>();
+        final Map<String, Integer> lowLink = new HashMap<>();
+        final Deque<String> stack = new ArrayDeque<>();
+        final Set<String> onStack = new HashSet<>();
+
+        for (final String root : schemas.keySet()) {
+            if (index.containsKey(root)) {
+                continue;
+            }
+            final Deque<Map.Entry<String, Iterator<String>>> work = new ArrayDeque<>();
+            visit(root, index, lowLink, stack, onStack, work, edges);
+
+            while (!work.isEmpty()) {
+                final String node = work.peek().getKey();
+                final Iterator<String> targets = work.peek().getValue();
+                if (targets.hasNext()) {
+                    final String target = targets.next();
+                    if (!index.containsKey(target)) {
+                        visit(target, index, lowLink, stack, onStack, work, edges);
+                    } else if (onStack.contains(target)) {
+                        lowLink.put(node, Math.min(lowLink.get(node), index.get(target)));
+                    }
+                    continue;
+                }
+                work.pop();
+                if (!work.isEmpty()) {
+                    final String parent = work.peek().getKey();
+                    lowLink.put(parent, Math.min(lowLink.get(parent), lowLink.get(node)));
+                }
+                if (lowLink.get(node).equals(index.get(node))) {
+                    final int group = groups.size();
+                    String member;
+                    do {
+                        member = stack.pop();
+                        onStack.remove(member);
+                        groups.put(member, group);
+                    } while (!member.equals(node));
+                }
+            }
+        }
+        return groups;
+    }
+
+    private static void visit(final String node,
+                              final Map<String, Integer> index,
+                              final Map<String, Integer> lowLink,
+                              final Deque<String> stack,
+                              final Set<String> onStack,
+                              final Deque<Map.Entry<String, Iterator<String>>> work,
+                              final Map<String, List<String>> edges) {
+        index.put(node, index.size());
+        lowLink.put(node, index.get(node));
+        stack.push(node);
+        onStack.add(node);
+        work.push(Map.entry(node, edges.get(node).iterator()));
+    }
+
+    private static void collectRefs(final Schema<?> schema, final Map<String, Schema> schemas, final List<String> targets) {
+        if (schema == null) {
+            return;
+        }
+        if (schema.get$ref() != null) {
+            final String refName = refName(schema);
+            if (schemas.containsKey(refName)) {
+                targets.add(refName);
+            }
+            return;
+        }
+        if (schema.getProperties() != null) {
+            for (final Schema<?> property : schema.getProperties().values()) {
+                collectRefs(property, schemas, targets);
+            }
+        }
+        collectRefs(schema.getItems(), schemas, targets);
+        collectAll(schema.getAllOf(), schemas, targets);
+        collectAll(schema.getAnyOf(), schemas, targets);
+        collectAll(schema.getOneOf(), schemas, targets);
+    }
+
+    private static void collectAll(final List<Schema> members, final Map<String, Schema> schemas, final List<String> targets) {
+        if (members != null) {
+            for (final Schema<?> member : members) {
+                collectRefs(member, schemas, targets);
+            }
+        }
+    }
+
+    /**
+     * One expansion of a referenced schema, together with the members of its cycle group
+     * that were inlined into it.
+     */
+    private final class Frame {
+        private final int group;
+        private final Set<String> visited = new HashSet<>();
+        private int reached;
+        private long nodes;
+        private boolean truncated;
+
+        private Frame(final int group, final int startDepth) {
+            this.group = group;
+            this.reached = startDepth;
+        }
+
+        private ObjectNode newNode() {
+            nodes++;
+            return mapper.createObjectNode();
+        }
+
+        private void reach(final int depth) {
+            reached = Math.max(reached, depth);
+        }
+    }
+
+    private static final class Expansion {
+        private final ObjectNode node;
+        private final int height;
+
+        private Expansion(final ObjectNode node, final int height) {
+            this.node = node;
+            this.height = height;
+        }
+    }
+}
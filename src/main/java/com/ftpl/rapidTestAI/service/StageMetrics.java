@@ -0,0 +1,79 @@
+package com.ftpl.rapidTestAI.service;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counters of one pipeline stage: items processed and failed, time spent per item, and
+ * how deep its input queue is and has been. A queue that stays full points at a stage
+ * that needs more workers; one that stays empty at a stage with workers to spare.
+ */
+public class StageMetrics {
+
+    private final String stage;
+    private final int concurrency;
+    private final BlockingQueue<?> queue;
+
+    private long processed;
+    private long failed;
+    private long totalNanos;
+    private long maxNanos;
+    private int maxQueueDepth;
+
+    StageMetrics(final String stage, final int concurrency, final BlockingQueue<?> queue) {
+        this.stage = stage;
+        this.concurrency = concurrency;
+        this.queue = queue;
+    }
+
+    synchronized void record(final long nanos, final boolean success) {
+        if (success) {
+            processed++;
+        } else {
+            failed++;
+        }
+        totalNanos += nanos;
+        maxNanos = Math.max(maxNanos, nanos);
+    }
+
+    synchronized void sampleQueueDepth() {
+        maxQueueDepth = Math.max(maxQueueDepth, queue.size());
+    }
+
+    public String getStage() {
+        return stage;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public int getQueueCapacity() {
+        return queue.size() + queue.remainingCapacity();
+    }
+
+    public synchronized int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    public synchronized long getProcessed() {
+        return processed;
+    }
+
+    public synchronized long getFailed() {
+        return failed;
+    }
+
+    public synchronized long getAverageMillis() {
+        final long count = processed + failed;
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalNanos / count);
+    }
+
+    public synchronized long getMaxMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxNanos);
+    }
+}
@@ -0,0 +1,150 @@
+package com.ftpl.rapidTestAI.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Runs items through a sequence of stages, each with its own bounded input queue and
+ * worker threads, so that different items occupy different stages at the same time.
+ * An item is handed to the next stage with a blocking put; a slow stage therefore
+ * fills up and holds back the stages before it instead of letting work pile up in
+ * memory. An item that fails in any stage is recorded in the report and goes no further.
+ */
+@Slf4j
+public class StagedPipeline<T> {
+
+    private final List<Stage<T>> stages = new ArrayList<>();
+
+    public StagedPipeline<T> stage(final String name, final int concurrency, final int queueCapacity, final StageHandler<T> handler) {
+        if (concurrency <= 0 || queueCapacity <= 0) {
+            throw new IllegalArgumentException("Stage " + name + " needs positive concurrency and queue capacity");
+        }
+        stages.add(new Stage<>(name, concurrency, new ArrayBlockingQueue<>(queueCapacity), handler));
+        return this;
+    }
+
+    public Map<String, StageMetrics> getMetrics() {
+        final Map<String, StageMetrics> metrics = new LinkedHashMap<>();
+        for (final Stage<T> stage : stages) {
+            metrics.put(stage.metrics.getStage(), stage.metrics);
+        }
+        return metrics;
+    }
+
+    public GenerationReport run(final List<T> items, final Function<T, String> key, final ProgressListener progress) throws InterruptedException {
+        final GenerationReport report = new GenerationReport(items.size());
+        progress.onProgress(0, items.size());
+        if (items.isEmpty() || stages.isEmpty()) {
+            return report;
+        }
+
+        final long start = System.nanoTime();
+        final CountDownLatch done = new CountDownLatch(items.size());
+        final AtomicInteger completed = new AtomicInteger();
+        final List<ExecutorService> executors = new ArrayList<>();
+        try {
+            for (int i = 0; i < stages.size(); i++) {
+                final Stage<T> stage = stages.get(i);
+                final Stage<T> next = i + 1 < stages.size() ? stages.get(i + 1) : null;
+                final ExecutorService executor = Executors.newFixedThreadPool(stage.concurrency, stageThreadFactory(stage.metrics.getStage()));
+                executors.add(executor);
+                for (int w = 0; w < stage.concurrency; w++) {
+                    executor.execute(() -> work(stage, next, key, report, () -> {
+                        progress.onProgress(completed.incrementAndGet(), items.size());
+                        done.countDown();
+                    }));
+                }
+            }
+
+            final Stage<T> first = stages.get(0);
+            for (final T item : items) {
+                first.queue.put(item);
+                first.metrics.sampleQueueDepth();
+            }
+            done.await();
+        } finally {
+            executors.forEach(ExecutorService::shutdownNow);
+        }
+
+        report.setElapsedMillis((System.nanoTime() - start) / 1_000_000);
+        report.setStageMetrics(getMetrics());
+        log.info("Pipeline processed {} items ({} failed) in {} ms", items.size(), report.getFailed().size(), report.getElapsedMillis());
+        return report;
+    }
+
+    private void work(final Stage<T> stage,
+                      final Stage<T> next,
+                      final Function<T, String> key,
+                      final GenerationReport report,
+                      final Runnable onFinished) {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                final T item = stage.queue.take();
+                final long start = System.nanoTime();
+                try {
+                    stage.handler.handle(item);
+                } catch (final InterruptedException e) {
+                    throw e;
+                } catch (final Throwable e) {
+                    // Errors too: a worker that died here would leave run() waiting for its item forever
+                    stage.metrics.record(System.nanoTime() - start, false);
+                    log.error("Stage {} failed for {}", stage.metrics.getStage(), key.apply(item), e);
+                    report.recordFailure(key.apply(item), e);
+                    onFinished.run();
+                    continue;
+                }
+                stage.metrics.record(System.nanoTime() - start, true);
+
+                if (next != null) {
+                    next.queue.put(item);
+                    next.metrics.sampleQueueDepth();
+                } else {
+                    report.recordSuccess(key.apply(item));
+                    onFinished.run();
+                }
+            }
+        } catch (final InterruptedException e) {
+            // pipeline finished or was cancelled
+        }
+    }
+
+    private static ThreadFactory stageThreadFactory(final String stage) {
+        final AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            final Thread thread = new Thread(runnable, "stage-" + stage + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @FunctionalInterface
+    public interface StageHandler<T> {
+        void handle(T item) throws Exception;
+    }
+
+    private static final class Stage<T> {
+        private final int concurrency;
+        private final BlockingQueue<T> queue;
+        private final StageHandler<T> handler;
+        private final StageMetrics metrics;
+
+        private Stage(final String name, final int concurrency, final BlockingQueue<T> queue, final StageHandler<T> handler) {
+            this.concurrency = concurrency;
+            this.queue = queue;
+            this.handler = handler;
+            this.metrics = new StageMetrics(name, concurrency, queue);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.ftpl.rapidTestAI.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Position of one operation inside {@code openapi_summary.json}, so chunks can be cut
+ * from the summary file by byte range without parsing it back into memory.
+ */
+@Getter
+@AllArgsConstructor
+public class SummaryEntry {
+
+    private final int order;
+    private final String key;
+    private final String fingerprint;
+    private final long offset;
+    private final int length;
+    private final int tokens;
+}
@@ -0,0 +1,101 @@
+package com.ftpl.rapidTestAI.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
+import com.fasterxml.jackson.core.util.Separators;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.ftpl.rapidTestAI.utils.TokenEstimator;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes {@code openapi_summary.json} one operation at a time. The array punctuation is
+ * written raw and every operation is a root-level value of the generator, so the byte
+ * range of each operation is known exactly and recorded as a {@link SummaryEntry}.
+ */
+public class SummaryStreamWriter implements AutoCloseable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ObjectMapper mapper;
+    private final CountingOutputStream out;
+    private final JsonGenerator generator;
+    private final List<SummaryEntry> entries = new ArrayList<>();
+
+    public SummaryStreamWriter(final ObjectMapper mapper, final File file) throws IOException {
+        this.mapper = mapper;
+        this.out = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+        this.generator = mapper.getFactory().createGenerator(out);
+        // flushing the generator must not flush the file buffer after every operation
+        this.generator.disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+        this.generator.setPrettyPrinter(new DefaultPrettyPrinter(Separators.createDefaultInstance().withRootSeparator("")));
+        this.generator.writeRaw("[\n");
+    }
+
+    public SummaryEntry write(final ObjectNode operation) throws IOException {
+        return write(operation, TokenEstimator.estimate(mapper.writeValueAsString(operation)));
+    }
+
+    /**
+     * Writes an operation whose token estimate was already taken, e.g. by the thread
+     * that built it.
+     */
+    public SummaryEntry write(final ObjectNode operation, final int tokens) throws IOException {
+        if (!entries.isEmpty()) {
+            generator.writeRaw(",\n");
+        }
+        generator.flush();
+        final long start = out.count;
+        mapper.writeTree(generator, operation);
+        generator.flush();
+
+        final SummaryEntry entry = new SummaryEntry(
+                entries.size(),
+                OpenAPIChunkExporter.operationKey(operation),
+                OpenAPIChunkExporter.fingerprintOf(operation),
+                start,
+                (int) (out.count - start),
+                tokens);
+        entries.add(entry);
+        return entry;
+    }
+
+    public List<SummaryEntry> getEntries() {
+        return entries;
+    }
+
+    @Override
+    public void close() throws IOException {
+        generator.writeRaw("\n]\n");
+        generator.close();
+        out.close();
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        private CountingOutputStream(final OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
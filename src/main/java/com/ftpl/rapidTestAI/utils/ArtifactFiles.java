@@ -0,0 +1,92 @@
+package com.ftpl.rapidTestAI.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Writes generated artifacts so that a reader never sees a half-written file. Content
+ * goes to {@code <name>.partial} next to the target and is renamed over the target in
+ * one atomic step once complete. After a crash only the {@code .partial} file is left,
+ * and the next write of the same artifact replaces it.
+ */
+public final class ArtifactFiles {
+
+    public static final String PARTIAL_SUFFIX = ".partial";
+
+    private ArtifactFiles() {
+    }
+
+    public static void writeAtomically(final Path target, final String content) throws IOException {
+        try (final PartialFile partial = open(target)) {
+            partial.writer().write(content);
+            partial.commit();
+        }
+    }
+
+    public static PartialFile open(final Path target) throws IOException {
+        return new PartialFile(target);
+    }
+
+    /**
+     * A buffered writer on the {@code .partial} file of an artifact. {@link #commit()}
+     * publishes the artifact; closing without committing leaves only the partial file,
+     * which can still be committed later.
+     */
+    public static final class PartialFile implements Closeable {
+        private final Path target;
+        private final Path partial;
+        private final Writer writer;
+        private boolean committed;
+
+        private PartialFile(final Path target) throws IOException {
+            this.target = target;
+            this.partial = target.resolveSibling(target.getFileName() + PARTIAL_SUFFIX);
+            this.writer = Files.newBufferedWriter(partial, StandardCharsets.UTF_8);
+        }
+
+        public Writer writer() {
+            return writer;
+        }
+
+        public Path getTarget() {
+            return target;
+        }
+
+        public Path getPartialPath() {
+            return partial;
+        }
+
+        public void commit() throws IOException {
+            writer.close();
+            Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            committed = true;
+        }
+
+        /**
+         * Closes and deletes the partial file of an artifact that will not be committed.
+         * Does nothing once committed.
+         */
+        public void discard() throws IOException {
+            if (!committed) {
+                writer.close();
+                Files.deleteIfExists(partial);
+            }
+        }
+
+        public boolean isCommitted() {
+            return committed;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!committed) {
+                writer.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.ftpl.rapidTestAI.utils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+/**
+ * First-fit-decreasing bin packing. Items are placed largest first into the first bin
+ * with enough room left, which keeps the number of bins within 11/9 of the optimum.
+ * Items heavier than the capacity get a bin of their own.
+ */
+public class BinPacker {
+
+    private BinPacker() {
+    }
+
+    public static <T> List<List<T>> firstFitDecreasing(final List<T> items,
+                                                       final ToIntFunction<T> weight,
+                                                       final int capacity) {
+        final List<T> sorted = new ArrayList<>(items);
+        sorted.sort(Comparator.comparingInt(weight).reversed());
+
+        final List<List<T>> bins = new ArrayList<>();
+        final List<Integer> remaining = new ArrayList<>();
+        for (final T item : sorted) {
+            final int itemWeight = weight.applyAsInt(item);
+            int target = -1;
+            for (int i = 0; i < bins.size(); i++) {
+                if (remaining.get(i) >= itemWeight) {
+                    target = i;
+                    break;
+                }
+            }
+            if (target < 0) {
+                bins.add(new ArrayList<>());
+                remaining.add(capacity);
+                target = bins.size() - 1;
+            }
+            bins.get(target).add(item);
+            remaining.set(target, remaining.get(target) - itemWeight);
+        }
+        return bins;
+    }
+}
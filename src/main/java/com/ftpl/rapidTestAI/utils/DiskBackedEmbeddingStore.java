@@ -0,0 +1,739 @@
+package com.ftpl.rapidTestAI.utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import dev.langchain4j.store.embedding.filter.Filter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Embedding store kept in a directory, so that an index survives restarts and a corpus
+ * can be re-ingested at the cost of what changed in it.
+ * <p>
+ * Vectors are appended to {@code vectors-NNNNN.f32} as rows of little-endian floats and
+ * searched through read-only memory mappings of whole rows, each at most 1 GiB, so the
+ * file may outgrow what one buffer can address. The text and metadata of each row are
+ * appended to {@code segments-NNNNN.jsonl}. {@code manifest.json} holds the generation of
+ * those files, the committed row count, the rows of every ingested document keyed by the
+ * SHA-256 of its content, and the removed rows. It is replaced atomically after the data
+ * files are forced to disk, so rows written by an interrupted update are truncated on the
+ * next open. Removed rows are tombstoned; once they make up more than half of the rows
+ * the live rows are streamed to files of the next generation, which the manifest then
+ * switches to.
+ */
+@Slf4j
+public class DiskBackedEmbeddingStore implements EmbeddingStore<TextSegment>, Closeable {
+
+    private static final String VECTORS = "vectors-%05d.f32";
+    private static final String SEGMENTS = "segments-%05d.jsonl";
+    private static final String MANIFEST = "manifest.json";
+    private static final long MAP_BYTES = 1L << 30;
+
+    /**
+     * What {@link #ingest} did: documents embedded because they are new or changed,
+     * documents left as they were, documents removed, and segments embedded.
+     */
+    public record IngestionReport(int added, int unchanged, int removed, int segmentsEmbedded) {
+    }
+
+    /**
+     * A live row as it is stored: its id, vector and segment.
+     */
+    public record StoredEmbedding(String id, Embedding embedding, TextSegment segment) {
+    }
+
+    private record Row(String id, String document, TextSegment segment) {
+    }
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Path directory;
+    private final long mapBytes;
+
+    private int dimension;
+    private final List<Row> rows = new ArrayList<>();
+    private final Map<String, Integer> rowsById = new HashMap<>();
+    private final BitSet tombstones = new BitSet();
+    private float[] norms = new float[0];
+    // content hash -> source and rows, in ingestion order
+    private final Map<String, String> documentSources = new LinkedHashMap<>();
+    private final Map<String, List<Integer>> documentRows = new HashMap<>();
+    private int generation = 1;
+    private long segmentBytes;
+
+    private FileChannel vectorChannel;
+    // consecutive mappings of rowsPerMap rows each, the last one possibly shorter
+    private final List<FloatBuffer> vectorMaps = new ArrayList<>();
+    private int rowsPerMap;
+
+    private final AtomicLong documentsEmbedded = new AtomicLong();
+    private final AtomicLong documentsReused = new AtomicLong();
+    private final AtomicLong documentsRemoved = new AtomicLong();
+    private final AtomicLong segmentsEmbedded = new AtomicLong();
+    private final AtomicLong compactions = new AtomicLong();
+    private final AtomicLong searches = new AtomicLong();
+
+    public DiskBackedEmbeddingStore(final Path directory) throws IOException {
+        this(directory, MAP_BYTES);
+    }
+
+    DiskBackedEmbeddingStore(final Path directory, final long mapBytes) throws IOException {
+        this.directory = directory;
+        this.mapBytes = mapBytes;
+        Files.createDirectories(directory);
+        open();
+    }
+
+    /**
+     * Brings the store up to date with {@code documents}, the whole corpus: documents not
+     * ingested before with the same content are split and embedded, documents ingested
+     * before are kept without embedding them again (under their new source when they were
+     * moved), and documents missing from the list are removed. Without a splitter every
+     * document is one segment. The segments of all new documents are embedded in one
+     * {@link EmbeddingModel#embedAll} call, which the model may split into batches.
+     */
+    public synchronized IngestionReport ingest(final List<Document> documents,
+                                               final DocumentSplitter splitter,
+                                               final EmbeddingModel embeddingModel) throws IOException {
+        final Map<String, Document> current = new LinkedHashMap<>();
+        for (final Document document : documents) {
+            current.putIfAbsent(contentHash(document.text()), document);
+        }
+
+        int removed = 0;
+        for (final String hash : new ArrayList<>(documentSources.keySet())) {
+            if (!current.containsKey(hash)) {
+                removeDocument(hash);
+                removed++;
+            }
+        }
+
+        int added = 0;
+        int unchanged = 0;
+        int embedded = 0;
+        final List<String> ids = new ArrayList<>();
+        final List<Embedding> embeddings = new ArrayList<>();
+        final List<TextSegment> segments = new ArrayList<>();
+        final List<String> owners = new ArrayList<>();
+        // registered once their rows are written, so a failed ingestion leaves them to the next one
+        final Map<String, String> addedSources = new LinkedHashMap<>();
+        for (final Map.Entry<String, Document> entry : current.entrySet()) {
+            final String source = sourceOf(entry.getValue());
+            if (documentSources.containsKey(entry.getKey())) {
+                documentSources.put(entry.getKey(), source);
+                unchanged++;
+                continue;
+            }
+            final List<TextSegment> documentSegments = splitter == null
+                    ? List.of(entry.getValue().toTextSegment())
+                    : splitter.split(entry.getValue());
+            for (final TextSegment segment : documentSegments) {
+                ids.add(UUID.randomUUID().toString());
+                segments.add(segment);
+                owners.add(entry.getKey());
+            }
+            addedSources.put(entry.getKey(), source);
+            embedded += documentSegments.size();
+            added++;
+        }
+
+        if (!segments.isEmpty()) {
+            embeddings.addAll(embeddingModel.embedAll(segments).content());
+        }
+        append(ids, embeddings, segments, owners);
+        for (final Map.Entry<String, String> document : addedSources.entrySet()) {
+            documentSources.put(document.getKey(), document.getValue());
+            documentRows.putIfAbsent(document.getKey(), new ArrayList<>());
+        }
+        try {
+            commit();
+        } catch (final IOException e) {
+            // the manifest does not list them, so neither may the next ingestion
+            addedSources.keySet().forEach(hash -> {
+                if (documentSources.containsKey(hash)) {
+                    removeDocument(hash);
+                }
+            });
+            throw e;
+        }
+        documentsEmbedded.addAndGet(added);
+        documentsReused.addAndGet(unchanged);
+        documentsRemoved.addAndGet(removed);
+        segmentsEmbedded.addAndGet(embedded);
+        log.info("Ingested {} documents into {}: {} new or changed ({} segments embedded), {} unchanged, {} removed",
+                current.size(), directory, added, embedded, unchanged, removed);
+        return new IngestionReport(added, unchanged, removed, embedded);
+    }
+
+    @Override
+    public String add(final Embedding embedding) {
+        final String id = UUID.randomUUID().toString();
+        add(id, embedding);
+        return id;
+    }
+
+    @Override
+    public void add(final String id, final Embedding embedding) {
+        addAll(List.of(id), List.of(embedding), null);
+    }
+
+    @Override
+    public String add(final Embedding embedding, final TextSegment segment) {
+        final String id = UUID.randomUUID().toString();
+        addAll(List.of(id), List.of(embedding), List.of(segment));
+        return id;
+    }
+
+    @Override
+    public List<String> addAll(final List<Embedding> embeddings) {
+        final List<String> ids = generateIds(embeddings.size());
+        addAll(ids, embeddings, null);
+        return ids;
+    }
+
+    @Override
+    public synchronized void addAll(final List<String> ids, final List<Embedding> embeddings, final List<TextSegment> segments) {
+        final List<String> owners = new ArrayList<>();
+        final List<TextSegment> embedded = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+            owners.add(null);
+            embedded.add(segments == null ? null : segments.get(i));
+        }
+        try {
+            append(ids, embeddings, embedded, owners);
+            commit();
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Unable to add embeddings to " + directory, e);
+        }
+    }
+
+    @Override
+    public void remove(final String id) {
+        removeAll(List.of(id));
+    }
+
+    @Override
+    public synchronized void removeAll(final Collection<String> ids) {
+        for (final String id : ids) {
+            final Integer row = rowsById.get(id);
+            if (row != null) {
+                tombstone(row);
+            }
+        }
+        commitUnchecked();
+    }
+
+    @Override
+    public synchronized void removeAll(final Filter filter) {
+        for (int row = 0; row < rows.size(); row++) {
+            final TextSegment segment = rows.get(row).segment();
+            if (!tombstones.get(row) && segment != null && filter.test(segment.metadata())) {
+                tombstone(row);
+            }
+        }
+        commitUnchecked();
+    }
+
+    @Override
+    public synchronized void removeAll() {
+        tombstones.set(0, rows.size());
+        documentSources.clear();
+        documentRows.clear();
+        commitUnchecked();
+    }
+
+    /**
+     * Scans every live row: the store is meant for corpora whose vectors fit the page
+     * cache, where a sequential scan of the mapping is cheap.
+     */
+    @Override
+    public synchronized EmbeddingSearchResult<TextSegment> search(final EmbeddingSearchRequest request) {
+        searches.incrementAndGet();
+        final float[] query = request.queryEmbedding().vector();
+        if (!rows.isEmpty() && query.length != dimension) {
+            throw new IllegalArgumentException("Query has " + query.length + " dimensions, the store " + dimension);
+        }
+        final float queryNorm = norm(query, 0, query.length);
+        final PriorityQueue<EmbeddingMatch<TextSegment>> best = new PriorityQueue<>(Comparator.comparingDouble(EmbeddingMatch::score));
+        for (int row = 0; row < rows.size(); row++) {
+            if (tombstones.get(row)) {
+                continue;
+            }
+            final Row stored = rows.get(row);
+            if (request.filter() != null && (stored.segment() == null || !request.filter().test(stored.segment().metadata()))) {
+                continue;
+            }
+            double dot = 0;
+            final FloatBuffer vectors = vectorMap(row);
+            final int offset = vectorOffset(row);
+            for (int i = 0; i < dimension; i++) {
+                dot += query[i] * vectors.get(offset + i);
+            }
+            final double cosine = queryNorm == 0 || norms[row] == 0 ? 0 : dot / (queryNorm * norms[row]);
+            final double score = RelevanceScore.fromCosineSimilarity(cosine);
+            if (score < request.minScore()) {
+                continue;
+            }
+            if (best.size() < request.maxResults() || score > best.peek().score()) {
+                best.add(new EmbeddingMatch<>(score, stored.id(), new Embedding(vectorOf(row)), stored.segment()));
+                if (best.size() > request.maxResults()) {
+                    best.poll();
+                }
+            }
+        }
+        final List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(best);
+        matches.sort(Comparator.comparingDouble((EmbeddingMatch<TextSegment> match) -> match.score()).reversed());
+        return new EmbeddingSearchResult<>(matches);
+    }
+
+    /**
+     * Ids of the live rows in the order they were added.
+     */
+    public synchronized List<String> ids() {
+        final List<String> ids = new ArrayList<>();
+        for (int row = tombstones.nextClearBit(0); row < rows.size(); row = tombstones.nextClearBit(row + 1)) {
+            ids.add(rows.get(row).id());
+        }
+        return ids;
+    }
+
+    /**
+     * The live rows among {@code ids}, in the order of {@code ids}; ids of removed or
+     * unknown rows are skipped.
+     */
+    public synchronized List<StoredEmbedding> embeddings(final Collection<String> ids) {
+        final List<StoredEmbedding> embeddings = new ArrayList<>();
+        for (final String id : ids) {
+            final Integer row = rowsById.get(id);
+            if (row != null && !tombstones.get(row)) {
+                embeddings.add(new StoredEmbedding(id, new Embedding(vectorOf(row)), rows.get(row).segment()));
+            }
+        }
+        return embeddings;
+    }
+
+    public synchronized Map<String, Long> getStats() {
+        final Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("rows", (long) rows.size());
+        stats.put("liveRows", (long) (rows.size() - tombstones.cardinality()));
+        stats.put("tombstones", (long) tombstones.cardinality());
+        stats.put("documents", (long) documentSources.size());
+        stats.put("documentsEmbedded", documentsEmbedded.get());
+        stats.put("documentsReused", documentsReused.get());
+        stats.put("documentsRemoved", documentsRemoved.get());
+        stats.put("segmentsEmbedded", segmentsEmbedded.get());
+        stats.put("compactions", compactions.get());
+        stats.put("searches", searches.get());
+        return stats;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        vectorMaps.clear();
+        if (vectorChannel != null) {
+            vectorChannel.close();
+            vectorChannel = null;
+        }
+    }
+
+    private void open() throws IOException {
+        final Path manifestFile = directory.resolve(MANIFEST);
+        int committedRows = 0;
+        if (Files.exists(manifestFile)) {
+            final JsonNode manifest = mapper.readTree(manifestFile.toFile());
+            generation = manifest.get("generation").asInt();
+            dimension = manifest.get("dimension").asInt();
+            committedRows = manifest.get("rows").asInt();
+            segmentBytes = manifest.get("segmentBytes").asLong();
+            manifest.get("tombstones").forEach(row -> tombstones.set(row.asInt()));
+            manifest.get("documents").fields().forEachRemaining(document -> {
+                documentSources.put(document.getKey(), document.getValue().get("source").asText());
+                final List<Integer> documentRowList = new ArrayList<>();
+                document.getValue().get("rows").forEach(row -> documentRowList.add(row.asInt()));
+                documentRows.put(document.getKey(), documentRowList);
+            });
+        }
+
+        // anything past the committed length was written by an update that did not finish
+        openGeneration();
+        try (final FileChannel segmentChannel = FileChannel.open(segmentsFile(), StandardOpenOption.WRITE)) {
+            segmentChannel.truncate(segmentBytes);
+        }
+        vectorChannel.truncate((long) committedRows * dimension * Float.BYTES);
+        deleteOtherGenerations();
+
+        try (final BufferedReader reader = Files.newBufferedReader(segmentsFile(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final JsonNode record = mapper.readTree(line);
+                final JsonNode text = record.get("text");
+                final TextSegment segment = text == null || text.isNull() ? null
+                        : TextSegment.from(text.asText(), metadataOf(record.get("metadata")));
+                final JsonNode document = record.get("document");
+                addRow(new Row(record.get("id").asText(), document == null || document.isNull() ? null : document.asText(), segment));
+            }
+        }
+        if (rows.size() != committedRows) {
+            throw new IOException("Embedding store " + directory + " lists " + committedRows + " rows but holds " + rows.size());
+        }
+        remap();
+        for (int row = 0; row < rows.size(); row++) {
+            norms[row] = norm(vectorMap(row), vectorOffset(row), dimension);
+        }
+        log.info("Opened embedding store at {} with {} rows ({} removed) from {} documents",
+                directory, rows.size(), tombstones.cardinality(), documentSources.size());
+    }
+
+    private void append(final List<String> ids,
+                        final List<Embedding> embeddings,
+                        final List<TextSegment> segments,
+                        final List<String> owners) throws IOException {
+        if (ids.isEmpty()) {
+            return;
+        }
+        if (rows.isEmpty() && dimension == 0) {
+            dimension = embeddings.get(0).dimension();
+        }
+        final ByteBuffer vectorBytes = ByteBuffer.allocate(ids.size() * dimension * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        final ByteArrayOutputStream segmentRecords = new ByteArrayOutputStream();
+        for (int i = 0; i < ids.size(); i++) {
+            final float[] vector = embeddings.get(i).vector();
+            if (vector.length != dimension) {
+                throw new IllegalArgumentException("Embedding has " + vector.length + " dimensions, the store " + dimension);
+            }
+            for (final float value : vector) {
+                vectorBytes.putFloat(value);
+            }
+            segmentRecords.write(recordOf(new Row(ids.get(i), owners.get(i), segments.get(i))));
+        }
+        vectorBytes.flip();
+        long position = (long) rows.size() * dimension * Float.BYTES;
+        while (vectorBytes.hasRemaining()) {
+            position += vectorChannel.write(vectorBytes, position);
+        }
+        vectorChannel.force(false);
+        try (final FileChannel segmentChannel = FileChannel.open(segmentsFile(), StandardOpenOption.WRITE)) {
+            final ByteBuffer recordBytes = ByteBuffer.wrap(segmentRecords.toByteArray());
+            long segmentPosition = segmentBytes;
+            while (recordBytes.hasRemaining()) {
+                segmentPosition += segmentChannel.write(recordBytes, segmentPosition);
+            }
+            segmentChannel.force(false);
+            segmentBytes = segmentPosition;
+        }
+
+        final int first = rows.size();
+        for (int i = 0; i < ids.size(); i++) {
+            final Integer replaced = rowsById.get(ids.get(i));
+            if (replaced != null) {
+                tombstone(replaced);
+            }
+            addRow(new Row(ids.get(i), owners.get(i), segments.get(i)));
+            if (owners.get(i) != null) {
+                documentRows.computeIfAbsent(owners.get(i), document -> new ArrayList<>()).add(first + i);
+            }
+        }
+        remap();
+        for (int row = first; row < rows.size(); row++) {
+            norms[row] = norm(vectorMap(row), vectorOffset(row), dimension);
+        }
+    }
+
+    private byte[] recordOf(final Row row) throws IOException {
+        final ObjectNode record = mapper.createObjectNode();
+        record.put("id", row.id());
+        record.put("document", row.document());
+        if (row.segment() != null) {
+            record.put("text", row.segment().text());
+            record.set("metadata", mapper.valueToTree(row.segment().metadata().toMap()));
+        }
+        return (mapper.writeValueAsString(record) + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void addRow(final Row row) {
+        rowsById.put(row.id(), rows.size());
+        rows.add(row);
+        if (norms.length < rows.size()) {
+            norms = Arrays.copyOf(norms, Math.max(16, norms.length * 2));
+        }
+    }
+
+    private void tombstone(final int row) {
+        tombstones.set(row);
+        rowsById.remove(rows.get(row).id());
+        // a document with a removed segment is embedded again by the next ingestion
+        final String document = rows.get(row).document();
+        if (document != null && documentSources.containsKey(document)) {
+            removeDocument(document);
+        }
+    }
+
+    private void removeDocument(final String hash) {
+        documentSources.remove(hash);
+        for (final int row : documentRows.remove(hash)) {
+            tombstones.set(row);
+            rowsById.remove(rows.get(row).id());
+        }
+    }
+
+    private void commitUnchecked() {
+        try {
+            commit();
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Unable to update embedding store " + directory, e);
+        }
+    }
+
+    private void commit() throws IOException {
+        final boolean compacting = tombstones.cardinality() * 2 > rows.size();
+        if (compacting) {
+            compact();
+        }
+        final ObjectNode manifest = mapper.createObjectNode();
+        manifest.put("generation", generation);
+        manifest.put("dimension", dimension);
+        manifest.put("rows", rows.size());
+        manifest.put("segmentBytes", segmentBytes);
+        final ObjectNode documents = manifest.putObject("documents");
+        for (final Map.Entry<String, String> document : documentSources.entrySet()) {
+            final ObjectNode entry = documents.putObject(document.getKey());
+            entry.put("source", document.getValue());
+            documentRows.get(document.getKey()).forEach(entry.putArray("rows")::add);
+        }
+        tombstones.stream().forEach(manifest.putArray("tombstones")::add);
+        final Path temporary = directory.resolve(MANIFEST + ".tmp");
+        Files.write(temporary, mapper.writeValueAsBytes(manifest));
+        Files.move(temporary, directory.resolve(MANIFEST), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        if (compacting) {
+            deleteOtherGenerations();
+        }
+    }
+
+    /**
+     * Streams the live rows to files of the next generation: vectors are transferred
+     * between the files run by run of live rows, so compaction does not hold the vectors
+     * on the heap. The files of the current generation stay in place until the manifest
+     * naming the new ones is written.
+     */
+    private void compact() throws IOException {
+        final Path nextVectors = vectorsFile(generation + 1);
+        final Path nextSegments = segmentsFile(generation + 1);
+        Files.deleteIfExists(nextVectors);
+        Files.deleteIfExists(nextSegments);
+        final long rowBytes = (long) dimension * Float.BYTES;
+        final List<Row> live = new ArrayList<>();
+        final float[] liveNorms = new float[rows.size() - tombstones.cardinality()];
+        final long nextSegmentBytes;
+        try (final FileChannel vectorTarget = FileChannel.open(nextVectors, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+             final FileChannel segmentTarget = FileChannel.open(nextSegments, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            final OutputStream records = new BufferedOutputStream(Channels.newOutputStream(segmentTarget));
+            int start = tombstones.nextClearBit(0);
+            while (start < rows.size()) {
+                final int nextRemoved = tombstones.nextSetBit(start);
+                final int end = nextRemoved < 0 ? rows.size() : nextRemoved;
+                long position = start * rowBytes;
+                while (position < end * rowBytes) {
+                    position += vectorChannel.transferTo(position, end * rowBytes - position, vectorTarget);
+                }
+                for (int row = start; row < end; row++) {
+                    records.write(recordOf(rows.get(row)));
+                    liveNorms[live.size()] = norms[row];
+                    live.add(rows.get(row));
+                }
+                start = tombstones.nextClearBit(end);
+            }
+            records.flush();
+            vectorTarget.force(false);
+            segmentTarget.force(false);
+            nextSegmentBytes = segmentTarget.size();
+        }
+        final int removed = rows.size() - live.size();
+
+        close();
+        generation++;
+        openGeneration();
+        rows.clear();
+        rowsById.clear();
+        tombstones.clear();
+        segmentBytes = nextSegmentBytes;
+        if (live.isEmpty()) {
+            dimension = 0;
+        }
+        documentRows.replaceAll((document, documentRowList) -> new ArrayList<>());
+        for (final Row row : live) {
+            if (row.document() != null) {
+                documentRows.computeIfAbsent(row.document(), document -> new ArrayList<>()).add(rows.size());
+            }
+            addRow(row);
+        }
+        System.arraycopy(liveNorms, 0, norms, 0, liveNorms.length);
+        remap();
+        compactions.incrementAndGet();
+        log.info("Compacted embedding store {}: dropped {} removed rows, {} left", directory, removed, live.size());
+    }
+
+    private void openGeneration() throws IOException {
+        if (!Files.exists(segmentsFile())) {
+            Files.createFile(segmentsFile());
+        }
+        vectorChannel = FileChannel.open(vectorsFile(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private void deleteOtherGenerations() throws IOException {
+        final String vectors = vectorsFile().getFileName().toString();
+        final String segments = segmentsFile().getFileName().toString();
+        try (final Stream<Path> files = Files.list(directory)) {
+            for (final Path file : files.toList()) {
+                final String name = file.getFileName().toString();
+                final boolean dataFile = name.startsWith("vectors-") || name.startsWith("segments-");
+                if (dataFile && !name.equals(vectors) && !name.equals(segments)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    private Path vectorsFile() {
+        return vectorsFile(generation);
+    }
+
+    private Path vectorsFile(final int fileGeneration) {
+        return directory.resolve(String.format(VECTORS, fileGeneration));
+    }
+
+    private Path segmentsFile() {
+        return segmentsFile(generation);
+    }
+
+    private Path segmentsFile(final int fileGeneration) {
+        return directory.resolve(String.format(SEGMENTS, fileGeneration));
+    }
+
+    /**
+     * Maps the rows appended since the last call. Full mappings are kept; the last one is
+     * mapped again once it has grown.
+     */
+    private void remap() throws IOException {
+        if (dimension == 0) {
+            vectorMaps.clear();
+            return;
+        }
+        final long rowBytes = (long) dimension * Float.BYTES;
+        rowsPerMap = (int) Math.max(1, Math.min(Integer.MAX_VALUE, mapBytes / rowBytes));
+        final int last = vectorMaps.size() - 1;
+        if (last >= 0 && vectorMaps.get(last).capacity() < rowsPerMap * dimension) {
+            vectorMaps.remove(last);
+        }
+        for (long first = (long) vectorMaps.size() * rowsPerMap; first < rows.size(); first += rowsPerMap) {
+            final long count = Math.min(rowsPerMap, rows.size() - first);
+            vectorMaps.add(vectorChannel.map(FileChannel.MapMode.READ_ONLY, first * rowBytes, count * rowBytes)
+                    .order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer());
+        }
+    }
+
+    private FloatBuffer vectorMap(final int row) {
+        return vectorMaps.get(row / rowsPerMap);
+    }
+
+    private int vectorOffset(final int row) {
+        return row % rowsPerMap * dimension;
+    }
+
+    private float[] vectorOf(final int row) {
+        final float[] vector = new float[dimension];
+        vectorMap(row).get(vectorOffset(row), vector);
+        return vector;
+    }
+
+    private static float norm(final float[] vector, final int offset, final int length) {
+        double sum = 0;
+        for (int i = offset; i < offset + length; i++) {
+            sum += vector[i] * vector[i];
+        }
+        return (float) Math.sqrt(sum);
+    }
+
+    private static float norm(final FloatBuffer vectors, final int offset, final int length) {
+        double sum = 0;
+        for (int i = offset; i < offset + length; i++) {
+            sum += vectors.get(i) * vectors.get(i);
+        }
+        return (float) Math.sqrt(sum);
+    }
+
+    private Metadata metadataOf(final JsonNode node) {
+        if (node == null || node.isNull()) {
+            return new Metadata();
+        }
+        final Map<String, Object> values = new HashMap<>();
+        node.fields().forEachRemaining(field -> {
+            final JsonNode value = field.getValue();
+            values.put(field.getKey(), value.isInt() ? (Object) value.intValue()
+                    : value.isIntegralNumber() ? (Object) value.longValue()
+                    : value.isNumber() ? (Object) value.doubleValue()
+                    : value.asText());
+        });
+        return new Metadata(values);
+    }
+
+    private static String sourceOf(final Document document) {
+        final String directory = document.metadata().getString(Document.ABSOLUTE_DIRECTORY_PATH);
+        final String fileName = document.metadata().getString(Document.FILE_NAME);
+        if (fileName == null) {
+            return document.metadata().getString(Document.URL);
+        }
+        return directory == null ? fileName : Path.of(directory, fileName).toString();
+    }
+
+    static String contentHash(final String text) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
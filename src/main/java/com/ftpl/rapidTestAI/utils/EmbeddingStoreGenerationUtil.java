@@ -1,11 +1,15 @@
 package com.ftpl.rapidTestAI.utils;
 
 import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentSplitter;
 import dev.langchain4j.data.document.loader.FileSystemDocumentLoader;
 import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.store.embedding.EmbeddingStoreIngestor;
 import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.List;
 
 public class EmbeddingStoreGenerationUtil {
@@ -16,4 +20,25 @@ public class EmbeddingStoreGenerationUtil {
         EmbeddingStoreIngestor.ingest(documents, embeddingStore);
         return embeddingStore;
     }
+
+    /**
+     * Opens the store kept in {@code storeDirectory} and brings it up to date with the
+     * documents under {@code resourcesPath}. Only documents that are new or whose content
+     * changed since the last call are embedded; deleted documents are removed from the
+     * store. {@code splitter} may be null to embed every document as one segment.
+     */
+    public static DiskBackedEmbeddingStore createEmbeddingStore(final String resourcesPath,
+                                                                final String storeDirectory,
+                                                                final DocumentSplitter splitter,
+                                                                final EmbeddingModel embeddingModel) throws IOException {
+        final List<Document> documents = FileSystemDocumentLoader.loadDocumentsRecursively(resourcesPath);
+        final DiskBackedEmbeddingStore embeddingStore = new DiskBackedEmbeddingStore(Paths.get(storeDirectory));
+        try {
+            embeddingStore.ingest(documents, splitter, embeddingModel);
+        } catch (final IOException | RuntimeException e) {
+            embeddingStore.close();
+            throw e;
+        }
+        return embeddingStore;
+    }
 }
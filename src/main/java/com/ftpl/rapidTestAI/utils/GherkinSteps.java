@@ -0,0 +1,200 @@
+package com.ftpl.rapidTestAI.utils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads the steps of a Gherkin feature and turns their text into Cucumber expressions,
+ * so that steps differing only in their values share one step definition. Quoted text
+ * becomes {@code {string}} and every number {@code {bigdecimal}}; the rest is kept
+ * literally, escaped where Cucumber expressions give it a meaning. Numbers share one
+ * parameter type because Cucumber's {@code {double}} also matches whole numbers, so
+ * {@code {int}} and {@code {double}} variants of a step would be ambiguous, and
+ * {@code {bigdecimal}} takes values of any size. Scenario outlines are expanded with
+ * their examples first, as Cucumber does when it runs them, so a placeholder becomes
+ * whatever parameter its values call for; an outline without example rows runs no
+ * scenario and contributes no steps.
+ */
+public final class GherkinSteps {
+
+    /**
+     * The extra argument a step passes to its definition.
+     */
+    public enum Argument {
+        NONE, DATA_TABLE, DOC_STRING
+    }
+
+    /**
+     * A distinct step of a feature: the keyword it was first written with ({@code And} and
+     * {@code But} resolved to the keyword they continue), its Cucumber expression and one
+     * text it was written as.
+     */
+    public record Step(String keyword, String expression, Argument argument, String example) {
+    }
+
+    private static final Pattern VALUE = Pattern.compile("\"([^\"]*)\"|(?<![\\w.])(-?\\d+(?:\\.\\d+)?)(?![\\w.])");
+    private static final Pattern PLACEHOLDER = Pattern.compile("<([^<>\\s]+)>");
+    private static final List<String> KEYWORDS = List.of("Given", "When", "Then", "And", "But", "*");
+
+    private GherkinSteps() {
+    }
+
+    /**
+     * The distinct steps of {@code featureText} in the order they first appear.
+     */
+    public static List<Step> stepsOf(final String featureText) {
+        // steps with the example values they are run with, built once their arguments are known
+        final List<Map.Entry<RawStep, Map<String, String>>> expanded = new ArrayList<>();
+        final List<RawStep> outline = new ArrayList<>();
+        List<String> header = null;
+        boolean inOutline = false;
+        boolean inExamples = false;
+        boolean inDocString = false;
+        String docStringFence = null;
+        String keyword = "Given";
+        RawStep last = null;
+
+        for (final String rawLine : featureText.split("\\R")) {
+            final String line = rawLine.strip();
+            if (inDocString) {
+                inDocString = !line.startsWith(docStringFence);
+                continue;
+            }
+            if (line.isEmpty() || line.startsWith("#") || line.startsWith("@")) {
+                continue;
+            }
+            if (line.startsWith("\"\"\"") || line.startsWith("```")) {
+                inDocString = true;
+                docStringFence = line.substring(0, 3);
+                if (last != null) {
+                    last.argument = Argument.DOC_STRING;
+                }
+                continue;
+            }
+            if (line.startsWith("|")) {
+                if (!inExamples) {
+                    if (last != null && last.argument == Argument.NONE) {
+                        last.argument = Argument.DATA_TABLE;
+                    }
+                } else if (header == null) {
+                    header = cells(line);
+                } else {
+                    final Map<String, String> values = new LinkedHashMap<>();
+                    final List<String> row = cells(line);
+                    for (int i = 0; i < header.size() && i < row.size(); i++) {
+                        values.put(header.get(i), row.get(i));
+                    }
+                    for (final RawStep step : outline) {
+                        expanded.add(Map.entry(step, values));
+                    }
+                }
+                continue;
+            }
+            if (line.startsWith("Examples:") || line.startsWith("Scenarios:")) {
+                inExamples = true;
+                header = null;
+                last = null;
+                continue;
+            }
+            final String section = section(line);
+            if (section != null) {
+                outline.clear();
+                inOutline = section.equals("Scenario Outline:") || section.equals("Scenario Template:");
+                inExamples = false;
+                last = null;
+                continue;
+            }
+            final String stepKeyword = stepKeyword(line);
+            if (stepKeyword == null || inExamples) {
+                continue;
+            }
+            if (!stepKeyword.equals("And") && !stepKeyword.equals("But") && !stepKeyword.equals("*")) {
+                keyword = stepKeyword;
+            }
+            last = new RawStep(keyword, line.substring(stepKeyword.length()).strip());
+            if (inOutline) {
+                outline.add(last);
+            } else {
+                expanded.add(Map.entry(last, Map.of()));
+            }
+        }
+
+        final Map<String, Step> steps = new LinkedHashMap<>();
+        for (final Map.Entry<RawStep, Map<String, String>> step : expanded) {
+            final RawStep raw = step.getKey();
+            final String text = PLACEHOLDER.matcher(raw.text).replaceAll(
+                    match -> Matcher.quoteReplacement(step.getValue().getOrDefault(match.group(1), match.group())));
+            final String expression = expressionOf(text);
+            steps.putIfAbsent(expression, new Step(raw.keyword, expression, raw.argument, text));
+        }
+        return List.copyOf(steps.values());
+    }
+
+    /**
+     * The Cucumber expression matching {@code text} and every text differing from it only
+     * in its quoted strings and numbers. A placeholder without a value is kept literally,
+     * as Cucumber keeps it in the step text.
+     */
+    public static String expressionOf(final String text) {
+        final String normalized = text.strip().replaceAll("\\s+", " ");
+        final StringBuilder expression = new StringBuilder();
+        final Matcher matcher = VALUE.matcher(normalized);
+        int literalStart = 0;
+        while (matcher.find()) {
+            expression.append(escape(normalized.substring(literalStart, matcher.start())));
+            expression.append(matcher.group(1) != null ? "{string}" : "{bigdecimal}");
+            literalStart = matcher.end();
+        }
+        expression.append(escape(normalized.substring(literalStart)));
+        return expression.toString();
+    }
+
+    private static String escape(final String literal) {
+        return literal.replaceAll("([\\\\(){}/])", "\\\\$1");
+    }
+
+    private static List<String> cells(final String line) {
+        final List<String> cells = new ArrayList<>();
+        final String inner = line.endsWith("|") && line.length() > 1 ? line.substring(1, line.length() - 1) : line.substring(1);
+        for (final String cell : inner.split("(?<!\\\\)\\|", -1)) {
+            cells.add(cell.strip());
+        }
+        return cells;
+    }
+
+    private static String section(final String line) {
+        for (final String section : List.of("Feature:", "Rule:", "Background:", "Scenario Outline:", "Scenario Template:", "Scenario:", "Example:")) {
+            if (line.startsWith(section)) {
+                return section;
+            }
+        }
+        return null;
+    }
+
+    private static String stepKeyword(final String line) {
+        for (final String keyword : KEYWORDS) {
+            if (line.startsWith(keyword + " ")) {
+                return keyword;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A step as written; its argument is filled in by the lines after it.
+     */
+    private static final class RawStep {
+        private final String keyword;
+        private final String text;
+        private Argument argument = Argument.NONE;
+
+        private RawStep(final String keyword, final String text) {
+            this.keyword = keyword;
+            this.text = text;
+        }
+    }
+}
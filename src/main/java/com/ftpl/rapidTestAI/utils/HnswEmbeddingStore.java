@@ -0,0 +1,193 @@
+package com.ftpl.rapidTestAI.utils;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.CosineSimilarity;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import dev.langchain4j.store.embedding.filter.Filter;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.IntPredicate;
+
+/**
+ * In-memory embedding store searched through an {@link HnswIndex} instead of the full
+ * scan of {@code InMemoryEmbeddingStore}. The index takes its dimension from the first
+ * embedding added. Removed embeddings stay in the graph as tombstones and are skipped,
+ * like embeddings rejected by a search filter; matches carry the normalized vector.
+ */
+public class HnswEmbeddingStore implements EmbeddingStore<TextSegment> {
+
+    private final HnswIndex.Parameters parameters;
+    private final long seed;
+    private final StampedLock lock = new StampedLock();
+
+    private volatile HnswIndex index;
+    private final List<String> ids = new ArrayList<>();
+    private final List<TextSegment> segments = new ArrayList<>();
+    private final Map<String, Integer> nodesById = new HashMap<>();
+    private final BitSet removed = new BitSet();
+
+    private final AtomicLong searches = new AtomicLong();
+    private final AtomicLong searchNanos = new AtomicLong();
+
+    public HnswEmbeddingStore(final HnswIndex.Parameters parameters) {
+        this(parameters, 42);
+    }
+
+    public HnswEmbeddingStore(final HnswIndex.Parameters parameters, final long seed) {
+        this.parameters = parameters;
+        this.seed = seed;
+    }
+
+    @Override
+    public String add(final Embedding embedding) {
+        final String id = UUID.randomUUID().toString();
+        addAll(List.of(id), List.of(embedding), null);
+        return id;
+    }
+
+    @Override
+    public void add(final String id, final Embedding embedding) {
+        addAll(List.of(id), List.of(embedding), null);
+    }
+
+    @Override
+    public String add(final Embedding embedding, final TextSegment segment) {
+        final String id = UUID.randomUUID().toString();
+        addAll(List.of(id), List.of(embedding), List.of(segment));
+        return id;
+    }
+
+    @Override
+    public List<String> addAll(final List<Embedding> embeddings) {
+        final List<String> generated = generateIds(embeddings.size());
+        addAll(generated, embeddings, null);
+        return generated;
+    }
+
+    /**
+     * Adds the embeddings; an id that is already present replaces the earlier embedding.
+     */
+    @Override
+    public void addAll(final List<String> ids, final List<Embedding> embeddings, final List<TextSegment> embedded) {
+        final long stamp = lock.writeLock();
+        try {
+            for (int i = 0; i < ids.size(); i++) {
+                if (index == null) {
+                    index = new HnswIndex(embeddings.get(i).dimension(), parameters, seed);
+                }
+                final int node = index.add(embeddings.get(i).vector());
+                final Integer replaced = nodesById.put(ids.get(i), node);
+                if (replaced != null) {
+                    removed.set(replaced);
+                }
+                this.ids.add(ids.get(i));
+                segments.add(embedded == null ? null : embedded.get(i));
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void remove(final String id) {
+        removeAll(List.of(id));
+    }
+
+    @Override
+    public void removeAll(final Collection<String> ids) {
+        final long stamp = lock.writeLock();
+        try {
+            for (final String id : ids) {
+                final Integer node = nodesById.remove(id);
+                if (node != null) {
+                    removed.set(node);
+                }
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void removeAll(final Filter filter) {
+        final long stamp = lock.writeLock();
+        try {
+            for (int node = 0; node < segments.size(); node++) {
+                if (!removed.get(node) && segments.get(node) != null && filter.test(segments.get(node).metadata())) {
+                    removed.set(node);
+                    nodesById.remove(ids.get(node));
+                }
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void removeAll() {
+        final long stamp = lock.writeLock();
+        try {
+            removed.set(0, ids.size());
+            nodesById.clear();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(final EmbeddingSearchRequest request) {
+        final long start = System.nanoTime();
+        final long stamp = lock.readLock();
+        try {
+            if (index == null) {
+                return new EmbeddingSearchResult<>(List.of());
+            }
+            final Filter filter = request.filter();
+            final IntPredicate accept = node -> !removed.get(node)
+                    && (filter == null || segments.get(node) != null && filter.test(segments.get(node).metadata()));
+            final double minSimilarity = CosineSimilarity.fromRelevanceScore(request.minScore());
+            final List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>();
+            for (final HnswIndex.Neighbor neighbor : index.search(request.queryEmbedding().vector(), request.maxResults(), parameters.efSearch(), accept)) {
+                if (neighbor.similarity() < minSimilarity) {
+                    break;
+                }
+                matches.add(new EmbeddingMatch<>(RelevanceScore.fromCosineSimilarity(neighbor.similarity()), ids.get(neighbor.node()),
+                        Embedding.from(index.vector(neighbor.node())), segments.get(neighbor.node())));
+            }
+            return new EmbeddingSearchResult<>(matches);
+        } finally {
+            lock.unlockRead(stamp);
+            searches.incrementAndGet();
+            searchNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    public Map<String, Long> getStats() {
+        final Map<String, Long> stats = new LinkedHashMap<>();
+        final long stamp = lock.readLock();
+        try {
+            stats.put("embeddings", (long) nodesById.size());
+            stats.put("removed", (long) removed.cardinality());
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        final long count = searches.get();
+        stats.put("searches", count);
+        stats.put("averageSearchMicros", count == 0 ? 0 : searchNanos.get() / count / 1000);
+        return stats;
+    }
+}
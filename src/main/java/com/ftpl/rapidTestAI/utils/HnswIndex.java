@@ -0,0 +1,437 @@
+package com.ftpl.rapidTestAI.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.IntPredicate;
+
+/**
+ * Hierarchical navigable small world graph for approximate nearest-neighbour search by
+ * cosine similarity (Malkov and Yashunin). Vectors are normalized when added, so
+ * similarity is a dot product, and are identified by the order they were added in.
+ * <p>
+ * {@code m} bounds the links of a node per layer (twice that on the bottom layer),
+ * {@code efConstruction} is the candidate list size used to find a new node's
+ * neighbours and {@code efSearch} the default candidate list size of a query; larger
+ * values trade speed for recall. Neighbours are chosen with the paper's diversity
+ * heuristic and pruned links are kept to fill a node up to {@code m}.
+ * <p>
+ * Searches run concurrently; adding a vector waits for running searches and blocks new
+ * ones until it is linked in.
+ */
+public class HnswIndex {
+
+    public record Parameters(int m, int efConstruction, int efSearch) {
+
+        public static final Parameters DEFAULT = new Parameters(16, 200, 64);
+
+        public Parameters {
+            if (m < 2 || efConstruction < 1 || efSearch < 1) {
+                throw new IllegalArgumentException("HNSW parameters out of range: " + m + ", " + efConstruction + ", " + efSearch);
+            }
+        }
+    }
+
+    /**
+     * A search hit: the node, i.e. the position the vector was added at, and its cosine
+     * similarity to the query.
+     */
+    public record Neighbor(int node, float similarity) {
+    }
+
+    private final int dimension;
+    private final Parameters parameters;
+    private final double levelMultiplier;
+    private final Random random;
+    private final StampedLock lock = new StampedLock();
+
+    private float[][] vectors = new float[16][];
+    // node -> layer -> [link count, links...]
+    private int[][][] links = new int[16][][];
+    private int size;
+    private int entryPoint = -1;
+    private int topLayer = -1;
+
+    public HnswIndex(final int dimension, final Parameters parameters, final long seed) {
+        this.dimension = dimension;
+        this.parameters = parameters;
+        this.levelMultiplier = 1 / Math.log(parameters.m());
+        this.random = new Random(seed);
+    }
+
+    public int dimension() {
+        return dimension;
+    }
+
+    public int size() {
+        final long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * The normalized copy of a vector as stored.
+     */
+    public float[] vector(final int node) {
+        final long stamp = lock.readLock();
+        try {
+            return vectors[node].clone();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Adds a vector and returns its node.
+     */
+    public int add(final float[] vector) {
+        final float[] normalized = normalize(vector);
+        final long stamp = lock.writeLock();
+        try {
+            final int node = size;
+            if (node == vectors.length) {
+                vectors = Arrays.copyOf(vectors, node * 2);
+                links = Arrays.copyOf(links, node * 2);
+            }
+            final int layer = (int) (-Math.log(1 - random.nextDouble()) * levelMultiplier);
+            vectors[node] = normalized;
+            links[node] = new int[layer + 1][];
+            for (int l = 0; l <= layer; l++) {
+                links[node][l] = new int[maxLinks(l) + 1];
+            }
+            size++;
+            if (entryPoint < 0) {
+                entryPoint = node;
+                topLayer = layer;
+                return node;
+            }
+
+            int nearest = entryPoint;
+            for (int l = topLayer; l > layer; l--) {
+                nearest = greedy(normalized, nearest, l);
+            }
+            for (int l = Math.min(layer, topLayer); l >= 0; l--) {
+                final NodeHeap candidates = searchLayer(normalized, nearest, parameters.efConstruction(), l, null);
+                final int[] selected = selectNeighbors(normalized, candidates.sortedDescending(), parameters.m());
+                for (final int neighbor : selected) {
+                    link(node, neighbor, l);
+                    link(neighbor, node, l);
+                }
+                nearest = candidates.best();
+            }
+            if (layer > topLayer) {
+                topLayer = layer;
+                entryPoint = node;
+            }
+            return node;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public List<Neighbor> search(final float[] query, final int k) {
+        return search(query, k, parameters.efSearch(), null);
+    }
+
+    /**
+     * The {@code k} nodes most similar to {@code query} among those {@code accept} takes,
+     * most similar first. Rejected nodes are still traversed, so a selective filter makes
+     * the search visit more of the graph rather than return fewer hits.
+     */
+    public List<Neighbor> search(final float[] query, final int k, final int ef, final IntPredicate accept) {
+        final float[] normalized = normalize(query);
+        final long stamp = lock.readLock();
+        try {
+            if (entryPoint < 0 || k <= 0) {
+                return List.of();
+            }
+            int nearest = entryPoint;
+            for (int l = topLayer; l > 0; l--) {
+                nearest = greedy(normalized, nearest, l);
+            }
+            final NodeHeap results = searchLayer(normalized, nearest, Math.max(ef, k), 0, accept);
+            final int[] sorted = results.sortedDescending();
+            final List<Neighbor> neighbors = new ArrayList<>(Math.min(k, sorted.length));
+            for (int i = 0; i < sorted.length && i < k; i++) {
+                neighbors.add(new Neighbor(sorted[i], dot(normalized, vectors[sorted[i]])));
+            }
+            return neighbors;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Exact search by scanning every node, as the reference for recall measurements.
+     */
+    public List<Neighbor> exactSearch(final float[] query, final int k, final IntPredicate accept) {
+        final float[] normalized = normalize(query);
+        final long stamp = lock.readLock();
+        try {
+            final NodeHeap results = new NodeHeap(k + 1);
+            for (int node = 0; node < size; node++) {
+                if (accept != null && !accept.test(node)) {
+                    continue;
+                }
+                results.push(node, dot(normalized, vectors[node]));
+                if (results.size() > k) {
+                    results.popWorst();
+                }
+            }
+            final List<Neighbor> neighbors = new ArrayList<>();
+            for (final int node : results.sortedDescending()) {
+                neighbors.add(new Neighbor(node, dot(normalized, vectors[node])));
+            }
+            return neighbors;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private int greedy(final float[] query, final int start, final int layer) {
+        int current = start;
+        float best = dot(query, vectors[current]);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            final int[] neighbors = links[current][layer];
+            for (int i = 1; i <= neighbors[0]; i++) {
+                final float similarity = dot(query, vectors[neighbors[i]]);
+                if (similarity > best) {
+                    best = similarity;
+                    current = neighbors[i];
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Best-first search of one layer, keeping the {@code ef} best accepted nodes.
+     */
+    private NodeHeap searchLayer(final float[] query, final int start, final int ef, final int layer, final IntPredicate accept) {
+        final BitSet visited = new BitSet(size);
+        final NodeHeap candidates = new NodeHeap(ef * 2);
+        final NodeHeap results = new NodeHeap(ef + 1);
+        final float startSimilarity = dot(query, vectors[start]);
+        visited.set(start);
+        candidates.push(start, -startSimilarity);
+        if (accept == null || accept.test(start)) {
+            results.push(start, startSimilarity);
+        }
+        while (candidates.size() > 0) {
+            // candidates holds negated similarities, so its worst is the most similar node
+            final float similarity = -candidates.worstScore();
+            final int candidate = candidates.popWorst();
+            if (results.size() >= ef && similarity < results.worstScore()) {
+                break;
+            }
+            final int[] neighbors = links[candidate][layer];
+            for (int i = 1; i <= neighbors[0]; i++) {
+                final int neighbor = neighbors[i];
+                if (visited.get(neighbor)) {
+                    continue;
+                }
+                visited.set(neighbor);
+                final float neighborSimilarity = dot(query, vectors[neighbor]);
+                if (results.size() < ef || neighborSimilarity > results.worstScore()) {
+                    candidates.push(neighbor, -neighborSimilarity);
+                    if (accept == null || accept.test(neighbor)) {
+                        results.push(neighbor, neighborSimilarity);
+                        if (results.size() > ef) {
+                            results.popWorst();
+                        }
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Picks up to {@code m} of the candidates, most similar to {@code base} first,
+     * skipping those closer to an already picked neighbour than to {@code base}; skipped
+     * ones fill any room left.
+     */
+    private int[] selectNeighbors(final float[] base, final int[] candidatesDescending, final int m) {
+        final int[] selected = new int[Math.min(m, candidatesDescending.length)];
+        int count = 0;
+        final int[] pruned = new int[candidatesDescending.length];
+        int prunedCount = 0;
+        for (final int candidate : candidatesDescending) {
+            if (count == selected.length) {
+                break;
+            }
+            final float toBase = dot(base, vectors[candidate]);
+            boolean diverse = true;
+            for (int i = 0; i < count && diverse; i++) {
+                diverse = dot(vectors[candidate], vectors[selected[i]]) <= toBase;
+            }
+            if (diverse) {
+                selected[count++] = candidate;
+            } else {
+                pruned[prunedCount++] = candidate;
+            }
+        }
+        for (int i = 0; i < prunedCount && count < selected.length; i++) {
+            selected[count++] = pruned[i];
+        }
+        return Arrays.copyOf(selected, count);
+    }
+
+    private void link(final int from, final int to, final int layer) {
+        final int[] neighbors = links[from][layer];
+        final int max = maxLinks(layer);
+        if (neighbors[0] < max) {
+            neighbors[++neighbors[0]] = to;
+            return;
+        }
+        // full: keep the most diverse of the current links and the new one
+        final NodeHeap ranked = new NodeHeap(max + 1);
+        for (int i = 1; i <= neighbors[0]; i++) {
+            ranked.push(neighbors[i], dot(vectors[from], vectors[neighbors[i]]));
+        }
+        ranked.push(to, dot(vectors[from], vectors[to]));
+        final int[] kept = selectNeighbors(vectors[from], ranked.sortedDescending(), max);
+        neighbors[0] = kept.length;
+        System.arraycopy(kept, 0, neighbors, 1, kept.length);
+    }
+
+    private int maxLinks(final int layer) {
+        return layer == 0 ? parameters.m() * 2 : parameters.m();
+    }
+
+    private float[] normalize(final float[] vector) {
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException("Vector has " + vector.length + " dimensions, the index " + dimension);
+        }
+        double sum = 0;
+        for (final float value : vector) {
+            sum += value * value;
+        }
+        final float[] normalized = new float[dimension];
+        if (sum == 0) {
+            return normalized;
+        }
+        final float scale = (float) (1 / Math.sqrt(sum));
+        for (int i = 0; i < dimension; i++) {
+            normalized[i] = vector[i] * scale;
+        }
+        return normalized;
+    }
+
+    // four independent sums, so the additions do not wait on each other
+    private static float dot(final float[] a, final float[] b) {
+        float s0 = 0;
+        float s1 = 0;
+        float s2 = 0;
+        float s3 = 0;
+        int i = 0;
+        for (final int end = a.length - 3; i < end; i += 4) {
+            s0 += a[i] * b[i];
+            s1 += a[i + 1] * b[i + 1];
+            s2 += a[i + 2] * b[i + 2];
+            s3 += a[i + 3] * b[i + 3];
+        }
+        for (; i < a.length; i++) {
+            s0 += a[i] * b[i];
+        }
+        return s0 + s1 + s2 + s3;
+    }
+
+    /**
+     * Binary min-heap of nodes by score, so the worst node is on top.
+     */
+    private static final class NodeHeap {
+
+        private int[] nodes;
+        private float[] scores;
+        private int size;
+
+        private NodeHeap(final int capacity) {
+            nodes = new int[Math.max(capacity, 2)];
+            scores = new float[nodes.length];
+        }
+
+        int size() {
+            return size;
+        }
+
+        float worstScore() {
+            return scores[0];
+        }
+
+        void push(final int node, final float score) {
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, size * 2);
+                scores = Arrays.copyOf(scores, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                final int parent = (i - 1) / 2;
+                if (scores[parent] <= score) {
+                    break;
+                }
+                nodes[i] = nodes[parent];
+                scores[i] = scores[parent];
+                i = parent;
+            }
+            nodes[i] = node;
+            scores[i] = score;
+        }
+
+        int popWorst() {
+            final int worst = nodes[0];
+            final int lastNode = nodes[--size];
+            final float lastScore = scores[size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && scores[child + 1] < scores[child]) {
+                    child++;
+                }
+                if (scores[child] >= lastScore) {
+                    break;
+                }
+                nodes[i] = nodes[child];
+                scores[i] = scores[child];
+                i = child;
+            }
+            nodes[i] = lastNode;
+            scores[i] = lastScore;
+            return worst;
+        }
+
+        int best() {
+            int best = 0;
+            for (int i = 1; i < size; i++) {
+                if (scores[i] > scores[best]) {
+                    best = i;
+                }
+            }
+            return nodes[best];
+        }
+
+        int[] sortedDescending() {
+            final NodeHeap copy = new NodeHeap(size);
+            System.arraycopy(nodes, 0, copy.nodes, 0, size);
+            System.arraycopy(scores, 0, copy.scores, 0, size);
+            copy.size = size;
+            final int[] sorted = new int[size];
+            for (int i = size - 1; i >= 0; i--) {
+                sorted[i] = copy.popWorst();
+            }
+            return sorted;
+        }
+    }
+}
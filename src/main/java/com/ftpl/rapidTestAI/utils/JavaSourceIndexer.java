@@ -0,0 +1,422 @@
+package com.ftpl.rapidTestAI.utils;
+
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParseResult;
+import com.github.javaparser.ParserConfiguration;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.ImportDeclaration;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.BodyDeclaration;
+import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
+import com.github.javaparser.ast.body.EnumDeclaration;
+import com.github.javaparser.ast.body.FieldDeclaration;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.body.RecordDeclaration;
+import com.github.javaparser.ast.body.TypeDeclaration;
+import com.github.javaparser.ast.body.VariableDeclarator;
+import com.github.javaparser.ast.expr.AnnotationExpr;
+import com.github.javaparser.ast.expr.ArrayInitializerExpr;
+import com.github.javaparser.ast.expr.BinaryExpr;
+import com.github.javaparser.ast.expr.EnclosedExpr;
+import com.github.javaparser.ast.expr.Expression;
+import com.github.javaparser.ast.expr.FieldAccessExpr;
+import com.github.javaparser.ast.expr.MemberValuePair;
+import com.github.javaparser.ast.expr.MethodCallExpr;
+import com.github.javaparser.ast.expr.NameExpr;
+import com.github.javaparser.ast.expr.NormalAnnotationExpr;
+import com.github.javaparser.ast.expr.SingleMemberAnnotationExpr;
+import com.github.javaparser.ast.expr.StringLiteralExpr;
+import com.github.javaparser.ast.expr.ThisExpr;
+import com.github.javaparser.ast.nodeTypes.NodeWithExtends;
+import com.github.javaparser.ast.nodeTypes.NodeWithImplements;
+import com.github.javaparser.ast.nodeTypes.NodeWithTypeParameters;
+import com.github.javaparser.ast.type.ClassOrInterfaceType;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Reduces a Java source file to what change-impact analysis needs: the types it declares,
+ * the type names each type and each method refers to, the Spring request mappings of its
+ * handler methods, and hashes that change only when the code does (comments and formatting
+ * are not hashed).
+ * <p>
+ * Names are kept as written; resolving them to declared types is up to the caller, which
+ * knows the other files. A method's references and hash include the fields it reads and
+ * the methods of its own class it calls, so two handlers in one controller that use
+ * different services do not depend on each other.
+ */
+public class JavaSourceIndexer {
+
+    /** Path of a mapping whose value is a constant this file does not define. */
+    public static final String ANY_PATH = "*";
+    /** HTTP method of a {@code @RequestMapping} without {@code method}. */
+    public static final String ANY_METHOD = "*";
+
+    private static final Map<String, String> MAPPING_ANNOTATIONS = Map.of(
+            "GetMapping", "GET",
+            "PostMapping", "POST",
+            "PutMapping", "PUT",
+            "DeleteMapping", "DELETE",
+            "PatchMapping", "PATCH",
+            "RequestMapping", ANY_METHOD);
+
+    private JavaSourceIndexer() {
+    }
+
+    public record SourceFile(String packageName, List<String> imports, List<TypeInfo> types) {
+    }
+
+    /**
+     * @param name           fully qualified, with {@code .} between nested types
+     * @param basePaths      class-level {@code @RequestMapping} paths, {@code [""]} without one
+     * @param structureHash  everything but the methods and nested types: annotations,
+     *                       supertypes, record components, enum constants, fields,
+     *                       constructors and initializers
+     * @param hash           the structure and all methods
+     */
+    public record TypeInfo(String name,
+                           boolean isInterface,
+                           boolean hasRequestMapping,
+                           List<String> supertypes,
+                           Set<String> references,
+                           List<String> basePaths,
+                           String structureHash,
+                           String hash,
+                           List<MethodInfo> methods) {
+
+        public MethodInfo method(final String signature) {
+            for (final MethodInfo method : methods) {
+                if (method.signature().equals(signature)) {
+                    return method;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * @param httpMethods empty when the method is not a request handler
+     * @param helpers     signatures of the methods of its class it calls, directly or not
+     * @param references  type names used by the method, the fields it reads and its helpers
+     * @param hash        of the method and its helpers
+     */
+    public record MethodInfo(String signature,
+                             List<String> httpMethods,
+                             List<String> paths,
+                             Set<String> helpers,
+                             Set<String> references,
+                             String hash) {
+
+        public boolean isHandler() {
+            return !httpMethods.isEmpty();
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException when the source does not parse
+     */
+    public static SourceFile index(final String source) {
+        // comments are not attached to the nodes, so they are neither printed nor hashed
+        final JavaParser parser = new JavaParser(new ParserConfiguration()
+                .setLanguageLevel(ParserConfiguration.LanguageLevel.JAVA_17)
+                .setAttributeComments(false));
+        final ParseResult<CompilationUnit> result = parser.parse(source);
+        if (!result.isSuccessful() || result.getResult().isEmpty()) {
+            throw new IllegalArgumentException("Cannot parse: " + result.getProblems());
+        }
+        final CompilationUnit unit = result.getResult().get();
+
+        final String packageName = unit.getPackageDeclaration().map(declaration -> declaration.getNameAsString()).orElse("");
+        final List<String> imports = new ArrayList<>();
+        for (final ImportDeclaration declaration : unit.getImports()) {
+            if (!declaration.isStatic()) {
+                imports.add(declaration.getNameAsString() + (declaration.isAsterisk() ? ".*" : ""));
+            }
+        }
+
+        final Constants constants = new Constants(unit);
+        final List<TypeInfo> types = new ArrayList<>();
+        for (final TypeDeclaration<?> type : unit.findAll(TypeDeclaration.class)) {
+            // local classes have no name outside their method
+            final Optional<String> name = type.getFullyQualifiedName();
+            if (name.isPresent()) {
+                types.add(typeInfo(name.get(), type, constants));
+            }
+        }
+        return new SourceFile(packageName, imports, types);
+    }
+
+    /**
+     * {@code base} and {@code path} joined into a normalized request path: one leading
+     * slash, no trailing or double slashes.
+     */
+    public static String joinPaths(final String base, final String path) {
+        if (ANY_PATH.equals(base) || ANY_PATH.equals(path)) {
+            return ANY_PATH;
+        }
+        String joined = ("/" + base + "/" + path).replaceAll("/+", "/");
+        if (joined.length() > 1 && joined.endsWith("/")) {
+            joined = joined.substring(0, joined.length() - 1);
+        }
+        return joined;
+    }
+
+    private static TypeInfo typeInfo(final String name, final TypeDeclaration<?> type, final Constants constants) {
+        final List<String> supertypes = new ArrayList<>();
+        if (type instanceof NodeWithExtends<?> extending) {
+            extending.getExtendedTypes().forEach(supertype -> supertypes.add(supertype.getNameWithScope()));
+        }
+        if (type instanceof NodeWithImplements<?> implementing) {
+            implementing.getImplementedTypes().forEach(supertype -> supertypes.add(supertype.getNameWithScope()));
+        }
+
+        final Map<String, Set<String>> fieldTypes = new HashMap<>();
+        for (final FieldDeclaration field : type.getFields()) {
+            for (final VariableDeclarator variable : field.getVariables()) {
+                fieldTypes.put(variable.getNameAsString(), typeNames(variable.getType()));
+            }
+        }
+
+        final Optional<AnnotationExpr> classMapping = type.getAnnotationByName("RequestMapping");
+        final List<String> basePaths = classMapping.map(annotation -> paths(annotation, constants)).orElse(List.of(""));
+
+        final StringBuilder structure = new StringBuilder();
+        type.getAnnotations().forEach(annotation -> structure.append(annotation).append('\n'));
+        structure.append(type.getModifiers()).append(' ').append(name).append(' ').append(supertypes).append('\n');
+        if (type instanceof NodeWithTypeParameters<?> generic) {
+            structure.append(generic.getTypeParameters()).append('\n');
+        }
+        if (type instanceof RecordDeclaration record) {
+            structure.append(record.getParameters()).append('\n');
+        }
+        if (type instanceof EnumDeclaration enumeration) {
+            structure.append(enumeration.getEntries()).append('\n');
+        }
+        for (final BodyDeclaration<?> member : type.getMembers()) {
+            if (!(member instanceof MethodDeclaration) && !(member instanceof TypeDeclaration)) {
+                structure.append(member).append('\n');
+            }
+        }
+        final String structureHash = sha256(structure.toString());
+
+        final List<MethodDeclaration> declarations = type.getMethods();
+        final Map<String, Set<String>> ownReferences = new LinkedHashMap<>();
+        final Map<String, Set<String>> calls = new HashMap<>();
+        final Map<String, String> texts = new HashMap<>();
+        final Map<String, List<String>> signaturesByName = new HashMap<>();
+        for (final MethodDeclaration method : declarations) {
+            final String signature = method.getSignature().asString();
+            ownReferences.put(signature, methodReferences(method, fieldTypes));
+            calls.put(signature, ownCalls(method));
+            texts.put(signature, method.toString());
+            signaturesByName.computeIfAbsent(method.getNameAsString(), key -> new ArrayList<>()).add(signature);
+        }
+
+        final List<MethodInfo> methods = new ArrayList<>();
+        final StringBuilder allMethods = new StringBuilder(structureHash);
+        for (final MethodDeclaration method : declarations) {
+            final String signature = method.getSignature().asString();
+            allMethods.append('\n').append(texts.get(signature));
+
+            // the method and the helpers of its class it reaches, in a stable order for the hash
+            final Map<String, String> reached = new TreeMap<>();
+            final Deque<String> pending = new ArrayDeque<>(List.of(signature));
+            while (!pending.isEmpty()) {
+                final String current = pending.pop();
+                if (reached.put(current, texts.get(current)) == null) {
+                    for (final String callee : calls.get(current)) {
+                        pending.addAll(signaturesByName.getOrDefault(callee, List.of()));
+                    }
+                }
+            }
+            final Set<String> references = new TreeSet<>();
+            reached.keySet().forEach(helper -> references.addAll(ownReferences.get(helper)));
+
+            final Set<String> helpers = new TreeSet<>(reached.keySet());
+            helpers.remove(signature);
+
+            final Optional<AnnotationExpr> mapping = mappingAnnotation(method);
+            methods.add(new MethodInfo(signature,
+                    mapping.map(annotation -> httpMethods(annotation)).orElse(List.of()),
+                    mapping.map(annotation -> paths(annotation, constants)).orElse(List.of()),
+                    helpers,
+                    references,
+                    sha256(String.join("\n", reached.values()))));
+        }
+
+        final Set<String> references = new TreeSet<>();
+        type.findAll(ClassOrInterfaceType.class).forEach(reference -> references.add(reference.getNameWithScope()));
+        type.findAll(NameExpr.class).forEach(reference -> addIfTypeName(references, reference.getNameAsString()));
+
+        final boolean isInterface = type instanceof ClassOrInterfaceDeclaration declaration && declaration.isInterface();
+        return new TypeInfo(name, isInterface, classMapping.isPresent(), supertypes, references, basePaths,
+                structureHash, sha256(allMethods.toString()), methods);
+    }
+
+    private static Set<String> methodReferences(final MethodDeclaration method, final Map<String, Set<String>> fieldTypes) {
+        final Set<String> references = new TreeSet<>();
+        method.findAll(ClassOrInterfaceType.class).forEach(reference -> references.add(reference.getNameWithScope()));
+        for (final NameExpr name : method.findAll(NameExpr.class)) {
+            final Set<String> fieldType = fieldTypes.get(name.getNameAsString());
+            if (fieldType != null) {
+                references.addAll(fieldType);
+            } else {
+                // a static call or constant, e.g. Mapper.toDto(...)
+                addIfTypeName(references, name.getNameAsString());
+            }
+        }
+        for (final FieldAccessExpr access : method.findAll(FieldAccessExpr.class)) {
+            if (access.getScope() instanceof ThisExpr) {
+                references.addAll(fieldTypes.getOrDefault(access.getNameAsString(), Set.of()));
+            }
+        }
+        return references;
+    }
+
+    private static Set<String> ownCalls(final MethodDeclaration method) {
+        final Set<String> calls = new TreeSet<>();
+        for (final MethodCallExpr call : method.findAll(MethodCallExpr.class)) {
+            if (call.getScope().isEmpty() || call.getScope().get() instanceof ThisExpr) {
+                calls.add(call.getNameAsString());
+            }
+        }
+        return calls;
+    }
+
+    private static Set<String> typeNames(final Node type) {
+        final Set<String> names = new TreeSet<>();
+        type.findAll(ClassOrInterfaceType.class).forEach(reference -> names.add(reference.getNameWithScope()));
+        return names;
+    }
+
+    private static void addIfTypeName(final Set<String> names, final String name) {
+        if (Character.isUpperCase(name.charAt(0))) {
+            names.add(name);
+        }
+    }
+
+    private static Optional<AnnotationExpr> mappingAnnotation(final MethodDeclaration method) {
+        for (final AnnotationExpr annotation : method.getAnnotations()) {
+            if (MAPPING_ANNOTATIONS.containsKey(annotation.getName().getIdentifier())) {
+                return Optional.of(annotation);
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static List<String> httpMethods(final AnnotationExpr annotation) {
+        final String method = MAPPING_ANNOTATIONS.get(annotation.getName().getIdentifier());
+        if (!ANY_METHOD.equals(method)) {
+            return List.of(method);
+        }
+        final Expression value = attribute(annotation, "method");
+        if (value == null) {
+            return List.of(ANY_METHOD);
+        }
+        final List<String> methods = new ArrayList<>();
+        for (final Expression element : elements(value)) {
+            // RequestMethod.GET, or GET with a static import
+            final String text = element.toString();
+            methods.add(text.substring(text.lastIndexOf('.') + 1));
+        }
+        return methods.isEmpty() ? List.of(ANY_METHOD) : methods;
+    }
+
+    private static List<String> paths(final AnnotationExpr annotation, final Constants constants) {
+        Expression value = attribute(annotation, "value");
+        if (value == null) {
+            value = attribute(annotation, "path");
+        }
+        if (value == null) {
+            return List.of("");
+        }
+        final List<String> paths = new ArrayList<>();
+        for (final Expression element : elements(value)) {
+            final String path = constants.evaluate(element);
+            paths.add(path != null ? path : ANY_PATH);
+        }
+        return paths.isEmpty() ? List.of("") : paths;
+    }
+
+    private static Expression attribute(final AnnotationExpr annotation, final String name) {
+        if (annotation instanceof SingleMemberAnnotationExpr single) {
+            return "value".equals(name) ? single.getMemberValue() : null;
+        }
+        if (annotation instanceof NormalAnnotationExpr normal) {
+            for (final MemberValuePair pair : normal.getPairs()) {
+                if (pair.getNameAsString().equals(name)) {
+                    return pair.getValue();
+                }
+            }
+        }
+        return null;
+    }
+
+    private static List<Expression> elements(final Expression value) {
+        return value instanceof ArrayInitializerExpr array ? array.getValues() : List.of(value);
+    }
+
+    private static String sha256(final String text) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * String constants of the file, so {@code @RequestMapping(BASE_PATH)} resolves when
+     * {@code BASE_PATH} is declared in the same file.
+     */
+    private static final class Constants {
+        private final Map<String, Expression> initializers = new HashMap<>();
+        private final Map<String, String> values = new HashMap<>();
+
+        private Constants(final CompilationUnit unit) {
+            for (final VariableDeclarator variable : unit.findAll(VariableDeclarator.class)) {
+                if (variable.getParentNode().orElse(null) instanceof FieldDeclaration) {
+                    variable.getInitializer().ifPresent(initializer -> initializers.putIfAbsent(variable.getNameAsString(), initializer));
+                }
+            }
+        }
+
+        private String evaluate(final Expression expression) {
+            if (expression instanceof StringLiteralExpr literal) {
+                return literal.asString();
+            }
+            if (expression instanceof EnclosedExpr enclosed) {
+                return evaluate(enclosed.getInner());
+            }
+            if (expression instanceof BinaryExpr binary && binary.getOperator() == BinaryExpr.Operator.PLUS) {
+                final String left = evaluate(binary.getLeft());
+                final String right = evaluate(binary.getRight());
+                return left != null && right != null ? left + right : null;
+            }
+            final String name = expression instanceof NameExpr nameExpr ? nameExpr.getNameAsString()
+                    : expression instanceof FieldAccessExpr access ? access.getNameAsString() : null;
+            if (name == null || !initializers.containsKey(name)) {
+                return null;
+            }
+            if (!values.containsKey(name)) {
+                // guards against constants defined in terms of each other
+                values.put(name, null);
+                values.put(name, evaluate(initializers.get(name)));
+            }
+            return values.get(name);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.ftpl.rapidTestAI.utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Structural fingerprint of a summarized operation node. Object fields are hashed in
+ * sorted order, so the fingerprint only changes when the operation (including the
+ * schemas resolved into it) changes, not when the spec is merely reordered. The
+ * {@value #FIELD} field the fingerprint is stored under is left out at the root only;
+ * a nested property of that name is hashed like any other.
+ */
+public class OperationFingerprint {
+
+    public static final String FIELD = "fingerprint";
+
+    private OperationFingerprint() {
+    }
+
+    public static String of(final JsonNode node) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            update(digest, node, true);
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void update(final MessageDigest digest, final JsonNode node, final boolean root) {
+        if (node.isObject()) {
+            final List<String> names = new ArrayList<>();
+            final Iterator<String> fieldNames = node.fieldNames();
+            while (fieldNames.hasNext()) {
+                final String name = fieldNames.next();
+                if (!root || !FIELD.equals(name)) {
+                    names.add(name);
+                }
+            }
+            names.sort(null);
+            digest.update((byte) '{');
+            for (final String name : names) {
+                digest.update(name.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) ':');
+                update(digest, node.get(name), false);
+                digest.update((byte) ',');
+            }
+            digest.update((byte) '}');
+        } else if (node.isArray()) {
+            digest.update((byte) '[');
+            for (final JsonNode element : node) {
+                update(digest, element, false);
+                digest.update((byte) ',');
+            }
+            digest.update((byte) ']');
+        } else {
+            digest.update(node.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.ftpl.rapidTestAI.utils;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Operation fingerprints keyed by {@code "METHOD path"}. The chunk exporter writes one
+ * next to the chunk files ({@link #CHUNK_MANIFEST}) recording which chunk holds each
+ * operation, plus the estimated size of every chunk; the generator keeps one in the
+ * feature output directory
+ * ({@link #GENERATION_MANIFEST}) recording the artifacts it wrote for each fingerprint.
+ */
+@Data
+@NoArgsConstructor
+public class OperationManifest {
+
+    public static final String CHUNK_MANIFEST = "openapi_manifest.json";
+    public static final String GENERATION_MANIFEST = "generation_manifest.json";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private Map<String, Entry> operations = new TreeMap<>();
+
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    private Map<String, ChunkInfo> chunks = new TreeMap<>();
+
+    public static OperationManifest read(final File file) throws IOException {
+        if (!file.isFile()) {
+            return new OperationManifest();
+        }
+        return MAPPER.readValue(file, OperationManifest.class);
+    }
+
+    /**
+     * Writes through a temporary file and a rename so a crash never leaves a truncated
+     * manifest behind.
+     */
+    public void write(final File file) throws IOException {
+        final Path target = file.toPath();
+        final Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        MAPPER.writerWithDefaultPrettyPrinter().writeValue(temp.toFile(), this);
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Data
+    @NoArgsConstructor
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    public static class Entry {
+        private String fingerprint;
+        private String chunk;
+        private List<String> artifacts = new ArrayList<>();
+        // epoch millis of the generation that wrote the artifacts
+        private Long generatedAt;
+
+        public Entry(final String fingerprint, final String chunk) {
+            this.fingerprint = fingerprint;
+            this.chunk = chunk;
+        }
+    }
+
+    @Data
+    @NoArgsConstructor
+    public static class ChunkInfo {
+        private int estimatedTokens;
+        private List<String> operations = new ArrayList<>();
+    }
+}
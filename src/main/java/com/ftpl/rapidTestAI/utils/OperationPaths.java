@@ -0,0 +1,49 @@
+package com.ftpl.rapidTestAI.utils;
+
+/**
+ * Matches request mappings found in code, such as {@code "GET /api/pets/{id}"}, to spec
+ * operation keys, such as {@code "GET /pets/{petId}"} (a {@code #part} suffix is ignored).
+ * Path variables match whatever they are named, and paths also match when the shorter is
+ * a trailing run of segments of the longer one, because the spec and the code need not
+ * agree on a context path. {@code *} as method or path of a mapping matches anything.
+ */
+public class OperationPaths {
+
+    private OperationPaths() {
+    }
+
+    public static boolean matches(final String mappedOperation, final String operationKey) {
+        final String key = operationKey.contains("#") ? operationKey.substring(0, operationKey.indexOf('#')) : operationKey;
+        final int space = key.indexOf(' ');
+        final int separator = mappedOperation.indexOf(' ');
+        if (space < 0 || separator < 0) {
+            return false;
+        }
+        final String method = mappedOperation.substring(0, separator);
+        final String path = mappedOperation.substring(separator + 1);
+        if (!method.equals(JavaSourceIndexer.ANY_METHOD) && !method.equalsIgnoreCase(key.substring(0, space))) {
+            return false;
+        }
+        return path.equals(JavaSourceIndexer.ANY_PATH) || pathsMatch(segments(path), segments(key.substring(space + 1)));
+    }
+
+    private static boolean pathsMatch(final String[] a, final String[] b) {
+        final String[] shorter = a.length <= b.length ? a : b;
+        final String[] longer = shorter == a ? b : a;
+        boolean literal = shorter.length == longer.length;
+        for (int i = 1; i <= shorter.length; i++) {
+            final String segment = shorter[shorter.length - i];
+            if (!segment.equals(longer[longer.length - i])) {
+                return false;
+            }
+            literal |= !segment.equals("{}");
+        }
+        // "/{id}" alone would otherwise match the last segment of every path with a variable
+        return literal;
+    }
+
+    private static String[] segments(final String path) {
+        final String normalized = JavaSourceIndexer.joinPaths("", path).replaceAll("\\{[^}]*}", "{}");
+        return normalized.equals("/") ? new String[0] : normalized.substring(1).split("/");
+    }
+}
@@ -0,0 +1,356 @@
+package com.ftpl.rapidTestAI.utils;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.lang.model.SourceVersion;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Step definitions of the generated tests keyed by their Cucumber expression, kept in
+ * the step output directory ({@link #FILE_NAME}) across runs. A step is generated once,
+ * however many endpoints use it, and only its method body comes from the model; the
+ * signature follows from the expression.
+ * <p>
+ * {@link #write} renders the glue code: {@value #SHARED_CLASS} holds the steps used by
+ * more than one endpoint, and each endpoint gets a thin class with the steps only it
+ * uses, so no expression is defined twice. The classes share scenario state through a
+ * {@value #CONTEXT_CLASS} passed to their constructors, which needs cucumber-picocontainer
+ * or another dependency injection module in the test project. A step without a body yet
+ * is rendered as pending.
+ * <p>
+ * The library has no accessors: Jackson reads and writes its fields directly, and
+ * everything else goes through its synchronized methods.
+ */
+@NoArgsConstructor
+public class StepLibrary {
+
+    public static final String FILE_NAME = "step_library.json";
+    public static final String SHARED_CLASS = "SharedSteps";
+    public static final String CONTEXT_CLASS = "StepContext";
+
+    /** What the generated step bodies can use without qualifying it. */
+    public static final List<String> IMPORTS = List.of(
+            "io.cucumber.datatable.DataTable",
+            "io.restassured.RestAssured",
+            "io.restassured.response.Response",
+            "java.math.BigDecimal",
+            "java.util.List",
+            "java.util.Map",
+            "static org.junit.jupiter.api.Assertions.*");
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Pattern PARAMETER = Pattern.compile("(?<!\\\\)\\{(\\w*)}");
+    // number parameters of libraries written before every number became {bigdecimal}
+    private static final Pattern OLD_NUMBER = Pattern.compile("(?<!\\\\)\\{(int|double)}");
+
+    @JsonProperty
+    private Map<String, Definition> steps = new TreeMap<>();
+
+    /** The class holding the steps only that endpoint uses, by endpoint key. */
+    @JsonProperty
+    private Map<String, String> classes = new TreeMap<>();
+
+    // steps whose body is being generated
+    @JsonIgnore
+    private final Set<String> pending = new HashSet<>();
+
+    public static StepLibrary read(final File file) throws IOException {
+        if (!file.isFile()) {
+            return new StepLibrary();
+        }
+        final StepLibrary library = MAPPER.readValue(file, StepLibrary.class);
+        library.migrateNumberParameters();
+        return library;
+    }
+
+    /**
+     * Adds the steps not in the library yet and returns the ones the caller is to
+     * generate a body for: those without one that no other caller is generating. Each
+     * of them has to be passed to {@link #define} or {@link #release} afterwards.
+     */
+    public synchronized List<GherkinSteps.Step> claim(final List<GherkinSteps.Step> featureSteps) {
+        final List<GherkinSteps.Step> claimed = new ArrayList<>();
+        for (final GherkinSteps.Step step : featureSteps) {
+            final Definition definition = steps.computeIfAbsent(step.expression(), expression -> new Definition(step));
+            if (definition.getBody() == null && pending.add(step.expression())) {
+                claimed.add(step);
+            }
+        }
+        return claimed;
+    }
+
+    /**
+     * Claims the steps endpoints use that still have no body, as left behind by a
+     * failed generation.
+     */
+    public synchronized List<GherkinSteps.Step> claimUndefined() {
+        final List<GherkinSteps.Step> claimed = new ArrayList<>();
+        for (final Map.Entry<String, Definition> step : steps.entrySet()) {
+            final Definition definition = step.getValue();
+            if (definition.getBody() == null && !definition.getEndpoints().isEmpty() && pending.add(step.getKey())) {
+                claimed.add(definition.toStep(step.getKey()));
+            }
+        }
+        return claimed;
+    }
+
+    public synchronized void define(final String expression, final String body) {
+        steps.get(expression).setBody(body);
+        pending.remove(expression);
+    }
+
+    public synchronized void release(final Collection<String> expressions) {
+        pending.removeAll(expressions);
+    }
+
+    /**
+     * Makes {@code featureSteps} the steps of the endpoint, replacing the ones it used
+     * before. Steps no endpoint uses any more keep their body for later features.
+     */
+    public synchronized void assign(final String endpoint, final String className, final List<GherkinSteps.Step> featureSteps) {
+        steps.values().forEach(definition -> definition.getEndpoints().remove(endpoint));
+        for (final GherkinSteps.Step step : featureSteps) {
+            steps.computeIfAbsent(step.expression(), expression -> new Definition(step)).getEndpoints().add(endpoint);
+        }
+        classes.put(endpoint, className);
+    }
+
+    /**
+     * Drops the endpoints not in {@code endpoints}, such as operations removed from the spec.
+     */
+    public synchronized void retainEndpoints(final Set<String> endpoints) {
+        classes.keySet().retainAll(endpoints);
+        steps.values().forEach(definition -> definition.getEndpoints().retainAll(endpoints));
+    }
+
+    /**
+     * Renders the step classes into {@code directory}, rewriting only the files whose
+     * content changed, and saves the library there. Returns the number of files written.
+     */
+    public synchronized int write(final Path directory, final String packageName) throws IOException {
+        final Map<String, String> files = new LinkedHashMap<>();
+        files.put(CONTEXT_CLASS, renderContext(packageName));
+
+        final List<Map.Entry<String, Definition>> shared = new ArrayList<>();
+        final Map<String, List<Map.Entry<String, Definition>>> own = new TreeMap<>();
+        classes.keySet().forEach(endpoint -> own.put(endpoint, new ArrayList<>()));
+        for (final Map.Entry<String, Definition> step : steps.entrySet()) {
+            final Set<String> endpoints = step.getValue().getEndpoints();
+            if (endpoints.size() > 1) {
+                shared.add(step);
+            } else if (endpoints.size() == 1 && own.containsKey(endpoints.iterator().next())) {
+                own.get(endpoints.iterator().next()).add(step);
+            }
+        }
+        files.put(SHARED_CLASS, renderSteps(packageName, SHARED_CLASS, "Steps used by more than one endpoint.", shared));
+        for (final Map.Entry<String, List<Map.Entry<String, Definition>>> endpoint : own.entrySet()) {
+            final String className = classes.get(endpoint.getKey());
+            files.put(className, renderSteps(packageName, className,
+                    "Steps only {@code " + endpoint.getKey() + "} uses; the ones it shares are in {@link " + SHARED_CLASS + "}.",
+                    endpoint.getValue()));
+        }
+
+        Files.createDirectories(directory);
+        int written = 0;
+        for (final Map.Entry<String, String> file : files.entrySet()) {
+            final Path target = directory.resolve(file.getKey() + ".java");
+            if (!Files.isRegularFile(target) || !Files.readString(target).equals(file.getValue())) {
+                ArtifactFiles.writeAtomically(target, file.getValue());
+                written++;
+            }
+        }
+
+        final Path library = directory.resolve(FILE_NAME);
+        final Path temp = library.resolveSibling(FILE_NAME + ".tmp");
+        MAPPER.writerWithDefaultPrettyPrinter().writeValue(temp.toFile(), this);
+        Files.move(temp, library, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return written;
+    }
+
+    @JsonIgnore
+    public synchronized Map<String, Long> getStats() {
+        long used = 0;
+        long shared = 0;
+        long undefined = 0;
+        for (final Definition definition : steps.values()) {
+            final int endpoints = definition.getEndpoints().size();
+            used += endpoints > 0 ? 1 : 0;
+            shared += endpoints > 1 ? 1 : 0;
+            undefined += endpoints > 0 && definition.getBody() == null ? 1 : 0;
+        }
+        final Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("steps", (long) steps.size());
+        stats.put("usedSteps", used);
+        stats.put("sharedSteps", shared);
+        stats.put("undefinedSteps", undefined);
+        stats.put("endpoints", (long) classes.size());
+        return stats;
+    }
+
+    /**
+     * The parameters of the method for a step, named as Cucumber names them in its
+     * snippets: {@code String string}, {@code BigDecimal bigdecimal1}, {@code DataTable dataTable}.
+     */
+    public static List<String> parametersOf(final String expression, final GherkinSteps.Argument argument) {
+        final List<String> parameters = new ArrayList<>();
+        final Map<String, Integer> counts = new TreeMap<>();
+        final Matcher matcher = PARAMETER.matcher(expression);
+        while (matcher.find()) {
+            final String type = matcher.group(1);
+            final int count = counts.merge(type, 1, Integer::sum);
+            parameters.add(switch (type) {
+                case "bigdecimal" -> "BigDecimal bigdecimal" + count;
+                case "string" -> "String string" + (count > 1 ? count : "");
+                default -> "String arg" + (count - 1);
+            });
+        }
+        if (argument == GherkinSteps.Argument.DATA_TABLE) {
+            parameters.add("DataTable dataTable");
+        } else if (argument == GherkinSteps.Argument.DOC_STRING) {
+            parameters.add("String docString");
+        }
+        return parameters;
+    }
+
+    /**
+     * Moves steps with {@code {int}} or {@code {double}} parameters, which Cucumber finds
+     * ambiguous side by side, to their {@code {bigdecimal}} expression. Their bodies were
+     * written for other parameter types, so the steps are left undefined and generated
+     * again; steps that become one keep the endpoints of both.
+     */
+    private void migrateNumberParameters() {
+        for (final String expression : new ArrayList<>(steps.keySet())) {
+            final String migrated = OLD_NUMBER.matcher(expression).replaceAll("{bigdecimal}");
+            if (!migrated.equals(expression)) {
+                final Definition definition = steps.remove(expression);
+                definition.setBody(null);
+                final Definition existing = steps.putIfAbsent(migrated, definition);
+                if (existing != null) {
+                    existing.getEndpoints().addAll(definition.getEndpoints());
+                }
+            }
+        }
+    }
+
+    private static String renderContext(final String packageName) {
+        return packageDeclaration(packageName) + """
+                import io.restassured.response.Response;
+                import io.restassured.specification.RequestSpecification;
+
+                import java.util.HashMap;
+                import java.util.Map;
+
+                /**
+                 * State the steps of one scenario share. Cucumber creates one per scenario and passes
+                 * it to every step class.
+                 */
+                public class %s {
+
+                    public String baseUrl;
+                    public RequestSpecification request;
+                    public Response response;
+                    public final Map<String, Object> values = new HashMap<>();
+                }
+                """.formatted(CONTEXT_CLASS);
+    }
+
+    private static String renderSteps(final String packageName,
+                                      final String className,
+                                      final String description,
+                                      final List<Map.Entry<String, Definition>> definitions) {
+        final StringBuilder source = new StringBuilder(packageDeclaration(packageName));
+        final Set<String> imports = new TreeSet<>(IMPORTS);
+        imports.addAll(List.of("io.cucumber.java.PendingException", "io.cucumber.java.en.Given",
+                "io.cucumber.java.en.Then", "io.cucumber.java.en.When"));
+        imports.stream().filter(type -> !type.startsWith("static ")).forEach(type -> source.append("import ").append(type).append(";\n"));
+        source.append('\n');
+        imports.stream().filter(type -> type.startsWith("static ")).forEach(type -> source.append("import ").append(type).append(";\n"));
+        source.append("\n/**\n * ").append(description).append("\n */\n");
+        source.append("public class ").append(className).append(" {\n\n");
+        source.append("    private final ").append(CONTEXT_CLASS).append(" context;\n\n");
+        source.append("    public ").append(className).append("(final ").append(CONTEXT_CLASS).append(" context) {\n");
+        source.append("        this.context = context;\n");
+        source.append("    }\n");
+
+        final Set<String> methodNames = new HashSet<>();
+        for (final Map.Entry<String, Definition> step : definitions) {
+            final Definition definition = step.getValue();
+            String methodName = methodNameOf(step.getKey());
+            for (int suffix = 2; !methodNames.add(methodName); suffix++) {
+                methodName = methodNameOf(step.getKey()) + suffix;
+            }
+            source.append("\n    @").append(definition.getKeyword()).append("(\"")
+                    .append(step.getKey().replace("\\", "\\\\").replace("\"", "\\\"")).append("\")\n");
+            source.append("    public void ").append(methodName).append('(')
+                    .append(String.join(", ", parametersOf(step.getKey(), definition.getArgument()))).append(") {\n");
+            final String body = definition.getBody() == null ? "throw new PendingException();" : definition.getBody();
+            for (final String line : body.stripIndent().strip().split("\\R")) {
+                if (!line.startsWith("```")) {
+                    source.append(line.isBlank() ? "" : "        " + line).append('\n');
+                }
+            }
+            source.append("    }\n");
+        }
+        return source.append("}\n").toString();
+    }
+
+    private static String packageDeclaration(final String packageName) {
+        return packageName == null || packageName.isBlank() ? "" : "package " + packageName + ";\n\n";
+    }
+
+    private static String methodNameOf(final String expression) {
+        final StringBuilder name = new StringBuilder();
+        for (final String word : PARAMETER.matcher(expression).replaceAll(" ").split("[^A-Za-z0-9]+")) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            name.append(name.isEmpty() ? word.substring(0, 1).toLowerCase() : word.substring(0, 1).toUpperCase())
+                    .append(word.substring(1));
+        }
+        if (!SourceVersion.isName(name)) {
+            name.insert(0, name.isEmpty() || !Character.isJavaIdentifierStart(name.charAt(0)) ? "step" : "step_");
+        }
+        return name.toString();
+    }
+
+    @Data
+    @NoArgsConstructor
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class Definition {
+        private String keyword;
+        private GherkinSteps.Argument argument = GherkinSteps.Argument.NONE;
+        private String example;
+        private String body;
+        private Set<String> endpoints = new TreeSet<>();
+
+        private Definition(final GherkinSteps.Step step) {
+            this.keyword = step.keyword();
+            this.argument = step.argument();
+            this.example = step.example();
+        }
+
+        private GherkinSteps.Step toStep(final String expression) {
+            return new GherkinSteps.Step(keyword, expression, argument, example);
+        }
+    }
+}
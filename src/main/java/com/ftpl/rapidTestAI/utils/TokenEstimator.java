@@ -0,0 +1,37 @@
+package com.ftpl.rapidTestAI.utils;
+
+import com.theokanning.openai.completion.chat.ChatCompletionRequest;
+import com.theokanning.openai.completion.chat.ChatMessage;
+
+/**
+ * Cheap token estimation used for rate-limit budgeting. It follows the usual
+ * "~4 characters per token" rule of thumb for English text and JSON, which is
+ * close enough for scheduling without pulling a tokenizer into the hot path.
+ */
+public class TokenEstimator {
+
+    private static final int CHARS_PER_TOKEN = 4;
+    private static final int TOKENS_PER_MESSAGE = 4;
+
+    private TokenEstimator() {
+    }
+
+    public static int estimate(final String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        return estimate(text.length());
+    }
+
+    public static int estimate(final long characters) {
+        return (int) ((characters + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN);
+    }
+
+    public static int estimate(final ChatCompletionRequest request) {
+        int tokens = 0;
+        for (final ChatMessage message : request.getMessages()) {
+            tokens += TOKENS_PER_MESSAGE + estimate(message.getContent());
+        }
+        return tokens;
+    }
+}
@@ -0,0 +1,84 @@
+package com.ftpl.rapidTestAI.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ftpl.rapidTestAI.service.GenerationMetrics;
+import com.ftpl.rapidTestAI.service.OpenAPIChunkExporter;
+import com.ftpl.rapidTestAI.service.OpenAPIJsonExporterService;
+import com.ftpl.rapidTestAI.service.OpenAPISpecCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Peak heap of summarizing a large synthetic spec. Run each mode in its own JVM so the
+ * peaks do not mix:
+ * <pre>
+ * mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -Xmx4g -cp target/test-classes:target/classes:$(cat target/cp.txt) \
+ *     com.ftpl.rapidTestAI.benchmark.SummaryHeapBenchmark 20000 streaming [recursive]
+ * </pre>
+ * {@code streaming} is the production path. {@code buffered} additionally reproduces
+ * what the summary step used to hold at once: the whole summary as a tree, its
+ * pretty-printed string, and the tree parsed back by the chunk exporter.
+ */
+public final class SummaryHeapBenchmark {
+
+    private SummaryHeapBenchmark() {
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final int operations = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        final boolean buffered = args.length > 1 && "buffered".equals(args[1]);
+        final boolean recursive = args.length > 2 && "recursive".equals(args[2]);
+
+        final Path workDir = Files.createTempDirectory("summary-heap");
+        final File spec = new SyntheticSpecGenerator(operations, 200, 3, recursive).writeTo(workDir.resolve("spec.json").toFile());
+
+        final GenerationMetrics metrics = new GenerationMetrics(new SimpleMeterRegistry());
+        final OpenAPIChunkExporter chunkExporter = new OpenAPIChunkExporter();
+        chunkExporter.setChunkDirectory(workDir.resolve("chunks").toString());
+        ReflectionTestUtils.setField(chunkExporter, "metrics", metrics);
+        final OpenAPIJsonExporterService exporter = new OpenAPIJsonExporterService();
+        ReflectionTestUtils.setField(exporter, "chunkExporter", chunkExporter);
+        ReflectionTestUtils.setField(exporter, "metrics", metrics);
+        final OpenAPISpecCache specCache = new OpenAPISpecCache(false, 0, 0);
+        ReflectionTestUtils.setField(specCache, "metrics", metrics);
+        ReflectionTestUtils.setField(exporter, "specCache", specCache);
+
+        System.gc();
+        ManagementFactory.getMemoryPoolMXBeans().forEach(MemoryPoolMXBean::resetPeakUsage);
+        final long start = System.nanoTime();
+
+        exporter.parseOpenAPIJsonToSummary(spec.getPath(), workDir + File.separator);
+        if (buffered) {
+            final ObjectMapper mapper = new ObjectMapper();
+            final JsonNode summary = mapper.readTree(workDir.resolve("openapi_summary.json").toFile());
+            final String rendered = mapper.writerWithDefaultPrettyPrinter().writeValueAsString(summary);
+            final JsonNode reparsed = mapper.readTree(rendered);
+            System.out.println("buffered copies: " + summary.size() + " / " + rendered.length() + " / " + reparsed.size());
+        }
+
+        final long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        long peakHeap = 0;
+        for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peakHeap += pool.getPeakUsage().getUsed();
+            }
+        }
+
+        System.out.printf("mode=%s operations=%d spec=%d KB summary=%d KB elapsed=%d ms peakHeap=%d MB%n",
+                buffered ? "buffered" : "streaming",
+                operations,
+                spec.length() / 1024,
+                workDir.resolve("openapi_summary.json").toFile().length() / 1024,
+                elapsedMillis,
+                peakHeap / (1024 * 1024));
+    }
+}
@@ -0,0 +1,139 @@
+package com.ftpl.rapidTestAI.benchmark;
+
+import io.swagger.v3.core.util.Json;
+import io.swagger.v3.oas.models.Components;
+import io.swagger.v3.oas.models.OpenAPI;
+import io.swagger.v3.oas.models.Operation;
+import io.swagger.v3.oas.models.PathItem;
+import io.swagger.v3.oas.models.Paths;
+import io.swagger.v3.oas.models.info.Info;
+import io.swagger.v3.oas.models.media.ArraySchema;
+import io.swagger.v3.oas.models.media.Content;
+import io.swagger.v3.oas.models.media.MediaType;
+import io.swagger.v3.oas.models.media.ObjectSchema;
+import io.swagger.v3.oas.models.media.Schema;
+import io.swagger.v3.oas.models.media.StringSchema;
+import io.swagger.v3.oas.models.media.IntegerSchema;
+import io.swagger.v3.oas.models.parameters.PathParameter;
+import io.swagger.v3.oas.models.parameters.RequestBody;
+import io.swagger.v3.oas.models.responses.ApiResponse;
+import io.swagger.v3.oas.models.responses.ApiResponses;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Builds deterministic OpenAPI specs of arbitrary size for benchmarks. Models form
+ * layers: a model of layer {@code n} references models of layer {@code n + 1}, up to
+ * {@code depth} layers, and many operations share the same models. With
+ * {@code recursive} set, every model of the first layer also references itself and
+ * forms a reference cycle with a neighbour, like parent/child and owner/pet models do.
+ */
+public final class SyntheticSpecGenerator {
+
+    private static final PathItem.HttpMethod[] METHODS = {
+            PathItem.HttpMethod.GET, PathItem.HttpMethod.POST, PathItem.HttpMethod.PUT,
+            PathItem.HttpMethod.DELETE, PathItem.HttpMethod.PATCH
+    };
+
+    private final int operations;
+    private final int modelsPerLayer;
+    private final int depth;
+    private final boolean recursive;
+
+    public SyntheticSpecGenerator(final int operations, final int modelsPerLayer, final int depth, final boolean recursive) {
+        this.operations = operations;
+        this.modelsPerLayer = modelsPerLayer;
+        this.depth = depth;
+        this.recursive = recursive;
+    }
+
+    public OpenAPI generate() {
+        final Random random = new Random(42);
+        final OpenAPI openAPI = new OpenAPI()
+                .openapi("3.0.1")
+                .info(new Info().title("Synthetic " + operations).version("1.0"))
+                .components(new Components());
+
+        for (int layer = 0; layer < depth; layer++) {
+            for (int i = 0; i < modelsPerLayer; i++) {
+                openAPI.getComponents().addSchemas(modelName(layer, i), model(layer, i, random));
+            }
+        }
+        openAPI.getComponents().addSchemas("Error", new ObjectSchema()
+                .addProperty("code", new IntegerSchema())
+                .addProperty("message", new StringSchema()));
+
+        final Paths paths = new Paths();
+        int created = 0;
+        for (int resource = 0; created < operations; resource++) {
+            final PathItem item = new PathItem();
+            for (int m = 0; m < METHODS.length && created < operations; m++, created++) {
+                item.operation(METHODS[m], operation(METHODS[m], resource, random));
+            }
+            paths.addPathItem("/resources" + resource + "/{id}", item);
+        }
+        openAPI.setPaths(paths);
+        return openAPI;
+    }
+
+    public File writeTo(final File file) throws IOException {
+        Json.mapper().writeValue(file, generate());
+        return file;
+    }
+
+    private Schema<?> model(final int layer, final int index, final Random random) {
+        final ObjectSchema schema = new ObjectSchema();
+        schema.setDescription("Model of layer " + layer);
+        schema.setRequired(List.of("id"));
+        schema.addProperty("id", new StringSchema().description("Identifier"));
+        for (int p = 0; p < 4; p++) {
+            schema.addProperty("field" + p, new StringSchema().description("Scalar field " + p));
+        }
+        if (layer + 1 < depth) {
+            schema.addProperty("child", ref(modelName(layer + 1, random.nextInt(modelsPerLayer))));
+            schema.addProperty("children", new ArraySchema().items(ref(modelName(layer + 1, random.nextInt(modelsPerLayer)))));
+        }
+        if (recursive && layer == 0) {
+            schema.addProperty("parent", ref(modelName(0, index)));
+            schema.addProperty("related", ref(modelName(0, (index ^ 1) % modelsPerLayer)));
+        }
+        return schema;
+    }
+
+    private Operation operation(final PathItem.HttpMethod method, final int resource, final Random random) {
+        final String model = modelName(0, random.nextInt(modelsPerLayer));
+        final ApiResponses responses = new ApiResponses()
+                .addApiResponse("200", response("OK", model))
+                .addApiResponse("400", response("Bad request", "Error"))
+                .addApiResponse("404", response("Not found", "Error"));
+        final Operation operation = new Operation()
+                .summary(method + " resource " + resource)
+                .description("Synthetic operation on resource " + resource)
+                .addTagsItem("resource" + (resource % 50))
+                .addParametersItem(new PathParameter().name("id").schema(new StringSchema()))
+                .responses(responses);
+        if (method == PathItem.HttpMethod.POST || method == PathItem.HttpMethod.PUT || method == PathItem.HttpMethod.PATCH) {
+            operation.requestBody(new RequestBody().content(json(model)));
+        }
+        return operation;
+    }
+
+    private static ApiResponse response(final String description, final String model) {
+        return new ApiResponse().description(description).content(json(model));
+    }
+
+    private static Content json(final String model) {
+        return new Content().addMediaType("application/json", new MediaType().schema(ref(model)));
+    }
+
+    private static Schema<?> ref(final String model) {
+        return new Schema<>().$ref("#/components/schemas/" + model);
+    }
+
+    private static String modelName(final int layer, final int index) {
+        return "Model" + layer + "_" + index;
+    }
+}
@@ -0,0 +1,161 @@
+package com.ftpl.rapidTestAI.config;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.theokanning.openai.completion.chat.ChatCompletionRequest;
+import com.theokanning.openai.completion.chat.ChatMessage;
+import com.theokanning.openai.service.OpenAiService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OpenAIServiceClientTest {
+
+    private static final String COMPLETION = """
+            {"id": "chatcmpl-1", "object": "chat.completion", "created": 0, "model": "gpt-4o-mini",
+             "choices": [{"index": 0, "message": {"role": "assistant", "content": "Feature: mock"}, "finish_reason": "stop"}],
+             "usage": {"prompt_tokens": 10, "completion_tokens": 2, "total_tokens": 12}}
+            """;
+    private static final String ERROR = """
+            {"error": {"message": "try again", "type": "server_error"}}
+            """;
+
+    private final Queue<Reply> replies = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger calls = new AtomicInteger();
+    private final OpenAIServiceClient client = new OpenAIServiceClient();
+    private HttpServer server;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", this::reply);
+        server.start();
+
+        ReflectionTestUtils.setField(client, "baseUrl", "http://127.0.0.1:" + server.getAddress().getPort() + "/");
+        ReflectionTestUtils.setField(client, "retryInitialBackoff", Duration.ofMillis(20));
+        ReflectionTestUtils.setField(client, "callTimeout", Duration.ofSeconds(5));
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void retriesRateLimitsAfterTheRequestedDelay() {
+        replies.add(new Reply(429, 0, "1"));
+        final long start = System.nanoTime();
+
+        assertEquals("Feature: mock", complete(client.OpenAIService()));
+
+        assertEquals(2, calls.get());
+        assertTrue((System.nanoTime() - start) / 1_000_000 >= 1000, "Retry-After was not honoured");
+    }
+
+    @Test
+    void givesUpAfterTheLastAttempt() {
+        ReflectionTestUtils.setField(client, "retryMaxAttempts", 3);
+        for (int i = 0; i < 4; i++) {
+            replies.add(new Reply(503, 0, null));
+        }
+
+        assertThrows(RuntimeException.class, () -> complete(client.OpenAIService()));
+        assertEquals(3, calls.get());
+    }
+
+    @Test
+    void openCircuitFailsFastWithoutCallingTheApi() {
+        ReflectionTestUtils.setField(client, "retryMaxAttempts", 1);
+        ReflectionTestUtils.setField(client, "circuitFailureThreshold", 2);
+        replies.add(new Reply(500, 0, null));
+        replies.add(new Reply(500, 0, null));
+        final OpenAiService service = client.OpenAIService();
+
+        assertThrows(RuntimeException.class, () -> complete(service));
+        assertThrows(RuntimeException.class, () -> complete(service));
+        final RuntimeException open = assertThrows(RuntimeException.class, () -> complete(service));
+
+        assertInstanceOf(CircuitOpenException.class, open.getCause());
+        assertEquals(CircuitBreakerInterceptor.State.OPEN, client.getCircuitBreaker().getState());
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void deadlineCutsSlowCallsShort() {
+        ReflectionTestUtils.setField(client, "callTimeout", Duration.ofMillis(300));
+        replies.add(new Reply(200, 3000, null));
+        final long start = System.nanoTime();
+
+        assertThrows(RuntimeException.class, () -> complete(client.OpenAIService()));
+
+        assertTrue((System.nanoTime() - start) / 1_000_000 < 2000, "call outlived its deadline");
+    }
+
+    @Test
+    void hedgedRequestAnswersWhenThePrimaryIsSlow() {
+        ReflectionTestUtils.setField(client, "hedgeDelay", Duration.ofMillis(100));
+        replies.add(new Reply(200, 3000, null));
+        final long start = System.nanoTime();
+
+        assertEquals("Feature: mock", complete(client.OpenAIService()));
+
+        assertTrue((System.nanoTime() - start) / 1_000_000 < 2000, "hedge did not answer first");
+        assertEquals(2, calls.get());
+        assertEquals(1, client.getHedging().getHedgeWins());
+    }
+
+    private static String complete(final OpenAiService service) {
+        final ChatCompletionRequest request = ChatCompletionRequest.builder()
+                .model("gpt-4o-mini")
+                .messages(List.of(new ChatMessage("user", "Generate a feature for GET /pets")))
+                .build();
+        return service.createChatCompletion(request).getChoices().get(0).getMessage().getContent();
+    }
+
+    // scripted replies first, then plain successes
+    private void reply(final HttpExchange exchange) throws IOException {
+        calls.incrementAndGet();
+        exchange.getRequestBody().readAllBytes();
+        final Reply reply = replies.poll();
+        try {
+            if (reply != null && reply.delayMillis > 0) {
+                Thread.sleep(reply.delayMillis);
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        final int status = reply != null ? reply.status : 200;
+        if (reply != null && reply.retryAfter != null) {
+            exchange.getResponseHeaders().add("Retry-After", reply.retryAfter);
+        }
+        final byte[] body = (status == 200 ? COMPLETION : ERROR).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        try (final OutputStream out = exchange.getResponseBody()) {
+            exchange.sendResponseHeaders(status, body.length);
+            out.write(body);
+        } catch (final IOException e) {
+            // the client gave up on this call
+        }
+    }
+
+    private record Reply(int status, long delayMillis, String retryAfter) {
+    }
+}
@@ -0,0 +1,90 @@
+package com.ftpl.rapidTestAI.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ftpl.rapidTestAI.utils.OperationManifest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BatchGenerationServiceTest {
+
+    private static final String CHUNKS = "src/test/resources/batch/chunks";
+
+    @TempDir
+    Path workDir;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final BatchGenerationService batchService = new BatchGenerationService();
+    private CompletionCache cache;
+    private String out;
+
+    @BeforeEach
+    void setUp() {
+        cache = new CompletionCache(true, workDir.resolve("cache").toString(), 100, 1 << 20, 1 << 20, Duration.ofDays(1));
+        ReflectionTestUtils.setField(batchService, "completionCache", cache);
+        ReflectionTestUtils.setField(batchService, "metrics", new GenerationMetrics(new SimpleMeterRegistry()));
+        out = workDir + File.separator;
+    }
+
+    @Test
+    void exportsOneRequestPerOperationWithStableIds() throws Exception {
+        final String batchFile = out + "features.jsonl";
+
+        final BatchExportReport report = batchService.exportFeatureBatch(CHUNKS, batchFile);
+        final List<String> lines = Files.readAllLines(Path.of(batchFile));
+        final List<String> again = Files.readAllLines(Path.of(batchService.exportFeatureBatch(CHUNKS, out + "again.jsonl").getBatchFile()));
+
+        assertEquals(3, report.getRequests());
+        assertEquals(lines, again);
+        final JsonNode first = mapper.readTree(lines.get(0));
+        assertEquals("feature-_pets_GET", first.get("custom_id").asText());
+        assertEquals("/v1/chat/completions", first.get("url").asText());
+        assertEquals(PromptFactory.MODEL, first.at("/body/model").asText());
+        assertEquals("system", first.at("/body/messages/0/role").asText());
+        // the fingerprint is bookkeeping, not prompt context
+        assertFalse(first.at("/body/messages/0/content").asText().contains("f-list"));
+    }
+
+    @Test
+    void ingestsBothRoundsAndRecordsTheArtifacts() throws Exception {
+        final String stepBatch = out + "steps.jsonl";
+
+        final GenerationReport features = batchService.ingestFeatureResults(
+                CHUNKS, "src/test/resources/batch/feature_results.jsonl", out, stepBatch);
+
+        assertEquals(List.of("GET /pets", "POST /pets"), features.getSucceeded());
+        assertTrue(features.getFailed().get("GET /pets/{id}").contains("The server had an error"));
+        assertTrue(features.getFailed().containsKey("feature-_gone_GET"));
+        assertTrue(Files.readString(Path.of(out + "_pets_GET.feature")).startsWith("Feature: List pets"));
+        final List<String> stepRequests = Files.readAllLines(Path.of(stepBatch));
+        assertEquals(2, stepRequests.size());
+        assertEquals("steps-_pets_GET", mapper.readTree(stepRequests.get(0)).get("custom_id").asText());
+
+        final GenerationReport steps = batchService.ingestStepResults(
+                CHUNKS, "src/test/resources/batch/step_results.jsonl", out, out);
+
+        assertEquals(List.of("GET /pets"), steps.getSucceeded());
+        assertTrue(steps.getFailed().get("POST /pets").contains("HTTP 429"));
+        assertEquals("public class ListPetsSteps {}", Files.readString(Path.of(out + "_pets_GETSteps.java")));
+
+        final OperationManifest manifest = OperationManifest.read(new File(out, OperationManifest.GENERATION_MANIFEST));
+        assertEquals("f-list", manifest.getOperations().get("GET /pets").getFingerprint());
+        assertEquals(2, manifest.getOperations().get("GET /pets").getArtifacts().size());
+        assertFalse(manifest.getOperations().containsKey("POST /pets"));
+        // an interactive run for the same operations is answered from the cache
+        assertEquals(3L, cache.getStats().get("writes"));
+    }
+}
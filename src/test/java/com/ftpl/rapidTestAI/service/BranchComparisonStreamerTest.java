@@ -0,0 +1,162 @@
+package com.ftpl.rapidTestAI.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BranchComparisonStreamerTest {
+
+    @TempDir
+    Path repository;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final GitClientService gitClientService = new GitClientService();
+    private final BranchComparisonStreamer streamer = new BranchComparisonStreamer();
+
+    @BeforeEach
+    void createRepository() throws Exception {
+        git("init", "-q");
+        Files.writeString(repository.resolve("a.txt"), "alpha\r\n");
+        Files.writeString(repository.resolve("big.txt"), "x".repeat(2000));
+        Files.write(repository.resolve("logo.png"), new byte[]{(byte) 0x89, 'P', 'N', 'G', 0, 0, 1});
+        Files.createDirectories(repository.resolve("lib/vendor"));
+        Files.writeString(repository.resolve("lib/vendor/dep.js"), "vendored");
+        Files.writeString(repository.resolve("b.txt"), "beta".repeat(100));
+        git("add", ".");
+        git("-c", "user.name=test", "-c", "user.email=test@example.com", "commit", "-q", "-m", "files");
+
+        ReflectionTestUtils.setField(gitClientService, "metrics", new GenerationMetrics(new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(streamer, "gitClientService", gitClientService);
+    }
+
+    @AfterEach
+    void closeReaders() {
+        gitClientService.closeCatFileReaders();
+    }
+
+    @Test
+    void writesOneRecordPerFileWithSkipReasons() throws Exception {
+        final List<JsonNode> records = stream(new BranchComparisonStreamer.Options(1000L, 300L, null, true, false));
+
+        assertEquals(7, records.size());
+        assertEquals("excluded", skipped(records, "lib/vendor/dep.js"));
+        assertEquals("alpha\r\n", record(records, "a.txt").get("content").asText());
+        assertEquals("too-large", skipped(records, "big.txt"));
+        assertEquals("binary", skipped(records, "logo.png"));
+        assertEquals("deleted", skipped(records, "gone.txt"));
+        // 7 bytes of a.txt already sent, 400 more would pass the 300 byte total
+        assertEquals("total-limit", skipped(records, "b.txt"));
+
+        final JsonNode end = records.get(records.size() - 1);
+        assertEquals("end", end.get("type").asText());
+        assertEquals(6, end.get("files").asInt());
+        assertEquals(5, end.get("skipped").asInt());
+        assertEquals(7, end.get("contentBytes").asInt());
+    }
+
+    @Test
+    void gzipStreamCarriesTheSameRecords() throws Exception {
+        final BranchComparisonStreamer.Options options = new BranchComparisonStreamer.Options(null, null, List.of(), false, true);
+
+        final List<JsonNode> records = stream(options);
+
+        assertEquals("vendored", record(records, "lib/vendor/dep.js").get("content").asText());
+        final JsonNode logo = record(records, "logo.png");
+        assertFalse(logo.has("skipped"));
+        assertEquals("base64", logo.get("encoding").asText());
+        assertArrayEquals(Files.readAllBytes(repository.resolve("logo.png")), logo.get("content").binaryValue());
+        assertFalse(record(records, "big.txt").has("encoding"));
+        assertEquals("x".repeat(2000), record(records, "big.txt").get("content").asText());
+    }
+
+    @Test
+    void writesToTheClientWithoutHoldingTheRepositoryReader() throws Exception {
+        // one file per batch, and every record waits for another read of the repository
+        ReflectionTestUtils.setField(streamer, "readBufferSize", DataSize.ofBytes(1));
+        final ExecutorService otherRequest = Executors.newSingleThreadExecutor();
+        final List<String> readsWhileWriting = new ArrayList<>();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream() {
+            @Override
+            public void flush() {
+                try {
+                    readsWhileWriting.add(otherRequest.submit(() -> gitClientService.getFileContentAtRevision(
+                            repository.toString(), "a.txt", "HEAD")).get(10, TimeUnit.SECONDS));
+                } catch (final Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+        try {
+            final List<JsonNode> records = stream(new BranchComparisonStreamer.Options(null, null, List.of(), false, false), out);
+
+            assertEquals("beta".repeat(100), record(records, "b.txt").get("content").asText());
+            assertEquals("end", records.get(records.size() - 1).get("type").asText());
+            assertTrue(readsWhileWriting.size() >= records.size());
+        } finally {
+            otherRequest.shutdownNow();
+        }
+    }
+
+    private List<JsonNode> stream(final BranchComparisonStreamer.Options options) throws Exception {
+        return stream(options, new ByteArrayOutputStream());
+    }
+
+    private List<JsonNode> stream(final BranchComparisonStreamer.Options options, final ByteArrayOutputStream out) throws Exception {
+        streamer.write(repository.toString(), "HEAD",
+                List.of("lib/vendor/dep.js", "a.txt", "big.txt", "logo.png", "gone.txt", "b.txt"), options, out);
+
+        InputStream in = new ByteArrayInputStream(out.toByteArray());
+        if (options.gzip()) {
+            in = new GZIPInputStream(in);
+        }
+        final List<JsonNode> records = new ArrayList<>();
+        try (final BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                records.add(mapper.readTree(line));
+            }
+        }
+        return records;
+    }
+
+    private static JsonNode record(final List<JsonNode> records, final String path) {
+        return records.stream().filter(node -> path.equals(node.path("path").asText())).findFirst().orElseThrow();
+    }
+
+    private static String skipped(final List<JsonNode> records, final String path) {
+        return record(records, path).path("skipped").asText();
+    }
+
+    private void git(final String... args) throws Exception {
+        final List<String> command = new ArrayList<>(List.of("git"));
+        command.addAll(List.of(args));
+        final Process process = new ProcessBuilder(command).directory(repository.toFile()).inheritIO().start();
+        assertEquals(0, process.waitFor());
+    }
+}
@@ -0,0 +1,98 @@
+package com.ftpl.rapidTestAI.service;
+
+import com.theokanning.openai.completion.chat.ChatCompletionRequest;
+import com.theokanning.openai.completion.chat.ChatMessage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompletionCacheTest {
+
+    @TempDir
+    Path cacheDir;
+
+    @Test
+    void keyDependsOnModelAndMessages() {
+        final String key = CompletionCache.keyOf(request("gpt-4o-mini", "system", "user"));
+
+        assertEquals(key, CompletionCache.keyOf(request("gpt-4o-mini", "system", "user")));
+        assertNotEquals(key, CompletionCache.keyOf(request("gpt-4o", "system", "user")));
+        assertNotEquals(key, CompletionCache.keyOf(request("gpt-4o-mini", "system!", "user")));
+        assertNotEquals(key, CompletionCache.keyOf(request("gpt-4o-mini", "system", "user!")));
+    }
+
+    @Test
+    void servesEntriesFromDiskAfterReopen() {
+        final CompletionCache first = cache(1024 * 1024, Duration.ofDays(1));
+        first.put("a", "Feature: A");
+        first.close();
+
+        final CompletionCache second = cache(1024 * 1024, Duration.ofDays(1));
+        assertEquals("Feature: A", second.get("a"));
+        assertEquals("Feature: A", second.get("a"));
+        assertNull(second.get("b"));
+
+        assertEquals(1L, second.getStats().get("diskHits"));
+        assertEquals(1L, second.getStats().get("memoryHits"));
+        assertEquals(1L, second.getStats().get("misses"));
+        second.close();
+    }
+
+    @Test
+    void expiredEntriesAreMisses() throws Exception {
+        final CompletionCache first = cache(1024 * 1024, Duration.ofMillis(1));
+        first.put("a", "Feature: A");
+        first.close();
+        Thread.sleep(5);
+
+        final CompletionCache second = cache(1024 * 1024, Duration.ofMillis(1));
+        assertNull(second.get("a"));
+        second.close();
+    }
+
+    @Test
+    void expiredMemoryEntriesAreMisses() throws Exception {
+        final CompletionCache cache = cache(1024 * 1024, Duration.ofMillis(1));
+        cache.put("a", "Feature: A");
+        Thread.sleep(5);
+
+        assertNull(cache.get("a"));
+        assertEquals(0L, cache.getStats().get("memoryHits"));
+        assertEquals(0L, cache.getStats().get("memoryEntries"));
+        cache.close();
+    }
+
+    @Test
+    void dropsOldestSegmentsOverQuota() {
+        // records are ~50 bytes, so segments hold two and the quota keeps three segments
+        final CompletionCache cache = new CompletionCache(true, cacheDir.toString(), 0, 300, 100, Duration.ofDays(1));
+        for (int i = 0; i < 10; i++) {
+            cache.put("key-" + i, "value-" + i);
+        }
+
+        assertNull(cache.get("key-0"));
+        assertEquals("value-9", cache.get("key-9"));
+        assertTrue(cache.getStats().get("evictions") > 0);
+        assertTrue(cache.getStats().get("diskBytes") <= 300);
+        cache.close();
+    }
+
+    private CompletionCache cache(final long maxDiskBytes, final Duration ttl) {
+        return new CompletionCache(true, cacheDir.toString(), 10, maxDiskBytes, 1024 * 1024, ttl);
+    }
+
+    private static ChatCompletionRequest request(final String model, final String system, final String user) {
+        return ChatCompletionRequest.builder()
+                .model(model)
+                .messages(List.of(new ChatMessage("system", system), new ChatMessage("user", user)))
+                .build();
+    }
+}
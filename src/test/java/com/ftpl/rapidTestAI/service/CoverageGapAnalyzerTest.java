@@ -0,0 +1,207 @@
+package com.ftpl.rapidTestAI.service;
+
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.data.ExecutionDataWriter;
+import org.jacoco.core.data.SessionInfoStore;
+import org.jacoco.core.instr.Instrumenter;
+import org.jacoco.core.runtime.LoggerRuntime;
+import org.jacoco.core.runtime.RuntimeData;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CoverageGapAnalyzerTest {
+
+    private static final String FIXTURE = binaryName(Fixture.class);
+    private static final String REPOSITORY = binaryName(Repository.class);
+
+    private static final String REPORT = """
+            <?xml version="1.0" encoding="UTF-8" standalone="yes"?>
+            <!DOCTYPE report PUBLIC "-//JACOCO//DTD Report 1.1//EN" "report.dtd">
+            <report name="pets">
+              <sessioninfo id="host-1" start="1" dump="2"/>
+              <package name="com/acme/pets">
+                <class name="com/acme/pets/PetController" sourcefilename="PetController.java">
+                  <method name="getPet" desc="(J)Lcom/acme/pets/Pet;" line="10">
+                    <counter type="INSTRUCTION" missed="9" covered="0"/>
+                    <counter type="BRANCH" missed="2" covered="0"/>
+                    <counter type="LINE" missed="3" covered="0"/>
+                  </method>
+                  <method name="lambda$getPet$0" desc="(Lcom/acme/pets/Pet;)Z" line="12">
+                    <counter type="LINE" missed="1" covered="0"/>
+                  </method>
+                  <method name="search" desc="()Ljava/util/List;" line="20">
+                    <counter type="LINE" missed="0" covered="2"/>
+                  </method>
+                  <counter type="LINE" missed="4" covered="2"/>
+                  <counter type="BRANCH" missed="2" covered="0"/>
+                </class>
+                <sourcefile name="PetController.java"/>
+              </package>
+            </report>
+            """;
+
+    @Test
+    void ranksEndpointsByUncoveredLinesAndBranchesFromExecutionData(@TempDir final Path dir) throws Exception {
+        final Path execFile = dir.resolve("jacoco.exec");
+        record(execFile, instrumented -> instrumented.getMethod("covered", int.class)
+                .invoke(instrumented.getDeclaredConstructor().newInstance(), 1));
+        final Path classes = dir.resolve("classes");
+        copyClassFile(Fixture.class, classes);
+        copyClassFile(Repository.class, classes);
+
+        final CoverageGapAnalyzer analyzer = new CoverageGapAnalyzer();
+        final Map<String, List<CoverageGapAnalyzer.MethodCoverage>> coverage =
+                analyzer.readExecutionData(List.of(execFile.toFile()), List.of(classes.toFile()));
+        assertEquals(Set.of(FIXTURE, REPOSITORY), coverage.keySet());
+
+        final List<EndpointCoverage> gaps = analyzer.gaps(List.of(
+                new EndpointImpactIndex.Endpoint(List.of("GET /pets"), FIXTURE, "covered(int)", Set.of(), List.of()),
+                new EndpointImpactIndex.Endpoint(List.of("GET /orders"), "com/acme/Missing", "list()", Set.of(), List.of()),
+                new EndpointImpactIndex.Endpoint(List.of("GET /pets/{id}"), FIXTURE,
+                        "uncovered(String, Map<String, Integer>)", Set.of("helper()"), List.of()),
+                new EndpointImpactIndex.Endpoint(List.of("GET /pets/search"), FIXTURE, "covered(int)", Set.of(), List.of(REPOSITORY))
+        ), coverage);
+
+        assertEquals(List.of("GET /pets/{id}", "GET /pets/search", "GET /pets", "GET /orders"),
+                gaps.stream().map(gap -> gap.getOperations().get(0)).toList());
+        // the untested handler: three lines and both branches, plus the helper it calls
+        assertEquals(4, gaps.get(0).getMissedLines());
+        assertEquals(2, gaps.get(0).getMissedBranches());
+        assertEquals(0, gaps.get(0).getLineCoverage());
+        // called once with a positive number, so one branch is missed; the repository it uses was never loaded
+        assertEquals(1, gaps.get(2).getGap());
+        assertEquals(1, gaps.get(2).getCoveredLines());
+        assertEquals(3, gaps.get(1).getGap());
+        assertFalse(gaps.get(3).isMeasured());
+        assertEquals(-1, gaps.get(3).getGap());
+
+        assertEquals(6, CoverageGapAnalyzer.gapOf(gaps, "GET /api/pets/{petId}#2"));
+        assertEquals(1, CoverageGapAnalyzer.gapOf(gaps, "GET /pets"));
+        assertEquals(-1, CoverageGapAnalyzer.gapOf(gaps, "GET /orders"));
+        assertEquals(-1, CoverageGapAnalyzer.gapOf(gaps, "DELETE /pets/{id}"));
+    }
+
+    @Test
+    void readsMethodCountersFromXmlReportWithoutLoadingItsDtd(@TempDir final Path dir) throws Exception {
+        final Path report = dir.resolve("jacoco.xml");
+        Files.writeString(report, REPORT);
+
+        final CoverageGapAnalyzer analyzer = new CoverageGapAnalyzer();
+        final Map<String, List<CoverageGapAnalyzer.MethodCoverage>> coverage = analyzer.readXmlReport(report.toFile());
+        assertEquals(List.of(
+                new CoverageGapAnalyzer.MethodCoverage("getPet", "(J)Lcom/acme/pets/Pet;", 3, 0, 2, 0),
+                new CoverageGapAnalyzer.MethodCoverage("lambda$getPet$0", "(Lcom/acme/pets/Pet;)Z", 1, 0, 0, 0),
+                new CoverageGapAnalyzer.MethodCoverage("search", "()Ljava/util/List;", 0, 2, 0, 0)
+        ), coverage.get("com/acme/pets/PetController"));
+
+        final List<EndpointCoverage> gaps = analyzer.gaps(List.of(
+                new EndpointImpactIndex.Endpoint(List.of("GET /pets/search"), "com/acme/pets/PetController", "search()", Set.of(), List.of()),
+                new EndpointImpactIndex.Endpoint(List.of("GET /pets/{id}"), "com/acme/pets/PetController", "getPet(long)", Set.of(), List.of())
+        ), coverage);
+        assertEquals(List.of("GET /pets/{id}"), gaps.get(0).getOperations());
+        // the lambda in the handler counts towards it
+        assertEquals(4, gaps.get(0).getMissedLines());
+        assertEquals(6, gaps.get(0).getGap());
+        assertEquals(0, gaps.get(1).getGap());
+        assertTrue(gaps.get(1).isMeasured());
+    }
+
+    @Test
+    void countsParametersOfDescriptorsAndSourceSignatures() {
+        assertEquals(0, CoverageGapAnalyzer.parameterCount("()V"));
+        assertEquals(3, CoverageGapAnalyzer.parameterCount("(J[Ljava/lang/String;[[I)V"));
+        assertEquals(0, CoverageGapAnalyzer.parameterCount("list()"));
+        assertEquals(2, CoverageGapAnalyzer.parameterCount("find(long, Map<String, List<Integer>>)"));
+    }
+
+    public static class Fixture {
+
+        public String covered(final int n) {
+            return n > 0 ? "positive" : "other";
+        }
+
+        public String uncovered(final String name, final Map<String, Integer> counts) {
+            if (name == null) {
+                return "none";
+            }
+            return name + counts.size() + helper();
+        }
+
+        private int helper() {
+            return counts();
+        }
+
+        private static int counts() {
+            return 1;
+        }
+    }
+
+    static class Repository {
+
+        String find() {
+            return "pet";
+        }
+    }
+
+    private interface Run {
+        void on(Class<?> instrumented) throws Exception;
+    }
+
+    // runs the fixture instrumented with an in-process JaCoCo runtime and writes what it recorded
+    private static void record(final Path execFile, final Run run) throws Exception {
+        final LoggerRuntime runtime = new LoggerRuntime();
+        final RuntimeData data = new RuntimeData();
+        runtime.startup(data);
+        try {
+            final byte[] instrumented = new Instrumenter(runtime).instrument(classFile(Fixture.class), Fixture.class.getName());
+            run.on(new DefiningClassLoader().define(Fixture.class.getName(), instrumented));
+            final ExecutionDataStore executionData = new ExecutionDataStore();
+            data.collect(executionData, new SessionInfoStore(), false);
+            try (final OutputStream out = Files.newOutputStream(execFile)) {
+                executionData.accept(new ExecutionDataWriter(out));
+            }
+        } finally {
+            runtime.shutdown();
+        }
+    }
+
+    private static void copyClassFile(final Class<?> type, final Path classes) throws IOException {
+        final Path target = classes.resolve(binaryName(type) + ".class");
+        Files.createDirectories(target.getParent());
+        Files.write(target, classFile(type));
+    }
+
+    private static byte[] classFile(final Class<?> type) throws IOException {
+        try (final InputStream in = type.getResourceAsStream("/" + binaryName(type) + ".class")) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static String binaryName(final Class<?> type) {
+        return type.getName().replace('.', '/');
+    }
+
+    private static final class DefiningClassLoader extends ClassLoader {
+
+        DefiningClassLoader() {
+            super(CoverageGapAnalyzerTest.class.getClassLoader());
+        }
+
+        Class<?> define(final String name, final byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.ftpl.rapidTestAI.service;
+
+import com.ftpl.rapidTestAI.config.StubOpenAiService;
+import com.theokanning.openai.completion.chat.ChatCompletionRequest;
+import com.theokanning.openai.completion.chat.ChatMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EndpointGenerationEngineTest {
+
+    private static final long STUB_LATENCY_MILLIS = 100;
+
+    @Test
+    void fansEndpointsOutOverThePool() throws Exception {
+        final StubOpenAiService stub = new StubOpenAiService(STUB_LATENCY_MILLIS);
+        final EndpointGenerationEngine engine = new EndpointGenerationEngine(8);
+
+        final GenerationReport report = engine.run(endpoints(32), task -> stub.createChatCompletion(request(task)));
+
+        assertEquals(32, report.getSucceeded().size());
+        assertEquals(32, stub.getCallCount());
+        // sequentially this would take 32 * 100 ms
+        assertTrue(report.getElapsedMillis() < 32 * STUB_LATENCY_MILLIS / 2,
+                "expected concurrent execution, took " + report.getElapsedMillis() + " ms");
+    }
+
+    @Test
+    void isolatesFailuresPerEndpoint() throws Exception {
+        final EndpointGenerationEngine engine = new EndpointGenerationEngine(4);
+
+        final GenerationReport report = engine.run(endpoints(10), task -> {
+            if (task.getPath().endsWith("/3") || task.getPath().endsWith("/7")) {
+                throw new IllegalStateException("boom");
+            }
+        });
+
+        assertEquals(8, report.getSucceeded().size());
+        assertEquals(2, report.getFailed().size());
+        assertTrue(report.getFailed().containsKey("GET /items/3"));
+        assertTrue(report.getFailed().containsKey("GET /items/7"));
+    }
+
+    @Test
+    void schedulerHoldsCallersToTheRequestBudget() throws Exception {
+        // 600 rpm = one request every 100 ms once the initial burst is spent
+        final LlmRequestScheduler scheduler = new LlmRequestScheduler(600, 1_000_000);
+        for (int i = 0; i < 600; i++) {
+            scheduler.acquire(1);
+        }
+
+        final long start = System.nanoTime();
+        for (int i = 0; i < 3; i++) {
+            scheduler.acquire(1);
+        }
+        final long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertTrue(elapsedMillis >= 250, "expected throttling, took " + elapsedMillis + " ms");
+    }
+
+    private static List<EndpointTask> endpoints(final int count) {
+        final List<EndpointTask> tasks = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            tasks.add(new EndpointTask("GET", "/items/" + i, "{}"));
+        }
+        return tasks;
+    }
+
+    private static ChatCompletionRequest request(final EndpointTask task) {
+        return ChatCompletionRequest.builder()
+                .model("gpt-4o-mini")
+                .messages(List.of(new ChatMessage("user", task.getKey())))
+                .build();
+    }
+}
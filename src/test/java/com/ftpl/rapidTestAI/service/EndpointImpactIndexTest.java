@@ -0,0 +1,281 @@
+package com.ftpl.rapidTestAI.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EndpointImpactIndexTest {
+
+    private static final String PET_CONTROLLER = """
+            package com.acme.pets;
+
+            import com.acme.orders.OrderService;
+            import org.springframework.web.bind.annotation.*;
+
+            import java.util.List;
+
+            @RestController
+            @RequestMapping(PetController.BASE)
+            public class PetController {
+                static final String BASE = "/api" + "/pets";
+
+                private final PetService petService;
+                private final OrderService orderService;
+
+                public PetController(PetService petService, OrderService orderService) {
+                    this.petService = petService;
+                    this.orderService = orderService;
+                }
+
+                @GetMapping("/{id}")
+                public Pet getPet(@PathVariable long id) {
+                    return load(id);
+                }
+
+                @PostMapping(value = {"/{id}/orders"})
+                public String order(@PathVariable long id) {
+                    return orderService.place(id);
+                }
+
+                @RequestMapping(path = "/search", method = RequestMethod.GET)
+                public List<Pet> search() {
+                    return List.of();
+                }
+
+                private Pet load(long id) {
+                    return petService.find(id);
+                }
+            }
+            """;
+
+    private static final String STORE_API = """
+            package com.acme.store;
+
+            import org.springframework.web.bind.annotation.GetMapping;
+
+            import java.util.Map;
+
+            public interface StoreApi {
+                @GetMapping("/store/inventory")
+                Map<String, Integer> inventory();
+            }
+            """;
+
+    private static final String STORE_CONTROLLER = """
+            package com.acme.store;
+
+            import org.springframework.web.bind.annotation.RestController;
+
+            import java.util.Map;
+
+            @RestController
+            public class StoreController implements StoreApi {
+                private final InventoryService inventoryService = new InventoryService();
+
+                @Override
+                public Map<String, Integer> inventory() {
+                    return inventoryService.counts();
+                }
+            }
+            """;
+
+    @TempDir
+    Path repository;
+
+    private final AtomicBoolean failReads = new AtomicBoolean();
+    private final GitClientService gitClientService = new GitClientService() {
+        @Override
+        public void readFilesAtRevision(final String localRepositoryPath,
+                                        final List<String> filePaths,
+                                        final String revision,
+                                        final GitCatFileReader.BlobConsumer consumer) throws IOException, InterruptedException {
+            super.readFilesAtRevision(localRepositoryPath, filePaths, revision, consumer);
+            if (failReads.getAndSet(false)) {
+                throw new IOException("connection lost");
+            }
+        }
+    };
+    private final EndpointImpactIndex index = new EndpointImpactIndex();
+
+    @BeforeEach
+    void createRepository() throws Exception {
+        ReflectionTestUtils.setField(gitClientService, "metrics", new GenerationMetrics(new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(index, "gitClientService", gitClientService);
+
+        git("init", "-q", "-b", "main");
+        write("src/main/java/com/acme/pets/PetController.java", PET_CONTROLLER);
+        write("src/main/java/com/acme/pets/Pet.java", "package com.acme.pets;\n\npublic record Pet(long id, String name) {\n}\n");
+        write("src/main/java/com/acme/pets/PetService.java", "package com.acme.pets;\n\npublic interface PetService {\n    Pet find(long id);\n}\n");
+        write("src/main/java/com/acme/pets/PetServiceImpl.java", """
+                package com.acme.pets;
+
+                class PetServiceImpl implements PetService {
+                    public Pet find(long id) {
+                        return new Pet(id, "rex");
+                    }
+                }
+                """);
+        write("src/main/java/com/acme/orders/OrderService.java", """
+                package com.acme.orders;
+
+                public class OrderService {
+                    public String place(long id) {
+                        return "order-" + id;
+                    }
+                }
+                """);
+        write("src/main/java/com/acme/store/StoreApi.java", STORE_API);
+        write("src/main/java/com/acme/store/StoreController.java", STORE_CONTROLLER);
+        write("src/main/java/com/acme/store/InventoryService.java", """
+                package com.acme.store;
+
+                import java.util.Map;
+
+                public class InventoryService {
+                    public Map<String, Integer> counts() {
+                        return Map.of("dogs", 1);
+                    }
+                }
+                """);
+        write("src/test/java/com/acme/pets/PetControllerTest.java", "package com.acme.pets;\n\nclass PetControllerTest {\n}\n");
+        write("src/main/resources/application.properties", "server.port=8080\n");
+        commit("main");
+
+        branch("impl", "src/main/java/com/acme/pets/PetServiceImpl.java", "\"rex\"", "\"fido\"");
+        branch("orders", "src/main/java/com/acme/orders/OrderService.java", "\"order-\"", "\"order:\"");
+        branch("inventory", "src/main/java/com/acme/store/InventoryService.java", "\"dogs\", 1", "\"cats\", 2");
+        branch("pet-model", "src/main/java/com/acme/pets/Pet.java", "String name", "String name, int age");
+        branch("comments-only", "src/main/java/com/acme/pets/PetController.java", "    private Pet load", "    // loads one pet\n    private Pet load");
+        branch("config", "src/main/resources/application.properties", "8080", "9090");
+    }
+
+    @AfterEach
+    void closeReaders() {
+        gitClientService.closeCatFileReaders();
+    }
+
+    @Test
+    void selectsOnlyTheEndpointsThatReachTheChange() throws Exception {
+        assertEquals(List.of("GET /api/pets/{id}"), index.impactOf(repository.toString(), "main", "impl").getOperations());
+        assertEquals(List.of("POST /api/pets/{id}/orders"), index.impactOf(repository.toString(), "main", "orders").getOperations());
+        assertEquals(List.of("GET /store/inventory"), index.impactOf(repository.toString(), "main", "inventory").getOperations());
+        assertEquals(List.of("GET /api/pets/search", "GET /api/pets/{id}"),
+                index.impactOf(repository.toString(), "main", "pet-model").getOperations());
+        assertEquals(List.of(), index.impactOf(repository.toString(), "main", "comments-only").getOperations());
+
+        final EndpointImpact config = index.impactOf(repository.toString(), "main", "config");
+        assertEquals(List.of(), config.getOperations());
+        assertEquals(List.of("src/main/resources/application.properties"), config.getUnmappedFiles());
+    }
+
+    @Test
+    void updatesTheIndexPerChangedFile() throws Exception {
+        final EndpointImpact impact = index.impactOf(repository.toString(), "main", "impl");
+        assertEquals(List.of("com.acme.pets.PetServiceImpl"), impact.getChangedTypes());
+        // eight main sources at main, then the one that differs on the branch
+        assertEquals(9L, index.getStats().get("filesParsed"));
+
+        index.impactOf(repository.toString(), "main", "orders");
+        // back to main for PetServiceImpl, then OrderService
+        assertEquals(11L, index.getStats().get("filesParsed"));
+        assertEquals(8L, index.getStats().get("sources"));
+
+        assertTrue(impact.matches("GET /pets/{petId}"));
+        assertTrue(impact.matches("get /api/pets/{petId}#2"));
+        assertFalse(impact.matches("GET /pets/search"));
+        assertFalse(impact.matches("POST /pets/{petId}/orders"));
+        assertFalse(impact.matches("GET /owners/{petId}"));
+    }
+
+    @Test
+    void keepsThePreviousCommitWhenAnUpdateFails() throws Exception {
+        index.endpointsAt(repository.toString(), "main");
+
+        // every file of the update is read, then the read fails
+        failReads.set(true);
+        assertThrows(IOException.class, () -> index.impactOf(repository.toString(), "main", "impl"));
+
+        final EndpointImpact impact = index.impactOf(repository.toString(), "main", "impl");
+        assertEquals(List.of("com.acme.pets.PetServiceImpl"), impact.getChangedTypes());
+        assertEquals(List.of("GET /api/pets/{id}"), impact.getOperations());
+    }
+
+    @Test
+    void listsHandlersWithTheMethodsAndClassesTheyReach() throws Exception {
+        final List<EndpointImpactIndex.Endpoint> endpoints = index.endpointsAt(repository.toString(), "main");
+        final EndpointImpactIndex.Endpoint getPet = endpoints.stream()
+                .filter(endpoint -> endpoint.operations().equals(List.of("GET /api/pets/{id}"))).findFirst().orElseThrow();
+        assertEquals("com/acme/pets/PetController", getPet.className());
+        assertEquals("getPet(long)", getPet.method());
+        assertEquals(Set.of("load(long)"), getPet.helpers());
+        // the implementation stands in for the interface it is called through
+        assertTrue(getPet.usedClasses().contains("com/acme/pets/PetServiceImpl"));
+        assertFalse(getPet.usedClasses().contains("com/acme/pets/PetService"));
+        assertFalse(getPet.usedClasses().contains("com/acme/pets/PetController"));
+        assertEquals(List.of("GET /store/inventory"), endpoints.stream()
+                .filter(endpoint -> endpoint.className().equals("com/acme/store/StoreController"))
+                .map(endpoint -> endpoint.operations().get(0)).toList());
+    }
+
+    @Test
+    void fetchesTheSourcesOfABloblessCloneInOneRequest(@TempDir final Path clones) throws Exception {
+        git("config", "uploadpack.allowFilter", "true");
+        final Path clone = clones.resolve("clone");
+        run(clones, "git", "clone", "-q", "--no-checkout", "--no-local", "--filter=blob:none",
+                repository.toUri().toString(), clone.toString());
+
+        assertEquals(8, gitClientService.fetchMissingBlobs(clone.toString(), gitClientService.resolveCommit(clone.toString(), "origin/main"),
+                gitClientService.listFilesAtRevision(clone.toString(), "origin/main").entrySet().stream()
+                        .filter(file -> EndpointImpactIndex.isIndexed(file.getKey()))
+                        .map(file -> file.getValue())
+                        .toList()));
+        assertEquals(List.of("GET /store/inventory"),
+                index.impactOf(clone.toString(), "origin/main", "origin/inventory").getOperations());
+    }
+
+    private void branch(final String name, final String file, final String from, final String to) throws Exception {
+        git("checkout", "-q", "-b", name, "main");
+        final Path path = repository.resolve(file);
+        Files.writeString(path, Files.readString(path).replace(from, to));
+        commit(name);
+        git("checkout", "-q", "main");
+    }
+
+    private void write(final String file, final String content) throws Exception {
+        final Path path = repository.resolve(file);
+        Files.createDirectories(path.getParent());
+        Files.writeString(path, content);
+    }
+
+    private void commit(final String message) throws Exception {
+        git("add", ".");
+        git("-c", "user.name=test", "-c", "user.email=test@example.com", "commit", "-q", "-m", message);
+    }
+
+    private void git(final String... args) throws Exception {
+        final List<String> command = new ArrayList<>(List.of("git"));
+        command.addAll(List.of(args));
+        run(repository, command.toArray(String[]::new));
+    }
+
+    private static void run(final Path directory, final String... command) throws Exception {
+        final Process process = new ProcessBuilder(command).directory(directory.toFile()).inheritIO().start();
+        assertEquals(0, process.waitFor());
+    }
+}
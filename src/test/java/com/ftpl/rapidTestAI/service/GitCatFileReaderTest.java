@@ -0,0 +1,135 @@
+package com.ftpl.rapidTestAI.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GitCatFileReaderTest {
+
+    @TempDir
+    Path repository;
+
+    private final byte[] binary = new byte[70_000];
+
+    @BeforeEach
+    void createRepository() throws Exception {
+        for (int i = 0; i < binary.length; i++) {
+            binary[i] = (byte) (i * 31);
+        }
+        git("init", "-q");
+        Files.write(repository.resolve("image.bin"), binary);
+        Files.writeString(repository.resolve("windows.txt"), "line one\r\nline two\r\n");
+        Files.writeString(repository.resolve("no-newline.txt"), "last line");
+        for (int i = 0; i < 300; i++) {
+            Files.writeString(repository.resolve("file" + i + ".txt"), ("content of file " + i + "\n").repeat(50));
+        }
+        git("add", ".");
+        git("-c", "user.name=test", "-c", "user.email=test@example.com", "commit", "-q", "-m", "files");
+    }
+
+    @Test
+    void returnsExactBytes() throws Exception {
+        try (final GitCatFileReader reader = new GitCatFileReader(repository.toFile())) {
+            assertArrayEquals(binary, reader.read("HEAD:image.bin"));
+            assertEquals("line one\r\nline two\r\n", new String(reader.read("HEAD:windows.txt"), StandardCharsets.UTF_8));
+            assertEquals("last line", new String(reader.read("HEAD:no-newline.txt"), StandardCharsets.UTF_8));
+            assertNull(reader.read("HEAD:deleted.txt"));
+            assertTrue(reader.isUsable());
+        }
+    }
+
+    @Test
+    void readsManyFilesInOneBatch() throws Exception {
+        final GitClientService gitClientService = new GitClientService();
+        ReflectionTestUtils.setField(gitClientService, "metrics", new GenerationMetrics(new SimpleMeterRegistry()));
+        final List<String> paths = new ArrayList<>();
+        for (int i = 299; i >= 0; i--) {
+            paths.add("file" + i + ".txt");
+        }
+        paths.add("missing.txt");
+
+        try {
+            final Map<String, byte[]> contents = gitClientService.getFileContentsAtRevision(repository.toString(), paths, "HEAD");
+
+            assertEquals(paths.subList(0, 300), new ArrayList<>(contents.keySet()));
+            assertEquals(("content of file 7\n").repeat(50), new String(contents.get("file7.txt"), StandardCharsets.UTF_8));
+            assertEquals("line one\r\nline two\r\n",
+                    gitClientService.getFileContentAtRevision(repository.toString(), "windows.txt", "HEAD"));
+            assertThrows(IOException.class,
+                    () -> gitClientService.getFileContentAtRevision(repository.toString(), "missing.txt", "HEAD"));
+        } finally {
+            gitClientService.closeCatFileReaders();
+        }
+    }
+
+    @Test
+    void dropsTheReadersOfClosedAndDeletedRepositories() throws Exception {
+        final GitClientService gitClientService = new GitClientService();
+        ReflectionTestUtils.setField(gitClientService, "metrics", new GenerationMetrics(new SimpleMeterRegistry()));
+        final Map<?, ?> readers = (Map<?, ?>) ReflectionTestUtils.getField(gitClientService, "catFileReaders");
+        final Path copy = Files.createTempDirectory(repository.getParent(), "copy");
+        git("clone", "-q", repository.toString(), copy.toString());
+
+        try {
+            gitClientService.getFileContentAtRevision(repository.toString(), "windows.txt", "HEAD");
+            gitClientService.getFileContentAtRevision(copy.toString(), "windows.txt", "HEAD");
+            assertEquals(2, readers.size());
+
+            gitClientService.closeCatFileReader(repository.toString());
+            assertEquals(1, readers.size());
+
+            // a repository deleted without closing its reader is noticed on the next read
+            deleteRecursively(copy);
+            assertEquals("line one\r\nline two\r\n",
+                    gitClientService.getFileContentAtRevision(repository.toString(), "windows.txt", "HEAD"));
+            assertEquals(1, readers.size());
+        } finally {
+            gitClientService.closeCatFileReaders();
+        }
+    }
+
+    @Test
+    void failedBatchLeavesTheReaderUnusable() throws Exception {
+        try (final GitCatFileReader reader = new GitCatFileReader(repository.toFile())) {
+            assertThrows(IllegalStateException.class, () -> reader.readAll(List.of("HEAD:image.bin", "HEAD:windows.txt"),
+                    (name, size, content) -> {
+                        content.read();
+                        throw new IllegalStateException("consumer failed");
+                    }));
+            assertFalse(reader.isUsable());
+            assertThrows(IOException.class, () -> reader.read("HEAD:windows.txt"));
+        }
+    }
+
+    private static void deleteRecursively(final Path directory) throws IOException {
+        try (final var files = Files.walk(directory)) {
+            for (final Path file : files.sorted(java.util.Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    private void git(final String... args) throws Exception {
+        final List<String> command = new ArrayList<>(List.of("git"));
+        command.addAll(List.of(args));
+        final Process process = new ProcessBuilder(command).directory(repository.toFile()).inheritIO().start();
+        assertEquals(0, process.waitFor());
+    }
+}
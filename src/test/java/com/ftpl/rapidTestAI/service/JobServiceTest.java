@@ -0,0 +1,102 @@
+package com.ftpl.rapidTestAI.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JobServiceTest {
+
+    private final JobService jobService = new JobService(1, 1, Duration.ofHours(1));
+
+    @AfterEach
+    void tearDown() {
+        jobService.shutdown();
+    }
+
+    @Test
+    void runsJobsAndReportsProgress() throws Exception {
+        final EndpointGenerationEngine engine = new EndpointGenerationEngine(4);
+        final List<String> updates = new CopyOnWriteArrayList<>();
+        final CountDownLatch done = new CountDownLatch(1);
+
+        final Job job = jobService.submit("test", progress -> engine.run(endpoints(5), task -> { }, progress));
+        jobService.addListener(job.getId(), update -> {
+            updates.add(update.getStatus() + " " + update.getCompleted() + "/" + update.getTotal());
+            if (update.getStatus().isFinished()) {
+                done.countDown();
+            }
+        });
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Job.Status.SUCCEEDED, job.getStatus());
+        assertEquals(5, job.getCompleted());
+        assertEquals(5, ((GenerationReport) job.getResult()).getSucceeded().size());
+        assertEquals("SUCCEEDED 5/5", updates.get(updates.size() - 1));
+    }
+
+    @Test
+    void rejectsSubmissionsBeyondTheQueue() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(1);
+        jobService.submit("running", progress -> {
+            started.countDown();
+            return release.await(5, TimeUnit.SECONDS);
+        });
+        started.await(5, TimeUnit.SECONDS);
+        final Job queued = jobService.submit("queued", progress -> null);
+
+        assertThrows(JobQueueFullException.class, () -> jobService.submit("rejected", progress -> null));
+        assertEquals(Job.Status.QUEUED, queued.getStatus());
+        release.countDown();
+    }
+
+    @Test
+    void cancellationInterruptsRunningJobs() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        final Job job = jobService.submit("long", progress -> {
+            started.countDown();
+            try {
+                Thread.sleep(10_000);
+            } catch (final InterruptedException e) {
+                interrupted.countDown();
+                throw e;
+            }
+            return null;
+        });
+        started.await(5, TimeUnit.SECONDS);
+
+        jobService.cancel(job.getId());
+
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        assertEquals(Job.Status.CANCELLED, job.getStatus());
+        // the worker is free again
+        final Job next = jobService.submit("next", progress -> "ok");
+        final CountDownLatch done = new CountDownLatch(1);
+        jobService.addListener(next.getId(), update -> {
+            if (update.getStatus().isFinished()) {
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals("ok", next.getResult());
+    }
+
+    private static List<EndpointTask> endpoints(final int count) {
+        final List<EndpointTask> tasks = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            tasks.add(new EndpointTask("GET", "/items/" + i, "{}"));
+        }
+        return tasks;
+    }
+}
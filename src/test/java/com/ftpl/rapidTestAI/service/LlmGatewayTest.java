@@ -0,0 +1,100 @@
+package com.ftpl.rapidTestAI.service;
+
+import com.ftpl.rapidTestAI.config.StubOpenAiService;
+import com.ftpl.rapidTestAI.utils.ArtifactFiles;
+import com.theokanning.openai.completion.chat.ChatCompletionRequest;
+import com.theokanning.openai.completion.chat.ChatMessage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LlmGatewayTest {
+
+    private static final long STUB_LATENCY_MILLIS = 400;
+
+    @TempDir
+    Path workDir;
+
+    private final StubOpenAiService stub = new StubOpenAiService(STUB_LATENCY_MILLIS);
+    private final LlmGateway gateway = new LlmGateway();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(gateway, "openAiService", stub);
+        ReflectionTestUtils.setField(gateway, "scheduler", new LlmRequestScheduler(600, 1_000_000));
+        ReflectionTestUtils.setField(gateway, "completionCache",
+                new CompletionCache(true, workDir.resolve("cache").toString(), 100, 1 << 20, 1 << 20, Duration.ofDays(1)));
+        ReflectionTestUtils.setField(gateway, "expectedCompletionTokens", 100);
+        ReflectionTestUtils.setField(gateway, "metrics", new GenerationMetrics(registry));
+    }
+
+    @Test
+    void streamsIntoThePartialFileAndPublishesOnCommit() throws Exception {
+        final Path feature = workDir.resolve("pets_GET.feature");
+
+        final CompletionTiming timing;
+        try (final ArtifactFiles.PartialFile partial = ArtifactFiles.open(feature)) {
+            timing = gateway.stream(request(), partial.writer(), GenerationMetrics.STAGE_FEATURE);
+            assertFalse(Files.exists(feature));
+            partial.commit();
+        }
+
+        assertEquals("Feature: stub response for gpt-4o-mini", Files.readString(feature));
+        assertFalse(Files.exists(workDir.resolve("pets_GET.feature" + ArtifactFiles.PARTIAL_SUFFIX)));
+        // the first word arrives after half the latency, the rest over the other half
+        assertTrue(timing.getTimeToFirstByteMillis() < timing.getTotalMillis() - STUB_LATENCY_MILLIS / 4,
+                "ttfb " + timing.getTimeToFirstByteMillis() + " ms, total " + timing.getTotalMillis() + " ms");
+        assertEquals(Files.readString(feature).length(), timing.getCharacters());
+    }
+
+    @Test
+    void streamedAnswersAreCached() throws Exception {
+        final Path first = workDir.resolve("first.feature");
+        final Path second = workDir.resolve("second.feature");
+
+        try (final ArtifactFiles.PartialFile partial = ArtifactFiles.open(first)) {
+            gateway.stream(request(), partial.writer(), GenerationMetrics.STAGE_FEATURE);
+            partial.commit();
+        }
+        try (final ArtifactFiles.PartialFile partial = ArtifactFiles.open(second)) {
+            gateway.stream(request(), partial.writer(), GenerationMetrics.STAGE_FEATURE);
+            partial.commit();
+        }
+
+        assertEquals(1, stub.getCallCount());
+        assertEquals(Files.readString(first), Files.readString(second));
+        assertEquals(1, registry.get("rapidtest.llm.latency").tag("stage", GenerationMetrics.STAGE_FEATURE).timer().count());
+        assertEquals(1, registry.get("rapidtest.llm.cache.hits").counter().count());
+    }
+
+    @Test
+    void uncommittedArtifactsStayPartial() throws Exception {
+        final Path feature = workDir.resolve("broken.feature");
+
+        try (final ArtifactFiles.PartialFile partial = ArtifactFiles.open(feature)) {
+            partial.writer().write("Feature: half");
+        }
+
+        assertFalse(Files.exists(feature));
+        assertEquals("Feature: half", Files.readString(workDir.resolve("broken.feature" + ArtifactFiles.PARTIAL_SUFFIX)));
+    }
+
+    private static ChatCompletionRequest request() {
+        return ChatCompletionRequest.builder()
+                .model("gpt-4o-mini")
+                .messages(List.of(new ChatMessage("user", "Generate a feature for GET /pets")))
+                .build();
+    }
+}
@@ -0,0 +1,49 @@
+package com.ftpl.rapidTestAI.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MultiEndpointResponseTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void splitsFencedAnswerByEndpointKey() throws Exception {
+        final String answer = """
+                Here you go:
+                ```json
+                {"GET /pets": "Feature: list pets", "POST /pets": "Feature: add pet"}
+                ```
+                """;
+
+        final Map<String, String> artifacts = MultiEndpointResponse.split(mapper, answer,
+                List.of("GET /pets", "POST /pets"), text -> text.contains("Feature:"));
+
+        assertEquals(Map.of("GET /pets", "Feature: list pets", "POST /pets", "Feature: add pet"), artifacts);
+    }
+
+    @Test
+    void leavesOutMissingAndInvalidEntries() throws Exception {
+        final String answer = """
+                {"GET /pets": "Feature: list pets", "POST /pets": "no gherkin here", "DELETE /pets/{id}": {"nested": true},
+                 "GET /owners": "Feature: not asked for"}
+                """;
+
+        final Map<String, String> artifacts = MultiEndpointResponse.split(mapper, answer,
+                List.of("GET /pets", "POST /pets", "DELETE /pets/{id}", "PUT /pets/{id}"), text -> text.contains("Feature:"));
+
+        assertEquals(Map.of("GET /pets", "Feature: list pets"), artifacts);
+    }
+
+    @Test
+    void rejectsAnswersWithoutJson() {
+        assertThrows(IllegalArgumentException.class, () -> MultiEndpointResponse.split(mapper,
+                "Feature: I ignored the instructions", List.of("GET /pets"), text -> true));
+    }
+}
@@ -0,0 +1,143 @@
+package com.ftpl.rapidTestAI.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.ftpl.rapidTestAI.utils.OperationManifest;
+import com.ftpl.rapidTestAI.utils.TokenEstimator;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OpenAPIChunkExporterTest {
+
+    private static final int BUDGET = 400;
+
+    @TempDir
+    Path workDir;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final OpenAPIChunkExporter exporter = new OpenAPIChunkExporter();
+
+    @BeforeEach
+    void setUp() {
+        exporter.setChunkDirectory(workDir.resolve("chunks").toString());
+        exporter.setTokenBudget(BUDGET);
+        ReflectionTestUtils.setField(exporter, "metrics", new GenerationMetrics(new SimpleMeterRegistry()));
+    }
+
+    @Test
+    void packsChunksWithinTheTokenBudget() throws Exception {
+        final ArrayNode summary = mapper.createArrayNode();
+        for (int i = 0; i < 30; i++) {
+            summary.add(operation("/items/" + i, 1, 20 + (i % 7) * 40));
+        }
+
+        final OperationManifest manifest = export(summary);
+
+        assertEquals(30, manifest.getOperations().size());
+        int packedOperations = 0;
+        for (final OperationManifest.ChunkInfo chunk : manifest.getChunks().values()) {
+            assertTrue(chunk.getEstimatedTokens() <= BUDGET, "chunk over budget: " + chunk.getEstimatedTokens());
+            packedOperations += chunk.getOperations().size();
+        }
+        assertEquals(30, packedOperations);
+        // first-fit-decreasing keeps the chunks well filled
+        final int totalTokens = manifest.getChunks().values().stream().mapToInt(OperationManifest.ChunkInfo::getEstimatedTokens).sum();
+        assertTrue(manifest.getChunks().size() <= totalTokens / BUDGET + 2);
+    }
+
+    @Test
+    void splitsOversizedOperationsByResponseCode() throws Exception {
+        final ArrayNode summary = mapper.createArrayNode();
+        summary.add(operation("/huge", 6, 600));
+
+        final OperationManifest manifest = export(summary);
+
+        assertTrue(manifest.getOperations().containsKey("GET /huge#1"));
+        assertTrue(manifest.getOperations().containsKey("GET /huge#2"));
+        final File chunk = workDir.resolve("chunks").resolve(manifest.getOperations().get("GET /huge#1").getChunk()).toFile();
+        final JsonNode part = mapper.readTree(chunk).get(0);
+        assertTrue(part.get("responses").size() < 6);
+        assertTrue(TokenEstimator.estimate(mapper.writeValueAsString(part)) <= BUDGET);
+    }
+
+    @Test
+    void exportsIntoOneDirectoryRunOneAtATime() throws Exception {
+        final CountDownLatch paused = new CountDownLatch(1);
+        final CountDownLatch resume = new CountDownLatch(1);
+        final AtomicBoolean first = new AtomicBoolean(true);
+        ReflectionTestUtils.setField(exporter, "metrics", new GenerationMetrics(new SimpleMeterRegistry()) {
+            @Override
+            public Timer.Sample start() {
+                if (first.getAndSet(false)) {
+                    paused.countDown();
+                    try {
+                        resume.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return super.start();
+            }
+        });
+        final ArrayNode large = mapper.createArrayNode();
+        for (int i = 0; i < 10; i++) {
+            large.add(operation("/large/" + i, 1, 300));
+        }
+        final ArrayNode small = mapper.createArrayNode();
+        small.add(operation("/small", 1, 300));
+        final File largeFile = workDir.resolve("large.json").toFile();
+        final File smallFile = workDir.resolve("small.json").toFile();
+        mapper.writeValue(largeFile, large);
+        mapper.writeValue(smallFile, small);
+
+        final CompletableFuture<Void> largeExport = CompletableFuture.runAsync(() -> exporter.OpenAPISummarizedFileToChunks(largeFile.getPath()));
+        paused.await();
+        final CompletableFuture<Void> smallExport = CompletableFuture.runAsync(() -> exporter.OpenAPISummarizedFileToChunks(smallFile.getPath()));
+        // the small export waits for the large one that is paused in the same directory
+        assertThrows(TimeoutException.class, () -> smallExport.get(300, TimeUnit.MILLISECONDS));
+        resume.countDown();
+        CompletableFuture.allOf(largeExport, smallExport).join();
+
+        final File chunkDir = workDir.resolve("chunks").toFile();
+        final OperationManifest manifest = OperationManifest.read(new File(chunkDir, OperationManifest.CHUNK_MANIFEST));
+        assertEquals(Set.of("GET /small"), manifest.getOperations().keySet());
+        assertEquals(manifest.getChunks().keySet(), Set.of(chunkDir.list((dir, name) -> name.startsWith("openapi_chunk_"))));
+    }
+
+    private OperationManifest export(final ArrayNode summary) throws Exception {
+        final File summaryFile = workDir.resolve("openapi_summary.json").toFile();
+        mapper.writeValue(summaryFile, summary);
+        exporter.OpenAPISummarizedFileToChunks(summaryFile.getPath());
+        return OperationManifest.read(workDir.resolve("chunks").resolve(OperationManifest.CHUNK_MANIFEST).toFile());
+    }
+
+    private ObjectNode operation(final String path, final int responseCount, final int descriptionLength) {
+        final ObjectNode operation = mapper.createObjectNode();
+        operation.put("method", "GET");
+        operation.put("path", path);
+        final ObjectNode responses = operation.putObject("responses");
+        for (int i = 0; i < responseCount; i++) {
+            responses.putObject(String.valueOf(200 + i)).put("description", "x".repeat(descriptionLength * 4 / responseCount));
+        }
+        return operation;
+    }
+}
@@ -0,0 +1,59 @@
+package com.ftpl.rapidTestAI.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.swagger.v3.oas.models.OpenAPI;
+import io.swagger.v3.oas.models.PathItem;
+import io.swagger.v3.parser.OpenAPIV3Parser;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OpenAPIContextSlicerTest {
+
+    private final OpenAPI openAPI = new OpenAPIV3Parser().read("src/test/resources/openapi/petstore.json");
+    private final OpenAPIContextSlicer slicer = new OpenAPIContextSlicer();
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(slicer, "specCache", new OpenAPISpecCache(true, 16, 1 << 20));
+    }
+
+    @Test
+    void sliceContainsTransitiveRefClosureOnly() throws Exception {
+        final JsonNode slice = mapper.readTree(slicer.slice(openAPI, "/pets/{id}", PathItem.HttpMethod.GET));
+
+        assertTrue(slice.at("/paths/~1pets~1{id}/get").isObject());
+        // the parser inlines parameter refs into the operation
+        assertEquals("id", slice.at("/paths/~1pets~1{id}/get/parameters/0/name").asText());
+        // Pet references Owner, which references Pet back
+        assertTrue(slice.at("/components/schemas/Pet").isObject());
+        assertTrue(slice.at("/components/schemas/Owner").isObject());
+        assertTrue(slice.at("/components/schemas/Unused").isMissingNode());
+        assertTrue(slice.at("/components/securitySchemes").isMissingNode());
+        assertFalse(slice.at("/paths").has("/owners"));
+    }
+
+    @Test
+    void sliceCarriesRequiredSecuritySchemes() throws Exception {
+        final JsonNode slice = mapper.readTree(slicer.slice(openAPI, "/owners", PathItem.HttpMethod.GET));
+
+        assertTrue(slice.at("/components/securitySchemes/apiKey").isObject());
+        assertTrue(slice.at("/components/schemas/Owner").isObject());
+    }
+
+    @Test
+    void reportCoversEveryOperation() {
+        final List<ContextSliceReport> reports = slicer.report(openAPI);
+
+        assertEquals(4, reports.size());
+        reports.forEach(report -> assertTrue(report.getSavedTokens() > 0, report.getOperation()));
+    }
+}
@@ -0,0 +1,97 @@
+package com.ftpl.rapidTestAI.service;
+
+import com.ftpl.rapidTestAI.benchmark.SyntheticSpecGenerator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class OpenAPIJsonExporterServiceTest {
+
+    @TempDir
+    Path workDir;
+
+    @Test
+    void parallelSummaryIsByteIdenticalToSequential() throws Exception {
+        final File spec = new SyntheticSpecGenerator(300, 40, 4, true).writeTo(workDir.resolve("spec.json").toFile());
+
+        final byte[] sequential = summarize(spec, 1, workDir.resolve("sequential"));
+        final byte[] parallel = summarize(spec, 4, workDir.resolve("parallel"));
+
+        assertArrayEquals(sequential, parallel);
+        assertArrayEquals(Files.readAllBytes(workDir.resolve("sequential/chunks/openapi_chunk_1.json")),
+                Files.readAllBytes(workDir.resolve("parallel/chunks/openapi_chunk_1.json")));
+    }
+
+    @Test
+    void reportsProgressOncePerPath() throws Exception {
+        final File spec = new SyntheticSpecGenerator(50, 10, 2, false).writeTo(workDir.resolve("spec.json").toFile());
+        final Path outputDir = Files.createDirectories(workDir.resolve("out"));
+        final AtomicInteger lastCompleted = new AtomicInteger();
+        final AtomicInteger totalPaths = new AtomicInteger();
+
+        exporter(3, outputDir).parseOpenAPIJsonToSummary(spec.getPath(), outputDir + File.separator, (completed, total) -> {
+            assertEquals(lastCompleted.get() + 1, completed);
+            lastCompleted.set(completed);
+            totalPaths.set(total);
+        });
+
+        assertEquals(totalPaths.get(), lastCompleted.get());
+        assertEquals(new SyntheticSpecGenerator(50, 10, 2, false).generate().getPaths().size(), totalPaths.get());
+    }
+
+    @Test
+    void failsOnAnUnparseableSpec() throws Exception {
+        final Path spec = Files.writeString(workDir.resolve("spec.json"), "not a spec");
+        final Path outputDir = Files.createDirectories(workDir.resolve("out"));
+
+        assertThrows(IllegalArgumentException.class,
+                () -> exporter(1, outputDir).parseOpenAPIJsonToSummary(spec.toString(), outputDir + File.separator));
+    }
+
+    @Test
+    void stopsWhenInterrupted() throws Exception {
+        final File spec = new SyntheticSpecGenerator(50, 10, 2, false).writeTo(workDir.resolve("spec.json").toFile());
+        final Path outputDir = Files.createDirectories(workDir.resolve("out"));
+
+        try {
+            assertThrows(InterruptedException.class, () -> exporter(1, outputDir).parseOpenAPIJsonToSummary(
+                    spec.getPath(), outputDir + File.separator, (completed, total) -> Thread.currentThread().interrupt()));
+            assertFalse(Files.exists(outputDir.resolve("chunks")));
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+    private byte[] summarize(final File spec, final int parallelism, final Path outputDir) throws Exception {
+        Files.createDirectories(outputDir);
+        exporter(parallelism, outputDir).parseOpenAPIJsonToSummary(spec.getPath(), outputDir + File.separator);
+        return Files.readAllBytes(outputDir.resolve("openapi_summary.json"));
+    }
+
+    private static OpenAPIJsonExporterService exporter(final int parallelism, final Path outputDir) {
+        final GenerationMetrics metrics = new GenerationMetrics(new SimpleMeterRegistry());
+        final OpenAPIChunkExporter chunkExporter = new OpenAPIChunkExporter();
+        chunkExporter.setChunkDirectory(outputDir.resolve("chunks").toString());
+        ReflectionTestUtils.setField(chunkExporter, "metrics", metrics);
+        final OpenAPISpecCache specCache = new OpenAPISpecCache(false, 0, 0);
+        ReflectionTestUtils.setField(specCache, "metrics", metrics);
+
+        final OpenAPIJsonExporterService exporter = new OpenAPIJsonExporterService();
+        ReflectionTestUtils.setField(exporter, "chunkExporter", chunkExporter);
+        ReflectionTestUtils.setField(exporter, "metrics", metrics);
+        ReflectionTestUtils.setField(exporter, "specCache", specCache);
+        ReflectionTestUtils.setField(exporter, "parallelism", parallelism);
+        return exporter;
+    }
+}
@@ -0,0 +1,126 @@
+package com.ftpl.rapidTestAI.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.swagger.v3.oas.models.OpenAPI;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OpenAPISpecCacheTest {
+
+    private static final Path PETSTORE = Path.of("src/test/resources/openapi/petstore.json");
+
+    @TempDir
+    Path workDir;
+
+    @Test
+    void reparsesOnlyWhenTheContentChanges() throws Exception {
+        final Path spec = Files.copy(PETSTORE, workDir.resolve("spec.json"));
+        final OpenAPISpecCache cache = cache(16, 1 << 20);
+
+        final OpenAPI first = cache.get(spec.toString());
+        assertSame(first, cache.get(workDir.resolve(".").resolve("spec.json").toString()));
+
+        Files.setLastModifiedTime(spec, FileTime.fromMillis(Files.getLastModifiedTime(spec).toMillis() + 5_000));
+        assertSame(first, cache.get(spec.toString()));
+
+        Files.writeString(spec, Files.readString(spec).replace("\"Pets\"", "\"Pet shop\""));
+        final OpenAPI changed = cache.get(spec.toString());
+        assertNotSame(first, changed);
+        assertEquals("Pet shop", changed.getInfo().getTitle());
+
+        assertEquals(1L, cache.getStats().get("hits"));
+        assertEquals(1L, cache.getStats().get("unchangedContentHits"));
+        assertEquals(2L, cache.getStats().get("parses"));
+    }
+
+    @Test
+    void convertsComponentsOncePerCachedSpec() throws Exception {
+        final Path spec = Files.copy(PETSTORE, workDir.resolve("spec.json"));
+        final OpenAPISpecCache cache = cache(16, 1 << 20);
+
+        final OpenAPI openAPI = cache.get(spec.toString());
+        final JsonNode components = cache.componentsTree(openAPI);
+        assertTrue(components.at("/schemas/Pet").isObject());
+        assertSame(components, cache.componentsTree(cache.get(spec.toString())));
+
+        cache.invalidateAll();
+        assertNotSame(components, cache.componentsTree(openAPI));
+    }
+
+    @Test
+    void concurrentRequestsShareOneParse() throws Exception {
+        final Path spec = Files.copy(PETSTORE, workDir.resolve("spec.json"));
+        final OpenAPISpecCache cache = cache(16, 1 << 20);
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        final CountDownLatch start = new CountDownLatch(1);
+        try {
+            final List<Future<OpenAPI>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return cache.get(spec.toString());
+                }));
+            }
+            start.countDown();
+            final OpenAPI openAPI = results.get(0).get();
+            for (final Future<OpenAPI> result : results) {
+                assertSame(openAPI, result.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1L, cache.getStats().get("parses"));
+        assertEquals(7L, cache.getStats().get("hits") + cache.getStats().get("sharedLoads"));
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedAndDropsInvalidatedSpecs() throws Exception {
+        final Path a = Files.copy(PETSTORE, workDir.resolve("a.json"));
+        final Path b = Files.copy(PETSTORE, workDir.resolve("b.json"));
+        final OpenAPISpecCache cache = cache(1, 1 << 20);
+
+        final OpenAPI first = cache.get(a.toString());
+        cache.get(b.toString());
+        assertNotSame(first, cache.get(a.toString()));
+        assertEquals(2L, cache.getStats().get("evictions"));
+
+        assertTrue(cache.invalidate(a.toString()));
+        assertEquals(0L, cache.getStats().get("entries"));
+        assertEquals(0L, cache.getStats().get("specBytes"));
+    }
+
+    @Test
+    void failedParsesAreNotCached() throws Exception {
+        final Path spec = Files.writeString(workDir.resolve("broken.json"), "not a spec");
+        final OpenAPISpecCache cache = cache(16, 1 << 20);
+
+        assertNull(cache.get(spec.toString()));
+        assertNull(cache.get(spec.toString()));
+        assertEquals(2L, cache.getStats().get("parseFailures"));
+        assertEquals(0L, cache.getStats().get("entries"));
+    }
+
+    private static OpenAPISpecCache cache(final int maxEntries, final long maxSpecBytes) {
+        final OpenAPISpecCache cache = new OpenAPISpecCache(true, maxEntries, maxSpecBytes);
+        ReflectionTestUtils.setField(cache, "metrics", new GenerationMetrics(new SimpleMeterRegistry()));
+        return cache;
+    }
+}
@@ -0,0 +1,125 @@
+package com.ftpl.rapidTestAI.service;
+
+import com.ftpl.rapidTestAI.config.StubOpenAiService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PromptContextRetrieverTest {
+
+    @TempDir
+    Path workDir;
+
+    private final StubOpenAiService stub = new StubOpenAiService(0);
+    private final LlmGateway gateway = new LlmGateway();
+    private PromptContextRetriever retriever;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(gateway, "openAiService", stub);
+        ReflectionTestUtils.setField(gateway, "scheduler", new LlmRequestScheduler(600, 1_000_000));
+        ReflectionTestUtils.setField(gateway, "completionCache",
+                new CompletionCache(false, workDir.resolve("cache").toString(), 100, 1 << 20, 1 << 20, Duration.ofDays(1)));
+        ReflectionTestUtils.setField(gateway, "metrics", new GenerationMetrics(new SimpleMeterRegistry()));
+        retriever = newRetriever();
+    }
+
+    @AfterEach
+    void tearDown() {
+        retriever.close();
+    }
+
+    @Test
+    void retrievesTheClosestStepsAndSchemasTheContextLacks() throws Exception {
+        final Path reference = writeReference();
+        final EndpointTask task = new EndpointTask("GET", "/pets/{petId}",
+                "{\"responses\":{\"200\":{\"schema\":{\"name\":\"Pet\",\"properties\":{\"owner\":\"Owner pet\"}}}}}");
+        assertEquals(PromptContextRetriever.References.NONE, retriever.retrieve(task));
+
+        ReflectionTestUtils.setField(retriever, "enabled", true);
+        assertEquals(PromptContextRetriever.References.NONE, retriever.retrieve(task));
+        assertEquals(5, retriever.index(reference.toString()));
+
+        final PromptContextRetriever.References references = retriever.retrieve(task);
+        assertEquals(1, references.stepDefinitions().size());
+        assertTrue(references.stepDefinitions().get(0).contains("class PetSteps"));
+        // Pet is in the endpoint's own context already
+        assertEquals(1, references.schemas().size());
+        assertTrue(references.schemas().get(0).startsWith("Schema Owner:"), references.schemas().get(0));
+        assertEquals(1L, retriever.getStats().get("retrievals"));
+    }
+
+    @Test
+    void embedsOnlyChangedReferencesAcrossIndexCallsAndRestarts() throws Exception {
+        final Path reference = writeReference();
+        ReflectionTestUtils.setField(retriever, "enabled", true);
+        assertEquals(5, retriever.index(reference.toString()));
+        assertEquals(5L, retriever.getStats().get("embeddedSegments"));
+
+        Files.writeString(reference.resolve("OrderSteps.java"), """
+                public class OrderSteps {
+                    @When("an order is cancelled")
+                    public void orderCancelled() { }
+                }
+                """);
+        Files.delete(reference.resolve("PetSteps.java"));
+        assertEquals(4, retriever.index(reference.toString()));
+        assertEquals(6L, retriever.getStats().get("embeddedSegments"));
+        assertEquals(3L, retriever.getStats().get("reusedSegments"));
+        final EndpointTask task = new EndpointTask("POST", "/orders/{orderId}/cancel", "{\"summary\":\"order cancelled\"}");
+        final PromptContextRetriever.References references = retriever.retrieve(task);
+        assertTrue(references.stepDefinitions().get(0).contains("an order is cancelled"), references.stepDefinitions().get(0));
+
+        retriever.close();
+        retriever = newRetriever();
+        ReflectionTestUtils.setField(retriever, "enabled", true);
+        assertEquals(4, retriever.index(reference.toString()));
+        assertEquals(0L, retriever.getStats().get("embeddedSegments"));
+        assertEquals(references, retriever.retrieve(task));
+    }
+
+    private PromptContextRetriever newRetriever() {
+        final PromptContextRetriever created = new PromptContextRetriever();
+        ReflectionTestUtils.setField(created, "llmGateway", gateway);
+        ReflectionTestUtils.setField(created, "topK", 1);
+        ReflectionTestUtils.setField(created, "storeDirectory", workDir.resolve("retrieval").toString());
+        return created;
+    }
+
+    private Path writeReference() throws Exception {
+        final Path reference = Files.createDirectories(workDir.resolve("reference"));
+        Files.writeString(reference.resolve("PetSteps.java"), """
+                public class PetSteps {
+                    @Given("a pet named {string}")
+                    public void aPetNamed(String name) { }
+                    @Then("the pet owner is returned")
+                    public void petOwnerReturned() { }
+                }
+                """);
+        Files.writeString(reference.resolve("OrderSteps.java"), """
+                public class OrderSteps {
+                    @When("an order is placed for {int} items")
+                    public void orderPlaced(int items) { }
+                }
+                """);
+        Files.writeString(reference.resolve("Helper.java"), "public class Helper { }");
+        Files.writeString(reference.resolve("petstore.json"), """
+                {"components": {"schemas": {
+                  "Pet": {"type": "object", "properties": {"name": {"type": "string"}, "owner": {"$ref": "#/components/schemas/Owner"}}},
+                  "Owner": {"type": "object", "properties": {"name": {"type": "string"}, "pet": {"type": "string"}}},
+                  "Order": {"type": "object", "properties": {"items": {"type": "integer"}}}
+                }}}
+                """);
+        return reference;
+    }
+}
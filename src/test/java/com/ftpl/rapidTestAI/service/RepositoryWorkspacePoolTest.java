@@ -0,0 +1,181 @@
+package com.ftpl.rapidTestAI.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RepositoryWorkspacePoolTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final GitClientService gitClientService = new GitClientService();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(gitClientService, "metrics", new GenerationMetrics(new SimpleMeterRegistry()));
+    }
+
+    @Test
+    void concurrentRequestsShareOneCloneWithinTheFreshnessWindow() throws Exception {
+        final String remote = createRemote("service");
+        final RepositoryWorkspacePool pool = pool(Duration.ofHours(1), DataSize.ofGigabytes(1));
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        final CountDownLatch start = new CountDownLatch(1);
+        try {
+            final List<Future<Path>> results = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    try (final RepositoryWorkspacePool.Lease lease = pool.acquire(remote)) {
+                        return lease.getDirectory();
+                    }
+                }));
+            }
+            start.countDown();
+            for (final Future<Path> result : results) {
+                assertEquals(results.get(0).get(), result.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1L, pool.getStats().get("clones"));
+        assertEquals(0L, pool.getStats().get("fetches"));
+        assertEquals(3L, pool.getStats().get("freshHits"));
+
+        // the clone has no blobs yet; reading a file fetches it from the remote
+        try (final RepositoryWorkspacePool.Lease lease = pool.acquire(remote)) {
+            assertEquals("service\n", gitClientService.getFileContentAtRevision(lease.getDirectory().toString(), "README.md", "origin/main"));
+        } finally {
+            gitClientService.closeCatFileReaders();
+        }
+    }
+
+    @Test
+    void fetchesOnceTheWindowHasPassedAndReportsFailedFetches() throws Exception {
+        final String remote = createRemote("service");
+        final RepositoryWorkspacePool pool = pool(Duration.ZERO, DataSize.ofGigabytes(1));
+        pool.acquire(remote).close();
+
+        pushBranch("service", "feature");
+        try (final RepositoryWorkspacePool.Lease lease = pool.acquire(remote)) {
+            run(lease.getDirectory(), "git", "rev-parse", "--verify", "--quiet", "origin/feature");
+        }
+        assertEquals(1L, pool.getStats().get("fetches"));
+
+        deleteRecursively(tempDir.resolve("service.git"));
+        final IOException failure = assertThrows(IOException.class, () -> pool.acquire(remote));
+        assertTrue(failure.getMessage().startsWith("git fetch failed"));
+    }
+
+    @Test
+    void evictsColdWorkspacesThatAreNotInUse() throws Exception {
+        final String first = createRemote("first");
+        final String second = createRemote("second");
+        final String third = createRemote("third");
+        final RepositoryWorkspacePool pool = pool(Duration.ofHours(1), DataSize.ofBytes(1));
+
+        final RepositoryWorkspacePool.Lease held = pool.acquire(first);
+        pool.acquire(second).close();
+        assertTrue(Files.isDirectory(held.getDirectory()));
+        assertEquals(0L, pool.getStats().get("evictions"));
+        held.close();
+
+        try (final RepositoryWorkspacePool.Lease lease = pool.acquire(third)) {
+            assertFalse(Files.exists(held.getDirectory()));
+            assertTrue(Files.isDirectory(lease.getDirectory()));
+        }
+        assertEquals(2L, pool.getStats().get("evictions"));
+        assertEquals(1L, pool.getStats().get("workspaces"));
+    }
+
+    @Test
+    void evictedWorkspacesAreReadAfterTheyAreClonedAgain() throws Exception {
+        final String first = createRemote("first");
+        final String second = createRemote("second");
+        final RepositoryWorkspacePool pool = pool(Duration.ofHours(1), DataSize.ofBytes(1));
+        try {
+            try (final RepositoryWorkspacePool.Lease lease = pool.acquire(first)) {
+                assertEquals("first\n", gitClientService.getFileContentAtRevision(lease.getDirectory().toString(), "README.md", "origin/main"));
+            }
+            pool.acquire(second).close();
+            assertEquals(1L, pool.getStats().get("evictions"));
+
+            try (final RepositoryWorkspacePool.Lease lease = pool.acquire(first)) {
+                assertEquals("first\n", gitClientService.getFileContentAtRevision(lease.getDirectory().toString(), "README.md", "origin/main"));
+            }
+            assertEquals(3L, pool.getStats().get("clones"));
+        } finally {
+            gitClientService.closeCatFileReaders();
+        }
+    }
+
+    @Test
+    void directoryNamesAreReadableAndDistinct() {
+        assertTrue(RepositoryWorkspacePool.directoryName("https://github.com/acme/orders.git").startsWith("orders-"));
+        assertTrue(RepositoryWorkspacePool.directoryName("git@github.com:acme/orders.git").startsWith("orders-"));
+        assertFalse(RepositoryWorkspacePool.directoryName("https://github.com/acme/orders.git")
+                .equals(RepositoryWorkspacePool.directoryName("https://github.com/other/orders.git")));
+    }
+
+    private RepositoryWorkspacePool pool(final Duration freshness, final DataSize quota) {
+        final RepositoryWorkspacePool pool = new RepositoryWorkspacePool(
+                tempDir.resolve("workspaces").toString(), freshness, quota, "blob:none", 0);
+        ReflectionTestUtils.setField(pool, "metrics", new GenerationMetrics(new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(pool, "gitClientService", gitClientService);
+        return pool;
+    }
+
+    /** A bare repository with one commit on main, served over file:// so the blob filter applies. */
+    private String createRemote(final String name) throws Exception {
+        final Path bare = tempDir.resolve(name + ".git");
+        final Path work = tempDir.resolve(name + "-work");
+        run(tempDir, "git", "init", "-q", "--bare", "-b", "main", bare.toString());
+        run(bare, "git", "config", "uploadpack.allowFilter", "true");
+        run(tempDir, "git", "init", "-q", "-b", "main", work.toString());
+        Files.writeString(work.resolve("README.md"), name + "\n");
+        run(work, "git", "add", ".");
+        run(work, "git", "-c", "user.name=test", "-c", "user.email=test@example.com", "commit", "-q", "-m", "init");
+        run(work, "git", "push", "-q", bare.toString(), "main");
+        return bare.toUri().toString();
+    }
+
+    private void pushBranch(final String name, final String branch) throws Exception {
+        final Path work = tempDir.resolve(name + "-work");
+        run(work, "git", "push", "-q", tempDir.resolve(name + ".git").toString(), "main:" + branch);
+    }
+
+    private static void run(final Path directory, final String... command) throws Exception {
+        final Process process = new ProcessBuilder(command).directory(directory.toFile()).redirectErrorStream(true).start();
+        final String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        assertEquals(0, process.waitFor(), () -> String.join(" ", command) + ": " + output);
+    }
+
+    private static void deleteRecursively(final Path directory) throws IOException {
+        try (final var files = Files.walk(directory)) {
+            for (final Path file : files.sorted(java.util.Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.ftpl.rapidTestAI.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.swagger.v3.oas.models.Components;
+import io.swagger.v3.oas.models.OpenAPI;
+import io.swagger.v3.oas.models.media.ObjectSchema;
+import io.swagger.v3.oas.models.media.Schema;
+import io.swagger.v3.parser.OpenAPIV3Parser;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SchemaResolverTest {
+
+    private final OpenAPI petstore = new OpenAPIV3Parser().read("src/test/resources/openapi/petstore.json");
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void cyclicSchemasEndInABackReference() {
+        final SchemaResolver resolver = new SchemaResolver(mapper, petstore, 32);
+
+        final JsonNode pet = resolver.toJson(ref("Pet"));
+
+        final JsonNode owner = pet.at("/resolved/properties/owner");
+        assertEquals("Owner", owner.get("ref").asText());
+        final JsonNode backReference = owner.at("/resolved/properties/pets/items");
+        assertEquals("Pet", backReference.get("ref").asText());
+        assertTrue(backReference.get("circular").asBoolean());
+        assertTrue(backReference.at("/resolved").isMissingNode());
+        assertEquals(1L, resolver.getStats().get("circularReferences"));
+    }
+
+    @Test
+    void sharedSchemasAreExpandedOnce() {
+        final SchemaResolver resolver = new SchemaResolver(mapper, petstore, 32);
+
+        final JsonNode first = resolver.toJson(ref("Pet"));
+        final JsonNode second = resolver.toJson(ref("Pet"));
+
+        assertSame(first.get("resolved"), second.get("resolved"));
+        assertEquals(1L, resolver.getStats().get("cacheHits"));
+        // Owner points back at Pet, so only Pet itself is reusable
+        assertEquals(1L, resolver.getStats().get("cachedSchemas"));
+    }
+
+    @Test
+    void outputDoesNotDependOnResolutionOrder() {
+        final SchemaResolver petFirst = new SchemaResolver(mapper, petstore, 32);
+        final JsonNode pet = petFirst.toJson(ref("Pet"));
+        final JsonNode owner = petFirst.toJson(ref("Owner"));
+
+        final SchemaResolver ownerFirst = new SchemaResolver(mapper, petstore, 32);
+        assertEquals(owner, ownerFirst.toJson(ref("Owner")));
+        assertEquals(pet, ownerFirst.toJson(ref("Pet")));
+    }
+
+    @Test
+    void cycleGroupsAreExpandedOncePerEntryPoint() {
+        // every schema reaches the next two, so following each path separately would be exponential
+        final Components components = new Components();
+        for (int i = 0; i < 40; i++) {
+            components.addSchemas("S" + i, new ObjectSchema()
+                    .addProperty("next", ref("S" + (i + 1) % 40))
+                    .addProperty("skip", ref("S" + (i + 2) % 40)));
+        }
+        final SchemaResolver resolver = new SchemaResolver(mapper, new OpenAPI().components(components), 64);
+
+        resolver.toJson(ref("S0"));
+
+        assertEquals(1L, resolver.getStats().get("expansions"));
+        // schema, properties and two property nodes per member
+        assertEquals(40L * 4, resolver.getStats().get("largestExpansion"));
+        assertEquals(41L, resolver.getStats().get("circularReferences"));
+    }
+
+    @Test
+    void deepReferenceChainsAreTruncated() {
+        final OpenAPI chain = new OpenAPI().components(new Components()
+                .addSchemas("A", new ObjectSchema().addProperty("next", ref("B")))
+                .addSchemas("B", new ObjectSchema().addProperty("next", ref("C")))
+                .addSchemas("C", new ObjectSchema().addProperty("next", ref("D")))
+                .addSchemas("D", new ObjectSchema()));
+        final SchemaResolver resolver = new SchemaResolver(mapper, chain, 2);
+
+        final JsonNode a = resolver.toJson(ref("A"));
+        final JsonNode c = a.at("/resolved/properties/next/resolved/properties/next");
+
+        assertEquals("C", c.get("ref").asText());
+        assertTrue(c.get("truncated").asBoolean());
+        // a full expansion of B fits the budget on its own and must not reuse the cut-off one
+        assertTrue(resolver.toJson(ref("B")).at("/resolved/properties/next/resolved").isObject());
+    }
+
+    private static Schema<?> ref(final String name) {
+        return new Schema<>().$ref("#/components/schemas/" + name);
+    }
+}
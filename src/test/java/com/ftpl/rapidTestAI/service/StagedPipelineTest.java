@@ -0,0 +1,74 @@
+package com.ftpl.rapidTestAI.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StagedPipelineTest {
+
+    @Test
+    void laterStagesOverlapEarlierOnes() throws Exception {
+        // the first item can only leave the first stage once the second stage has seen it,
+        // so the run completes only if the stages work on different items at the same time
+        final CountDownLatch secondStageStarted = new CountDownLatch(1);
+        final StagedPipeline<Integer> pipeline = new StagedPipeline<Integer>()
+                .stage("first", 1, 4, item -> {
+                    if (item == 1 && !secondStageStarted.await(5, TimeUnit.SECONDS)) {
+                        throw new IllegalStateException("stages did not overlap");
+                    }
+                })
+                .stage("second", 1, 4, item -> secondStageStarted.countDown());
+
+        final GenerationReport report = pipeline.run(List.of(0, 1, 2), String::valueOf, ProgressListener.NONE);
+
+        assertEquals(3, report.getSucceeded().size());
+        assertTrue(report.getFailed().isEmpty());
+    }
+
+    @Test
+    void failedItemsStopAtTheirStage() throws Exception {
+        final StagedPipeline<Integer> pipeline = new StagedPipeline<Integer>()
+                .stage("generate", 2, 2, item -> {
+                    if (item % 3 == 0) {
+                        throw new IllegalStateException("boom " + item);
+                    }
+                })
+                .stage("write", 1, 2, item -> { });
+
+        final GenerationReport report = pipeline.run(IntStream.range(0, 10).boxed().toList(), String::valueOf, ProgressListener.NONE);
+
+        assertEquals(6, report.getSucceeded().size());
+        assertEquals(Map.of("0", "IllegalStateException: boom 0", "3", "IllegalStateException: boom 3",
+                "6", "IllegalStateException: boom 6", "9", "IllegalStateException: boom 9"), report.getFailed());
+        final StageMetrics generate = report.getStageMetrics().get("generate");
+        assertEquals(6, generate.getProcessed());
+        assertEquals(4, generate.getFailed());
+        assertEquals(6, report.getStageMetrics().get("write").getProcessed());
+        assertTrue(generate.getMaxQueueDepth() <= 2);
+    }
+
+    @Test
+    void anErrorInAStageFailsOnlyItsItem() {
+        final StagedPipeline<Integer> pipeline = new StagedPipeline<Integer>()
+                .stage("generate", 1, 2, item -> {
+                    if (item == 1) {
+                        throw new NoClassDefFoundError("Missing");
+                    }
+                });
+
+        final GenerationReport report = assertTimeoutPreemptively(Duration.ofSeconds(10),
+                () -> pipeline.run(List.of(0, 1, 2, 3), String::valueOf, ProgressListener.NONE));
+
+        assertEquals(3, report.getSucceeded().size());
+        assertEquals(Map.of("1", "NoClassDefFoundError: Missing"), report.getFailed());
+    }
+}
@@ -0,0 +1,177 @@
+package com.ftpl.rapidTestAI.utils;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.document.loader.FileSystemDocumentLoader;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static dev.langchain4j.store.embedding.filter.MetadataFilterBuilder.metadataKey;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class DiskBackedEmbeddingStoreTest {
+
+    // letter frequencies, so texts sharing words score close to each other
+    private static final class LetterModel implements EmbeddingModel {
+
+        private final List<String> embedded = new ArrayList<>();
+        private String failOn;
+
+        @Override
+        public Response<List<Embedding>> embedAll(final List<TextSegment> segments) {
+            final List<Embedding> embeddings = new ArrayList<>();
+            for (final TextSegment segment : segments) {
+                if (segment.text().equals(failOn)) {
+                    throw new IllegalStateException("Embedding service unavailable");
+                }
+                embedded.add(segment.text());
+                final float[] vector = new float[26];
+                for (final char c : segment.text().toLowerCase().toCharArray()) {
+                    if (c >= 'a' && c <= 'z') {
+                        vector[c - 'a']++;
+                    }
+                }
+                embeddings.add(Embedding.from(vector));
+            }
+            return Response.from(embeddings);
+        }
+    }
+
+    @Test
+    void embedsOnlyNewAndChangedDocumentsAcrossRestarts(@TempDir final Path dir) throws Exception {
+        final Path docs = Files.createDirectories(dir.resolve("docs"));
+        final Path storeDir = dir.resolve("store");
+        Files.writeString(docs.resolve("pets.txt"), "dogs and cats and parrots");
+        Files.writeString(docs.resolve("orders.txt"), "purchase orders with order lines");
+        Files.writeString(docs.resolve("users.txt"), "user accounts and login");
+
+        final LetterModel model = new LetterModel();
+        try (DiskBackedEmbeddingStore store = EmbeddingStoreGenerationUtil.createEmbeddingStore(docs.toString(), storeDir.toString(), null, model)) {
+            assertEquals(3, model.embedded.size());
+            assertEquals("dogs and cats and parrots", best(store, model, "cats and dogs").embedded().text());
+        }
+
+        Files.writeString(docs.resolve("orders.txt"), "refunds for returned orders");
+        Files.delete(docs.resolve("users.txt"));
+        Files.writeString(docs.resolve("stock.txt"), "warehouse stock levels");
+        Files.move(docs.resolve("pets.txt"), docs.resolve("animals.txt"));
+        model.embedded.clear();
+        try (DiskBackedEmbeddingStore store = new DiskBackedEmbeddingStore(storeDir)) {
+            // searchable straight from disk, before any ingestion
+            assertEquals("user accounts and login", best(store, model, "login accounts").embedded().text());
+            model.embedded.clear();
+
+            final DiskBackedEmbeddingStore.IngestionReport report = store.ingest(
+                    FileSystemDocumentLoader.loadDocumentsRecursively(docs), null, model);
+            assertEquals(new DiskBackedEmbeddingStore.IngestionReport(2, 1, 2, 2), report);
+            assertEquals(List.of("refunds for returned orders", "warehouse stock levels"), model.embedded.stream().sorted().toList());
+            assertEquals(3L, store.getStats().get("liveRows"));
+            assertEquals(2L, store.getStats().get("tombstones"));
+
+            final List<String> texts = store.search(EmbeddingSearchRequest.builder()
+                    .queryEmbedding(model.embed("user accounts and login").content()).maxResults(10).build())
+                    .matches().stream().map(match -> match.embedded().text()).toList();
+            assertEquals(3, texts.size());
+            assertFalse(texts.contains("user accounts and login"));
+            assertFalse(texts.contains("purchase orders with order lines"));
+        }
+    }
+
+    @Test
+    void embedsDocumentsOfAFailedIngestionOnTheNextOne(@TempDir final Path dir) throws Exception {
+        final LetterModel model = new LetterModel();
+        final List<Document> documents = List.of(
+                Document.from("dogs and cats", Metadata.from(Document.FILE_NAME, "pets.txt")),
+                Document.from("purchase orders", Metadata.from(Document.FILE_NAME, "orders.txt")));
+        try (DiskBackedEmbeddingStore store = new DiskBackedEmbeddingStore(dir)) {
+            model.failOn = "purchase orders";
+            assertThrows(IllegalStateException.class, () -> store.ingest(documents, null, model));
+            assertEquals(0L, store.getStats().get("documents"));
+
+            model.failOn = null;
+            assertEquals(new DiskBackedEmbeddingStore.IngestionReport(2, 0, 0, 2), store.ingest(documents, null, model));
+            assertEquals("purchase orders", best(store, model, "orders").embedded().text());
+        }
+    }
+
+    @Test
+    void compactsOnceMostRowsAreRemovedAndKeepsIdsAndMetadata(@TempDir final Path dir) throws Exception {
+        final LetterModel model = new LetterModel();
+        final List<String> ids = new ArrayList<>();
+        try (DiskBackedEmbeddingStore store = new DiskBackedEmbeddingStore(dir)) {
+            for (final String text : List.of("alpha", "bravo", "charlie", "delta")) {
+                ids.add(store.add(model.embed(text).content(), TextSegment.from(text, Metadata.from("kind", text.length() > 5 ? "long" : "short"))));
+            }
+            store.removeAll(List.of(ids.get(0), ids.get(1)));
+            assertEquals(0L, store.getStats().get("compactions"));
+            store.remove(ids.get(2));
+            assertEquals(1L, store.getStats().get("compactions"));
+            assertEquals(1L, store.getStats().get("rows"));
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(List.of("manifest.json", "segments-00002.jsonl", "vectors-00002.f32"),
+                    files.map(file -> file.getFileName().toString()).sorted().toList());
+        }
+
+        try (DiskBackedEmbeddingStore store = new DiskBackedEmbeddingStore(dir)) {
+            final EmbeddingMatch<TextSegment> delta = best(store, model, "delta");
+            assertEquals(ids.get(3), delta.embeddingId());
+            assertEquals(1.0, delta.score(), 1e-6);
+            assertEquals("short", delta.embedded().metadata().getString("kind"));
+
+            store.add(model.embed("echo").content(), TextSegment.from("echo", Metadata.from("kind", "short")));
+            store.add(model.embed("foxtrot").content(), TextSegment.from("foxtrot", Metadata.from("kind", "long")));
+            final List<EmbeddingMatch<TextSegment>> longOnes = store.search(EmbeddingSearchRequest.builder()
+                    .queryEmbedding(model.embed("delta").content()).filter(metadataKey("kind").isEqualTo("long")).maxResults(5).build()).matches();
+            assertEquals(List.of("foxtrot"), longOnes.stream().map(match -> match.embedded().text()).toList());
+        }
+    }
+
+    @Test
+    void searchesAndCompactsVectorsSpreadOverSeveralMappings(@TempDir final Path dir) throws Exception {
+        final LetterModel model = new LetterModel();
+        final List<String> texts = List.of("alpha", "bravo", "charlie", "delta", "echo", "foxtrot", "golf");
+        final List<String> ids = new ArrayList<>();
+        // two rows of 26 floats to a mapping
+        try (DiskBackedEmbeddingStore store = new DiskBackedEmbeddingStore(dir, 2 * 26 * Float.BYTES)) {
+            for (final String text : texts) {
+                ids.add(store.add(model.embed(text).content(), TextSegment.from(text)));
+            }
+            for (final String text : texts) {
+                assertEquals(text, best(store, model, text).embedded().text());
+            }
+            store.removeAll(List.of(ids.get(0), ids.get(2), ids.get(3), ids.get(5)));
+            assertEquals(1L, store.getStats().get("compactions"));
+            assertEquals(List.of("bravo", "echo", "golf"), store.search(EmbeddingSearchRequest.builder()
+                            .queryEmbedding(model.embed("bravo echo golf").content()).maxResults(10).build())
+                    .matches().stream().map(match -> match.embedded().text()).sorted().toList());
+        }
+        try (DiskBackedEmbeddingStore store = new DiskBackedEmbeddingStore(dir, 2 * 26 * Float.BYTES)) {
+            for (final String text : List.of("bravo", "echo", "golf")) {
+                final EmbeddingMatch<TextSegment> match = best(store, model, text);
+                assertEquals(text, match.embedded().text());
+                assertEquals(1.0, match.score(), 1e-6);
+            }
+            assertEquals(ids.get(6), best(store, model, "golf").embeddingId());
+        }
+    }
+
+    private static EmbeddingMatch<TextSegment> best(final DiskBackedEmbeddingStore store, final EmbeddingModel model, final String query) {
+        return store.search(EmbeddingSearchRequest.builder().queryEmbedding(model.embed(query).content()).maxResults(1).build())
+                .matches().get(0);
+    }
+}
@@ -0,0 +1,91 @@
+package com.ftpl.rapidTestAI.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class GherkinStepsTest {
+
+    private static final String FEATURE = """
+            Feature: Pets
+
+              Background:
+                Given the API base URL is "http://localhost:8080"
+
+              Scenario: Get a pet
+                Given a pet with id 42 exists
+                When I send a GET request to "/pets/42"
+                Then the response status is 200
+                And the response field "price" is 12.5
+                But the response has no field "owner (internal)"
+
+              Scenario: Create pets
+                Given the following pets:
+                  | name | age |
+                  | Rex  | 3   |
+                When I send a POST request to "/pets" with body:
+                  \"""
+                  {"name": "Rex"}
+                  \"""
+                Then the response status is 201
+
+              Scenario Outline: Missing pets
+                Given a pet with id <id> exists
+                When I send a GET request to "/pets/<id>"
+                Then the response status is <status>
+
+                Examples:
+                  | id  | status |
+                  | -1  | 400    |
+                  | 999 | 404    |
+            """;
+
+    @Test
+    void normalizesValuesIntoParameters() {
+        final List<GherkinSteps.Step> steps = GherkinSteps.stepsOf(FEATURE);
+
+        assertEquals(List.of(
+                "the API base URL is {string}",
+                "a pet with id {bigdecimal} exists",
+                "I send a GET request to {string}",
+                "the response status is {bigdecimal}",
+                "the response field {string} is {bigdecimal}",
+                "the response has no field {string}",
+                "the following pets:",
+                "I send a POST request to {string} with body:"
+        ), steps.stream().map(GherkinSteps.Step::expression).toList());
+        assertEquals(List.of("Given", "Given", "When", "Then", "Then", "Then", "Given", "When"),
+                steps.stream().map(GherkinSteps.Step::keyword).toList());
+        assertEquals(GherkinSteps.Argument.DATA_TABLE, steps.get(6).argument());
+        assertEquals(GherkinSteps.Argument.DOC_STRING, steps.get(7).argument());
+        assertEquals("a pet with id 42 exists", steps.get(1).example());
+    }
+
+    @Test
+    void escapesLiteralTextCucumberWouldReadAsSyntax() {
+        assertEquals("the list has {bigdecimal} item\\(s\\) in \\{brackets\\} and\\/or more",
+                GherkinSteps.expressionOf("the list has 3 item(s)  in {brackets} and/or more"));
+        // digits inside words, single quotes and placeholders without a value stay literal
+        assertEquals("version v2 of 'x' is <unknown>", GherkinSteps.expressionOf("version v2 of 'x' is <unknown>"));
+    }
+
+    @Test
+    void givesWholeAndDecimalNumbersOneParameterType() {
+        final List<GherkinSteps.Step> steps = GherkinSteps.stepsOf("""
+                Feature: Totals
+                  Scenario: Whole
+                    Then the total is 12
+                  Scenario: Decimal
+                    Then the total is 12.5
+                  Scenario: Beyond int
+                    Then the total is 98765432109876
+                  Scenario Outline: Never run
+                    Then the total is <total> <currency>
+                """);
+
+        assertEquals(List.of("the total is {bigdecimal}"), steps.stream().map(GherkinSteps.Step::expression).toList());
+        assertEquals("the total is 12", steps.get(0).example());
+    }
+}
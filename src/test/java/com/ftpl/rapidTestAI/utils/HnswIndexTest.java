@@ -0,0 +1,118 @@
+package com.ftpl.rapidTestAI.utils;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static dev.langchain4j.store.embedding.filter.MetadataFilterBuilder.metadataKey;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HnswIndexTest {
+
+    private static final int DIMENSION = 32;
+    private static final int SIZE = 5000;
+
+    @Test
+    void findsNearlyAllExactNeighbours() {
+        final Random random = new Random(7);
+        final HnswIndex index = build(random);
+
+        int found = 0;
+        final int queries = 200;
+        for (int q = 0; q < queries; q++) {
+            final float[] query = clustered(random);
+            final List<Integer> exact = index.exactSearch(query, 10, node -> true).stream().map(HnswIndex.Neighbor::node).toList();
+            found += (int) index.search(query, 10).stream().filter(neighbor -> exact.contains(neighbor.node())).count();
+        }
+        final double recall = found / (queries * 10.0);
+        assertTrue(recall >= 0.9, "recall@10 " + recall);
+    }
+
+    @Test
+    void filteredSearchReturnsOnlyAcceptedNodes() {
+        final Random random = new Random(11);
+        final HnswIndex index = build(random);
+
+        final float[] query = clustered(random);
+        final List<HnswIndex.Neighbor> odd = index.search(query, 10, 64, node -> node % 2 == 1);
+        assertEquals(10, odd.size());
+        assertTrue(odd.stream().allMatch(neighbor -> neighbor.node() % 2 == 1));
+        assertEquals(index.exactSearch(query, 1, node -> node % 2 == 1).get(0).node(), odd.get(0).node());
+    }
+
+    @Test
+    void concurrentSearchesMatchSequentialOnes() throws Exception {
+        final Random random = new Random(13);
+        final HnswIndex index = build(random);
+        final List<float[]> queries = new ArrayList<>();
+        final List<List<HnswIndex.Neighbor>> expected = new ArrayList<>();
+        for (int q = 0; q < 64; q++) {
+            queries.add(clustered(random));
+            expected.add(index.search(queries.get(q), 10));
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<List<HnswIndex.Neighbor>>> results = new ArrayList<>();
+            for (final float[] query : queries) {
+                results.add(executor.submit(() -> index.search(query, 10)));
+            }
+            for (int q = 0; q < queries.size(); q++) {
+                assertEquals(expected.get(q), results.get(q).get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void storeSkipsRemovedAndFilteredEmbeddings() {
+        final HnswEmbeddingStore store = new HnswEmbeddingStore(HnswIndex.Parameters.DEFAULT);
+        final String pets = store.add(Embedding.from(new float[]{1, 0, 0}), TextSegment.from("pets", Metadata.from("kind", "schema")));
+        store.add(Embedding.from(new float[]{0.9f, 0.1f, 0}), TextSegment.from("petSteps", Metadata.from("kind", "step")));
+        store.add(Embedding.from(new float[]{0.8f, 0.2f, 0}), TextSegment.from("owners", Metadata.from("kind", "schema")));
+
+        final EmbeddingSearchRequest schemas = EmbeddingSearchRequest.builder()
+                .queryEmbedding(Embedding.from(new float[]{1, 0, 0}))
+                .filter(metadataKey("kind").isEqualTo("schema"))
+                .maxResults(5)
+                .build();
+        assertEquals(List.of("pets", "owners"), texts(store, schemas));
+
+        store.remove(pets);
+        assertEquals(List.of("owners"), texts(store, schemas));
+        assertEquals(2L, store.getStats().get("embeddings"));
+    }
+
+    private static HnswIndex build(final Random random) {
+        final HnswIndex index = new HnswIndex(DIMENSION, HnswIndex.Parameters.DEFAULT, 42);
+        for (int i = 0; i < SIZE; i++) {
+            index.add(clustered(random));
+        }
+        return index;
+    }
+
+    // points around a handful of centres, closer to real embeddings than uniform noise
+    private static float[] clustered(final Random random) {
+        final int centre = random.nextInt(16);
+        final float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = (float) ((i % 16 == centre ? 3 : 0) + random.nextGaussian());
+        }
+        return vector;
+    }
+
+    private static List<String> texts(final HnswEmbeddingStore store, final EmbeddingSearchRequest request) {
+        return store.search(request).matches().stream().map(match -> match.embedded().text()).toList();
+    }
+}
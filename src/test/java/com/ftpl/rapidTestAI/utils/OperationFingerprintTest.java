@@ -0,0 +1,35 @@
+package com.ftpl.rapidTestAI.utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class OperationFingerprintTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void ignoresTheStoredFingerprintAndFieldOrderOnly() throws Exception {
+        final JsonNode operation = mapper.readTree("""
+                {"method": "POST", "path": "/keys",
+                 "requestBody": {"properties": {"fingerprint": {"type": "string"}, "name": {"type": "string"}}}}
+                """);
+        final String fingerprint = OperationFingerprint.of(operation);
+
+        final ObjectNode stored = operation.deepCopy();
+        stored.put(OperationFingerprint.FIELD, fingerprint);
+        assertEquals(fingerprint, OperationFingerprint.of(stored));
+        assertEquals(fingerprint, OperationFingerprint.of(mapper.readTree("""
+                {"requestBody": {"properties": {"name": {"type": "string"}, "fingerprint": {"type": "string"}}},
+                 "path": "/keys", "method": "POST"}
+                """)));
+
+        final ObjectNode changed = operation.deepCopy();
+        ((ObjectNode) changed.at("/requestBody/properties/fingerprint")).put("type", "integer");
+        assertNotEquals(fingerprint, OperationFingerprint.of(changed));
+    }
+}
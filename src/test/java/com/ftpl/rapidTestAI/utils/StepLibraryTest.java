@@ -0,0 +1,171 @@
+package com.ftpl.rapidTestAI.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StepLibraryTest {
+
+    private static final String PETS = """
+            Feature: Pets
+              Scenario: Get a pet
+                Given the API base URL is "http://localhost"
+                When I send a GET request to "/pets/1"
+                Then the response status is 200
+                And the response has a pet named "Rex"
+            """;
+
+    private static final String ORDERS = """
+            Feature: Orders
+              Scenario: Get an order
+                Given the API base URL is "http://localhost"
+                When I send a GET request to "/orders/7"
+                Then the response status is 200
+                And the order total is 10.5
+            """;
+
+    @Test
+    void generatesEachStepOnceAndSplitsSharedFromOwnSteps(@TempDir final Path dir) throws Exception {
+        final StepLibrary library = new StepLibrary();
+        final List<GherkinSteps.Step> pets = GherkinSteps.stepsOf(PETS);
+        final List<GherkinSteps.Step> orders = GherkinSteps.stepsOf(ORDERS);
+
+        final List<GherkinSteps.Step> petClaims = library.claim(pets);
+        assertEquals(4, petClaims.size());
+        // the pet steps are being generated, so only the order total is left to this feature
+        assertEquals(List.of("the order total is {bigdecimal}"), library.claim(orders).stream().map(GherkinSteps.Step::expression).toList());
+        petClaims.forEach(step -> library.define(step.expression(), "context.values.put(\"step\", \"" + step.example().replace("\"", "'") + "\");"));
+        library.release(List.of("the order total is {bigdecimal}"));
+
+        library.assign("GET /pets/{id}", "_pets__id__GETSteps", pets);
+        library.assign("GET /orders/{id}", "_orders__id__GETSteps", orders);
+        assertEquals(List.of("the order total is {bigdecimal}"), library.claimUndefined().stream().map(GherkinSteps.Step::expression).toList());
+        library.define("the order total is {bigdecimal}", "assertEquals(bigdecimal1, new BigDecimal(context.response.path(\"total\").toString()));");
+
+        // StepContext, SharedSteps and a class per endpoint
+        assertEquals(4, library.write(dir, "com.example.steps"));
+        final String shared = Files.readString(dir.resolve("SharedSteps.java"));
+        assertTrue(shared.startsWith("package com.example.steps;"));
+        assertTrue(shared.contains("""
+                    @Then("the response status is {bigdecimal}")
+                    public void theResponseStatusIs(BigDecimal bigdecimal1) {
+                        context.values.put("step", "the response status is 200");
+                    }
+                """), shared);
+        assertFalse(shared.contains("pet named"));
+        final String pet = Files.readString(dir.resolve("_pets__id__GETSteps.java"));
+        assertTrue(pet.contains("public class _pets__id__GETSteps {"));
+        assertTrue(pet.contains("@Then(\"the response has a pet named {string}\")\n    public void theResponseHasAPetNamed(String string) {"), pet);
+        assertFalse(pet.contains("status"));
+        assertTrue(Files.readString(dir.resolve("_orders__id__GETSteps.java")).contains("public void theOrderTotalIs(BigDecimal bigdecimal1) {"));
+
+        // nothing changed, nothing rewritten; the library comes back from disk
+        assertEquals(0, library.write(dir, "com.example.steps"));
+        final StepLibrary reread = StepLibrary.read(dir.resolve(StepLibrary.FILE_NAME).toFile());
+        assertTrue(reread.claim(pets).isEmpty());
+        assertEquals(library.getStats(), reread.getStats());
+        assertEquals(3L, reread.getStats().get("sharedSteps"));
+
+        // once the orders endpoint is gone its steps are no longer shared
+        reread.retainEndpoints(Set.of("GET /pets/{id}"));
+        reread.write(dir, "com.example.steps");
+        assertTrue(Files.readString(dir.resolve("_pets__id__GETSteps.java")).contains("theResponseStatusIs"));
+        assertFalse(Files.readString(dir.resolve("SharedSteps.java")).contains("@Then"));
+    }
+
+    @Test
+    void rendersUndefinedStepsAsPending(@TempDir final Path dir) throws Exception {
+        final StepLibrary library = new StepLibrary();
+        final List<GherkinSteps.Step> steps = GherkinSteps.stepsOf("""
+                Feature: Import
+                  Scenario: Import
+                    Given the import file:
+                      \"""
+                      a,b
+                      \"""
+                    When the import runs with:
+                      | mode | strict |
+                """);
+        library.assign("POST /import", "_import_POSTSteps", steps);
+        library.write(dir, "");
+
+        final String source = Files.readString(dir.resolve("_import_POSTSteps.java"));
+        assertTrue(source.startsWith("import io.cucumber.datatable.DataTable;"));
+        assertTrue(source.contains("public void theImportFile(String docString) {\n        throw new PendingException();"), source);
+        assertTrue(source.contains("public void theImportRunsWith(DataTable dataTable) {"), source);
+    }
+
+    @Test
+    void rendersWholeAndDecimalVariantsOfAStepAsOneDefinition(@TempDir final Path dir) throws Exception {
+        final StepLibrary library = new StepLibrary();
+        library.assign("GET /totals/whole", "_totals_whole_GETSteps", GherkinSteps.stepsOf("""
+                Feature: Whole
+                  Scenario: Whole
+                    Then the total is 12
+                """));
+        library.assign("GET /totals/decimal", "_totals_decimal_GETSteps", GherkinSteps.stepsOf("""
+                Feature: Decimal
+                  Scenario: Decimal
+                    Then the total is 12.5
+                    And the response status is 200
+                """));
+        library.write(dir, "");
+
+        final List<String> expressions = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            for (final Path file : files.filter(file -> file.toString().endsWith(".java")).toList()) {
+                final Matcher annotation = Pattern.compile("@(?:Given|When|Then)\\(\"(.*)\"\\)").matcher(Files.readString(file));
+                while (annotation.find()) {
+                    expressions.add(annotation.group(1));
+                }
+            }
+        }
+        assertEquals(List.of("the response status is {bigdecimal}", "the total is {bigdecimal}"), expressions.stream().sorted().toList());
+        // every step text is matched by exactly one definition, as Cucumber requires
+        for (final String text : List.of("the total is 12", "the total is 12.5", "the total is 98765432109876", "the response status is 200")) {
+            assertEquals(1, expressions.stream().filter(expression -> text.matches(regexOf(expression))).count(), text);
+        }
+    }
+
+    @Test
+    void movesIntAndDoubleStepsOfOlderLibrariesToOneUndefinedStep(@TempDir final Path dir) throws Exception {
+        Files.writeString(dir.resolve(StepLibrary.FILE_NAME), """
+                {"steps": {
+                  "the total is {int}": {"keyword": "Then", "argument": "NONE", "example": "the total is 12",
+                                         "body": "assertEquals(int1, 12);", "endpoints": ["GET /a"]},
+                  "the total is {double}": {"keyword": "Then", "argument": "NONE", "example": "the total is 12.5",
+                                            "body": "assertEquals(double1, 12.5);", "endpoints": ["GET /b"]}
+                 },
+                 "classes": {"GET /a": "_a_GETSteps", "GET /b": "_b_GETSteps"}}
+                """);
+
+        final StepLibrary library = StepLibrary.read(dir.resolve(StepLibrary.FILE_NAME).toFile());
+        assertEquals(List.of("the total is {bigdecimal}"), library.claimUndefined().stream().map(GherkinSteps.Step::expression).toList());
+        assertEquals(1L, library.getStats().get("steps"));
+        assertEquals(1L, library.getStats().get("sharedSteps"));
+    }
+
+    private static String regexOf(final String expression) {
+        final StringBuilder regex = new StringBuilder();
+        for (final String part : expression.split("(?=\\{(?:bigdecimal|string)})|(?<=\\{bigdecimal})|(?<=\\{string})")) {
+            regex.append(switch (part) {
+                case "{bigdecimal}" -> "-?\\d+(?:\\.\\d+)?";
+                case "{string}" -> "\"[^\"]*\"";
+                default -> Pattern.quote(part.replaceAll("\\\\(.)", "$1"));
+            });
+        }
+        return regex.toString();
+    }
+}